@@ -0,0 +1,131 @@
+package processing.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import processing.event.Event;
+import processing.event.MouseEvent;
+
+
+/**
+ * Fixed-size queue for the input events waiting to be handled by the
+ * sketch. Any number of threads can add events without locking or
+ * allocating anything: each slot has a sequence number that says whether
+ * it's free to be written or ready to be read, and writers claim slots by
+ * advancing the tail with compareAndSet(). Events are taken out by one
+ * thread at a time (PApplet holds a lock while it dequeues).
+ * <p>
+ * If the sketch falls so far behind that the queue fills up, new events
+ * are dropped (and counted) instead of piling up without limit.
+ */
+class EventRing {
+  final Event[] events;
+  /** for each slot, the position it's ready to be written at (when equal
+      to the tail) or read from (when one more than the head) */
+  final AtomicLongArray sequences;
+  final int mask;
+
+  final AtomicLong tail = new AtomicLong();
+  /** only used by the thread taking events out */
+  long head;
+
+  final AtomicLong dropped = new AtomicLong();
+  volatile long coalesced;
+
+
+  EventRing(int capacity) {
+    int size = 2;
+    while (size < capacity) {
+      size <<= 1;
+    }
+    events = new Event[size];
+    sequences = new AtomicLongArray(size);
+    for (int i = 0; i < size; i++) {
+      sequences.set(i, i);
+    }
+    mask = size - 1;
+  }
+
+
+  /**
+   * Add an event, returning false (and counting it as dropped) if the
+   * queue is full.
+   */
+  boolean offer(Event event) {
+    long pos = tail.get();
+    while (true) {
+      int index = (int) pos & mask;
+      long diff = sequences.get(index) - pos;
+      if (diff == 0) {
+        if (tail.compareAndSet(pos, pos + 1)) {
+          events[index] = event;
+          // publish the event to the reader
+          sequences.lazySet(index, pos + 1);
+          return true;
+        }
+        pos = tail.get();
+      } else if (diff < 0) {
+        // the reader hasn't freed this slot since the last time around
+        dropped.incrementAndGet();
+        return false;
+      } else {
+        // another writer took this slot
+        pos = tail.get();
+      }
+    }
+  }
+
+
+  private Event peek() {
+    int index = (int) head & mask;
+    return (sequences.get(index) == head + 1) ? events[index] : null;
+  }
+
+
+  private Event take() {
+    int index = (int) head & mask;
+    if (sequences.get(index) != head + 1) {
+      return null;
+    }
+    Event event = events[index];
+    events[index] = null;
+    // free the slot for the writer that's one lap ahead
+    sequences.lazySet(index, head + events.length);
+    head++;
+    return event;
+  }
+
+
+  /**
+   * Take the next event, or return null if there are none. With coalesce
+   * set, a mouse move or drag is skipped when the event right after it is
+   * the same kind of move or drag (so a burst of them is handled as one).
+   */
+  Event poll(boolean coalesce) {
+    Event event = take();
+    if (coalesce) {
+      while (event != null && supersedes(peek(), event)) {
+        event = take();
+        coalesced++;
+      }
+    }
+    return event;
+  }
+
+
+  static private boolean supersedes(Event next, Event event) {
+    if (next == null ||
+        next.getFlavor() != Event.MOUSE || event.getFlavor() != Event.MOUSE) {
+      return false;
+    }
+    int action = event.getAction();
+    if (action != MouseEvent.MOVE && action != MouseEvent.DRAG) {
+      return false;
+    }
+    MouseEvent a = (MouseEvent) event;
+    MouseEvent b = (MouseEvent) next;
+    return b.getAction() == action &&
+      b.getButton() == a.getButton() &&
+      b.getModifiers() == a.getModifiers();
+  }
+}
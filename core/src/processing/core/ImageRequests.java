@@ -0,0 +1,252 @@
+package processing.core;
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * The threads and the cache behind PApplet.requestImage(). Requests wait in
+ * a priority queue (highest priority first, then in the order they were
+ * made), so they can be re-prioritized or cancelled until a thread picks
+ * them up. Decoded images can be kept in a cache that's limited by the
+ * number of bytes of pixels it holds, dropping the least recently used
+ * images first.
+ */
+class ImageRequests {
+  static final String THREAD_PREFIX = "requestImage";
+
+  PApplet parent;
+  ThreadPoolExecutor executor;
+
+  /** requests that haven't finished yet, by the image handed back for each */
+  Map<PImage, Request> pending = new IdentityHashMap<>();
+  long sequence;
+
+  Map<String, PImage> cache = new LinkedHashMap<>(16, 0.75f, true);
+  long cacheLimit;
+  long cacheBytes;
+
+
+  ImageRequests(PApplet parent, int threads) {
+    this.parent = parent;
+    ThreadFactory factory = new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, THREAD_PREFIX);
+        thread.setDaemon(true);
+        return thread;
+      }
+    };
+    executor = new ThreadPoolExecutor(threads, threads, 10, TimeUnit.SECONDS,
+                                      new PriorityBlockingQueue<Runnable>(),
+                                      factory);
+    // don't keep idle threads around once everything has loaded
+    executor.allowCoreThreadTimeOut(true);
+  }
+
+
+  synchronized void setThreads(int threads) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("requestImage() needs at least one thread");
+    }
+    if (threads > executor.getMaximumPoolSize()) {
+      executor.setMaximumPoolSize(threads);
+      executor.setCorePoolSize(threads);
+    } else {
+      executor.setCorePoolSize(threads);
+      executor.setMaximumPoolSize(threads);
+    }
+  }
+
+
+  synchronized void setCacheLimit(long bytes) {
+    if (bytes < 0) {
+      throw new IllegalArgumentException("The image cache size cannot be negative");
+    }
+    cacheLimit = bytes;
+    trimCache();
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Start loading an image, and return the (empty) image that it will be
+   * loaded into. Images already in the cache are copied in immediately.
+   */
+  synchronized PImage request(String filename, String extension,
+                              int targetWidth, int targetHeight, int priority) {
+    PImage vessel = parent.createImage(0, 0, PConstants.ARGB);
+    String key = cacheKey(filename, extension, targetWidth, targetHeight);
+    PImage cached = (cacheLimit > 0) ? cache.get(key) : null;
+    if (cached != null) {
+      fill(vessel, cached, true);
+      return vessel;
+    }
+    Request request = new Request(vessel, filename, extension,
+                                  targetWidth, targetHeight, key, priority);
+    pending.put(vessel, request);
+    executor.execute(request);
+    return vessel;
+  }
+
+
+  /**
+   * Change the priority of a request that hasn't started loading yet.
+   * Returns false if it has already started (or finished).
+   */
+  synchronized boolean setPriority(PImage vessel, int priority) {
+    Request request = pending.get(vessel);
+    // remove() only succeeds if no thread has taken it from the queue
+    if (request != null && executor.remove(request)) {
+      request.priority = priority;
+      executor.execute(request);
+      return true;
+    }
+    return false;
+  }
+
+
+  /**
+   * Stop a request. If a thread is already decoding the image, it's
+   * thrown away once that finishes. The image stays 0 x 0, and returns
+   * false if it had already been loaded (or had failed).
+   */
+  synchronized boolean cancel(PImage vessel) {
+    Request request = pending.remove(vessel);
+    if (request == null) {
+      return false;
+    }
+    request.cancelled = true;
+    executor.remove(request);
+    return true;
+  }
+
+
+  /** Cancel everything that's waiting, for instance when the sketch exits. */
+  synchronized void cancelAll() {
+    for (Request request : pending.values()) {
+      request.cancelled = true;
+      executor.remove(request);
+    }
+    pending.clear();
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  static private String cacheKey(String filename, String extension,
+                                 int targetWidth, int targetHeight) {
+    return filename + "\0" + extension + "\0" + targetWidth + "x" + targetHeight;
+  }
+
+
+  static private void fill(PImage vessel, PImage actual, boolean copy) {
+    vessel.format = actual.format;
+    vessel.pixels = copy ? actual.pixels.clone() : actual.pixels;
+    vessel.pixelWidth = actual.width;
+    vessel.pixelHeight = actual.height;
+    vessel.pixelDensity = 1;
+    // set the size last, since that's what sketches check to see
+    // whether the image has finished loading
+    vessel.height = actual.height;
+    vessel.width = actual.width;
+  }
+
+
+  private void finish(Request request, PImage actual) {
+    boolean cached = false;
+    synchronized (this) {
+      if (request.cancelled) {
+        return;
+      }
+      pending.remove(request.vessel);
+      if (actual != null && cacheLimit > 0) {
+        long bytes = 4L * actual.pixels.length;
+        if (bytes <= cacheLimit) {
+          cached = true;
+          PImage previous = cache.put(request.key, actual);
+          if (previous != null) {
+            cacheBytes -= 4L * previous.pixels.length;
+          }
+          cacheBytes += bytes;
+          trimCache();
+        }
+      }
+    }
+    // An error message should have already printed
+    if (actual == null) {
+      request.vessel.width = -1;
+      request.vessel.height = -1;
+    } else {
+      // the cache keeps its own copy, in case the sketch modifies this one
+      fill(request.vessel, actual, cached);
+    }
+  }
+
+
+  private void trimCache() {
+    Iterator<PImage> it = cache.values().iterator();
+    while (cacheBytes > cacheLimit && it.hasNext()) {
+      cacheBytes -= 4L * it.next().pixels.length;
+      it.remove();
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  class Request implements Runnable, Comparable<Request> {
+    PImage vessel;
+    String filename;
+    String extension;
+    int targetWidth, targetHeight;
+    String key;
+    volatile int priority;
+    volatile boolean cancelled;
+    /** breaks ties between equal priorities, so they load in order */
+    long order;
+
+
+    Request(PImage vessel, String filename, String extension,
+            int targetWidth, int targetHeight, String key, int priority) {
+      this.vessel = vessel;
+      this.filename = filename;
+      this.extension = extension;
+      this.targetWidth = targetWidth;
+      this.targetHeight = targetHeight;
+      this.key = key;
+      this.priority = priority;
+      order = sequence++;
+    }
+
+
+    public void run() {
+      if (!cancelled) {
+        PImage actual = null;
+        try {
+          actual = parent.loadImage(filename, extension, targetWidth, targetHeight);
+        } catch (RuntimeException e) {
+          e.printStackTrace();
+        }
+        finish(this, actual);
+      }
+    }
+
+
+    public int compareTo(Request other) {
+      if (priority != other.priority) {
+        return (priority > other.priority) ? -1 : 1;
+      }
+      return Long.compare(order, other.order);
+    }
+  }
+}
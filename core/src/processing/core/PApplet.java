@@ -69,13 +69,17 @@ import org.xml.sax.SAXException;
 import java.io.*;
 import java.lang.reflect.*;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.text.*;
 import java.util.*;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Future;
 import java.util.concurrent.ThreadFactory;
 import java.util.regex.*;
 import java.util.zip.*;
@@ -1419,52 +1423,65 @@ public class PApplet implements PConstants {
   class RegisteredMethods {
     int count;
     Object[] objects;
-    // Because the Method comes from the class being called,
-    // it will be unique for most, if not all, objects.
-    Method[] methods;
-    Object[] emptyArgs = new Object[] { };
+    // Bound to each object, so they're called directly (no reflection)
+    PCallback[] methods;
 
 
     void handle() {
-      handle(emptyArgs);
+      for (int i = 0; i < count; i++) {
+        try {
+          methods[i].call();
+        } catch (Throwable t) {
+          handleException(t);
+        }
+      }
+    }
+
+
+    void handle(Object arg) {
+      for (int i = 0; i < count; i++) {
+        try {
+          methods[i].call(arg);
+        } catch (Throwable t) {
+          handleException(t);
+        }
+      }
     }
 
 
     void handle(Object[] args) {
       for (int i = 0; i < count; i++) {
         try {
-          methods[i].invoke(objects[i], args);
-        } catch (Exception e) {
-          // check for wrapped exception, get root exception
-          Throwable t;
-          if (e instanceof InvocationTargetException) {
-            InvocationTargetException ite = (InvocationTargetException) e;
-            t = ite.getCause();
-          } else {
-            t = e;
-          }
-          // check for RuntimeException, and allow to bubble up
-          if (t instanceof RuntimeException) {
-            // re-throw exception
-            throw (RuntimeException) t;
-          } else {
-            // trap and print as usual
-            printStackTrace(t);
-          }
+          methods[i].call(args);
+        } catch (Throwable t) {
+          handleException(t);
         }
       }
     }
 
 
-    void add(Object object, Method method) {
+    private void handleException(Throwable t) {
+      // check for RuntimeException, and allow to bubble up
+      if (t instanceof RuntimeException) {
+        // re-throw exception
+        throw (RuntimeException) t;
+      } else {
+        // trap and print as usual (including Errors, as when these
+        // were called with Method.invoke())
+        printStackTrace(t);
+      }
+    }
+
+
+    void add(Object object, PCallback method) {
       if (findIndex(object) == -1) {
         if (objects == null) {
           objects = new Object[5];
-          methods = new Method[5];
+          methods = new PCallback[5];
 
         } else if (count == objects.length) {
           objects = (Object[]) PApplet.expand(objects);
-          methods = (Method[]) PApplet.expand(methods);
+          methods = (PCallback[]) PApplet.expand(methods);
         }
         objects[count] = object;
         methods[count] = method;
@@ -1556,9 +1573,11 @@ public class PApplet implements PConstants {
 
 
   private void registerNoArgs(String name, Object o) {
-    Class<?> c = o.getClass();
     try {
-      Method method = c.getMethod(name);
+      PCallback method = PCallback.find(o, name);
+      if (method == null) {
+        throw new NoSuchMethodException(name);
+      }
       synchronized (registerLock) {
         RegisteredMethods meth = registerMap.get(name);
         if (meth == null) {
@@ -1578,9 +1597,11 @@ public class PApplet implements PConstants {
 
 
   private void registerWithArgs(String name, Object o, Class<?> cargs[]) {
-    Class<?> c = o.getClass();
     try {
-      Method method = c.getMethod(name, cargs);
+      PCallback method = PCallback.find(o, name, cargs);
+      if (method == null) {
+        throw new NoSuchMethodException(name);
+      }
       synchronized (registerLock) {
         RegisteredMethods meth = registerMap.get(name);
         if (meth == null) {
@@ -1641,6 +1662,20 @@ public class PApplet implements PConstants {
   }
 
 
+  /**
+   * Same as handleMethods(methodName, new Object[] { arg }), without
+   * needing the array for every event.
+   */
+  protected void handleMethod(String methodName, Object arg) {
+    synchronized (registerLock) {
+      RegisteredMethods meth = registerMap.get(methodName);
+      if (meth != null) {
+        meth.handle(arg);
+      }
+    }
+  }
+
+
   /*
   @Deprecated
   public void registerSize(Object o) {
@@ -2473,6 +2508,9 @@ public class PApplet implements PConstants {
         handleMethods("pre");
       }
 
+      // results handed over by runLater() since the last frame
+      runLaterTasks();
+
       // use dmouseX/Y as previous mouse pos, since this is the
       // last position the mouse was in during the previous draw.
       pmouseX = dmouseX;
@@ -2626,8 +2664,11 @@ public class PApplet implements PConstants {
   //////////////////////////////////////////////////////////////
 
 
-  BlockingQueue<Event> eventQueue = new LinkedBlockingQueue<>();
+  // enough for several seconds of input from a 1000 Hz mouse
+  static final int EVENT_QUEUE_SIZE = 4096;
+  EventRing eventQueue = new EventRing(EVENT_QUEUE_SIZE);
   private final Object eventQueueDequeueLock = new Object[0];
+  volatile boolean coalesceEvents;
 
 
   /**
@@ -2635,7 +2676,7 @@ public class PApplet implements PConstants {
    * the sketch is not currently looping.
    */
   public void postEvent(processing.event.Event pe) {
-    eventQueue.add(pe);
+    eventQueue.offer(pe);
 
     if (!looping) {
       dequeueEvents();
@@ -2643,10 +2684,46 @@ public class PApplet implements PConstants {
   }
 
 
+  /**
+   * Handle only the last of several mouse moves (or drags) in a row that
+   * are waiting to be handled, instead of each of them. Useful when input
+   * arrives much faster than the frame rate (tablets, high-rate mice) and
+   * the sketch only cares about the latest position. Off by default, since
+   * sketches that draw a line between pmouseX/Y and mouseX/Y in
+   * mouseDragged() want every point.
+   *
+   * @nowebref
+   */
+  public void coalesceEvents(boolean coalesce) {
+    coalesceEvents = coalesce;
+  }
+
+
+  /**
+   * Number of input events thrown away because the sketch fell too far
+   * behind in handling them (the queue holds 4096 events).
+   *
+   * @nowebref
+   */
+  public long getDroppedEvents() {
+    return eventQueue.dropped.get();
+  }
+
+
+  /**
+   * Number of mouse moves and drags skipped because of coalesceEvents().
+   *
+   * @nowebref
+   */
+  public long getCoalescedEvents() {
+    return eventQueue.coalesced;
+  }
+
+
   protected void dequeueEvents() {
     synchronized (eventQueueDequeueLock) {
-      while (!eventQueue.isEmpty()) {
-        Event e = eventQueue.remove();
+      Event e;
+      while ((e = eventQueue.poll(coalesceEvents)) != null) {
         switch (e.getFlavor()) {
         case Event.MOUSE:
           handleMouseEvent((MouseEvent) e);
@@ -2746,7 +2823,7 @@ public class PApplet implements PConstants {
       break;
     }
 
-    handleMethods("mouseEvent", new Object[] { event });
+    handleMethod("mouseEvent", event);
 
     switch (action) {
     case MouseEvent.PRESS:
@@ -3018,7 +3095,7 @@ public class PApplet implements PConstants {
     }
     */
 
-    handleMethods("keyEvent", new Object[] { event });
+    handleMethod("keyEvent", event);
 
     // if someone else wants to intercept the key, they should
     // set key to zero (or something besides the ESC).
@@ -3835,6 +3912,19 @@ public class PApplet implements PConstants {
       }
       // run dispose() methods registered by libraries
       handleMethods("dispose");
+
+      // drop any images that haven't started loading
+      if (imageRequests != null) {
+        imageRequests.cancelAll();
+      }
+
+      // interrupt anything from thread() or submit() that's still going
+      synchronized (this) {
+        if (taskExecutor != null) {
+          taskExecutor.shutdownNow();
+        }
+      }
+      runLaterQueue.clear();
     }
 
     if (platform == MACOSX) {
@@ -3862,21 +3952,16 @@ public class PApplet implements PConstants {
    * (like from Eclipse) you'll have to do it yourself.
    */
   public void method(String name) {
-    try {
-      Method method = getClass().getMethod(name, new Class[] {});
-      method.invoke(this, new Object[] { });
-
-    } catch (IllegalArgumentException e) {
-      e.printStackTrace();
-    } catch (IllegalAccessException e) {
-      e.printStackTrace();
-    } catch (InvocationTargetException e) {
-      e.getTargetException().printStackTrace();
-    } catch (NoSuchMethodException nsme) {
+    PCallback method = PCallback.find(this, name);
+    if (method == null) {
       System.err.println("There is no public " + name + "() method " +
                          "in the class " + getClass().getName());
-    } catch (Exception e) {
-      e.printStackTrace();
+      return;
+    }
+    try {
+      method.call();
+    } catch (Throwable t) {
+      t.printStackTrace();
     }
   }
 
@@ -3899,13 +3984,92 @@ public class PApplet implements PConstants {
    * @see PApplet#noLoop()
    */
   public void thread(final String name) {
-    Thread later = new Thread() {
+    // execute() rather than submit(), so that an Error thrown by the
+    // method isn't kept in a Future that nobody looks at, and is reported
+    // by the thread the same way as before
+    getTaskExecutor().execute(new Runnable() {
       @Override
       public void run() {
         method(name);
       }
-    };
-    later.start();
+    });
+  }
+
+
+  // threads for thread() and submit(), created when first needed
+  ExecutorService taskExecutor;
+  // tasks from runLater(), waiting for the next frame
+  Queue<Runnable> runLaterQueue = new ConcurrentLinkedQueue<>();
+
+
+  /**
+   * Run a task on another thread, and return a Future that can be used to
+   * check whether it's done, wait for it, or cancel it. Uses virtual
+   * threads when the JVM has them, or else a pool of threads that are
+   * reused from one task to the next. Tasks still running when the sketch
+   * exits are interrupted. To hand the results back to draw(), use
+   * runLater() at the end of the task.
+   *
+   * @nowebref
+   */
+  public Future<?> submit(Runnable task) {
+    return getTaskExecutor().submit(task);
+  }
+
+
+  /**
+   * Run a task on another thread, and get its result from the Future
+   * that's returned (get() waits for it, and throws an ExecutionException
+   * if the task threw one).
+   *
+   * @nowebref
+   */
+  public <T> Future<T> submit(Callable<T> task) {
+    return getTaskExecutor().submit(task);
+  }
+
+
+  /**
+   * Run a task on the animation thread just before the next draw(), for
+   * instance to hand over the results of a task from submit() or
+   * thread(). Since it runs between frames, it can safely change the
+   * variables that draw() uses without synchronized blocks. If the sketch
+   * is not looping, the task waits until the next redraw().
+   *
+   * @nowebref
+   */
+  public void runLater(Runnable task) {
+    runLaterQueue.add(task);
+  }
+
+
+  protected void runLaterTasks() {
+    Runnable task;
+    while ((task = runLaterQueue.poll()) != null) {
+      task.run();
+    }
+  }
+
+
+  synchronized ExecutorService getTaskExecutor() {
+    if (taskExecutor == null) {
+      try {
+        // Java 21 and later
+        Method virtual = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        taskExecutor = (ExecutorService) virtual.invoke(null);
+      } catch (Exception e) {
+        taskExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+          int count;
+
+          public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "thread-" + (++count));
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+      }
+    }
+    return taskExecutor;
   }
 
 
@@ -5244,6 +5408,10 @@ public class PApplet implements PConstants {
 
   Random perlinRandom;
 
+  // simplexNoise(), created with the noiseSeed() seed if there is one
+  PNoise simplex;
+  Long simplexSeed;
+
 
   /**
    */
@@ -5401,6 +5569,7 @@ public class PApplet implements PConstants {
    */
   public void noiseDetail(int lod) {
     if (lod>0) perlin_octaves=lod;
+    if (simplex != null) simplex.detail(perlin_octaves, perlin_amp_falloff);
   }
 
   /**
@@ -5410,6 +5579,7 @@ public class PApplet implements PConstants {
   public void noiseDetail(int lod, float falloff) {
     if (lod>0) perlin_octaves=lod;
     if (falloff>0) perlin_amp_falloff=falloff;
+    if (simplex != null) simplex.detail(perlin_octaves, perlin_amp_falloff);
   }
 
   /**
@@ -5433,6 +5603,53 @@ public class PApplet implements PConstants {
     perlinRandom.setSeed(seed);
     // force table reset after changing the random number seed [0122]
     perlin = null;
+    simplexSeed = seed;
+    if (simplex != null) simplex.seed(seed);
+  }
+
+
+  /**
+   * Simplex noise, which looks similar to noise() but has fewer visible
+   * grid artifacts, and also works in four dimensions. Like noise(), it
+   * returns values between 0 and 1, and follows noiseSeed() and
+   * noiseDetail(). To compute many values at once (on several threads),
+   * see the fill() methods of PNoise.
+   *
+   * @nowebref
+   * @see PNoise
+   */
+  public float simplexNoise(float x, float y) {
+    return getSimplexNoise().noise(x, y);
+  }
+
+
+  /**
+   * @nowebref
+   */
+  public float simplexNoise(float x, float y, float z) {
+    return getSimplexNoise().noise(x, y, z);
+  }
+
+
+  /**
+   * @nowebref
+   */
+  public float simplexNoise(float x, float y, float z, float w) {
+    return getSimplexNoise().noise(x, y, z, w);
+  }
+
+
+  /**
+   * The PNoise used by simplexNoise(), for its fill() methods.
+   *
+   * @nowebref
+   */
+  public PNoise getSimplexNoise() {
+    if (simplex == null) {
+      simplex = (simplexSeed == null) ? new PNoise() : new PNoise(simplexSeed);
+      simplex.detail(perlin_octaves, perlin_amp_falloff);
+    }
+    return simplex;
   }
 
 
@@ -5505,6 +5722,30 @@ public class PApplet implements PConstants {
    * @param extension type of image to load, for example "png", "gif", "jpg"
    */
   public PImage loadImage(String filename, String extension) { //, Object params) {
+    return loadImage(filename, extension, 0, 0);
+  }
+
+
+  /**
+   * Load a smaller version of a large image, for instance to make
+   * thumbnails. JPEG, PNG, and GIF images are decoded by reading every Nth
+   * pixel, which is much faster (and uses much less memory) than loading
+   * the whole image and then calling resize(). The result will be no
+   * smaller than targetWidth x targetHeight, so use resize() afterwards
+   * for an exact size. Other image types are loaded at their full size.
+   *
+   * @nowebref
+   */
+  public PImage loadImage(String filename, int targetWidth, int targetHeight) {
+    return loadImage(filename, null, targetWidth, targetHeight);
+  }
+
+
+  /**
+   * @nowebref
+   */
+  public PImage loadImage(String filename, String extension,
+                          int targetWidth, int targetHeight) {
 
     // awaitAsyncSaveCompletion() has to run on the main thread, because P2D
     // and P3D call GL functions. If this runs on background, requestImage()
@@ -5556,9 +5797,21 @@ public class PApplet implements PConstants {
       return image;
     }
 
-    // For jpeg, gif, and png, load them using createImage(),
-    // because the javax.imageio code was found to be much slower.
-    // http://dev.processing.org/bugs/show_bug.cgi?id=392
+    // For jpeg, gif, and png, decode straight into the pixels array with
+    // an ImageReader, rather than copying the whole file into a byte[]
+    // and then going through ImageIcon, the Toolkit, and a PixelGrabber.
+    if (extension.equals("jpg") || extension.equals("jpeg") ||
+        extension.equals("gif") || extension.equals("png") ||
+        extension.equals("unknown")) {
+      PImage image = loadImageIO(filename, targetWidth, targetHeight, false);
+      if (image != null) {
+        return image;
+      }
+    }
+
+    // If that didn't work, use createImage() by way of ImageIcon, which
+    // can read a few files (CMYK JPEGs, for instance) that ImageIO cannot,
+    // and gives the error messages for files that are missing or corrupt.
     try {
       if (extension.equals("jpg") || extension.equals("jpeg") ||
           extension.equals("gif") || extension.equals("png") ||
@@ -5637,9 +5890,10 @@ public class PApplet implements PConstants {
   }
 
 
-  static private final String REQUEST_IMAGE_THREAD_PREFIX = "requestImage";
-  // fixed-size thread pool used by requestImage()
-  ExecutorService requestImagePool;
+  static private final String REQUEST_IMAGE_THREAD_PREFIX = ImageRequests.THREAD_PREFIX;
+  // threads and cache used by requestImage()
+  ImageRequests imageRequests;
+  int requestImageThreads = 4;
 
 
   public PImage requestImage(String filename) {
@@ -5670,42 +5924,95 @@ public class PApplet implements PConstants {
    * @see PApplet#loadImage(String, String)
    */
   public PImage requestImage(String filename, String extension) {
+    return requestImage(filename, extension, 0, 0, 0);
+  }
+
+
+  /**
+   * Request an image with a target size (see loadImage(String, int, int))
+   * and a priority. Requests with a higher priority are loaded first, and
+   * ones with the same priority are loaded in the order they were made.
+   * The priority can be changed with imagePriority() until the image starts
+   * loading, or the request dropped entirely with cancelImage().
+   *
+   * @nowebref
+   * @param targetWidth smallest width needed, or 0 for the full size
+   * @param targetHeight smallest height needed, or 0 for the full size
+   * @param priority higher numbers are loaded sooner
+   */
+  public PImage requestImage(String filename, String extension,
+                             int targetWidth, int targetHeight, int priority) {
     // Make sure saving to this file completes before trying to load it
     // Has to be called on main thread, because P2D and P3D need GL functions
     if (g != null) {
       g.awaitAsyncSaveCompletion(filename);
     }
-    PImage vessel = createImage(0, 0, ARGB);
+    return getImageRequests().request(filename, extension,
+                                      targetWidth, targetHeight, priority);
+  }
 
-    // if the image loading thread pool hasn't been created, create it
-    if (requestImagePool == null) {
-      ThreadFactory factory = new ThreadFactory() {
-        public Thread newThread(Runnable r) {
-          return new Thread(r, REQUEST_IMAGE_THREAD_PREFIX);
-        }
-      };
-      requestImagePool = Executors.newFixedThreadPool(4, factory);
+
+  /**
+   * Change the priority of an image from requestImage(), for instance to
+   * load the map tiles that just scrolled into view ahead of the others.
+   * Returns false if the image has already started loading.
+   *
+   * @nowebref
+   */
+  public boolean imagePriority(PImage request, int priority) {
+    return imageRequests != null && imageRequests.setPriority(request, priority);
+  }
+
+
+  /**
+   * Stop loading an image from requestImage(). Its width and height will
+   * stay at 0. Returns false if it had already finished loading.
+   *
+   * @nowebref
+   */
+  public boolean cancelImage(PImage request) {
+    return imageRequests != null && imageRequests.cancel(request);
+  }
+
+
+  /**
+   * Set the number of threads used by requestImage(). The default is 4.
+   *
+   * @nowebref
+   */
+  public void requestImageThreads(int count) {
+    if (count < 1) {
+      throw new IllegalArgumentException("requestImage() needs at least one thread");
     }
-    requestImagePool.execute(() -> {
-      PImage actual = loadImage(filename, extension);
+    requestImageThreads = count;
+    if (imageRequests != null) {
+      imageRequests.setThreads(count);
+    }
+  }
 
-      // An error message should have already printed
-      if (actual == null) {
-        vessel.width = -1;
-        vessel.height = -1;
 
-      } else {
-        vessel.width = actual.width;
-        vessel.height = actual.height;
-        vessel.format = actual.format;
-        vessel.pixels = actual.pixels;
+  /**
+   * Keep images loaded by requestImage() in memory, so that requesting the
+   * same file (at the same target size) again doesn't read and decode it a
+   * second time. The limit is the number of bytes of pixels (four per
+   * pixel) to hold on to, and the least recently used images are dropped
+   * to stay under it. The default is 0, which turns off the cache. Each
+   * request gets its own copy of the pixels, but files that change on disk
+   * won't be re-read until they've been pushed out of the cache (or it's
+   * cleared by setting the size to 0).
+   *
+   * @nowebref
+   */
+  public void requestImageCache(long bytes) {
+    getImageRequests().setCacheLimit(bytes);
+  }
 
-        vessel.pixelWidth = actual.width;
-        vessel.pixelHeight = actual.height;
-        vessel.pixelDensity = 1;
-      }
-    });
-    return vessel;
+
+  synchronized ImageRequests getImageRequests() {
+    if (imageRequests == null) {
+      imageRequests = new ImageRequests(this, requestImageThreads);
+    }
+    return imageRequests;
   }
 
 
@@ -5713,36 +6020,53 @@ public class PApplet implements PConstants {
    * Use Java 1.4 ImageIO methods to load an image.
    */
   protected PImage loadImageIO(String filename) {
+    return loadImageIO(filename, 0, 0, true);
+  }
+
+
+  /**
+   * Load an image with PImage.loadImageIO(), optionally reading a smaller
+   * version of it.
+   *
+   * @param report whether to print errors, or quietly return null so that
+   * the caller can try another way of loading the image
+   */
+  protected PImage loadImageIO(String filename, int targetWidth,
+                               int targetHeight, boolean report) {
     InputStream stream = createInput(filename);
     if (stream == null) {
-      System.err.println("The image " + filename + " could not be found.");
+      if (report) {
+        System.err.println("The image " + filename + " could not be found.");
+      }
       return null;
     }
 
     try {
-      BufferedImage bi = ImageIO.read(stream);
-      PImage outgoing = new PImage(bi.getWidth(), bi.getHeight());
+      // Checking the alpha is handled in there. Was gonna call getType()
+      // on the image to see if RGB or ARGB, but it's not actually useful,
+      // since gif images will come through as TYPE_BYTE_INDEXED, so the
+      // pixels are checked whenever the ColorModel has alpha.
+      PImage outgoing = PImage.loadImageIO(stream, targetWidth, targetHeight);
+      if (outgoing == null) {
+        if (report) {
+          System.err.println("The file " + filename +
+                             " contains bad image data, or may not be an image.");
+        }
+        return null;
+      }
       outgoing.parent = this;
-
-      bi.getRGB(0, 0, outgoing.width, outgoing.height,
-                outgoing.pixels, 0, outgoing.width);
-
-      // check the alpha for this image
-      // was gonna call getType() on the image to see if RGB or ARGB,
-      // but it's not actually useful, since gif images will come through
-      // as TYPE_BYTE_INDEXED, which means it'll still have to check for
-      // the transparency. also, would have to iterate through all the other
-      // types and guess whether alpha was in there, so.. just gonna stick
-      // with the old method.
-      outgoing.checkAlpha();
-
-      stream.close();
-      // return the image
       return outgoing;
 
     } catch (Exception e) {
-      printStackTrace(e);
+      if (report) {
+        printStackTrace(e);
+      }
       return null;
+
+    } finally {
+      try {
+        stream.close();
+      } catch (IOException e) { }
     }
   }
 
@@ -6237,6 +6561,11 @@ public class PApplet implements PConstants {
    * dictionary file can only be tab separated values (.tsv) and its extension
    * will be ignored. This option was added in Processing 2.0.2.
    *
+   * Use "threads=N" to parse a large CSV or TSV file using N threads. This
+   * only applies to files on the local disk, since they're read in pieces.
+   * Tables saved in the "columnar" format are memory-mapped when they're
+   * on the local disk, rather than read into memory.
+   *
    * @param options may contain "header", "tsv", "csv", or "bin" separated by commas
    */
   public Table loadTable(String filename, String options) {
@@ -6244,13 +6573,35 @@ public class PApplet implements PConstants {
       String optionStr = Table.extensionOptions(true, filename, options);
       String[] optionList = trim(split(optionStr, ','));
 
+      // Multi-threaded loading needs a File so that it can be split up,
+      // and columnar .bin files are memory-mapped straight from the File.
+      File file = null;
+      for (String opt : optionList) {
+        if (opt.startsWith("threads=") ||
+            opt.equals("bin") || opt.equals("columnar")) {
+          file = dataFile(filename);
+          if (file == null || !file.exists()) {
+            file = sketchFile(filename);
+          }
+          if (!file.isFile()) {
+            file = null;
+          }
+        }
+      }
+
       Table dictionary = null;
       for (String opt : optionList) {
         if (opt.startsWith("dictionary=")) {
           dictionary = loadTable(opt.substring(opt.indexOf('=') + 1), "tsv");
+          if (file != null) {
+            return dictionary.typedParse(file, optionStr);
+          }
           return dictionary.typedParse(createInput(filename), optionStr);
         }
       }
+      if (file != null) {
+        return new Table(file, optionStr);
+      }
       InputStream input = createInput(filename);
       if (input == null) {
         System.err.println(filename + " does not exist or could not be read");
@@ -7194,23 +7545,7 @@ public class PApplet implements PConstants {
         return null;
       }
       if (file.exists()) {
-        try {
-          // handle case sensitivity check
-          String filePath = file.getCanonicalPath();
-          String filenameActual = new File(filePath).getName();
-          // make sure there isn't a subfolder prepended to the name
-          String filenameShort = new File(filename).getName();
-          // if the actual filename is the same, but capitalized
-          // differently, warn the user.
-          //if (filenameActual.equalsIgnoreCase(filenameShort) &&
-          //!filenameActual.equals(filenameShort)) {
-          if (!filenameActual.equals(filenameShort)) {
-            throw new RuntimeException("This file is named " +
-                                       filenameActual + " not " +
-                                       filename + ". Rename the file " +
-                                       "or change your code.");
-          }
-        } catch (IOException e) { }
+        checkFilenameCase(file, filename);
       }
 
       // if this file is ok, may as well just load it
@@ -7282,6 +7617,68 @@ public class PApplet implements PConstants {
   }
 
 
+  static private void checkFilenameCase(File file, String filename) {
+    try {
+      // handle case sensitivity check
+      String filePath = file.getCanonicalPath();
+      String filenameActual = new File(filePath).getName();
+      // make sure there isn't a subfolder prepended to the name
+      String filenameShort = new File(filename).getName();
+      // if the actual filename is the same, but capitalized
+      // differently, warn the user.
+      //if (filenameActual.equalsIgnoreCase(filenameShort) &&
+      //!filenameActual.equals(filenameShort)) {
+      if (!filenameActual.equals(filenameShort)) {
+        throw new RuntimeException("This file is named " +
+                                   filenameActual + " not " +
+                                   filename + ". Rename the file " +
+                                   "or change your code.");
+      }
+    } catch (IOException e) { }
+  }
+
+
+  /**
+   * The file in the data or sketch folder that createInputRaw() would
+   * read for this name, or null if it's something else (a URL, a file
+   * that's only inside the exported jar, or one that doesn't exist), so
+   * that loadBytes() and loadStrings() can read local files directly.
+   */
+  protected File localFile(String filename) {
+    if (filename == null || filename.length() == 0 || sketchPath == null) {
+      return null;
+    }
+    if (filename.contains(":")) {
+      try {
+        new URL(filename);
+        return null;  // a URL, not a file
+      } catch (MalformedURLException e) {
+        // not a URL (could be a Windows path), that's fine
+      }
+    }
+    try {
+      File file = new File(dataPath(filename));
+      if (!file.exists()) {
+        file = sketchFile(filename);
+      }
+      if (file.isFile()) {
+        checkFilenameCase(file, filename);
+        return file;
+      }
+    } catch (SecurityException se) { }
+    return null;
+  }
+
+
+  /**
+   * True for the names that createInput() decompresses as it reads them.
+   */
+  static protected boolean isCompressed(String filename) {
+    String lower = filename.toLowerCase();
+    return lower.endsWith(".gz") || lower.endsWith(".svgz");
+  }
+
+
   /**
    * @nowebref
    */
@@ -7331,11 +7728,14 @@ public class PApplet implements PConstants {
    *
    */
   public byte[] loadBytes(String filename) {
-    String lower = filename.toLowerCase();
+    File file = localFile(filename);
+    if (file != null) {
+      return loadBytes(file);
+    }
     // If it's not a .gz file, then we might be able to uncompress it into
     // a fixed-size buffer, which should help speed because we won't have to
     // reallocate and resize the target array each time it gets full.
-    if (!lower.endsWith(".gz")) {
+    if (!isCompressed(filename)) {
       // If this looks like a URL, try to load it that way. Use the fact that
       // URL connections may have a content length header to size the array.
       if (filename.contains(":")) {  // at least smells like URL
@@ -7456,7 +7856,7 @@ public class PApplet implements PConstants {
       InputStream input;
       int length;
 
-      if (file.getName().toLowerCase().endsWith(".gz")) {
+      if (isCompressed(file.getName())) {
         RandomAccessFile raf = new RandomAccessFile(file, "r");
         raf.seek(raf.length() - 4);
         int b4 = raf.read();
@@ -7470,15 +7870,16 @@ public class PApplet implements PConstants {
         input = new BufferedInputStream(new GZIPInputStream(new FileInputStream(file)));
 
       } else {
-        long len = file.length();
-        // http://stackoverflow.com/a/3039805
-        int maxArraySize = Integer.MAX_VALUE - 5;
-        if (len > maxArraySize) {
-          System.err.println("Cannot use loadBytes() on a file larger than " + maxArraySize);
+        ByteBuffer contents = readBuffer(file);
+        if (contents == null) {
           return null;
         }
-        length = (int) len;
-        input = new BufferedInputStream(new FileInputStream(file));
+        if (contents.hasArray() && contents.remaining() == contents.array().length) {
+          return contents.array();
+        }
+        byte[] buffer = new byte[contents.remaining()];
+        contents.get(buffer);
+        return buffer;
       }
       byte[] buffer = new byte[length];
       int count;
@@ -7497,6 +7898,76 @@ public class PApplet implements PConstants {
   }
 
 
+  // files at least this large are memory-mapped by readBuffer()
+  static final int MAP_MINIMUM = 1 << 20;
+
+
+  /**
+   * Read an entire (uncompressed) file. Large files are memory-mapped,
+   * so the bytes are only copied once, straight from the page cache to
+   * wherever they're going. Smaller ones are read into an array of
+   * exactly the right size, since mapping has its own overhead. Returns
+   * null (after printing a message) if the file is too large for an array.
+   */
+  static private ByteBuffer readBuffer(File file) throws IOException {
+    long len = file.length();
+    // http://stackoverflow.com/a/3039805
+    int maxArraySize = Integer.MAX_VALUE - 5;
+    if (len > maxArraySize) {
+      System.err.println("Cannot load a file larger than " + maxArraySize);
+      return null;
+    }
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      FileChannel channel = raf.getChannel();
+      // Windows won't let a file be deleted or overwritten while it's mapped,
+      // and the mapping stays until garbage collection, so only read there.
+      if (len >= MAP_MINIMUM && platform != WINDOWS) {
+        return channel.map(FileChannel.MapMode.READ_ONLY, 0, len);
+      }
+      byte[] buffer = new byte[(int) len];
+      int offset = 0;
+      int count;
+      while (offset < buffer.length &&
+             (count = raf.read(buffer, offset, buffer.length - offset)) > 0) {
+        offset += count;
+      }
+      return ByteBuffer.wrap(buffer, 0, offset);
+    }
+  }
+
+
+  /**
+   * Split text into lines the same way as BufferedReader.readLine(): at
+   * \n, \r, or \r\n, with no extra empty line for a final line break.
+   */
+  static private String[] splitLines(char[] chars, int offset, int length) {
+    String[] lines = new String[100];
+    int lineCount = 0;
+    int stop = offset + length;
+    int start = offset;
+    for (int i = offset; i < stop; i++) {
+      char c = chars[i];
+      if (c == '\n' || c == '\r') {
+        if (lineCount == lines.length) {
+          lines = Arrays.copyOf(lines, lineCount << 1);
+        }
+        lines[lineCount++] = new String(chars, start, i - start);
+        if (c == '\r' && i + 1 < stop && chars[i + 1] == '\n') {
+          i++;
+        }
+        start = i + 1;
+      }
+    }
+    if (start < stop) {
+      if (lineCount == lines.length) {
+        lines = Arrays.copyOf(lines, lineCount + 1);
+      }
+      lines[lineCount++] = new String(chars, start, stop - start);
+    }
+    return (lineCount == lines.length) ? lines : Arrays.copyOf(lines, lineCount);
+  }
+
+
   /**
    * @nowebref
    */
@@ -7506,6 +7977,26 @@ public class PApplet implements PConstants {
       return null;
     }
 
+    if (!isCompressed(file.getName())) {
+      // decode the whole file at once, and take the lines from the chars
+      try {
+        ByteBuffer contents = readBuffer(file);
+        if (contents == null) {
+          return null;
+        }
+        CharBuffer text = StandardCharsets.UTF_8.decode(contents);
+        // skip the Unicode BOM, as createReader() does
+        if (text.hasRemaining() && text.get(text.position()) == '\uFEFF') {
+          text.get();
+        }
+        return splitLines(text.array(), text.arrayOffset() + text.position(),
+                          text.remaining());
+      } catch (IOException e) {
+        e.printStackTrace();
+        return null;
+      }
+    }
+
     InputStream is = createInput(file);
     if (is != null) {
       String[] outgoing = loadStrings(is);
@@ -7547,7 +8038,8 @@ public class PApplet implements PConstants {
    * ( end auto-generated )
    *
    * <h3>Advanced</h3>
-   * Load data from a file and shove it into a String array.
+   * Load data from a file and shove it into a String array. A Unicode
+   * byte order mark at the start of the file is skipped.
    * <p>
    * Exceptions are handled internally, when an error, occurs, an
    * exception is printed to the console and 'null' is returned,
@@ -7565,6 +8057,11 @@ public class PApplet implements PConstants {
    * @see PApplet#saveBytes(String, byte[])
    */
   public String[] loadStrings(String filename) {
+    File file = localFile(filename);
+    if (file != null) {
+      return loadStrings(file);
+    }
+
     InputStream is = createInput(filename);
     if (is != null) {
       String[] strArr = loadStrings(is);
@@ -7583,18 +8080,76 @@ public class PApplet implements PConstants {
     return null;
   }
 
+  /**
+   * Read the lines of a file one at a time, for files too large to load
+   * all at once with loadStrings(). Each time it's used in a for loop, the
+   * file is opened again and read from the start, and it's closed when the
+   * last line has been read.
+   * <pre>
+   * for (String line : loadLines("huge.csv")) {
+   *   ...
+   * }
+   * </pre>
+   *
+   * @nowebref
+   * @param filename name of the file or url to load
+   * @see PApplet#loadStrings(String)
+   */
+  public Iterable<String> loadLines(final String filename) {
+    return new Iterable<String>() {
+      public Iterator<String> iterator() {
+        final BufferedReader reader = createReader(filename);
+
+        return new Iterator<String>() {
+          String line = readLine();
+
+          private String readLine() {
+            if (reader == null) {
+              return null;
+            }
+            try {
+              String next = reader.readLine();
+              if (next == null) {
+                reader.close();
+              }
+              return next;
+            } catch (IOException e) {
+              printStackTrace(e);
+              try {
+                reader.close();
+              } catch (IOException e2) { }
+              return null;
+            }
+          }
+
+          public boolean hasNext() {
+            return line != null;
+          }
+
+          public String next() {
+            if (line == null) {
+              throw new NoSuchElementException();
+            }
+            String outgoing = line;
+            line = readLine();
+            return outgoing;
+          }
+
+          public void remove() {
+            throw new UnsupportedOperationException();
+          }
+        };
+      }
+    };
+  }
+
+
   /**
    * @nowebref
    */
   static public String[] loadStrings(InputStream input) {
-    try {
-      BufferedReader reader =
-        new BufferedReader(new InputStreamReader(input, "UTF-8"));
-      return loadStrings(reader);
-    } catch (IOException e) {
-      e.printStackTrace();
-    }
-    return null;
+    // createReader() drops the Unicode BOM, same as loadLines()
+    return loadStrings(createReader(input));
   }
 
 
@@ -9148,17 +9703,178 @@ public class PApplet implements PConstants {
    * @see PApplet#trim(String)
    */
   static public String[] splitTokens(String value, String delim) {
-    StringTokenizer toker = new StringTokenizer(value, delim);
-    String[] pieces = new String[toker.countTokens()];
-
+    long low = delimMask(delim, 0);
+    long high = delimMask(delim, 64);
+    int count = 0;
     int index = 0;
-    while (toker.hasMoreTokens()) {
-      pieces[index++] = toker.nextToken();
+    while ((index = tokenStart(value, delim, low, high, index)) != -1) {
+      index = tokenStop(value, delim, low, high, index);
+      count++;
+    }
+    String[] pieces = new String[count];
+    count = 0;
+    index = 0;
+    while ((index = tokenStart(value, delim, low, high, index)) != -1) {
+      int stop = tokenStop(value, delim, low, high, index);
+      pieces[count++] = value.substring(index, stop);
+      index = stop;
     }
     return pieces;
   }
 
 
+  // Bit n of the result is set when delim contains char n, for chars below
+  // 64 (a second mask covers 64 to 127), so the common delimiters can be
+  // checked without searching through delim for every char.
+  static private long delimMask(String delim, int base) {
+    long mask = 0;
+    for (int i = 0; i < delim.length(); i++) {
+      int c = delim.charAt(i) - base;
+      if (c >= 0 && c < 64) {
+        mask |= 1L << c;
+      }
+    }
+    return mask;
+  }
+
+
+  static private boolean isDelim(char c, String delim, long low, long high) {
+    if (c < 64) {
+      return ((low >>> c) & 1) != 0;
+    } else if (c < 128) {
+      return ((high >>> (c - 64)) & 1) != 0;
+    }
+    return delim.indexOf(c) != -1;
+  }
+
+
+  // index of the next char at or after 'index' that's not in delim, or -1
+  static private int tokenStart(CharSequence value, String delim,
+                                long low, long high, int index) {
+    int length = value.length();
+    while (index < length) {
+      if (!isDelim(value.charAt(index), delim, low, high)) {
+        return index;
+      }
+      index++;
+    }
+    return -1;
+  }
+
+
+  // index of the next char at or after 'index' that's in delim (or the end)
+  static private int tokenStop(CharSequence value, String delim,
+                               long low, long high, int index) {
+    int length = value.length();
+    while (index < length && !isDelim(value.charAt(index), delim, low, high)) {
+      index++;
+    }
+    return index;
+  }
+
+
+  /**
+   * Same as splitTokens(value, delim), but the pieces are placed in a
+   * StringList that can be re-used from one call to the next, so that
+   * splitting many lines doesn't need a new array for each. Anything
+   * already in the list is removed first. If the list is null, a new one
+   * is created. Either way, the list is returned.
+   *
+   * @nowebref
+   */
+  static public StringList splitTokens(String value, String delim,
+                                       StringList outgoing) {
+    long low = delimMask(delim, 0);
+    long high = delimMask(delim, 64);
+    if (outgoing == null) {
+      outgoing = new StringList();
+    } else {
+      outgoing.clear();
+    }
+    int index = 0;
+    while ((index = tokenStart(value, delim, low, high, index)) != -1) {
+      int stop = tokenStop(value, delim, low, high, index);
+      outgoing.append(value.substring(index, stop));
+      index = stop;
+    }
+    return outgoing;
+  }
+
+
+  /**
+   * Find the tokens in a String (or any other CharSequence) without
+   * creating a String for each. The start and stop index of each token
+   * are added to the IntList as a pair, so token n goes from
+   * offsets.get(n*2) up to (but not including) offsets.get(n*2 + 1).
+   * Only the tokens that are actually needed can then be converted or
+   * parsed. Anything already in the list is removed first. If the list is
+   * null, a new one is created. Either way, the list is returned.
+   *
+   * @nowebref
+   */
+  static public IntList splitTokenOffsets(CharSequence value, String delim,
+                                          IntList outgoing) {
+    long low = delimMask(delim, 0);
+    long high = delimMask(delim, 64);
+    if (outgoing == null) {
+      outgoing = new IntList();
+    } else {
+      outgoing.clear();
+    }
+    int index = 0;
+    while ((index = tokenStart(value, delim, low, high, index)) != -1) {
+      int stop = tokenStop(value, delim, low, high, index);
+      outgoing.append(index);
+      outgoing.append(stop);
+      index = stop;
+    }
+    return outgoing;
+  }
+
+
+  /**
+   * Go through the tokens of a String one at a time, as they're needed,
+   * instead of creating an array with all of them. Stopping early (with
+   * break) means the rest of the String is never looked at.
+   * <pre>
+   * for (String word : tokens(line, " ,")) {
+   *   ...
+   * }
+   * </pre>
+   *
+   * @nowebref
+   */
+  static public Iterable<String> tokens(final String value, final String delim) {
+    final long low = delimMask(delim, 0);
+    final long high = delimMask(delim, 64);
+    return new Iterable<String>() {
+      public Iterator<String> iterator() {
+        return new Iterator<String>() {
+          int index = tokenStart(value, delim, low, high, 0);
+
+          public boolean hasNext() {
+            return index != -1;
+          }
+
+          public String next() {
+            if (index == -1) {
+              throw new NoSuchElementException();
+            }
+            int stop = tokenStop(value, delim, low, high, index);
+            String outgoing = value.substring(index, stop);
+            index = tokenStart(value, delim, low, high, stop);
+            return outgoing;
+          }
+
+          public void remove() {
+            throw new UnsupportedOperationException();
+          }
+        };
+      }
+    };
+  }
+
+
   /**
    * ( begin auto-generated from split.xml )
    *
@@ -9199,10 +9915,11 @@ public class PApplet implements PConstants {
     if (value == null) return null;
     //return split(what, String.valueOf(delim));  // huh
 
-    char[] chars = value.toCharArray();
+    // count with indexOf() instead of copying the chars with toCharArray()
     int splitCount = 0; //1;
-    for (int i = 0; i < chars.length; i++) {
-      if (chars[i] == delim) splitCount++;
+    int index = -1;
+    while ((index = value.indexOf(delim, index + 1)) != -1) {
+      splitCount++;
     }
     // make sure that there is something in the input string
     //if (chars.length > 0) {
@@ -9219,36 +9936,97 @@ public class PApplet implements PConstants {
     String[] splits = new String[splitCount + 1];
     int splitIndex = 0;
     int startIndex = 0;
-    for (int i = 0; i < chars.length; i++) {
-      if (chars[i] == delim) {
-        splits[splitIndex++] =
-          new String(chars, startIndex, i-startIndex);
-        startIndex = i + 1;
-      }
+    while ((index = value.indexOf(delim, startIndex)) != -1) {
+      splits[splitIndex++] = value.substring(startIndex, index);
+      startIndex = index + 1;
     }
-    //if (startIndex != chars.length) {
-      splits[splitIndex] =
-        new String(chars, startIndex, chars.length-startIndex);
-    //}
+    splits[splitIndex] = value.substring(startIndex);
     return splits;
   }
 
 
-  static public String[] split(String value, String delim) {
-    List<String> items = new ArrayList<>();
+  /**
+   * Same as split(value, delim), but the pieces are placed in a StringList
+   * that can be re-used from one call to the next. Anything already in the
+   * list is removed first. If the list is null, a new one is created.
+   * Either way, the list is returned.
+   *
+   * @nowebref
+   */
+  static public StringList split(String value, char delim, StringList outgoing) {
+    if (outgoing == null) {
+      outgoing = new StringList();
+    } else {
+      outgoing.clear();
+    }
+    int startIndex = 0;
     int index;
+    while ((index = value.indexOf(delim, startIndex)) != -1) {
+      outgoing.append(value.substring(startIndex, index));
+      startIndex = index + 1;
+    }
+    outgoing.append(value.substring(startIndex));
+    return outgoing;
+  }
+
+
+  /**
+   * @nowebref
+   */
+  static public StringList split(String value, String delim, StringList outgoing) {
+    if (outgoing == null) {
+      outgoing = new StringList();
+    } else {
+      outgoing.clear();
+    }
     int offset = 0;
+    int index;
     while ((index = value.indexOf(delim, offset)) != -1) {
-      items.add(value.substring(offset, index));
+      outgoing.append(value.substring(offset, index));
       offset = index + delim.length();
     }
-    items.add(value.substring(offset));
-    String[] outgoing = new String[items.size()];
-    items.toArray(outgoing);
+    outgoing.append(value.substring(offset));
     return outgoing;
   }
 
 
+  /**
+   * Find the pieces of a String (or any other CharSequence) separated by
+   * delim, without creating a String for each. The start and stop index
+   * of each piece are added to the IntList as a pair, the same way as
+   * splitTokenOffsets(). Anything already in the list is removed first.
+   * If the list is null, a new one is created. Either way, the list is
+   * returned.
+   *
+   * @nowebref
+   */
+  static public IntList splitOffsets(CharSequence value, char delim,
+                                     IntList outgoing) {
+    if (outgoing == null) {
+      outgoing = new IntList();
+    } else {
+      outgoing.clear();
+    }
+    int length = value.length();
+    int startIndex = 0;
+    for (int i = 0; i < length; i++) {
+      if (value.charAt(i) == delim) {
+        outgoing.append(startIndex);
+        outgoing.append(i);
+        startIndex = i + 1;
+      }
+    }
+    outgoing.append(startIndex);
+    outgoing.append(length);
+    return outgoing;
+  }
+
+
+  static public String[] split(String value, String delim) {
+    return split(value, delim, (StringList) null).array();
+  }
+
+
   static protected LinkedHashMap<String, Pattern> matchPatterns;
 
   static Pattern matchPattern(String regexp) {
@@ -15804,7 +16582,10 @@ public class PApplet implements PConstants {
    * ERODE - reduces the light areas with the amount defined by the level
    * parameter<br />
    * <br />
-   * DILATE - increases the light areas with the amount defined by the level parameter
+   * DILATE - increases the light areas with the amount defined by the level parameter<br />
+   * <br />
+   * FAST_BLUR - a blur that looks much like BLUR, but takes the same amount
+   * of time no matter how large the level parameter is
    *
    * ( end auto-generated )
    *
@@ -15819,6 +16600,8 @@ public class PApplet implements PConstants {
    * <LI>filter(THRESHOLD) converts the image to black and white.
    * <LI>filter(DILATE) grow white/light areas
    * <LI>filter(ERODE) shrink white/light areas
+   * <LI>filter(FAST_BLUR) a box blur repeated several times, see
+   * PImage.setFastBlurQuality()
    * </UL>
    * Luminance conversion code contributed by
    * <A HREF="http://www.toxi.co.uk">toxi</A>
@@ -15829,7 +16612,7 @@ public class PApplet implements PConstants {
    * @webref image:pixels
    * @brief Converts the image to grayscale or black and white
    * @usage web_application
-   * @param kind Either THRESHOLD, GRAY, OPAQUE, INVERT, POSTERIZE, BLUR, ERODE, or DILATE
+   * @param kind Either THRESHOLD, GRAY, OPAQUE, INVERT, POSTERIZE, BLUR, ERODE, DILATE, or FAST_BLUR
    * @param param unique for each, see above
    */
   public void filter(int kind, float param) {
@@ -0,0 +1,178 @@
+package processing.core;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * A public method on an object, found by name (like the draw(), pre(), or
+ * clientEvent() methods that a sketch or library may or may not have) and
+ * called without going through Method.invoke(). The method is looked up
+ * once per class and turned into a MethodHandle that's bound to the object,
+ * so each call is a direct call: no Object[] for the arguments, and no
+ * InvocationTargetException wrapped around whatever the method throws.
+ * That includes Errors, which Method.invoke() used to wrap, so callers
+ * that report what the method throws should catch Throwable.
+ * <pre>
+ * PCallback clientEvent = PCallback.find(parent, "clientEvent", Client.class);
+ * ...
+ * if (clientEvent != null) {
+ *   clientEvent.call(this);
+ * }
+ * </pre>
+ *
+ * @nowebref
+ */
+public class PCallback {
+  /** handles by method name and parameter types, for each class */
+  static private final ClassValue<ConcurrentHashMap<String, MethodHandle>> handles =
+    new ClassValue<ConcurrentHashMap<String, MethodHandle>>() {
+      @Override
+      protected ConcurrentHashMap<String, MethodHandle> computeValue(Class<?> type) {
+        return new ConcurrentHashMap<>();
+      }
+    };
+
+  // stands in for a method that's been looked up but doesn't exist
+  static private final MethodHandle MISSING =
+    MethodHandles.constant(Object.class, null);
+
+  protected Object target;
+  protected String name;
+  protected int count;
+  protected MethodHandle handle;
+
+
+  protected PCallback(Object target, String name, int count, MethodHandle handle) {
+    this.target = target;
+    this.name = name;
+    this.count = count;
+    this.handle = handle;
+  }
+
+
+  /**
+   * Find the public method 'name' that takes the specified parameters.
+   * Returns null if there isn't one.
+   */
+  static public PCallback find(Object target, String name, Class<?>... params) {
+    Class<?> type = target.getClass();
+    StringBuilder key = new StringBuilder(name);
+    for (Class<?> param : params) {
+      key.append(',').append(param.getName());
+    }
+    ConcurrentHashMap<String, MethodHandle> found = handles.get(type);
+    MethodHandle unbound = found.get(key.toString());
+    if (unbound == null) {
+      unbound = lookup(type, name, params);
+      found.put(key.toString(), unbound);
+    }
+    if (unbound == MISSING) {
+      return null;
+    }
+    // (Object, Object...) -> void, so that calls don't depend on the types
+    MethodHandle bound = unbound.bindTo(target);
+    return new PCallback(target, name, params.length,
+                         bound.asType(MethodType.genericMethodType(params.length).changeReturnType(void.class)));
+  }
+
+
+  static private MethodHandle lookup(Class<?> type, String name, Class<?>[] params) {
+    Method method;
+    try {
+      method = type.getMethod(name, params);
+    } catch (NoSuchMethodException e) {
+      return MISSING;
+    }
+    try {
+      // public methods of classes that aren't public themselves
+      // (like a library's helper classes) need this to be called
+      method.setAccessible(true);
+    } catch (RuntimeException e) {
+      // fine, unreflect() will say if it's actually a problem
+    }
+    try {
+      return MethodHandles.lookup().unreflect(method);
+    } catch (IllegalAccessException e) {
+      throw new RuntimeException("Could not access " + name + "() in " + type.getName(), e);
+    }
+  }
+
+
+  /** The object whose method is being called. */
+  public Object getTarget() {
+    return target;
+  }
+
+
+  public String getName() {
+    return name;
+  }
+
+
+  /** The number of parameters the method takes. */
+  public int getParameterCount() {
+    return count;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Call a method that takes no parameters. Anything it throws is passed
+   * along as-is.
+   */
+  public void call() throws Exception {
+    try {
+      handle.invokeExact();
+    } catch (Exception | Error e) {
+      throw e;
+    } catch (Throwable t) {
+      throw new RuntimeException(t);
+    }
+  }
+
+
+  public void call(Object arg) throws Exception {
+    try {
+      handle.invokeExact(arg);
+    } catch (Exception | Error e) {
+      throw e;
+    } catch (Throwable t) {
+      throw new RuntimeException(t);
+    }
+  }
+
+
+  public void call(Object arg1, Object arg2) throws Exception {
+    try {
+      handle.invokeExact(arg1, arg2);
+    } catch (Exception | Error e) {
+      throw e;
+    } catch (Throwable t) {
+      throw new RuntimeException(t);
+    }
+  }
+
+
+  /** Call with any number of parameters. */
+  public void call(Object[] args) throws Exception {
+    switch (args.length) {
+      case 0: call(); break;
+      case 1: call(args[0]); break;
+      case 2: call(args[0], args[1]); break;
+      default:
+        try {
+          handle.invokeWithArguments(args);
+        } catch (Exception | Error e) {
+          throw e;
+        } catch (Throwable t) {
+          throw new RuntimeException(t);
+        }
+    }
+  }
+}
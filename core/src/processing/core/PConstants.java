@@ -249,6 +249,16 @@ public interface PConstants {
   static final int THRESHOLD = 16;
   static final int ERODE     = 17;
   static final int DILATE    = 18;
+  static final int FAST_BLUR = 19;
+
+
+  // resize filters, see PImage.resize(int, int, int)
+
+  static final int NEAREST  = 20;
+  static final int BILINEAR = 21;
+  static final int BICUBIC  = 22;
+  static final int LANCZOS  = 23;
+  //static final int BOX    = 41;  // shared with shape primitive
 
 
   // blend mode keyword definitions
@@ -523,5 +533,14 @@ public interface PConstants {
   static final int DISABLE_ASYNC_SAVEFRAME    =  12;
   static final int ENABLE_ASYNC_SAVEFRAME     = -12;
 
-  static final int HINT_COUNT                 =  13;
+  static final int ENABLE_JAVA_TESSELLATOR    =  13;
+  static final int DISABLE_JAVA_TESSELLATOR   = -13;
+
+  static final int ENABLE_FAST_DEPTH_SORT     =  14;
+  static final int DISABLE_FAST_DEPTH_SORT    = -14;
+
+  static final int ENABLE_GEOMETRY_CACHE      =  15;
+  static final int DISABLE_GEOMETRY_CACHE     = -15;
+
+  static final int HINT_COUNT                 =  16;
 }
@@ -1149,6 +1149,26 @@ public class PGraphics extends PImage implements PConstants {
    * is written to the drive. This was the default behavior in 3.0b7 and before.
    * To enable, call hint(ENABLE_ASYNC_SAVEFRAME).
    * <br/> <br/>
+   * hint(ENABLE_JAVA_TESSELLATOR) - P2D/P3D only - fill polygons with a
+   * triangulator written in Java instead of the GLU tessellator. It adds
+   * each vertex once and shares it between triangles, and is faster with
+   * text and with large outlines such as maps. Shapes whose edges cross
+   * still go through GLU. Undo with hint(DISABLE_JAVA_TESSELLATOR).
+   * <br/> <br/>
+   * hint(ENABLE_FAST_DEPTH_SORT) - P3D only - depth sort the triangles by
+   * the depth of their centers, which takes about the same time for each
+   * triangle however many there are, and then fix the order of the ones
+   * next to each other that overlap on the screen. Meant for scenes with
+   * many thousands of translucent triangles, where ENABLE_DEPTH_SORT is too
+   * slow. Undo with hint(DISABLE_FAST_DEPTH_SORT).
+   * <br/> <br/>
+   * hint(ENABLE_GEOMETRY_CACHE) - P2D/P3D only - keep the triangles made
+   * for each shape and use them again when the same shape is drawn with the
+   * same style and transformation in the next frame, instead of
+   * tessellating it again. This helps sketches that draw mostly the same
+   * things every frame. Textured shapes are not cached. Undo with
+   * hint(DISABLE_GEOMETRY_CACHE).
+   * <br/> <br/>
    * As of release 0149, unhint() has been removed in favor of adding
    * additional ENABLE/DISABLE constants to reset the default behavior. This
    * prevents the double negatives, and also reinforces which hints can be
@@ -25,12 +25,25 @@
 package processing.core;
 
 import java.awt.*;
+import java.awt.color.ColorSpace;
 import java.awt.image.*;
 import java.io.*;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 
 import javax.imageio.*;
 import javax.imageio.metadata.*;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
 
 
 /**
@@ -165,6 +178,18 @@ public class PImage implements PConstants, Cloneable {
   private int[] blurKernel;
   private int[][] blurMult;
 
+  // threads used by filter(), see setParallelism()
+  static private int parallelism = Runtime.getRuntime().availableProcessors();
+  static private ForkJoinPool parallelPool;
+  /** Images with fewer pixels than this are filtered on a single thread */
+  static final int PARALLEL_MINIMUM = 1 << 16;
+
+  // number of box blurs used by FAST_BLUR, see setFastBlurQuality()
+  static private int fastBlurPasses = 3;
+
+  // deflate level for save() with .png, see setPNGCompression()
+  static private int pngCompression = 4;
+
   // colour component bitmasks (moved from PConstants in 2.0b7)
   public static final int ALPHA_MASK = 0xff000000;
   public static final int RED_MASK   = 0x00ff0000;
@@ -547,9 +572,31 @@ public class PImage implements PConstants, Cloneable {
    * @see PImage#get(int, int, int, int)
    */
   public void resize(int w, int h) {  // ignore
+    resize(w, h, BILINEAR);
+  }
+
+
+  /**
+   * Resize the image using a specific filter: NEAREST (fastest, blocky),
+   * BOX (averages the pixels that each new pixel covers), BILINEAR (the
+   * default used by resize(w, h)), BICUBIC (sharper), or LANCZOS (sharpest,
+   * but can add a slight halo around hard edges). The image is resampled
+   * horizontally and then vertically, with both passes split across threads
+   * for large images (see setParallelism).
+   *
+   * @nowebref
+   * @param w the resized image width, or 0 to keep the proportions
+   * @param h the resized image height, or 0 to keep the proportions
+   * @param filter NEAREST, BOX, BILINEAR, BICUBIC, or LANCZOS
+   */
+  public void resize(int w, int h, int filter) {
     if (w <= 0 && h <= 0) {
       throw new IllegalArgumentException("width or height must be > 0 for resize");
     }
+    if (filter != NEAREST && filter != BOX && filter != BILINEAR &&
+        filter != BICUBIC && filter != LANCZOS) {
+      throw new IllegalArgumentException("Use NEAREST, BOX, BILINEAR, BICUBIC, or LANCZOS with resize()");
+    }
 
     if (w == 0) {  // Use height to determine relative size
       float diff = (float) h / (float) height;
@@ -559,15 +606,14 @@ public class PImage implements PConstants, Cloneable {
       h = (int) (height * diff);
     }
 
-    BufferedImage img =
-      shrinkImage((BufferedImage) getNative(), w*pixelDensity, h*pixelDensity);
-
-    PImage temp = new PImage(img);
-    this.pixelWidth = temp.width;
-    this.pixelHeight = temp.height;
+    loadPixels();
+    int[] resized = (filter == NEAREST) ?
+      resizeNearest(w*pixelDensity, h*pixelDensity) :
+      resample(w*pixelDensity, h*pixelDensity, filter);
 
-    // Get the resized pixel array
-    this.pixels = temp.pixels;
+    this.pixelWidth = w*pixelDensity;
+    this.pixelHeight = h*pixelDensity;
+    this.pixels = resized;
 
     this.width = pixelWidth / pixelDensity;
     this.height = pixelHeight / pixelDensity;
@@ -577,74 +623,258 @@ public class PImage implements PConstants, Cloneable {
   }
 
 
-  // Adapted from getFasterScaledInstance() method from page 111 of
-  // "Filthy Rich Clients" by Chet Haase and Romain Guy
-  // Additional modifications and simplifications have been added,
-  // plus a fix to deal with an infinite loop if images are expanded.
-  // http://code.google.com/p/processing/issues/detail?id=1463
-  static private BufferedImage shrinkImage(BufferedImage img,
-                                           int targetWidth, int targetHeight) {
-    int type = (img.getTransparency() == Transparency.OPAQUE) ?
-      BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
-    BufferedImage outgoing = img;
-    BufferedImage scratchImage = null;
-    Graphics2D g2 = null;
-    int prevW = outgoing.getWidth();
-    int prevH = outgoing.getHeight();
-    boolean isTranslucent = img.getTransparency() != Transparency.OPAQUE;
-
-    // Use multi-step technique: start with original size, then scale down in
-    // multiple passes with drawImage() until the target size is reached
-    int w = img.getWidth();
-    int h = img.getHeight();
-
-    do {
-      if (w > targetWidth) {
-        w /= 2;
-        // if this is the last step, do the exact size
-        if (w < targetWidth) {
-          w = targetWidth;
-        }
-      } else if (targetWidth >= w) {
-        w = targetWidth;
+  private int[] resizeNearest(final int targetWidth, final int targetHeight) {
+    final int[] target = new int[targetWidth * targetHeight];
+    final int opaque = (format == RGB) ? 0xff000000 : 0;
+    final int[] columns = new int[targetWidth];
+    for (int x = 0; x < targetWidth; x++) {
+      columns[x] = (int) (((long) x * 2 + 1) * pixelWidth / (targetWidth * 2));
+    }
+    runStrips(targetHeight, new Strip() {
+      public void run(int start, int stop) {
+        for (int y = start; y < stop; y++) {
+          int row = (int) (((long) y * 2 + 1) * pixelHeight / (targetHeight * 2)) * pixelWidth;
+          int index = y * targetWidth;
+          for (int x = 0; x < targetWidth; x++) {
+            target[index++] = pixels[row + columns[x]] | opaque;
+          }
+        }
       }
-      if (h > targetHeight) {
-        h /= 2;
-        if (h < targetHeight) {
-          h = targetHeight;
+    });
+    return target;
+  }
+
+
+  /**
+   * Weights for resampling 'length' pixels to 'target' pixels along one
+   * axis: the output pixel i uses 'counts[i]' inputs starting at
+   * 'starts[i]', with weights at weights[i * width]. When shrinking, the
+   * filter is widened so that every input pixel contributes.
+   */
+  static class ResizeAxis {
+    int[] starts;
+    int[] counts;
+    float[] weights;
+    int width;
+
+    ResizeAxis(int length, int target, int filter) {
+      double scale = (double) length / target;
+      double stretch = Math.max(scale, 1);
+      double support = resizeSupport(filter) * stretch;
+      width = (int) Math.ceil(support * 2) + 1;
+      starts = new int[target];
+      counts = new int[target];
+      weights = new float[target * width];
+
+      for (int i = 0; i < target; i++) {
+        double center = (i + 0.5) * scale - 0.5;
+        int left = Math.max(0, (int) Math.ceil(center - support));
+        int right = Math.min(length - 1, (int) Math.floor(center + support));
+        // filter pieces near the edge are dropped, and the rest renormalized
+        double sum = 0;
+        int count = 0;
+        for (int j = left; j <= right && count < width; j++) {
+          double weight = resizeKernel(filter, (j - center) / stretch);
+          weights[i * width + count++] = (float) weight;
+          sum += weight;
+        }
+        if (count == 0 || sum == 0) {
+          left = Math.min(length - 1, Math.max(0, (int) Math.round(center)));
+          weights[i * width] = 1;
+          count = 1;
+          sum = 1;
         }
-      } else if (targetHeight >= h) {
-        h = targetHeight;
+        for (int k = 0; k < count; k++) {
+          weights[i * width + k] /= sum;
+        }
+        starts[i] = left;
+        counts[i] = count;
       }
-      if (scratchImage == null || isTranslucent) {
-        // Use a single scratch buffer for all iterations and then copy
-        // to the final, correctly-sized image before returning
-        scratchImage = new BufferedImage(w, h, type);
-        g2 = scratchImage.createGraphics();
+    }
+  }
+
+
+  static private double resizeSupport(int filter) {
+    switch (filter) {
+      case BOX: return 0.5;
+      case BILINEAR: return 1;
+      case BICUBIC: return 2;
+      default: return 3;  // LANCZOS
+    }
+  }
+
+
+  static private double resizeKernel(int filter, double x) {
+    x = Math.abs(x);
+    switch (filter) {
+      case BOX:
+        return (x < 0.5) ? 1 : ((x == 0.5) ? 0.5 : 0);
+      case BILINEAR:
+        return (x < 1) ? 1 - x : 0;
+      case BICUBIC:
+        // Catmull-Rom spline (a = -0.5)
+        if (x < 1) return (1.5*x - 2.5)*x*x + 1;
+        if (x < 2) return ((-0.5*x + 2.5)*x - 4)*x + 2;
+        return 0;
+      default:  // LANCZOS, with three lobes
+        if (x == 0) return 1;
+        if (x >= 3) return 0;
+        double px = Math.PI * x;
+        return 3 * Math.sin(px) * Math.sin(px / 3) / (px * px);
+    }
+  }
+
+
+  // scratch space for the horizontal pass, kept between calls so that
+  // resizing a batch of images doesn't allocate a new one for each
+  static private final ThreadLocal<SoftReference<float[]>> resizeScratch =
+    new ThreadLocal<SoftReference<float[]>>();
+
+
+  static private float[] getResizeScratch(int length) {
+    SoftReference<float[]> ref = resizeScratch.get();
+    float[] scratch = (ref == null) ? null : ref.get();
+    if (scratch == null || scratch.length < length) {
+      scratch = new float[length];
+      resizeScratch.set(new SoftReference<float[]>(scratch));
+    }
+    return scratch;
+  }
+
+
+  /**
+   * Separable resampling: each row is resized horizontally into a float
+   * buffer, and then the columns of that are resized vertically. Colors
+   * are premultiplied by alpha along the way so that transparent pixels
+   * don't darken the edges of what's next to them.
+   */
+  private int[] resample(final int targetWidth, final int targetHeight,
+                         int filter) {
+    final int channels = (format == ARGB) ? 4 : ((format == ALPHA) ? 1 : 3);
+    final ResizeAxis horizontal = new ResizeAxis(pixelWidth, targetWidth, filter);
+    final ResizeAxis vertical = new ResizeAxis(pixelHeight, targetHeight, filter);
+    final float[] middle = getResizeScratch(targetWidth * pixelHeight * channels);
+    final int[] target = new int[targetWidth * targetHeight];
+
+    runStrips(pixelHeight, new Strip() {
+      public void run(int start, int stop) {
+        float[] row = new float[pixelWidth * channels];
+        for (int y = start; y < stop; y++) {
+          unpackResizeRow(y * pixelWidth, channels, row);
+          int offset = y * targetWidth * channels;
+          float[] weights = horizontal.weights;
+          for (int x = 0; x < targetWidth; x++) {
+            int i = horizontal.starts[x] * channels;
+            int w = x * horizontal.width;
+            int last = w + horizontal.counts[x];
+            // all channels at once, so each pixel is only visited once
+            if (channels == 1) {
+              float sum = 0;
+              for (; w < last; w++) {
+                sum += row[i++] * weights[w];
+              }
+              middle[offset++] = sum;
+            } else {
+              float r = 0, g = 0, b = 0, a = 0;
+              for (; w < last; w++) {
+                float weight = weights[w];
+                r += row[i] * weight;
+                g += row[i+1] * weight;
+                b += row[i+2] * weight;
+                if (channels == 4) {
+                  a += row[i+3] * weight;
+                }
+                i += channels;
+              }
+              middle[offset++] = r;
+              middle[offset++] = g;
+              middle[offset++] = b;
+              if (channels == 4) {
+                middle[offset++] = a;
+              }
+            }
+          }
+        }
+      }
+    });
+
+    runStrips(targetHeight, new Strip() {
+      public void run(int start, int stop) {
+        int rowLength = targetWidth * channels;
+        float[] row = new float[rowLength];
+        for (int y = start; y < stop; y++) {
+          Arrays.fill(row, 0);
+          int first = vertical.starts[y];
+          int count = vertical.counts[y];
+          int w = y * vertical.width;
+          for (int k = 0; k < count; k++) {
+            float weight = vertical.weights[w + k];
+            int offset = (first + k) * rowLength;
+            for (int i = 0; i < rowLength; i++) {
+              row[i] += middle[offset + i] * weight;
+            }
+          }
+          packResizeRow(row, channels, target, y * targetWidth);
+        }
+      }
+    });
+    return target;
+  }
+
+
+  private void unpackResizeRow(int index, int channels, float[] row) {
+    int offset = 0;
+    for (int x = 0; x < pixelWidth; x++) {
+      int argb = pixels[index++];
+      if (channels == 1) {
+        row[offset++] = argb & 0xff;
+      } else if (channels == 3) {
+        row[offset++] = (argb >> 16) & 0xff;
+        row[offset++] = (argb >> 8) & 0xff;
+        row[offset++] = argb & 0xff;
+      } else {
+        float alpha = (argb >>> 24) / 255f;
+        row[offset++] = ((argb >> 16) & 0xff) * alpha;
+        row[offset++] = ((argb >> 8) & 0xff) * alpha;
+        row[offset++] = (argb & 0xff) * alpha;
+        row[offset++] = argb >>> 24;
+      }
+    }
+  }
+
+
+  static private void packResizeRow(float[] row, int channels, int[] target, int index) {
+    int count = row.length / channels;
+    int offset = 0;
+    for (int x = 0; x < count; x++) {
+      if (channels == 1) {
+        target[index++] = clampByte(row[offset++]);
+      } else if (channels == 3) {
+        int r = clampByte(row[offset++]);
+        int g = clampByte(row[offset++]);
+        int b = clampByte(row[offset++]);
+        target[index++] = 0xff000000 | (r << 16) | (g << 8) | b;
+      } else {
+        float r = row[offset++];
+        float g = row[offset++];
+        float b = row[offset++];
+        float alpha = row[offset++];
+        int a = clampByte(alpha);
+        if (a == 0) {
+          target[index++] = 0;
+        } else {
+          float scale = 255f / alpha;
+          target[index++] = (a << 24) | (clampByte(r * scale) << 16) |
+            (clampByte(g * scale) << 8) | clampByte(b * scale);
+        }
       }
-      g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
-                          RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-      g2.drawImage(outgoing, 0, 0, w, h, 0, 0, prevW, prevH, null);
-      prevW = w;
-      prevH = h;
-      outgoing = scratchImage;
-    } while (w != targetWidth || h != targetHeight);
-
-    if (g2 != null) {
-      g2.dispose();
-    }
-
-    // If we used a scratch buffer that is larger than our target size,
-    // create an image of the right size and copy the results into it
-    if (targetWidth != outgoing.getWidth() ||
-        targetHeight != outgoing.getHeight()) {
-      scratchImage = new BufferedImage(targetWidth, targetHeight, type);
-      g2 = scratchImage.createGraphics();
-      g2.drawImage(outgoing, 0, 0, null);
-      g2.dispose();
-      outgoing = scratchImage;
     }
-    return outgoing;
+  }
+
+
+  static private int clampByte(float value) {
+    int v = (int) (value + 0.5f);
+    return (v < 0) ? 0 : ((v > 255) ? 255 : v);
   }
 
 
@@ -1001,6 +1231,116 @@ public class PImage implements PConstants, Cloneable {
   // IMAGE FILTERS
 
 
+  /**
+   * Set the number of threads used by filter(). The default is the number
+   * of processors, use 1 to do everything on the calling thread. The image
+   * is split into horizontal strips that are filtered at the same time, and
+   * the result is identical regardless of the number of threads.
+   *
+   * @nowebref
+   */
+  static public synchronized void setParallelism(int threads) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("The number of threads must be 1 or more");
+    }
+    if (threads != parallelism) {
+      parallelism = threads;
+      // Not shut down, in case another thread is still using it. The
+      // workers exit on their own once they've been idle for a bit.
+      parallelPool = null;
+    }
+  }
+
+
+  /**
+   * @nowebref
+   */
+  static public synchronized int getParallelism() {
+    return parallelism;
+  }
+
+
+  /**
+   * Set the number of box blurs used by filter(FAST_BLUR). 1 is a plain
+   * box blur (fastest, but with visible square edges), 2 is a triangle
+   * filter, and 3 (the default) is very close to the Gaussian used by
+   * filter(BLUR). Each pass takes the same amount of time regardless of
+   * the radius.
+   *
+   * @nowebref
+   * @param passes a number between 1 and 6
+   */
+  static public synchronized void setFastBlurQuality(int passes) {
+    if (passes < 1 || passes > 6) {
+      throw new IllegalArgumentException("The quality for FAST_BLUR must be between 1 and 6");
+    }
+    fastBlurPasses = passes;
+  }
+
+
+  static synchronized ForkJoinPool getParallelPool() {
+    if (parallelPool == null) {
+      parallelPool = new ForkJoinPool(parallelism);
+    }
+    return parallelPool;
+  }
+
+
+  /** Work on a range of rows (or pixels), see runStrips(). */
+  protected interface Strip {
+    public void run(int start, int stop);
+  }
+
+
+  /**
+   * Split 0..length into strips, run them on the shared pool, and return
+   * once they've all finished. Small images are done on this thread.
+   */
+  protected void runStrips(int length, final Strip strip) {
+    runStrips(length, pixels.length, strip);
+  }
+
+
+  /**
+   * Same as runStrips() above, for work that isn't tied to one image's
+   * pixels. 'size' is the total amount of work (e.g. the number of values
+   * being computed), which is what decides whether to use threads at all.
+   */
+  static protected void runStrips(int length, int size, final Strip strip) {
+    int threads = getParallelism();
+    if (threads < 2 || length < 2 || size < PARALLEL_MINIMUM) {
+      strip.run(0, length);
+      return;
+    }
+    ForkJoinPool pool = getParallelPool();
+    // more strips than threads, so one slow strip doesn't hold up the rest
+    int count = Math.min(length, threads * 4);
+    List<Future<?>> tasks = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      final int start = (int) ((long) length * i / count);
+      final int stop = (int) ((long) length * (i+1) / count);
+      tasks.add(pool.submit(new Runnable() {
+        public void run() {
+          strip.run(start, stop);
+        }
+      }));
+    }
+    try {
+      for (Future<?> task : tasks) {
+        task.get();
+      }
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new RuntimeException(cause);
+    }
+  }
+
+
   public void filter(int kind) {
     loadPixels();
 
@@ -1015,33 +1355,45 @@ public class PImage implements PConstants, Cloneable {
       case GRAY:
         if (format == ALPHA) {
           // for an alpha image, convert it to an opaque grayscale
-          for (int i = 0; i < pixels.length; i++) {
-            int col = 255 - pixels[i];
-            pixels[i] = 0xff000000 | (col << 16) | (col << 8) | col;
-          }
+          runStrips(pixels.length, new Strip() {
+            public void run(int start, int stop) {
+              for (int i = start; i < stop; i++) {
+                int col = 255 - pixels[i];
+                pixels[i] = 0xff000000 | (col << 16) | (col << 8) | col;
+              }
+            }
+          });
           format = RGB;
 
         } else {
           // Converts RGB image data into grayscale using
           // weighted RGB components, and keeps alpha channel intact.
           // [toxi 040115]
-          for (int i = 0; i < pixels.length; i++) {
-            int col = pixels[i];
-            // luminance = 0.3*red + 0.59*green + 0.11*blue
-            // 0.30 * 256 =  77
-            // 0.59 * 256 = 151
-            // 0.11 * 256 =  28
-            int lum = (77*(col>>16&0xff) + 151*(col>>8&0xff) + 28*(col&0xff))>>8;
-            pixels[i] = (col & ALPHA_MASK) | lum<<16 | lum<<8 | lum;
-          }
+          runStrips(pixels.length, new Strip() {
+            public void run(int start, int stop) {
+              for (int i = start; i < stop; i++) {
+                int col = pixels[i];
+                // luminance = 0.3*red + 0.59*green + 0.11*blue
+                // 0.30 * 256 =  77
+                // 0.59 * 256 = 151
+                // 0.11 * 256 =  28
+                int lum = (77*(col>>16&0xff) + 151*(col>>8&0xff) + 28*(col&0xff))>>8;
+                pixels[i] = (col & ALPHA_MASK) | lum<<16 | lum<<8 | lum;
+              }
+            }
+          });
         }
         break;
 
       case INVERT:
-        for (int i = 0; i < pixels.length; i++) {
-          //pixels[i] = 0xff000000 |
-          pixels[i] ^= 0xffffff;
-        }
+        runStrips(pixels.length, new Strip() {
+          public void run(int start, int stop) {
+            for (int i = start; i < stop; i++) {
+              //pixels[i] = 0xff000000 |
+              pixels[i] ^= 0xffffff;
+            }
+          }
+        });
         break;
 
       case POSTERIZE:
@@ -1049,9 +1401,13 @@ public class PImage implements PConstants, Cloneable {
         "instead of filter(POSTERIZE)");
 
       case OPAQUE:
-        for (int i = 0; i < pixels.length; i++) {
-          pixels[i] |= 0xff000000;
-        }
+        runStrips(pixels.length, new Strip() {
+          public void run(int start, int stop) {
+            for (int i = start; i < stop; i++) {
+              pixels[i] |= 0xff000000;
+            }
+          }
+        });
         format = RGB;
         break;
 
@@ -1067,6 +1423,10 @@ public class PImage implements PConstants, Cloneable {
       case DILATE:
         dilate();  // former dilate(false);
         break;
+
+      case FAST_BLUR:
+        fastBlur(1);
+        break;
     }
     updatePixels();  // mark as modified
   }
@@ -1097,7 +1457,10 @@ public class PImage implements PConstants, Cloneable {
    * ERODE - reduces the light areas with the amount defined by the level
    * parameter<br />
    * <br />
-   * DILATE - increases the light areas with the amount defined by the level parameter
+   * DILATE - increases the light areas with the amount defined by the level parameter<br />
+   * <br />
+   * FAST_BLUR - a blur that looks much like BLUR, but takes the same amount
+   * of time no matter how large the level parameter is
    *
    * ( end auto-generated )
    *
@@ -1112,6 +1475,8 @@ public class PImage implements PConstants, Cloneable {
    * <LI>filter(THRESHOLD) converts the image to black and white.
    * <LI>filter(DILATE) grow white/light areas
    * <LI>filter(ERODE) shrink white/light areas
+   * <LI>filter(FAST_BLUR) a box blur repeated several times, see
+   * setFastBlurQuality()
    * </UL>
    * Luminance conversion code contributed by
    * <A HREF="http://www.toxi.co.uk">toxi</A>
@@ -1122,7 +1487,7 @@ public class PImage implements PConstants, Cloneable {
    * @webref image:pixels
    * @brief Converts the image to grayscale or black and white
    * @usage web_application
-   * @param kind Either THRESHOLD, GRAY, OPAQUE, INVERT, POSTERIZE, BLUR, ERODE, or DILATE
+   * @param kind Either THRESHOLD, GRAY, OPAQUE, INVERT, POSTERIZE, BLUR, ERODE, DILATE, or FAST_BLUR
    * @param param unique for each, see above
    */
   public void filter(int kind, float param) {
@@ -1151,35 +1516,43 @@ public class PImage implements PConstants, Cloneable {
                                    "filter(OPAQUE, param)");
 
       case POSTERIZE:
-        int levels = (int)param;
+        final int levels = (int)param;
         if ((levels < 2) || (levels > 255)) {
           throw new RuntimeException("Levels must be between 2 and 255 for " +
                                      "filter(POSTERIZE, levels)");
         }
-        int levels1 = levels - 1;
-        for (int i = 0; i < pixels.length; i++) {
-          int rlevel = (pixels[i] >> 16) & 0xff;
-          int glevel = (pixels[i] >> 8) & 0xff;
-          int blevel = pixels[i] & 0xff;
-          rlevel = (((rlevel * levels) >> 8) * 255) / levels1;
-          glevel = (((glevel * levels) >> 8) * 255) / levels1;
-          blevel = (((blevel * levels) >> 8) * 255) / levels1;
-          pixels[i] = ((0xff000000 & pixels[i]) |
-                       (rlevel << 16) |
-                       (glevel << 8) |
-                       blevel);
-        }
+        final int levels1 = levels - 1;
+        runStrips(pixels.length, new Strip() {
+          public void run(int start, int stop) {
+            for (int i = start; i < stop; i++) {
+              int rlevel = (pixels[i] >> 16) & 0xff;
+              int glevel = (pixels[i] >> 8) & 0xff;
+              int blevel = pixels[i] & 0xff;
+              rlevel = (((rlevel * levels) >> 8) * 255) / levels1;
+              glevel = (((glevel * levels) >> 8) * 255) / levels1;
+              blevel = (((blevel * levels) >> 8) * 255) / levels1;
+              pixels[i] = ((0xff000000 & pixels[i]) |
+                           (rlevel << 16) |
+                           (glevel << 8) |
+                           blevel);
+            }
+          }
+        });
         break;
 
       case THRESHOLD:  // greater than or equal to the threshold
-        int thresh = (int) (param * 255);
-        for (int i = 0; i < pixels.length; i++) {
-          int max = Math.max((pixels[i] & RED_MASK) >> 16,
-                             Math.max((pixels[i] & GREEN_MASK) >> 8,
-                                      (pixels[i] & BLUE_MASK)));
-          pixels[i] = (pixels[i] & ALPHA_MASK) |
-            ((max < thresh) ? 0x000000 : 0xffffff);
-        }
+        final int thresh = (int) (param * 255);
+        runStrips(pixels.length, new Strip() {
+          public void run(int start, int stop) {
+            for (int i = start; i < stop; i++) {
+              int max = Math.max((pixels[i] & RED_MASK) >> 16,
+                                 Math.max((pixels[i] & GREEN_MASK) >> 8,
+                                          (pixels[i] & BLUE_MASK)));
+              pixels[i] = (pixels[i] & ALPHA_MASK) |
+                ((max < thresh) ? 0x000000 : 0xffffff);
+            }
+          }
+        });
         break;
 
         // [toxi20050728] added new filters
@@ -1189,6 +1562,10 @@ public class PImage implements PConstants, Cloneable {
         case DILATE:
           throw new RuntimeException("Use filter(DILATE) instead of " +
                                      "filter(DILATE, param)");
+
+      case FAST_BLUR:
+        fastBlur(param);
+        break;
     }
     updatePixels();  // mark as modified
   }
@@ -1237,14 +1614,30 @@ public class PImage implements PConstants, Cloneable {
 
 
   protected void blurAlpha(float r) {
-    int sum, cb;
-    int read, ri, ym, ymi, bk0;
-    int[] b2 = new int[pixels.length];
-    int yi = 0;
+    final int[] b2 = new int[pixels.length];
 
     buildBlurKernel(r);
 
-    for (int y = 0; y < pixelHeight; y++) {
+    // horizontal pass into b2, then vertical pass from b2 back into pixels
+    runStrips(pixelHeight, new Strip() {
+      public void run(int start, int stop) {
+        blurAlphaRows(b2, start, stop);
+      }
+    });
+    runStrips(pixelHeight, new Strip() {
+      public void run(int start, int stop) {
+        blurAlphaColumns(b2, start, stop);
+      }
+    });
+  }
+
+
+  private void blurAlphaRows(int[] b2, int start, int stop) {
+    int sum, cb;
+    int read, ri, bk0;
+    int yi = start * pixelWidth;
+
+    for (int y = start; y < stop; y++) {
       for (int x = 0; x < pixelWidth; x++) {
         //cb = cg = cr = sum = 0;
         cb = sum = 0;
@@ -1271,12 +1664,17 @@ public class PImage implements PConstants, Cloneable {
       }
       yi += pixelWidth;
     }
+  }
+
 
-    yi = 0;
-    ym = -blurRadius;
+  private void blurAlphaColumns(int[] b2, int start, int stop) {
+    int sum, cb;
+    int read, ri, ym, ymi, bk0;
+    int yi = start * pixelWidth;
+    ym = start - blurRadius;
     ymi = ym * pixelWidth;
 
-    for (int y = 0; y < pixelHeight; y++) {
+    for (int y = start; y < stop; y++) {
       for (int x = 0; x < pixelWidth; x++) {
         cb = sum = 0;
         if (ym < 0) {
@@ -1308,16 +1706,31 @@ public class PImage implements PConstants, Cloneable {
 
 
   protected void blurRGB(float r) {
-    int sum, cr, cg, cb; //, k;
-    int /*pixel,*/ read, ri, /*roff,*/ ym, ymi, /*riw,*/ bk0;
-    int[] r2 = new int[pixels.length];
-    int[] g2 = new int[pixels.length];
-    int[] b2 = new int[pixels.length];
-    int yi = 0;
+    final int[] r2 = new int[pixels.length];
+    final int[] g2 = new int[pixels.length];
+    final int[] b2 = new int[pixels.length];
 
     buildBlurKernel(r);
 
-    for (int y = 0; y < pixelHeight; y++) {
+    runStrips(pixelHeight, new Strip() {
+      public void run(int start, int stop) {
+        blurRGBRows(r2, g2, b2, start, stop);
+      }
+    });
+    runStrips(pixelHeight, new Strip() {
+      public void run(int start, int stop) {
+        blurRGBColumns(r2, g2, b2, start, stop);
+      }
+    });
+  }
+
+
+  private void blurRGBRows(int[] r2, int[] g2, int[] b2, int start, int stop) {
+    int sum, cr, cg, cb; //, k;
+    int /*pixel,*/ read, ri, /*roff,*/ bk0;
+    int yi = start * pixelWidth;
+
+    for (int y = start; y < stop; y++) {
       for (int x = 0; x < pixelWidth; x++) {
         cb = cg = cr = sum = 0;
         read = x - blurRadius;
@@ -1349,12 +1762,17 @@ public class PImage implements PConstants, Cloneable {
       }
       yi += pixelWidth;
     }
+  }
+
 
-    yi = 0;
-    ym = -blurRadius;
+  private void blurRGBColumns(int[] r2, int[] g2, int[] b2, int start, int stop) {
+    int sum, cr, cg, cb;
+    int read, ri, ym, ymi, /*riw,*/ bk0;
+    int yi = start * pixelWidth;
+    ym = start - blurRadius;
     ymi = ym * pixelWidth;
 
-    for (int y = 0; y < pixelHeight; y++) {
+    for (int y = start; y < stop; y++) {
       for (int x = 0; x < pixelWidth; x++) {
         cb = cg = cr = sum = 0;
         if (ym < 0) {
@@ -1390,18 +1808,34 @@ public class PImage implements PConstants, Cloneable {
 
 
   protected void blurARGB(float r) {
-    int sum, cr, cg, cb, ca;
-    int /*pixel,*/ read, ri, /*roff,*/ ym, ymi, /*riw,*/ bk0;
     int wh = pixels.length;
-    int[] r2 = new int[wh];
-    int[] g2 = new int[wh];
-    int[] b2 = new int[wh];
-    int[] a2 = new int[wh];
-    int yi = 0;
+    final int[] r2 = new int[wh];
+    final int[] g2 = new int[wh];
+    final int[] b2 = new int[wh];
+    final int[] a2 = new int[wh];
 
     buildBlurKernel(r);
 
-    for (int y = 0; y < pixelHeight; y++) {
+    runStrips(pixelHeight, new Strip() {
+      public void run(int start, int stop) {
+        blurARGBRows(r2, g2, b2, a2, start, stop);
+      }
+    });
+    runStrips(pixelHeight, new Strip() {
+      public void run(int start, int stop) {
+        blurARGBColumns(r2, g2, b2, a2, start, stop);
+      }
+    });
+  }
+
+
+  private void blurARGBRows(int[] r2, int[] g2, int[] b2, int[] a2,
+                            int start, int stop) {
+    int sum, cr, cg, cb, ca;
+    int /*pixel,*/ read, ri, /*roff,*/ bk0;
+    int yi = start * pixelWidth;
+
+    for (int y = start; y < stop; y++) {
       for (int x = 0; x < pixelWidth; x++) {
         cb = cg = cr = ca = sum = 0;
         read = x - blurRadius;
@@ -1435,12 +1869,18 @@ public class PImage implements PConstants, Cloneable {
       }
       yi += pixelWidth;
     }
+  }
+
 
-    yi = 0;
-    ym = -blurRadius;
+  private void blurARGBColumns(int[] r2, int[] g2, int[] b2, int[] a2,
+                               int start, int stop) {
+    int sum, cr, cg, cb, ca;
+    int read, ri, ym, ymi, /*riw,*/ bk0;
+    int yi = start * pixelWidth;
+    ym = start - blurRadius;
     ymi = ym * pixelWidth;
 
-    for (int y = 0; y < pixelHeight; y++) {
+    for (int y = start; y < stop; y++) {
       for (int x = 0; x < pixelWidth; x++) {
         cb = cg = cr = ca = sum = 0;
         if (ym < 0) {
@@ -1476,17 +1916,123 @@ public class PImage implements PConstants, Cloneable {
   }
 
 
+  /**
+   * Blur by repeating a box blur that keeps a running total for each
+   * channel, so the time taken doesn't depend on the radius. The sizes of
+   * the boxes are chosen so that the result has the same spread as the
+   * kernel from buildBlurKernel(), and like that kernel, pixels near the
+   * edges are averaged only with the pixels that are inside the image.
+   */
+  protected void fastBlur(float r) {
+    // buildBlurKernel() uses weights of (radius - d)^2 for a radius of r*3.5,
+    // which has a variance of radius^2 / 10.
+    float radius = Math.max(1, r * 3.5f);
+    float variance = radius * radius / 10;
+
+    // Widths for each pass, using a mix of two box sizes (w and w + 2)
+    // so that their combined variance is as close as possible.
+    int passes = fastBlurPasses;
+    int w = (int) Math.sqrt(12 * variance / passes + 1);
+    if (w % 2 == 0) w--;
+    int m = Math.round((12 * variance - passes*w*w - 4*passes*w - 3*passes) /
+                       (-4*w - 4));
+
+    final int[] temp = new int[pixels.length];
+    for (int pass = 0; pass < passes; pass++) {
+      final int half = ((pass < m) ? w : w + 2) / 2;
+      if (half == 0) {
+        continue;
+      }
+      runStrips(pixelHeight, new Strip() {
+        public void run(int start, int stop) {
+          for (int y = start; y < stop; y++) {
+            boxBlur(pixels, temp, y*pixelWidth, 1, pixelWidth, half);
+          }
+        }
+      });
+      runStrips(pixelWidth, new Strip() {
+        public void run(int start, int stop) {
+          for (int x = start; x < stop; x++) {
+            boxBlur(temp, pixels, x, pixelWidth, pixelHeight, half);
+          }
+        }
+      });
+    }
+
+    if (format == RGB) {
+      opaque();
+    } else if (format == ALPHA) {
+      for (int i = 0; i < pixels.length; i++) {
+        pixels[i] &= BLUE_MASK;
+      }
+    }
+  }
+
+
+  /**
+   * Average each pixel on a row or column with the pixels up to 'half'
+   * away on either side, reading from src and writing to dst.
+   */
+  static private void boxBlur(int[] src, int[] dst,
+                              int offset, int step, int length, int half) {
+    int ca = 0, cr = 0, cg = 0, cb = 0;
+    int last = Math.min(half, length - 1);
+    for (int i = 0; i <= last; i++) {
+      int c = src[offset + i*step];
+      ca += c >>> 24;
+      cr += (c >> 16) & 0xff;
+      cg += (c >> 8) & 0xff;
+      cb += c & 0xff;
+    }
+    for (int i = 0; i < length; i++) {
+      int count = Math.min(i + half, length - 1) - Math.max(i - half, 0) + 1;
+      int round = count >> 1;
+      dst[offset + i*step] = ((ca + round) / count) << 24 |
+        ((cr + round) / count) << 16 | ((cg + round) / count) << 8 |
+        ((cb + round) / count);
+
+      int add = i + half + 1;
+      if (add < length) {
+        int c = src[offset + add*step];
+        ca += c >>> 24;
+        cr += (c >> 16) & 0xff;
+        cg += (c >> 8) & 0xff;
+        cb += c & 0xff;
+      }
+      int remove = i - half;
+      if (remove >= 0) {
+        int c = src[offset + remove*step];
+        ca -= c >>> 24;
+        cr -= (c >> 16) & 0xff;
+        cg -= (c >> 8) & 0xff;
+        cb -= c & 0xff;
+      }
+    }
+  }
+
+
   /**
    * Generic dilate/erode filter using luminance values
    * as decision factor. [toxi 050728]
    */
   protected void dilate() {  // formerly dilate(false)
-    int index = 0;
+    final int[] outgoing = new int[pixels.length];
+    runStrips(pixels.length / pixelWidth, new Strip() {
+      public void run(int start, int stop) {
+        dilateRows(outgoing, start, stop);
+      }
+    });
+    System.arraycopy(outgoing, 0, pixels, 0, pixels.length);
+  }
+
+
+  private void dilateRows(int[] outgoing, int start, int stop) {
+    int index = start * pixelWidth;
+    int stopIndex = stop * pixelWidth;
     int maxIndex = pixels.length;
-    int[] outgoing = new int[maxIndex];
 
     // erosion (grow light areas)
-    while (index < maxIndex) {
+    while (index < stopIndex) {
       int curRowIndex = index;
       int maxRowIndex = index + pixelWidth;
       while (index < maxRowIndex) {
@@ -1545,17 +2091,27 @@ public class PImage implements PConstants, Cloneable {
         outgoing[index++] = result;
       }
     }
-    System.arraycopy(outgoing, 0, pixels, 0, maxIndex);
   }
 
 
   protected void erode() {  // formerly dilate(true)
-    int index = 0;
+    final int[] outgoing = new int[pixels.length];
+    runStrips(pixels.length / pixelWidth, new Strip() {
+      public void run(int start, int stop) {
+        erodeRows(outgoing, start, stop);
+      }
+    });
+    System.arraycopy(outgoing, 0, pixels, 0, pixels.length);
+  }
+
+
+  private void erodeRows(int[] outgoing, int start, int stop) {
+    int index = start * pixelWidth;
+    int stopIndex = stop * pixelWidth;
     int maxIndex = pixels.length;
-    int[] outgoing = new int[maxIndex];
 
     // dilate (grow dark areas)
-    while (index < maxIndex) {
+    while (index < stopIndex) {
       int curRowIndex = index;
       int maxRowIndex = index + pixelWidth;
       while (index < maxRowIndex) {
@@ -1614,7 +2170,6 @@ public class PImage implements PConstants, Cloneable {
         outgoing[index++] = result;
       }
     }
-    System.arraycopy(outgoing, 0, pixels, 0, maxIndex);
   }
 
 
@@ -2948,6 +3503,134 @@ int testFunction(int dst, int src) {
   // FILE I/O
 
 
+  /**
+   * Decode an image (JPEG, PNG, GIF, BMP, or anything else that ImageIO
+   * can read) from a stream. When the ImageReader can write into an int[]
+   * directly (as it can for JPEG), that array becomes the pixels of the
+   * image without another copy. The alpha channel is only checked if the
+   * file has one, and the image will be RGB unless some of its pixels are
+   * actually transparent. Nothing here uses the AWT Toolkit or any shared
+   * state (the stream is cached in memory, not in a temporary file), so
+   * this can be called from several threads at once.
+   *
+   * @nowebref
+   * @param input stream to read from, which is left open
+   * @param targetWidth if larger than 0, read every Nth pixel in each
+   * direction so that the result is as small as possible while still being
+   * at least targetWidth x targetHeight
+   * @return the image, or null if the data isn't in a format ImageIO knows
+   */
+  static public PImage loadImageIO(InputStream input, int targetWidth,
+                                   int targetHeight) throws IOException {
+    ImageInputStream stream = new MemoryCacheImageInputStream(input);
+    try {
+      Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+      if (!readers.hasNext()) {
+        return null;
+      }
+      ImageReader reader = readers.next();
+      try {
+        reader.setInput(stream, true, true);
+        int sourceWidth = reader.getWidth(0);
+        int sourceHeight = reader.getHeight(0);
+
+        ImageReadParam param = reader.getDefaultReadParam();
+        int step = 1;
+        if (targetWidth > 0 && targetHeight > 0) {
+          step = Math.max(1, Math.min(sourceWidth / targetWidth,
+                                      sourceHeight / targetHeight));
+          if (step > 1) {
+            param.setSourceSubsampling(step, step, 0, 0);
+          }
+        }
+        int w = (sourceWidth + step - 1) / step;
+        int h = (sourceHeight + step - 1) / step;
+
+        // If the reader can decode to an int-packed image, give it one
+        // whose array can be used for the pixels as-is.
+        Iterator<ImageTypeSpecifier> types = reader.getImageTypes(0);
+        while (types.hasNext()) {
+          ImageTypeSpecifier type = types.next();
+          int bufferedType = type.getBufferedImageType();
+          if (bufferedType == BufferedImage.TYPE_INT_ARGB ||
+              bufferedType == BufferedImage.TYPE_INT_RGB) {
+            param.setDestination(type.createBufferedImage(w, h));
+            break;
+          }
+        }
+        BufferedImage bi = reader.read(0, param);
+        w = bi.getWidth();
+        h = bi.getHeight();
+
+        int[] pixels = null;
+        int type = bi.getType();
+        if (type == BufferedImage.TYPE_INT_ARGB ||
+            type == BufferedImage.TYPE_INT_RGB) {
+          DataBuffer buffer = bi.getRaster().getDataBuffer();
+          if (buffer instanceof DataBufferInt && buffer.getNumBanks() == 1 &&
+              buffer.getOffset() == 0 && buffer.getSize() == w * h) {
+            pixels = ((DataBufferInt) buffer).getData();
+            if (type == BufferedImage.TYPE_INT_RGB) {
+              // high bits aren't set for RGB
+              for (int i = 0; i < pixels.length; i++) {
+                pixels[i] |= 0xff000000;
+              }
+            }
+          }
+        }
+        if (pixels == null) {
+          ColorModel cm = bi.getColorModel();
+          if (cm.getColorSpace().getType() == ColorSpace.TYPE_GRAY &&
+              !(cm instanceof IndexColorModel)) {
+            pixels = grayToPixels(bi.getRaster(), cm.getComponentSize(0));
+          } else {
+            pixels = bi.getRGB(0, 0, w, h, null, 0, w);
+          }
+        }
+
+        PImage outgoing = new PImage();
+        outgoing.width = outgoing.pixelWidth = w;
+        outgoing.height = outgoing.pixelHeight = h;
+        outgoing.pixels = pixels;
+        outgoing.format = RGB;
+        if (bi.getColorModel().hasAlpha()) {
+          outgoing.checkAlpha();
+        }
+        return outgoing;
+
+      } finally {
+        reader.dispose();
+      }
+    } finally {
+      stream.close();
+    }
+  }
+
+
+  /**
+   * Copy the samples from a grayscale image (with or without alpha)
+   * directly, because getRGB() treats the gray as linear and brightens it.
+   */
+  static private int[] grayToPixels(Raster raster, int bits) {
+    int w = raster.getWidth();
+    int h = raster.getHeight();
+    int bands = raster.getNumBands();
+    int shift = Math.max(0, bits - 8);
+    int[] row = new int[w * bands];
+    int[] pixels = new int[w * h];
+    int index = 0;
+    for (int y = 0; y < h; y++) {
+      raster.getPixels(0, y, w, 1, row);
+      for (int x = 0; x < w; x++) {
+        int gray = row[x * bands] >> shift;
+        int alpha = (bands > 1) ? row[x * bands + 1] >> shift : 0xff;
+        pixels[index++] = alpha << 24 | gray << 16 | gray << 8 | gray;
+      }
+    }
+    return pixels;
+  }
+
+
   static byte[] TIFF_HEADER = {
     77, 77, 0, 42, 0, 0, 0, 8, 0, 9, 0, -2, 0, 4, 0, 0, 0, 1, 0, 0,
     0, 0, 1, 0, 0, 3, 0, 0, 0, 1, 0, 0, 0, 0, 1, 1, 0, 3, 0, 0, 0, 1,
@@ -3050,6 +3733,290 @@ int testFunction(int dst, int src) {
   }
 
 
+  /**
+   * Set the amount of compression used when saving PNG files, from 0 (none,
+   * fastest) to 9 (smallest files, slowest). The default is 4, which is
+   * much faster than 9 and usually only a few percent larger.
+   *
+   * @nowebref
+   */
+  static public synchronized void setPNGCompression(int level) {
+    if (level < 0 || level > 9) {
+      throw new IllegalArgumentException("PNG compression must be between 0 and 9");
+    }
+    pngCompression = level;
+  }
+
+
+  static synchronized int getPNGCompression() {
+    return pngCompression;
+  }
+
+
+  /**
+   * Write the pixels as a PNG file, without making a BufferedImage or
+   * going through ImageIO. RGB images are saved as 24-bit color, ARGB as
+   * 32-bit color with alpha, and ALPHA images as 8-bit grayscale (using
+   * the lowest byte, as with saveTGA).
+   * <p>
+   * Large images are split into strips of rows that are filtered and
+   * compressed on separate threads (see setParallelism). Each strip
+   * continues the same zlib stream (it's flushed to a byte boundary and
+   * starts with the end of the previous strip as its dictionary), so the
+   * result is a normal PNG with one IDAT chunk per strip.
+   */
+  protected boolean savePNG(OutputStream output) {
+    final int bpp = (format == ARGB) ? 4 : ((format == ALPHA) ? 1 : 3);
+    final int level = getPNGCompression();
+    final byte[][] strips = new byte[pixelHeight][];
+    final int[] adlers = new int[pixelHeight];
+    final long[] lengths = new long[pixelHeight];
+
+    try {
+      runStrips(pixelHeight, new Strip() {
+        public void run(int start, int stop) {
+          Adler32 adler = new Adler32();
+          strips[start] = deflatePNG(start, stop, bpp, level, adler);
+          adlers[start] = (int) adler.getValue();
+          lengths[start] = (long) (stop - start) * (1 + pixelWidth * bpp);
+        }
+      });
+
+      byte[] header = new byte[13];
+      writeInt(header, 0, pixelWidth);
+      writeInt(header, 4, pixelHeight);
+      header[8] = 8;  // bits per channel
+      header[9] = (byte) ((bpp == 4) ? 6 : ((bpp == 3) ? 2 : 0));  // color type
+      // compression, filter, and interlace methods are all zero
+
+      output.write(new byte[] {
+        (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'
+      });
+      writePNGChunk(output, "IHDR", header, header.length);
+
+      // zlib header: deflate with a 32K window, FLEVEL from the level
+      int flevel = (level < 2) ? 0 : ((level < 6) ? 1 : ((level == 6) ? 2 : 3));
+      int cmf = 0x78;
+      int flg = flevel << 6;
+      flg += 31 - ((cmf << 8) + flg) % 31;
+
+      int adler = 1;
+      boolean first = true;
+      for (int y = 0; y < pixelHeight; y++) {
+        byte[] strip = strips[y];
+        if (strip != null) {
+          adler = (first) ? adlers[y] : combineAdler32(adler, adlers[y], lengths[y]);
+          if (first) {
+            byte[] data = new byte[strip.length + 2];
+            data[0] = (byte) cmf;
+            data[1] = (byte) flg;
+            System.arraycopy(strip, 0, data, 2, strip.length);
+            strip = data;
+            first = false;
+          }
+          writePNGChunk(output, "IDAT", strip, strip.length);
+        }
+      }
+      byte[] trailer = new byte[4];
+      writeInt(trailer, 0, adler);
+      writePNGChunk(output, "IDAT", trailer, 4);
+      writePNGChunk(output, "IEND", trailer, 0);
+      output.flush();
+      return true;
+
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+    return false;
+  }
+
+
+  /**
+   * Filter and compress rows start..stop of the image. The output is a
+   * piece of a raw deflate stream that ends on a byte boundary, and is
+   * only marked as the last piece when stop is the bottom of the image.
+   */
+  private byte[] deflatePNG(int start, int stop, int bpp, int level,
+                            Adler32 adler) {
+    int rowLength = 1 + pixelWidth * bpp;
+    byte[] prior = new byte[rowLength];
+    byte[] current = new byte[rowLength];
+    // one row for each filter type, each beginning with the type
+    byte[][] filtered = new byte[5][rowLength];
+    for (int type = 0; type < 5; type++) {
+      filtered[type][0] = (byte) type;
+    }
+
+    Deflater deflater = new Deflater(level, true);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[65536];
+
+    if (start > 0) {
+      // Continue from the previous strip: use the rows before this one
+      // (filtered the same way) as the dictionary, and as the prior row.
+      int dictRows = Math.min(start, (32768 + rowLength - 1) / rowLength);
+      byte[] dict = new byte[dictRows * rowLength];
+      if (start - dictRows > 0) {
+        packRow(start - dictRows - 1, bpp, prior);
+      }
+      for (int y = start - dictRows; y < start; y++) {
+        packRow(y, bpp, current);
+        byte[] row = filterRow(current, prior, bpp, level, filtered);
+        System.arraycopy(row, 0, dict, (y - start + dictRows) * rowLength, rowLength);
+        byte[] temp = prior;
+        prior = current;
+        current = temp;
+      }
+      int offset = Math.max(0, dict.length - 32768);
+      deflater.setDictionary(dict, offset, dict.length - offset);
+    }
+
+    for (int y = start; y < stop; y++) {
+      packRow(y, bpp, current);
+      byte[] row = filterRow(current, prior, bpp, level, filtered);
+      adler.update(row, 0, rowLength);
+      deflater.setInput(row, 0, rowLength);
+      while (!deflater.needsInput()) {
+        int count = deflater.deflate(buffer, 0, buffer.length, Deflater.NO_FLUSH);
+        out.write(buffer, 0, count);
+      }
+      byte[] temp = prior;
+      prior = current;
+      current = temp;
+    }
+
+    if (stop == pixelHeight) {
+      deflater.finish();
+      while (!deflater.finished()) {
+        int count = deflater.deflate(buffer);
+        out.write(buffer, 0, count);
+      }
+    } else {
+      int count;
+      do {
+        count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+        out.write(buffer, 0, count);
+      } while (count == buffer.length);
+    }
+    deflater.end();
+    return out.toByteArray();
+  }
+
+
+  /** Unpack row y of the pixels into bytes (after a spot for the filter type). */
+  private void packRow(int y, int bpp, byte[] row) {
+    int index = y * pixelWidth;
+    int offset = 1;
+    for (int x = 0; x < pixelWidth; x++) {
+      int c = pixels[index++];
+      if (bpp == 1) {
+        row[offset++] = (byte) c;
+      } else {
+        row[offset++] = (byte) (c >> 16);
+        row[offset++] = (byte) (c >> 8);
+        row[offset++] = (byte) c;
+        if (bpp == 4) {
+          row[offset++] = (byte) (c >>> 24);
+        }
+      }
+    }
+  }
+
+
+  /**
+   * Apply the PNG filter that's likely to compress best, using the usual
+   * heuristic of the smallest sum of absolute differences. With no
+   * compression at all, there's no point, so the row is left as-is.
+   */
+  static private byte[] filterRow(byte[] row, byte[] prior, int bpp,
+                                  int level, byte[][] filtered) {
+    int length = row.length;
+    if (level == 0) {
+      System.arraycopy(row, 1, filtered[0], 1, length - 1);
+      return filtered[0];
+    }
+    byte[] none = filtered[0], sub = filtered[1], up = filtered[2],
+      avg = filtered[3], paeth = filtered[4];
+    long[] sums = new long[5];
+    for (int i = 1; i < length; i++) {
+      int x = row[i] & 0xff;
+      int a = (i > bpp) ? row[i - bpp] & 0xff : 0;
+      int b = prior[i] & 0xff;
+      int c = (i > bpp) ? prior[i - bpp] & 0xff : 0;
+
+      int p = a + b - c;
+      int pa = Math.abs(p - a);
+      int pb = Math.abs(p - b);
+      int pc = Math.abs(p - c);
+      int predict = (pa <= pb && pa <= pc) ? a : ((pb <= pc) ? b : c);
+
+      none[i] = (byte) x;
+      sub[i] = (byte) (x - a);
+      up[i] = (byte) (x - b);
+      avg[i] = (byte) (x - ((a + b) >> 1));
+      paeth[i] = (byte) (x - predict);
+      sums[0] += Math.abs(none[i]);
+      sums[1] += Math.abs(sub[i]);
+      sums[2] += Math.abs(up[i]);
+      sums[3] += Math.abs(avg[i]);
+      sums[4] += Math.abs(paeth[i]);
+    }
+    int best = 0;
+    for (int type = 1; type < 5; type++) {
+      if (sums[type] < sums[best]) {
+        best = type;
+      }
+    }
+    return filtered[best];
+  }
+
+
+  static private void writePNGChunk(OutputStream output, String type,
+                                    byte[] data, int length) throws IOException {
+    byte[] prefix = new byte[8];
+    writeInt(prefix, 0, length);
+    for (int i = 0; i < 4; i++) {
+      prefix[4 + i] = (byte) type.charAt(i);
+    }
+    CRC32 crc = new CRC32();
+    crc.update(prefix, 4, 4);
+    crc.update(data, 0, length);
+    byte[] suffix = new byte[4];
+    writeInt(suffix, 0, (int) crc.getValue());
+
+    output.write(prefix);
+    output.write(data, 0, length);
+    output.write(suffix);
+  }
+
+
+  static private void writeInt(byte[] b, int offset, int value) {
+    b[offset] = (byte) (value >>> 24);
+    b[offset+1] = (byte) (value >>> 16);
+    b[offset+2] = (byte) (value >>> 8);
+    b[offset+3] = (byte) value;
+  }
+
+
+  /**
+   * Adler-32 of two pieces of data put together, from the checksum of
+   * each and the length of the second (same as adler32_combine in zlib).
+   */
+  static private int combineAdler32(int adler1, int adler2, long length2) {
+    final long BASE = 65521;
+    long rem = length2 % BASE;
+    long sum1 = adler1 & 0xffff;
+    long sum2 = (rem * sum1) % BASE;
+    sum1 += (adler2 & 0xffff) + BASE - 1;
+    sum2 += ((adler1 >>> 16) & 0xffff) + ((adler2 >>> 16) & 0xffff) + BASE - rem;
+    if (sum1 >= BASE) sum1 -= BASE;
+    if (sum1 >= BASE) sum1 -= BASE;
+    if (sum2 >= (BASE << 1)) sum2 -= (BASE << 1);
+    if (sum2 >= BASE) sum2 -= BASE;
+    return (int) (sum2 << 16 | sum1);
+  }
+
+
   /**
    * Creates a Targa32 formatted byte sequence of specified
    * pixel buffer using RLE compression.
@@ -3397,6 +4364,16 @@ int testFunction(int dst, int src) {
     try {
       OutputStream os = null;
 
+      if (filename.toLowerCase().endsWith(".png")) {
+        os = new BufferedOutputStream(new FileOutputStream(filename), 32768);
+        success = savePNG(os);
+        os.close();
+        if (!success) {
+          System.err.println("Error while saving image.");
+        }
+        return success;
+      }
+
       if (saveImageFormats == null) {
         saveImageFormats = javax.imageio.ImageIO.getWriterFormatNames();
       }
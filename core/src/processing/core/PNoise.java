@@ -0,0 +1,475 @@
+package processing.core;
+
+import java.util.Random;
+
+
+/**
+ * Simplex noise in two, three, or four dimensions. Compared to noise(),
+ * it has fewer grid-aligned artifacts, and doesn't repeat every 4096 units
+ * or mirror around zero. As with noise(), values are between 0 and 1, and
+ * several octaves are added together, set with detail().
+ * <p>
+ * The fill() methods compute a whole grid of samples at once, split
+ * across threads for large grids (see PImage.setParallelism), for terrain
+ * height maps, flow fields, or textures:
+ * <pre>
+ * PNoise noise = new PNoise(42);
+ * float[] heights = new float[cols * rows];
+ * noise.fill(heights, cols, rows, 0, 0, frameCount * 0.01f, 0.02f);
+ * </pre>
+ * Sampling from several threads at once is fine, as long as seed() and
+ * detail() aren't called at the same time.
+ *
+ * @nowebref
+ */
+public class PNoise {
+  // skew and unskew factors for each dimension
+  static final float F2 = 0.36602540378f;  // (sqrt(3) - 1) / 2
+  static final float G2 = 0.21132486540f;  // (3 - sqrt(3)) / 6
+  static final float F3 = 1f / 3;
+  static final float G3 = 1f / 6;
+  static final float F4 = 0.30901699437f;  // (sqrt(5) - 1) / 4
+  static final float G4 = 0.13819660112f;  // (5 - sqrt(5)) / 20
+
+  // directions to the edges of a cube (the first two are also used in 2D)
+  static final float[] GRAD3 = {
+    1,1,0, -1,1,0, 1,-1,0, -1,-1,0,
+    1,0,1, -1,0,1, 1,0,-1, -1,0,-1,
+    0,1,1, 0,-1,1, 0,1,-1, 0,-1,-1
+  };
+
+  // directions to the edges of a hypercube
+  static final float[] GRAD4 = {
+    0,1,1,1, 0,1,1,-1, 0,1,-1,1, 0,1,-1,-1,
+    0,-1,1,1, 0,-1,1,-1, 0,-1,-1,1, 0,-1,-1,-1,
+    1,0,1,1, 1,0,1,-1, 1,0,-1,1, 1,0,-1,-1,
+    -1,0,1,1, -1,0,1,-1, -1,0,-1,1, -1,0,-1,-1,
+    1,1,0,1, 1,1,0,-1, 1,-1,0,1, 1,-1,0,-1,
+    -1,1,0,1, -1,1,0,-1, -1,-1,0,1, -1,-1,0,-1,
+    1,1,1,0, 1,1,-1,0, 1,-1,1,0, 1,-1,-1,0,
+    -1,1,1,0, -1,1,-1,0, -1,-1,1,0, -1,-1,-1,0
+  };
+
+  /** shuffled 0..255, twice over so that lookups don't need wrapping */
+  int[] perm = new int[512];
+  // the gradient for each entry in perm, split into its components
+  float[] gx3 = new float[512];
+  float[] gy3 = new float[512];
+  float[] gz3 = new float[512];
+  float[] gx4 = new float[512];
+  float[] gy4 = new float[512];
+  float[] gz4 = new float[512];
+  float[] gw4 = new float[512];
+
+  int octaves = 4;
+  float falloff = 0.5f;
+
+
+  /** Create noise with a random seed. */
+  public PNoise() {
+    this(new Random().nextLong());
+  }
+
+
+  public PNoise(long seed) {
+    seed(seed);
+  }
+
+
+  /** Start over with a new seed, so the same seed gives the same noise. */
+  public void seed(long seed) {
+    Random random = new Random(seed);
+    int[] shuffled = new int[256];
+    for (int i = 0; i < 256; i++) {
+      shuffled[i] = i;
+    }
+    for (int i = 255; i > 0; i--) {
+      int j = random.nextInt(i + 1);
+      int temp = shuffled[i];
+      shuffled[i] = shuffled[j];
+      shuffled[j] = temp;
+    }
+    for (int i = 0; i < 512; i++) {
+      perm[i] = shuffled[i & 255];
+      int g3 = (perm[i] % 12) * 3;
+      gx3[i] = GRAD3[g3];
+      gy3[i] = GRAD3[g3+1];
+      gz3[i] = GRAD3[g3+2];
+      int g4 = (perm[i] % 32) * 4;
+      gx4[i] = GRAD4[g4];
+      gy4[i] = GRAD4[g4+1];
+      gz4[i] = GRAD4[g4+2];
+      gw4[i] = GRAD4[g4+3];
+    }
+  }
+
+
+  /**
+   * Set the number of octaves and how much each one contributes relative
+   * to the one before, same as noiseDetail().
+   */
+  public void detail(int octaves, float falloff) {
+    if (octaves > 0) this.octaves = octaves;
+    if (falloff > 0) this.falloff = falloff;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  public float noise(float x, float y) {
+    float sum = 0;
+    float amp = 0.5f;
+    for (int i = 0; i < octaves; i++) {
+      sum += amp * (0.5f + 0.5f * simplex(x, y));
+      amp *= falloff;
+      x *= 2;
+      y *= 2;
+    }
+    return sum;
+  }
+
+
+  public float noise(float x, float y, float z) {
+    float sum = 0;
+    float amp = 0.5f;
+    for (int i = 0; i < octaves; i++) {
+      sum += amp * (0.5f + 0.5f * simplex(x, y, z));
+      amp *= falloff;
+      x *= 2;
+      y *= 2;
+      z *= 2;
+    }
+    return sum;
+  }
+
+
+  public float noise(float x, float y, float z, float w) {
+    float sum = 0;
+    float amp = 0.5f;
+    for (int i = 0; i < octaves; i++) {
+      sum += amp * (0.5f + 0.5f * simplex(x, y, z, w));
+      amp *= falloff;
+      x *= 2;
+      y *= 2;
+      z *= 2;
+      w *= 2;
+    }
+    return sum;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Fill a grid of cols x rows values (stored row by row) with noise(),
+   * starting at (x, y) and moving 'step' for each column or row.
+   */
+  public void fill(final float[] values, final int cols, int rows,
+                   final float x, final float y, final float step) {
+    checkGrid(values.length, cols, rows);
+    PImage.runStrips(rows, cols * rows * octaves, new PImage.Strip() {
+      public void run(int start, int stop) {
+        for (int row = start; row < stop; row++) {
+          float ny = y + row * step;
+          int index = row * cols;
+          for (int col = 0; col < cols; col++) {
+            values[index++] = noise(x + col * step, ny);
+          }
+        }
+      }
+    });
+  }
+
+
+  /**
+   * Fill a grid with a slice of 3D noise at depth z, for instance to
+   * animate a 2D field by moving z over time.
+   */
+  public void fill(final float[] values, final int cols, int rows,
+                   final float x, final float y, final float z,
+                   final float step) {
+    checkGrid(values.length, cols, rows);
+    PImage.runStrips(rows, cols * rows * octaves, new PImage.Strip() {
+      public void run(int start, int stop) {
+        for (int row = start; row < stop; row++) {
+          float ny = y + row * step;
+          int index = row * cols;
+          for (int col = 0; col < cols; col++) {
+            values[index++] = noise(x + col * step, ny, z);
+          }
+        }
+      }
+    });
+  }
+
+
+  /**
+   * Fill the pixels of an image with gray levels from 2D noise.
+   */
+  public void fill(PImage img, float x, float y, float step) {
+    fillImage(img, x, y, 0, step, false);
+  }
+
+
+  /**
+   * Fill the pixels of an image with gray levels from a slice of 3D noise.
+   */
+  public void fill(PImage img, float x, float y, float z, float step) {
+    fillImage(img, x, y, z, step, true);
+  }
+
+
+  private void fillImage(final PImage img, final float x, final float y,
+                         final float z, final float step, final boolean depth) {
+    img.loadPixels();
+    final int cols = img.pixelWidth;
+    final boolean alpha = (img.format == PConstants.ALPHA);
+    img.runStrips(img.pixelHeight, new PImage.Strip() {
+      public void run(int start, int stop) {
+        for (int row = start; row < stop; row++) {
+          float ny = y + row * step;
+          int index = row * cols;
+          for (int col = 0; col < cols; col++) {
+            float nx = x + col * step;
+            float value = depth ? noise(nx, ny, z) : noise(nx, ny);
+            int gray = Math.max(0, Math.min(255, (int) (value * 255 + 0.5f)));
+            img.pixels[index++] = alpha ?
+              gray : (0xff000000 | (gray << 16) | (gray << 8) | gray);
+          }
+        }
+      }
+    });
+    img.updatePixels();
+  }
+
+
+  static private void checkGrid(int length, int cols, int rows) {
+    if (cols < 0 || rows < 0 || (long) cols * rows > length) {
+      throw new IllegalArgumentException("The array is too small for a " +
+                                         cols + " x " + rows + " grid");
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  static private int floor(float x) {
+    int xi = (int) x;
+    return (x < xi) ? xi - 1 : xi;
+  }
+
+
+  /** A single octave of 2D simplex noise, between -1 and 1. */
+  public float simplex(float x, float y) {
+    // find the triangle that the point is in
+    float s = (x + y) * F2;
+    int i = floor(x + s);
+    int j = floor(y + s);
+    float t = (i + j) * G2;
+    float x0 = x - (i - t);
+    float y0 = y - (j - t);
+
+    int i1, j1;
+    if (x0 > y0) {
+      i1 = 1; j1 = 0;
+    } else {
+      i1 = 0; j1 = 1;
+    }
+    float x1 = x0 - i1 + G2;
+    float y1 = y0 - j1 + G2;
+    float x2 = x0 - 1 + 2*G2;
+    float y2 = y0 - 1 + 2*G2;
+
+    int ii = i & 255;
+    int jj = j & 255;
+    float n = 0;
+
+    float t0 = 0.5f - x0*x0 - y0*y0;
+    if (t0 > 0) {
+      int g = ii + perm[jj];
+      t0 *= t0;
+      n += t0 * t0 * (gx3[g]*x0 + gy3[g]*y0);
+    }
+    float t1 = 0.5f - x1*x1 - y1*y1;
+    if (t1 > 0) {
+      int g = ii + i1 + perm[jj + j1];
+      t1 *= t1;
+      n += t1 * t1 * (gx3[g]*x1 + gy3[g]*y1);
+    }
+    float t2 = 0.5f - x2*x2 - y2*y2;
+    if (t2 > 0) {
+      int g = ii + 1 + perm[jj + 1];
+      t2 *= t2;
+      n += t2 * t2 * (gx3[g]*x2 + gy3[g]*y2);
+    }
+    return 70 * n;
+  }
+
+
+  /** A single octave of 3D simplex noise, between -1 and 1. */
+  public float simplex(float x, float y, float z) {
+    float s = (x + y + z) * F3;
+    int i = floor(x + s);
+    int j = floor(y + s);
+    int k = floor(z + s);
+    float t = (i + j + k) * G3;
+    float x0 = x - (i - t);
+    float y0 = y - (j - t);
+    float z0 = z - (k - t);
+
+    // which of the six tetrahedra in the cube is the point in
+    int i1, j1, k1, i2, j2, k2;
+    if (x0 >= y0) {
+      if (y0 >= z0) {
+        i1 = 1; j1 = 0; k1 = 0; i2 = 1; j2 = 1; k2 = 0;
+      } else if (x0 >= z0) {
+        i1 = 1; j1 = 0; k1 = 0; i2 = 1; j2 = 0; k2 = 1;
+      } else {
+        i1 = 0; j1 = 0; k1 = 1; i2 = 1; j2 = 0; k2 = 1;
+      }
+    } else {
+      if (y0 < z0) {
+        i1 = 0; j1 = 0; k1 = 1; i2 = 0; j2 = 1; k2 = 1;
+      } else if (x0 < z0) {
+        i1 = 0; j1 = 1; k1 = 0; i2 = 0; j2 = 1; k2 = 1;
+      } else {
+        i1 = 0; j1 = 1; k1 = 0; i2 = 1; j2 = 1; k2 = 0;
+      }
+    }
+    float x1 = x0 - i1 + G3;
+    float y1 = y0 - j1 + G3;
+    float z1 = z0 - k1 + G3;
+    float x2 = x0 - i2 + 2*G3;
+    float y2 = y0 - j2 + 2*G3;
+    float z2 = z0 - k2 + 2*G3;
+    float x3 = x0 - 1 + 3*G3;
+    float y3 = y0 - 1 + 3*G3;
+    float z3 = z0 - 1 + 3*G3;
+
+    int ii = i & 255;
+    int jj = j & 255;
+    int kk = k & 255;
+    float n = 0;
+
+    float t0 = 0.6f - x0*x0 - y0*y0 - z0*z0;
+    if (t0 > 0) {
+      int g = ii + perm[jj + perm[kk]];
+      t0 *= t0;
+      n += t0 * t0 * (gx3[g]*x0 + gy3[g]*y0 + gz3[g]*z0);
+    }
+    float t1 = 0.6f - x1*x1 - y1*y1 - z1*z1;
+    if (t1 > 0) {
+      int g = ii + i1 + perm[jj + j1 + perm[kk + k1]];
+      t1 *= t1;
+      n += t1 * t1 * (gx3[g]*x1 + gy3[g]*y1 + gz3[g]*z1);
+    }
+    float t2 = 0.6f - x2*x2 - y2*y2 - z2*z2;
+    if (t2 > 0) {
+      int g = ii + i2 + perm[jj + j2 + perm[kk + k2]];
+      t2 *= t2;
+      n += t2 * t2 * (gx3[g]*x2 + gy3[g]*y2 + gz3[g]*z2);
+    }
+    float t3 = 0.6f - x3*x3 - y3*y3 - z3*z3;
+    if (t3 > 0) {
+      int g = ii + 1 + perm[jj + 1 + perm[kk + 1]];
+      t3 *= t3;
+      n += t3 * t3 * (gx3[g]*x3 + gy3[g]*y3 + gz3[g]*z3);
+    }
+    return 32 * n;
+  }
+
+
+  /** A single octave of 4D simplex noise, between -1 and 1. */
+  public float simplex(float x, float y, float z, float w) {
+    float s = (x + y + z + w) * F4;
+    int i = floor(x + s);
+    int j = floor(y + s);
+    int k = floor(z + s);
+    int l = floor(w + s);
+    float t = (i + j + k + l) * G4;
+    float x0 = x - (i - t);
+    float y0 = y - (j - t);
+    float z0 = z - (k - t);
+    float w0 = w - (l - t);
+
+    // rank the coordinates to find which simplex the point is in
+    int rankx = 0, ranky = 0, rankz = 0, rankw = 0;
+    if (x0 > y0) rankx++; else ranky++;
+    if (x0 > z0) rankx++; else rankz++;
+    if (x0 > w0) rankx++; else rankw++;
+    if (y0 > z0) ranky++; else rankz++;
+    if (y0 > w0) ranky++; else rankw++;
+    if (z0 > w0) rankz++; else rankw++;
+
+    int i1 = (rankx >= 3) ? 1 : 0;
+    int j1 = (ranky >= 3) ? 1 : 0;
+    int k1 = (rankz >= 3) ? 1 : 0;
+    int l1 = (rankw >= 3) ? 1 : 0;
+    int i2 = (rankx >= 2) ? 1 : 0;
+    int j2 = (ranky >= 2) ? 1 : 0;
+    int k2 = (rankz >= 2) ? 1 : 0;
+    int l2 = (rankw >= 2) ? 1 : 0;
+    int i3 = (rankx >= 1) ? 1 : 0;
+    int j3 = (ranky >= 1) ? 1 : 0;
+    int k3 = (rankz >= 1) ? 1 : 0;
+    int l3 = (rankw >= 1) ? 1 : 0;
+
+    float x1 = x0 - i1 + G4;
+    float y1 = y0 - j1 + G4;
+    float z1 = z0 - k1 + G4;
+    float w1 = w0 - l1 + G4;
+    float x2 = x0 - i2 + 2*G4;
+    float y2 = y0 - j2 + 2*G4;
+    float z2 = z0 - k2 + 2*G4;
+    float w2 = w0 - l2 + 2*G4;
+    float x3 = x0 - i3 + 3*G4;
+    float y3 = y0 - j3 + 3*G4;
+    float z3 = z0 - k3 + 3*G4;
+    float w3 = w0 - l3 + 3*G4;
+    float x4 = x0 - 1 + 4*G4;
+    float y4 = y0 - 1 + 4*G4;
+    float z4 = z0 - 1 + 4*G4;
+    float w4 = w0 - 1 + 4*G4;
+
+    int ii = i & 255;
+    int jj = j & 255;
+    int kk = k & 255;
+    int ll = l & 255;
+    float n = 0;
+
+    float t0 = 0.6f - x0*x0 - y0*y0 - z0*z0 - w0*w0;
+    if (t0 > 0) {
+      int g = ii + perm[jj + perm[kk + perm[ll]]];
+      t0 *= t0;
+      n += t0 * t0 * (gx4[g]*x0 + gy4[g]*y0 + gz4[g]*z0 + gw4[g]*w0);
+    }
+    float t1 = 0.6f - x1*x1 - y1*y1 - z1*z1 - w1*w1;
+    if (t1 > 0) {
+      int g = ii + i1 + perm[jj + j1 + perm[kk + k1 + perm[ll + l1]]];
+      t1 *= t1;
+      n += t1 * t1 * (gx4[g]*x1 + gy4[g]*y1 + gz4[g]*z1 + gw4[g]*w1);
+    }
+    float t2 = 0.6f - x2*x2 - y2*y2 - z2*z2 - w2*w2;
+    if (t2 > 0) {
+      int g = ii + i2 + perm[jj + j2 + perm[kk + k2 + perm[ll + l2]]];
+      t2 *= t2;
+      n += t2 * t2 * (gx4[g]*x2 + gy4[g]*y2 + gz4[g]*z2 + gw4[g]*w2);
+    }
+    float t3 = 0.6f - x3*x3 - y3*y3 - z3*z3 - w3*w3;
+    if (t3 > 0) {
+      int g = ii + i3 + perm[jj + j3 + perm[kk + k3 + perm[ll + l3]]];
+      t3 *= t3;
+      n += t3 * t3 * (gx4[g]*x3 + gy4[g]*y3 + gz4[g]*z3 + gw4[g]*w3);
+    }
+    float t4 = 0.6f - x4*x4 - y4*y4 - z4*z4 - w4*w4;
+    if (t4 > 0) {
+      int g = ii + 1 + perm[jj + 1 + perm[kk + 1 + perm[ll + 1]]];
+      t4 *= t4;
+      n += t4 * t4 * (gx4[g]*x4 + gy4[g]*y4 + gz4[g]*z4 + gw4[g]*w4);
+    }
+    return 27 * n;
+  }
+}
@@ -1,7 +1,6 @@
 package processing.data;
 
 import java.io.*;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.NoSuchElementException;
@@ -25,7 +24,7 @@ public class DoubleDict {
   protected double[] values;
 
   /** Internal implementation for faster lookups */
-  private HashMap<String, Integer> indices = new HashMap<>();
+  private StringIndex indices = new StringIndex();
 
 
   public DoubleDict() {
@@ -64,7 +63,7 @@ public class DoubleDict {
       if (pieces.length == 2) {
         keys[count] = pieces[0];
         values[count] = PApplet.parseFloat(pieces[1]);
-        indices.put(pieces[0], count);
+        indices.put(keys, count);
         count++;
       }
     }
@@ -82,7 +81,7 @@ public class DoubleDict {
     this.values = values;
     count = keys.length;
     for (int i = 0; i < count; i++) {
-      indices.put(keys[i], i);
+      indices.put(keys, i);
     }
   }
 
@@ -103,7 +102,7 @@ public class DoubleDict {
     for (int i = 0; i < count; i++) {
       keys[i] = (String) pairs[i][0];
       values[i] = (Float) pairs[i][1];
-      indices.put(keys[i], i);
+      indices.put(keys, i);
     }
   }
 
@@ -116,7 +115,7 @@ public class DoubleDict {
     for (Map.Entry<String, Double> e : incoming.entrySet()) {
       keys[index] = e.getKey();
       values[index] = e.getValue();
-      indices.put(keys[index], index);
+      indices.put(keys, index);
       index++;
     }
   }
@@ -164,15 +163,12 @@ public class DoubleDict {
    */
   public void clear() {
     count = 0;
-    indices = new HashMap<>();
+    indices.clear();
   }
 
 
   private void resetIndices() {
-    indices = new HashMap<>(count);
-    for (int i = 0; i < count; i++) {
-      indices.put(keys[i], i);
-    }
+    indices.reset(keys, count);
   }
 
 
@@ -399,8 +395,10 @@ public class DoubleDict {
     if (index < 0 || index >= count) {
       throw new ArrayIndexOutOfBoundsException(index);
     }
+    indices.remove(keys, keys[index]);
     keys[index] = key;
     values[index] = value;
+    indices.put(keys, index);
   }
 
 
@@ -590,8 +588,7 @@ public class DoubleDict {
 
 
   public int index(String what) {
-    Integer found = indices.get(what);
-    return (found == null) ? -1 : found.intValue();
+    return indices.get(keys, what);
   }
 
 
@@ -600,8 +597,8 @@ public class DoubleDict {
       keys = PApplet.expand(keys);
       values = PApplet.expand(values);
     }
-    indices.put(what, Integer.valueOf(count));
     keys[count] = what;
+    indices.put(keys, count);
     values[count] = much;
     count++;
   }
@@ -627,12 +624,12 @@ public class DoubleDict {
       throw new ArrayIndexOutOfBoundsException(index);
     }
     double value = values[index];
-    indices.remove(keys[index]);
+    indices.remove(keys, keys[index]);
     for (int i = index; i < count-1; i++) {
       keys[i] = keys[i+1];
       values[i] = values[i+1];
-      indices.put(keys[i], i);
     }
+    indices.removeIndex(index);
     count--;
     keys[count] = null;
     values[count] = 0;
@@ -794,9 +791,7 @@ public class DoubleDict {
     DoubleDict outgoing = new DoubleDict(count);
     System.arraycopy(keys, 0, outgoing.keys, 0, count);
     System.arraycopy(values, 0, outgoing.values, 0, count);
-    for (int i = 0; i < count; i++) {
-      outgoing.indices.put(keys[i], i);
-    }
+    outgoing.indices.reset(outgoing.keys, count);
     outgoing.count = count;
     return outgoing;
   }
@@ -0,0 +1,164 @@
+package processing.data;
+
+import java.util.Arrays;
+
+
+/**
+ * Open addressing hash table that finds the position of a key in the keys[]
+ * array of IntIntDict and IntFloatDict. Works the same as StringIndex, but
+ * with int keys, so there's no hashCode() or equals() to call either.
+ */
+class IntIndex {
+  /** position in the keys array + 1, or 0 for an empty slot */
+  int[] slots;
+  /** 32 minus log2(slots.length), for the multiplicative hash */
+  int shift;
+  /** number of slots in use */
+  int count;
+
+
+  IntIndex() {
+    this(10);
+  }
+
+
+  IntIndex(int length) {
+    allocate(length);
+  }
+
+
+  private void allocate(int length) {
+    int size = 16;
+    while (size < length * 2) {
+      size <<= 1;
+    }
+    slots = new int[size];
+    shift = 32 - Integer.numberOfTrailingZeros(size);
+    count = 0;
+  }
+
+
+  private int home(int key) {
+    return (key * 0x9E3779B9) >>> shift;
+  }
+
+
+  /** Returns the position of the key in the keys array, or -1. */
+  int get(int[] keys, int key) {
+    int mask = slots.length - 1;
+    for (int slot = home(key); ; slot = (slot + 1) & mask) {
+      int entry = slots[slot];
+      if (entry == 0) {
+        return -1;
+      }
+      if (keys[entry - 1] == key) {
+        return entry - 1;
+      }
+    }
+  }
+
+
+  /**
+   * Add keys[index] at that position, or if the key is already present,
+   * point it at the new position instead.
+   */
+  void put(int[] keys, int index) {
+    int key = keys[index];
+    int mask = slots.length - 1;
+    int slot = home(key);
+    while (slots[slot] != 0) {
+      if (keys[slots[slot] - 1] == key) {
+        slots[slot] = index + 1;
+        return;
+      }
+      slot = (slot + 1) & mask;
+    }
+    slots[slot] = index + 1;
+    if (++count * 2 > slots.length) {
+      grow(keys);
+    }
+  }
+
+
+  private void grow(int[] keys) {
+    int[] old = slots;
+    slots = new int[old.length * 2];
+    shift--;
+    int mask = slots.length - 1;
+    for (int entry : old) {
+      if (entry != 0) {
+        int slot = home(keys[entry - 1]);
+        while (slots[slot] != 0) {
+          slot = (slot + 1) & mask;
+        }
+        slots[slot] = entry;
+      }
+    }
+  }
+
+
+  /**
+   * Remove a key, returning its position, or -1 if it wasn't found.
+   * Call before the keys array is modified, see StringIndex.remove().
+   */
+  int remove(int[] keys, int key) {
+    int mask = slots.length - 1;
+    int slot = home(key);
+    while (true) {
+      int entry = slots[slot];
+      if (entry == 0) {
+        return -1;
+      }
+      if (keys[entry - 1] == key) {
+        break;
+      }
+      slot = (slot + 1) & mask;
+    }
+    int index = slots[slot] - 1;
+
+    int gap = slot;
+    int next = slot;
+    while (true) {
+      next = (next + 1) & mask;
+      int entry = slots[next];
+      if (entry == 0) {
+        break;
+      }
+      int home = home(keys[entry - 1]);
+      boolean stay = (gap <= next) ?
+        (gap < home && home <= next) : (gap < home || home <= next);
+      if (!stay) {
+        slots[gap] = entry;
+        gap = next;
+      }
+    }
+    slots[gap] = 0;
+    count--;
+    return index;
+  }
+
+
+  /** Decrement the positions after 'index', see StringIndex.removeIndex(). */
+  void removeIndex(int index) {
+    for (int slot = 0; slot < slots.length; slot++) {
+      if (slots[slot] > index + 1) {
+        slots[slot]--;
+      }
+    }
+  }
+
+
+  void clear() {
+    Arrays.fill(slots, 0);
+    count = 0;
+  }
+
+
+  /** Rebuild from the first 'length' entries in the keys array. */
+  void reset(int[] keys, int length) {
+    allocate(length);
+    for (int i = 0; i < length; i++) {
+      put(keys, i);
+    }
+  }
+}
@@ -1113,23 +1113,9 @@ public class JSONArray {
 
 
   public boolean write(PrintWriter output, String options) {
-    int indentFactor = 2;
-    if (options != null) {
-      String[] opts = PApplet.split(options, ',');
-      for (String opt : opts) {
-        if (opt.equals("compact")) {
-          indentFactor = -1;
-        } else if (opt.startsWith("indent=")) {
-          indentFactor = PApplet.parseInt(opt.substring(7), -2);
-          if (indentFactor == -2) {
-            throw new IllegalArgumentException("Could not read a number from " + opt);
-          }
-        } else {
-          System.err.println("Ignoring " + opt);
-        }
-      }
-    }
-    output.print(format(indentFactor));
+    int indentFactor = JSONWriter.parseOptions(options);
+    // written directly, rather than building a String with format() first
+    writeInternal(output, indentFactor, 0);
     output.flush();
     return true;
   }
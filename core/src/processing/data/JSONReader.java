@@ -0,0 +1,672 @@
+package processing.data;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+
+/**
+ * Reads JSON one token at a time, rather than loading the whole document
+ * into JSONObject and JSONArray objects first. Call beginArray() and
+ * beginObject() to step inside, hasNext() to see if there are more items,
+ * nextName() to get the key for each value inside an object, and then
+ * nextInt(), nextString(), etc. for the values themselves (or skipValue()
+ * for the ones that aren't needed). Numbers are parsed straight from the
+ * text, so no Integer or Double objects are created along the way.
+ * <p>
+ * More than one value can be read from the same stream, so files with one
+ * JSON object per line (often called JSON Lines or NDJSON) can be handled
+ * one record at a time:
+ * <pre>
+ * JSONReader reader = new JSONReader(createInput("feed.json"));
+ * while (reader.hasNext()) {
+ *   JSONObject record = reader.nextJSONObject();
+ *   ...
+ * }
+ * reader.close();
+ * </pre>
+ * The same goes for a very large array, by using beginArray() and then
+ * reading each element with nextJSONObject(), nextValue(), and friends.
+ *
+ * @nowebref
+ * @see JSONWriter
+ * @see JSONArray
+ * @see JSONObject
+ */
+public class JSONReader implements Closeable {
+  static public final int BEGIN_ARRAY  = 1;
+  static public final int END_ARRAY    = 2;
+  static public final int BEGIN_OBJECT = 3;
+  static public final int END_OBJECT   = 4;
+  static public final int NAME         = 5;
+  static public final int STRING       = 6;
+  static public final int NUMBER       = 7;
+  static public final int BOOLEAN      = 8;
+  static public final int NULL         = 9;
+  /** No more values at the top level (the end of the stream). */
+  static public final int END          = 10;
+
+  // what's expected next for each level of nesting
+  static final int DOCUMENT = 0;
+  static final int EMPTY_ARRAY = 1;
+  static final int ARRAY = 2;
+  static final int EMPTY_OBJECT = 3;
+  static final int OBJECT = 4;
+  /** a name has been read, so a ':' and a value come next */
+  static final int NAME_READ = 5;
+
+  protected Reader reader;
+  char[] buffer = new char[8192];
+  int pos;
+  int limit;
+  int line = 1;
+
+  int[] stack = new int[32];
+  int depth;
+
+  /** the token waiting to be used, or 0 if peek() needs to read one */
+  int peeked;
+  /** the quote character for STRING and NAME tokens */
+  char quote;
+  /** the text of an unquoted value (numbers, true, false, null) */
+  char[] word = new char[32];
+  int wordLength;
+
+  StringBuilder sb = new StringBuilder();
+
+
+  public JSONReader(Reader reader) {
+    this.reader = reader;
+    stack[depth++] = DOCUMENT;
+  }
+
+
+  /**
+   * Read from an InputStream containing UTF-8 text.
+   */
+  public JSONReader(InputStream input) {
+    this(new InputStreamReader(input, StandardCharsets.UTF_8));
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Returns the type of the next token without using it up: one of
+   * BEGIN_ARRAY, END_ARRAY, BEGIN_OBJECT, END_OBJECT, NAME, STRING,
+   * NUMBER, BOOLEAN, NULL, or END.
+   */
+  public int peek() {
+    if (peeked != 0) {
+      return peeked;
+    }
+    int scope = stack[depth - 1];
+    int c;
+    switch (scope) {
+    case EMPTY_ARRAY:
+      stack[depth - 1] = ARRAY;
+      c = nextClean();
+      if (c == ']') {
+        return peeked = END_ARRAY;
+      }
+      unread(c);
+      break;
+
+    case ARRAY:
+      c = nextClean();
+      if (c == ']') {
+        return peeked = END_ARRAY;
+      }
+      if (c != ',' && c != ';') {
+        throw syntaxError("Expected a ',' or ']'");
+      }
+      // an extra comma may appear just before the closing bracket
+      c = nextClean();
+      if (c == ']') {
+        return peeked = END_ARRAY;
+      }
+      unread(c);
+      break;
+
+    case EMPTY_OBJECT:
+    case OBJECT:
+      c = nextClean();
+      if (scope == OBJECT) {
+        if (c == '}') {
+          return peeked = END_OBJECT;
+        }
+        if (c != ',' && c != ';') {
+          throw syntaxError("Expected a ',' or '}'");
+        }
+        c = nextClean();
+      }
+      if (c == '}') {
+        return peeked = END_OBJECT;
+      }
+      if (c != '"' && c != '\'') {
+        throw syntaxError("Expected a quoted name");
+      }
+      quote = (char) c;
+      stack[depth - 1] = NAME_READ;
+      return peeked = NAME;
+
+    case NAME_READ:
+      c = nextClean();
+      if (c != ':') {
+        throw syntaxError("Expected a ':' after a key");
+      }
+      stack[depth - 1] = OBJECT;
+      break;
+
+    case DOCUMENT:
+      c = nextClean();
+      if (c == -1) {
+        return peeked = END;
+      }
+      if (c == '\uFEFF') {  // skip a byte order mark
+        c = nextClean();
+        if (c == -1) {
+          return peeked = END;
+        }
+      }
+      unread(c);
+      break;
+    }
+    return peeked = peekValue();
+  }
+
+
+  private int peekValue() {
+    int c = nextClean();
+    switch (c) {
+    case -1:
+      throw syntaxError("Missing value");
+    case '[':
+      return BEGIN_ARRAY;
+    case '{':
+      return BEGIN_OBJECT;
+    case '"':
+    case '\'':
+      quote = (char) c;
+      return STRING;
+    }
+    unread(c);
+    readWord();
+    if (wordLength == 0) {
+      throw syntaxError("Missing value");
+    }
+    if (wordIs("true") || wordIs("false")) {
+      return BOOLEAN;
+    }
+    if (wordIs("null")) {
+      return NULL;
+    }
+    char b = word[0];
+    if ((b >= '0' && b <= '9') || b == '.' || b == '-' || b == '+') {
+      return NUMBER;
+    }
+    // unquoted text is accepted as a String, same as the JSONObject parser
+    quote = 0;
+    return STRING;
+  }
+
+
+  /**
+   * True if there's another item in the current array or object, or
+   * another value at the top level.
+   */
+  public boolean hasNext() {
+    int p = peek();
+    return p != END_ARRAY && p != END_OBJECT && p != END;
+  }
+
+
+  public void beginArray() {
+    expect(BEGIN_ARRAY, "an array");
+    push(EMPTY_ARRAY);
+  }
+
+
+  public void endArray() {
+    expect(END_ARRAY, "the end of an array");
+    depth--;
+  }
+
+
+  public void beginObject() {
+    expect(BEGIN_OBJECT, "an object");
+    push(EMPTY_OBJECT);
+  }
+
+
+  public void endObject() {
+    expect(END_OBJECT, "the end of an object");
+    depth--;
+  }
+
+
+  /** The key for the next value inside an object. */
+  public String nextName() {
+    expect(NAME, "a name");
+    return readString();
+  }
+
+
+  /**
+   * Read a String value. Numbers and booleans are returned as their text.
+   */
+  public String nextString() {
+    int p = peek();
+    if (p == STRING) {
+      peeked = 0;
+      return (quote == 0) ? new String(word, 0, wordLength) : readString();
+    }
+    if (p == NUMBER || p == BOOLEAN) {
+      peeked = 0;
+      return new String(word, 0, wordLength);
+    }
+    throw unexpected("a string");
+  }
+
+
+  public boolean nextBoolean() {
+    expect(BOOLEAN, "a boolean");
+    return wordLength == 4;  // "true" and not "false"
+  }
+
+
+  /** Read a null value. */
+  public void nextNull() {
+    expect(NULL, "null");
+  }
+
+
+  /**
+   * Read an int value. Throws an exception for numbers outside the range
+   * of an int, rather than wrapping them around.
+   */
+  public int nextInt() {
+    if (peek() == STRING) {
+      return Integer.parseInt(nextString());
+    }
+    long value = nextLong();
+    if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+      throw outOfRange("an int");
+    }
+    return (int) value;
+  }
+
+
+  /**
+   * Read a long value. Throws an exception for numbers outside the range
+   * of a long, rather than wrapping or clamping them.
+   */
+  public long nextLong() {
+    if (peek() == STRING) {
+      return Long.parseLong(nextString());
+    }
+    expect(NUMBER, "a number");
+    if (isWholeNumber()) {
+      long value = 0;
+      boolean negative = word[0] == '-';
+      int start = (negative || word[0] == '+') ? 1 : 0;
+      // accumulate as a negative number so that Long.MIN_VALUE fits
+      for (int i = start; i < wordLength; i++) {
+        int digit = word[i] - '0';
+        if (value < (Long.MIN_VALUE + digit) / 10) {
+          throw outOfRange("a long");
+        }
+        value = value * 10 - digit;
+      }
+      if (negative) {
+        return value;
+      }
+      if (value == Long.MIN_VALUE) {
+        throw outOfRange("a long");
+      }
+      return -value;
+    }
+    // fractions and exponents
+    double value = parseNumber();
+    if (!(value >= -0x1p63 && value < 0x1p63)) {
+      throw outOfRange("a long");
+    }
+    return (long) value;
+  }
+
+
+  public float nextFloat() {
+    return (float) nextDouble();
+  }
+
+
+  public double nextDouble() {
+    if (peek() == STRING) {
+      return Double.parseDouble(nextString());
+    }
+    expect(NUMBER, "a number");
+    if (isWholeNumber() && wordLength < 16) {
+      // small enough to be exact, so skip the String
+      long value = 0;
+      boolean negative = word[0] == '-';
+      for (int i = (negative || word[0] == '+') ? 1 : 0; i < wordLength; i++) {
+        value = value * 10 + (word[i] - '0');
+      }
+      return negative ? -value : value;
+    }
+    return parseNumber();
+  }
+
+
+  private double parseNumber() {
+    try {
+      return Double.parseDouble(new String(word, 0, wordLength));
+    } catch (NumberFormatException e) {
+      throw syntaxError(new String(word, 0, wordLength) + " is not a number");
+    }
+  }
+
+
+  private boolean isWholeNumber() {
+    boolean digits = false;
+    for (int i = 0; i < wordLength; i++) {
+      char c = word[i];
+      if (c >= '0' && c <= '9') {
+        digits = true;
+      } else if (!(i == 0 && (c == '-' || c == '+'))) {
+        return false;
+      }
+    }
+    return digits;
+  }
+
+
+  /**
+   * Skip the next value, including everything inside it if it's an array
+   * or an object. Also skips the name and value of the next item in an
+   * object if the name hasn't been read yet.
+   */
+  public void skipValue() {
+    if (peek() == NAME) {
+      peeked = 0;
+      skipString();
+    }
+    int count = 0;
+    do {
+      int p = peek();
+      switch (p) {
+      case BEGIN_ARRAY:
+        push(EMPTY_ARRAY);
+        count++;
+        break;
+      case BEGIN_OBJECT:
+        push(EMPTY_OBJECT);
+        count++;
+        break;
+      case END_ARRAY:
+      case END_OBJECT:
+        if (count == 0) {
+          throw unexpected("a value");
+        }
+        depth--;
+        count--;
+        break;
+      case NAME:
+        skipString();
+        break;
+      case STRING:
+        if (quote != 0) {
+          skipString();
+        }
+        break;
+      case END:
+        throw unexpected("a value");
+      }
+      peeked = 0;
+    } while (count > 0);
+  }
+
+
+  /**
+   * Read the next value as a JSONObject, JSONArray, String, Integer, Long,
+   * Double, Boolean, or JSONObject.NULL, the same types as the JSONObject
+   * and JSONArray parsers.
+   */
+  public Object nextValue() {
+    switch (peek()) {
+    case BEGIN_ARRAY:
+      return nextJSONArray();
+    case BEGIN_OBJECT:
+      return nextJSONObject();
+    case STRING:
+      return nextString();
+    case NUMBER:
+    case BOOLEAN:
+    case NULL:
+      peeked = 0;
+      return JSONObject.stringToValue(new String(word, 0, wordLength));
+    }
+    throw unexpected("a value");
+  }
+
+
+  /** Read the next value, which must be an object, into a JSONObject. */
+  public JSONObject nextJSONObject() {
+    JSONObject outgoing = new JSONObject();
+    beginObject();
+    while (hasNext()) {
+      String key = nextName();
+      if (outgoing.hasKey(key)) {
+        throw syntaxError("Duplicate key \"" + key + "\"");
+      }
+      outgoing.put(key, nextValue());
+    }
+    endObject();
+    return outgoing;
+  }
+
+
+  /** Read the next value, which must be an array, into a JSONArray. */
+  public JSONArray nextJSONArray() {
+    JSONArray outgoing = new JSONArray();
+    beginArray();
+    while (hasNext()) {
+      outgoing.append(nextValue());
+    }
+    endArray();
+    return outgoing;
+  }
+
+
+  public void close() throws IOException {
+    peeked = END;
+    depth = 1;
+    stack[0] = DOCUMENT;
+    reader.close();
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  private void expect(int type, String what) {
+    if (peek() != type) {
+      throw unexpected(what);
+    }
+    peeked = 0;
+  }
+
+
+  private void push(int scope) {
+    if (depth == stack.length) {
+      stack = Arrays.copyOf(stack, depth * 2);
+    }
+    stack[depth++] = scope;
+  }
+
+
+  /** Returns the next character, or -1 at the end of the input. */
+  private int read() {
+    if (pos == limit) {
+      try {
+        limit = reader.read(buffer, 0, buffer.length);
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+      if (limit <= 0) {
+        limit = 0;
+        pos = 0;
+        return -1;
+      }
+      pos = 0;
+    }
+    return buffer[pos++];
+  }
+
+
+  /** Step back over the character from read(), unless it was the end. */
+  private void unread(int c) {
+    if (c != -1) {
+      pos--;
+    }
+  }
+
+
+  /** Next character that isn't whitespace, or -1 at the end. */
+  private int nextClean() {
+    while (true) {
+      int c = read();
+      if (c == '\n') {
+        line++;
+      } else if (c == -1 || c > ' ') {
+        return c;
+      }
+    }
+  }
+
+
+  /** Read an unquoted value into word[], stopping before the delimiter. */
+  private void readWord() {
+    wordLength = 0;
+    while (true) {
+      int c = read();
+      if (c < ' ' || ",:]}/\\\"[{;=#".indexOf(c) >= 0) {
+        unread(c);
+        break;
+      }
+      if (wordLength == word.length) {
+        word = Arrays.copyOf(word, wordLength * 2);
+      }
+      word[wordLength++] = (char) c;
+    }
+    // trailing spaces aren't part of the value
+    while (wordLength > 0 && word[wordLength - 1] == ' ') {
+      wordLength--;
+    }
+  }
+
+
+  private boolean wordIs(String s) {
+    if (wordLength != s.length()) {
+      return false;
+    }
+    for (int i = 0; i < wordLength; i++) {
+      if (Character.toLowerCase(word[i]) != s.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+
+  /** Read the rest of a quoted string, after the opening quote. */
+  private String readString() {
+    sb.setLength(0);
+    while (true) {
+      int c = read();
+      switch (c) {
+      case -1:
+      case '\n':
+      case '\r':
+        throw syntaxError("Unterminated string");
+      case '\\':
+        sb.append(readEscape());
+        break;
+      default:
+        if (c == quote) {
+          return sb.toString();
+        }
+        sb.append((char) c);
+      }
+    }
+  }
+
+
+  private void skipString() {
+    while (true) {
+      int c = read();
+      switch (c) {
+      case -1:
+      case '\n':
+      case '\r':
+        throw syntaxError("Unterminated string");
+      case '\\':
+        readEscape();
+        break;
+      default:
+        if (c == quote) {
+          return;
+        }
+      }
+    }
+  }
+
+
+  private char readEscape() {
+    int c = read();
+    switch (c) {
+    case 'b': return '\b';
+    case 't': return '\t';
+    case 'n': return '\n';
+    case 'f': return '\f';
+    case 'r': return '\r';
+    case 'u':
+      int value = 0;
+      for (int i = 0; i < 4; i++) {
+        int digit = JSONTokener.dehexchar((char) read());
+        if (digit == -1) {
+          throw syntaxError("Illegal escape.");
+        }
+        value = (value << 4) | digit;
+      }
+      return (char) value;
+    case '"':
+    case '\'':
+    case '\\':
+    case '/':
+      return (char) c;
+    }
+    throw syntaxError("Illegal escape.");
+  }
+
+
+  private RuntimeException unexpected(String what) {
+    String[] names = {
+      null, "'['", "']'", "'{'", "'}'", "a name", "a string",
+      "a number", "a boolean", "null", "the end of the input"
+    };
+    return syntaxError("Expected " + what + " but found " + names[peek()]);
+  }
+
+
+  // for the number that was just read
+  private RuntimeException outOfRange(String type) {
+    return syntaxError(new String(word, 0, wordLength) + " is not " + type);
+  }
+
+
+  private RuntimeException syntaxError(String message) {
+    return new RuntimeException(message + " on line " + line);
+  }
+}
@@ -0,0 +1,358 @@
+package processing.data;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import processing.core.PApplet;
+
+
+/**
+ * Writes JSON as it's produced, instead of building a JSONObject or
+ * JSONArray and then formatting all of it as one large String. Use
+ * beginArray() and beginObject() to start an array or an object (and
+ * endArray() or endObject() to finish it), name() before each value inside
+ * an object, and value() for the values themselves:
+ * <pre>
+ * JSONWriter writer = new JSONWriter(createOutput("points.json"), "compact");
+ * writer.beginArray();
+ * for (PVector p : points) {
+ *   writer.beginObject();
+ *   writer.name("x").value(p.x);
+ *   writer.name("y").value(p.y);
+ *   writer.endObject();
+ * }
+ * writer.endArray();
+ * writer.close();
+ * </pre>
+ * Values written one after another at the top level are put on separate
+ * lines, so with the "compact" option, the output has one value per line
+ * (the format read by JSONReader and other JSON Lines tools).
+ *
+ * @nowebref
+ * @see JSONReader
+ * @see JSONArray
+ * @see JSONObject
+ */
+public class JSONWriter implements Closeable, Flushable {
+  // same as the scopes in JSONReader
+  static final int DOCUMENT = 0;
+  static final int EMPTY_ARRAY = 1;
+  static final int ARRAY = 2;
+  static final int EMPTY_OBJECT = 3;
+  static final int OBJECT = 4;
+  static final int NAME_READ = 5;
+
+  protected Writer writer;
+  /** spaces per level of indent, or -1 for no whitespace at all */
+  int indentFactor;
+
+  int[] stack = new int[32];
+  int depth;
+  /** true once something has been written at the top level */
+  boolean started;
+
+
+  public JSONWriter(Writer writer) {
+    this(writer, null);
+  }
+
+
+  /**
+   * @param options "compact" and "indent=N", as with JSONObject.save()
+   */
+  public JSONWriter(Writer writer, String options) {
+    this.writer = writer;
+    indentFactor = parseOptions(options);
+    stack[depth++] = DOCUMENT;
+  }
+
+
+  /**
+   * Write UTF-8 text to an OutputStream.
+   */
+  public JSONWriter(OutputStream output) {
+    this(output, null);
+  }
+
+
+  public JSONWriter(OutputStream output, String options) {
+    this(new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8)),
+         options);
+  }
+
+
+  /**
+   * Get the number of spaces to indent from options like those used by
+   * save() and write(), or -1 for compact output.
+   */
+  static int parseOptions(String options) {
+    int indentFactor = 2;
+    if (options != null) {
+      String[] opts = PApplet.split(options, ',');
+      for (String opt : opts) {
+        if (opt.equals("compact")) {
+          indentFactor = -1;
+        } else if (opt.startsWith("indent=")) {
+          indentFactor = PApplet.parseInt(opt.substring(7), -2);
+          if (indentFactor == -2) {
+            throw new IllegalArgumentException("Could not read a number from " + opt);
+          }
+        } else {
+          System.err.println("Ignoring " + opt);
+        }
+      }
+    }
+    return indentFactor;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  public JSONWriter beginArray() {
+    beforeValue();
+    write('[');
+    push(EMPTY_ARRAY);
+    return this;
+  }
+
+
+  public JSONWriter endArray() {
+    return close(EMPTY_ARRAY, ARRAY, ']');
+  }
+
+
+  public JSONWriter beginObject() {
+    beforeValue();
+    write('{');
+    push(EMPTY_OBJECT);
+    return this;
+  }
+
+
+  public JSONWriter endObject() {
+    return close(EMPTY_OBJECT, OBJECT, '}');
+  }
+
+
+  /** Set the key for the next value inside an object. */
+  public JSONWriter name(String name) {
+    if (name == null) {
+      throw new RuntimeException("Null key.");
+    }
+    int scope = stack[depth - 1];
+    if (scope != EMPTY_OBJECT && scope != OBJECT) {
+      throw new RuntimeException("name() can only be used inside an object");
+    }
+    if (scope == OBJECT) {
+      write(',');
+    }
+    newline(depth - 1);
+    try {
+      JSONObject.quote(name, writer);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    write(':');
+    if (indentFactor > 0) {
+      write(' ');
+    }
+    stack[depth - 1] = NAME_READ;
+    return this;
+  }
+
+
+  public JSONWriter value(String value) {
+    if (value == null) {
+      return nullValue();
+    }
+    beforeValue();
+    try {
+      JSONObject.quote(value, writer);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return this;
+  }
+
+
+  public JSONWriter value(int value) {
+    beforeValue();
+    write(String.valueOf(value));
+    return this;
+  }
+
+
+  public JSONWriter value(long value) {
+    beforeValue();
+    write(String.valueOf(value));
+    return this;
+  }
+
+
+  /**
+   * @throws RuntimeException if the value is NaN or infinite
+   */
+  public JSONWriter value(float value) {
+    beforeValue();
+    write(JSONObject.numberToString(Float.valueOf(value)));
+    return this;
+  }
+
+
+  /**
+   * @throws RuntimeException if the value is NaN or infinite
+   */
+  public JSONWriter value(double value) {
+    beforeValue();
+    write(JSONObject.numberToString(Double.valueOf(value)));
+    return this;
+  }
+
+
+  public JSONWriter value(boolean value) {
+    beforeValue();
+    write(value ? "true" : "false");
+    return this;
+  }
+
+
+  /** Write an entire JSONObject as the next value. */
+  public JSONWriter value(JSONObject value) {
+    return writeTree(value);
+  }
+
+
+  /** Write an entire JSONArray as the next value. */
+  public JSONWriter value(JSONArray value) {
+    return writeTree(value);
+  }
+
+
+  public JSONWriter nullValue() {
+    beforeValue();
+    write("null");
+    return this;
+  }
+
+
+  public void flush() {
+    try {
+      writer.flush();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+
+  /**
+   * Finish any output and close the underlying stream.
+   * @throws RuntimeException if an array or object hasn't been ended
+   */
+  public void close() throws IOException {
+    if (depth > 1) {
+      throw new RuntimeException("Unfinished array or object");
+    }
+    if (started) {
+      writer.write('\n');
+    }
+    writer.close();
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  private JSONWriter writeTree(Object value) {
+    if (value == null) {
+      return nullValue();
+    }
+    beforeValue();
+    try {
+      int indent = (indentFactor == -1) ? 0 : (depth - 1) * indentFactor;
+      JSONObject.writeValue(writer, value, indentFactor, indent);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return this;
+  }
+
+
+  /** Add a comma, newline, and indent as needed before a value. */
+  private void beforeValue() {
+    switch (stack[depth - 1]) {
+    case DOCUMENT:
+      // multiple top-level values go on separate lines
+      if (started) {
+        write('\n');
+      }
+      started = true;
+      break;
+    case ARRAY:
+      write(',');
+      // fall through
+    case EMPTY_ARRAY:
+      stack[depth - 1] = ARRAY;
+      newline(depth - 1);
+      break;
+    case NAME_READ:
+      stack[depth - 1] = OBJECT;
+      break;
+    default:
+      throw new RuntimeException("Use name() before each value in an object");
+    }
+  }
+
+
+  private JSONWriter close(int empty, int nonempty, char bracket) {
+    int scope = stack[depth - 1];
+    if (scope != empty && scope != nonempty) {
+      throw new RuntimeException("Nothing to end with '" + bracket + "'");
+    }
+    depth--;
+    if (scope == nonempty) {
+      newline(depth - 1);
+    }
+    write(bracket);
+    return this;
+  }
+
+
+  private void newline(int level) {
+    if (indentFactor != -1) {
+      write('\n');
+      try {
+        JSONObject.indent(writer, level * indentFactor);
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+
+  private void push(int scope) {
+    if (depth == stack.length) {
+      stack = Arrays.copyOf(stack, depth * 2);
+    }
+    stack[depth++] = scope;
+  }
+
+
+  private void write(char c) {
+    try {
+      writer.write(c);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+
+  private void write(String s) {
+    try {
+      writer.write(s);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
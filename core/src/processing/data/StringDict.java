@@ -1,7 +1,6 @@
 package processing.data;
 
 import java.io.*;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
@@ -24,7 +23,7 @@ public class StringDict {
   protected String[] values;
 
   /** Internal implementation for faster lookups */
-  private HashMap<String, Integer> indices = new HashMap<>();
+  private StringIndex indices = new StringIndex();
 
 
   public StringDict() {
@@ -64,7 +63,7 @@ public class StringDict {
       if (pieces.length == 2) {
         keys[count] = pieces[0];
         values[count] = pieces[1];
-        indices.put(keys[count], count);
+        indices.put(keys, count);
         count++;
       }
     }
@@ -82,7 +81,7 @@ public class StringDict {
     this.values = values;
     count = keys.length;
     for (int i = 0; i < count; i++) {
-      indices.put(keys[i], i);
+      indices.put(keys, i);
     }
   }
 
@@ -104,7 +103,7 @@ public class StringDict {
     for (int i = 0; i < count; i++) {
       keys[i] = pairs[i][0];
       values[i] = pairs[i][1];
-      indices.put(keys[i], i);
+      indices.put(keys, i);
     }
   }
 
@@ -169,15 +168,12 @@ public class StringDict {
    */
   public void clear() {
     count = 0;
-    indices = new HashMap<>();
+    indices.clear();
   }
 
 
   private void resetIndices() {
-    indices = new HashMap<>(count);
-    for (int i = 0; i < count; i++) {
-      indices.put(keys[i], i);
-    }
+    indices.reset(keys, count);
   }
 
 
@@ -399,14 +395,15 @@ public class StringDict {
     if (index < 0 || index >= count) {
       throw new ArrayIndexOutOfBoundsException(index);
     }
+    indices.remove(keys, keys[index]);
     keys[index] = key;
     values[index] = value;
+    indices.put(keys, index);
   }
 
 
   public int index(String what) {
-    Integer found = indices.get(what);
-    return (found == null) ? -1 : found.intValue();
+    return indices.get(keys, what);
   }
 
 
@@ -424,8 +421,8 @@ public class StringDict {
       keys = PApplet.expand(keys);
       values = PApplet.expand(values);
     }
-    indices.put(key, Integer.valueOf(count));
     keys[count] = key;
+    indices.put(keys, count);
     values[count] = value;
     count++;
   }
@@ -450,12 +447,12 @@ public class StringDict {
       throw new ArrayIndexOutOfBoundsException(index);
     }
     String value = values[index];
-    indices.remove(keys[index]);
+    indices.remove(keys, keys[index]);
     for (int i = index; i < count-1; i++) {
       keys[i] = keys[i+1];
       values[i] = values[i+1];
-      indices.put(keys[i], i);
     }
+    indices.removeIndex(index);
     count--;
     keys[count] = null;
     values[count] = null;
@@ -558,9 +555,7 @@ public class StringDict {
     StringDict outgoing = new StringDict(count);
     System.arraycopy(keys, 0, outgoing.keys, 0, count);
     System.arraycopy(values, 0, outgoing.values, 0, count);
-    for (int i = 0; i < count; i++) {
-      outgoing.indices.put(keys[i], i);
-    }
+    outgoing.indices.reset(outgoing.keys, count);
     outgoing.count = count;
     return outgoing;
   }
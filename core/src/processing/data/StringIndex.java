@@ -0,0 +1,192 @@
+package processing.data;
+
+import java.util.Arrays;
+
+
+/**
+ * Open addressing hash table that finds the position of a key in the keys[]
+ * array of IntDict, FloatDict, StringDict, and friends. Only the positions
+ * and hash codes are stored (in a pair of int arrays), with the keys compared
+ * against the array belonging to the dictionary, so lookups don't box an
+ * Integer and adding an entry doesn't allocate a HashMap.Node.
+ */
+class StringIndex {
+  /** position in the keys array + 1, or 0 for an empty slot */
+  int[] slots;
+  /** hash code of the key in each slot, checked before calling equals() */
+  int[] hashes;
+  /** 32 minus log2(slots.length), for the multiplicative hash */
+  int shift;
+  /** number of slots in use */
+  int count;
+
+
+  StringIndex() {
+    this(10);
+  }
+
+
+  StringIndex(int length) {
+    allocate(length);
+  }
+
+
+  private void allocate(int length) {
+    int size = 16;
+    while (size < length * 2) {
+      size <<= 1;
+    }
+    slots = new int[size];
+    hashes = new int[size];
+    shift = 32 - Integer.numberOfTrailingZeros(size);
+    count = 0;
+  }
+
+
+  static private int hash(String key) {
+    return (key == null) ? 0 : key.hashCode();
+  }
+
+
+  private int home(int hash) {
+    return (hash * 0x9E3779B9) >>> shift;
+  }
+
+
+  static private boolean same(String a, String b) {
+    return a == b || (a != null && a.equals(b));
+  }
+
+
+  /** Returns the position of the key in the keys array, or -1. */
+  int get(String[] keys, String key) {
+    int hash = hash(key);
+    int mask = slots.length - 1;
+    for (int slot = home(hash); ; slot = (slot + 1) & mask) {
+      int entry = slots[slot];
+      if (entry == 0) {
+        return -1;
+      }
+      if (hashes[slot] == hash && same(keys[entry - 1], key)) {
+        return entry - 1;
+      }
+    }
+  }
+
+
+  /**
+   * Add keys[index] at that position, or if the key is already present,
+   * point it at the new position instead (like HashMap.put() would).
+   */
+  void put(String[] keys, int index) {
+    String key = keys[index];
+    int hash = hash(key);
+    int mask = slots.length - 1;
+    int slot = home(hash);
+    while (slots[slot] != 0) {
+      if (hashes[slot] == hash && same(keys[slots[slot] - 1], key)) {
+        slots[slot] = index + 1;
+        return;
+      }
+      slot = (slot + 1) & mask;
+    }
+    slots[slot] = index + 1;
+    hashes[slot] = hash;
+    if (++count * 2 > slots.length) {
+      grow();
+    }
+  }
+
+
+  private void grow() {
+    int[] oldSlots = slots;
+    int[] oldHashes = hashes;
+    slots = new int[oldSlots.length * 2];
+    hashes = new int[slots.length];
+    shift--;
+    int mask = slots.length - 1;
+    for (int i = 0; i < oldSlots.length; i++) {
+      if (oldSlots[i] != 0) {
+        int slot = home(oldHashes[i]);
+        while (slots[slot] != 0) {
+          slot = (slot + 1) & mask;
+        }
+        slots[slot] = oldSlots[i];
+        hashes[slot] = oldHashes[i];
+      }
+    }
+  }
+
+
+  /**
+   * Remove a key, returning its position, or -1 if it wasn't found. Call
+   * this before the key is removed from (or replaced in) the keys array.
+   */
+  int remove(String[] keys, String key) {
+    int hash = hash(key);
+    int mask = slots.length - 1;
+    int slot = home(hash);
+    while (true) {
+      int entry = slots[slot];
+      if (entry == 0) {
+        return -1;
+      }
+      if (hashes[slot] == hash && same(keys[entry - 1], key)) {
+        break;
+      }
+      slot = (slot + 1) & mask;
+    }
+    int index = slots[slot] - 1;
+
+    // Fill the gap so that lookups for keys further along don't stop early
+    int gap = slot;
+    int next = slot;
+    while (true) {
+      next = (next + 1) & mask;
+      int entry = slots[next];
+      if (entry == 0) {
+        break;
+      }
+      int home = home(hashes[next]);
+      // can move back unless its home is cyclically within (gap, next]
+      boolean stay = (gap <= next) ?
+        (gap < home && home <= next) : (gap < home || home <= next);
+      if (!stay) {
+        slots[gap] = entry;
+        hashes[gap] = hashes[next];
+        gap = next;
+      }
+    }
+    slots[gap] = 0;
+    count--;
+    return index;
+  }
+
+
+  /**
+   * Decrement the positions after 'index', to match a keys array where
+   * the entry at 'index' has been removed and the rest moved down.
+   */
+  void removeIndex(int index) {
+    for (int slot = 0; slot < slots.length; slot++) {
+      if (slots[slot] > index + 1) {
+        slots[slot]--;
+      }
+    }
+  }
+
+
+  void clear() {
+    Arrays.fill(slots, 0);
+    count = 0;
+  }
+
+
+  /** Rebuild from the first 'length' entries in the keys array. */
+  void reset(String[] keys, int length) {
+    allocate(length);
+    for (int i = 0; i < length; i++) {
+      put(keys, i);
+    }
+  }
+}
@@ -25,14 +25,22 @@ package processing.data;
 
 import java.io.*;
 import java.lang.reflect.*;
+import java.nio.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.Charset;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Types;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
@@ -83,6 +91,10 @@ public class Table {
 
   protected Object[] columns;  // [column]
 
+  // true if some numeric columns are IntBuffer, FloatBuffer, etc. objects
+  // that are memory-mapped from a file, see loadColumnar()
+  protected boolean mapped;
+
   // accessible for advanced users
   static public final int STRING = 0;
   static public final int INT = 1;
@@ -92,6 +104,11 @@ public class Table {
   static public final int CATEGORY = 5;
   int[] columnTypes;
 
+  // kinds of index for createIndex(), can be combined with |
+  static public final int HASH = 1;
+  static public final int SORTED = 2;
+  ColumnIndex[] indexes;  // [column], null until an index is created
+
   protected RowIterator rowIterator;
 
   // 0 for doubling each time, otherwise the number of rows to increment on
@@ -121,10 +138,8 @@ public class Table {
    * @nowebref
    */
   public Table(File file, String options) throws IOException {
-    // uses createInput() to handle .gz (and eventually .bz2) files
     init();
-    parse(PApplet.createInput(file),
-          extensionOptions(true, file.getName(), options));
+    parse(file, extensionOptions(true, file.getName(), options));
   }
 
   /**
@@ -142,6 +157,7 @@ public class Table {
    * <li>tsv - parse the table as tab-separated values
    * <li>newlines - this CSV file contains newlines inside individual cells
    * <li>header - this table has a header (title) row
+   * <li>threads=N - parse using N threads (only when loading from a File)
    * </ul>
    *
    * @nowebref
@@ -263,6 +279,70 @@ public class Table {
   }
 
 
+  public Table typedParse(File file, String options) throws IOException {
+    Table table = new Table();
+    table.setColumnTypes(this);
+    table.parse(file, extensionOptions(true, file.getName(), options));
+    return table;
+  }
+
+
+  /**
+   * Receives each row read by streamRows(). The TableRow is re-used for
+   * every row in the file, so copy out any values that need to be kept.
+   */
+  public interface RowHandler {
+    public void handle(TableRow row);
+  }
+
+
+  /**
+   * @nowebref
+   */
+  public int streamRows(File file, String options,
+                        RowHandler handler) throws IOException {
+    return streamRows(PApplet.createInput(file),
+                      extensionOptions(true, file.getName(), options),
+                      handler);
+  }
+
+
+  /**
+   * Read a CSV or TSV file one row at a time, passing each row to a handler
+   * instead of adding it to a table. Only a single row is held in memory, so
+   * this can be used to aggregate files that are far larger than the heap.
+   * The column types (and titles, unless the "header" option is used) of
+   * this table are used while parsing, but this table is not modified.
+   *
+   * @nowebref
+   * @return the number of rows that were read, not counting the header
+   */
+  public int streamRows(InputStream input, String options,
+                        RowHandler handler) throws IOException {
+    return createEmpty().parse(input, options, handler);
+  }
+
+
+  /**
+   * Create a table with no rows, but the same column titles, column types,
+   * and missing values as this one.
+   */
+  protected Table createEmpty() {
+    Table table = new Table();
+    table.setColumnTypes(columnTypes);
+    if (columnTitles != null) {
+      table.setColumnTitles(columnTitles.clone());
+    }
+    table.missingString = missingString;
+    table.missingInt = missingInt;
+    table.missingLong = missingLong;
+    table.missingFloat = missingFloat;
+    table.missingDouble = missingDouble;
+    table.missingCategory = missingCategory;
+    return table;
+  }
+
+
   protected void init() {
     columns = new Object[0];
     columnTypes = new int[0];
@@ -303,7 +383,7 @@ public class Table {
 
 
   static final String[] loadExtensions = { "csv", "tsv", "ods", "bin" };
-  static final String[] saveExtensions = { "csv", "tsv", "ods", "bin", "html" };
+  static final String[] saveExtensions = { "csv", "tsv", "ods", "bin", "html", "columnar" };
 
   static public String extensionOptions(boolean loading, String filename, String options) {
     String extension = PApplet.checkExtension(filename);
@@ -325,6 +405,17 @@ public class Table {
 
 
   protected void parse(InputStream input, String options) throws IOException {
+    parse(input, options, null);
+  }
+
+
+  /**
+   * @param handler if not null, each row is passed to the handler as it is
+   *                read, rather than being stored in this table
+   * @return the number of rows that were read
+   */
+  protected int parse(InputStream input, String options,
+                      RowHandler handler) throws IOException {
 //    boolean awfulCSV = false;
     boolean header = false;
     String extension = null;
@@ -348,7 +439,8 @@ public class Table {
           //awfulCSV = true;
           //extension = "csv";
           throw new IllegalArgumentException("The 'newlines' option is no longer necessary.");
-        } else if (opt.equals("bin")) {
+        } else if (opt.equals("bin") || opt.equals("columnar")) {
+          // the columnar format is detected automatically by loadBinary()
           binary = true;
           extension = "bin";
         } else if (opt.equals("header")) {
@@ -359,6 +451,8 @@ public class Table {
           // ignore option, this is only handled by PApplet
         } else if (opt.startsWith("encoding=")) {
           encoding = opt.substring(9);
+        } else if (opt.startsWith("threads=")) {
+          // ignore option, only used by parse(File)
         } else {
           throw new IllegalArgumentException("'" + opt + "' is not a valid option for loading a Table");
         }
@@ -369,6 +463,10 @@ public class Table {
       throw new IllegalArgumentException("No extension specified for this Table");
     }
 
+    if (handler != null && (binary || extension.equals("ods"))) {
+      throw new IllegalArgumentException("Only CSV and TSV files can be streamed");
+    }
+
     if (binary) {
       loadBinary(input);
 
@@ -376,16 +474,9 @@ public class Table {
       odsParse(input, worksheet, header);
 
     } else {
-      InputStreamReader isr = new InputStreamReader(input, encoding);
-      BufferedReader reader = new BufferedReader(isr);
-
-      // strip out the Unicode BOM, if present
-      reader.mark(1);
-      int c = reader.read();
-      // if not the BOM, back up to the beginning again
-      if (c != '\uFEFF') {
-        reader.reset();
-      }
+      // No BufferedReader here, RecordScanner does its own buffering
+      // (and also strips the Unicode BOM, if present)
+      Reader reader = new InputStreamReader(input, encoding);
 
       /*
        if (awfulCSV) {
@@ -396,58 +487,387 @@ public class Table {
         parseBasic(reader, header, false);
       }
       */
-      parseBasic(reader, header, "tsv".equals(extension));
+      return parseRecords(reader, header, "tsv".equals(extension), handler);
+    }
+    return getRowCount();
+  }
+
+
+  protected void parse(File file, String options) throws IOException {
+    int threads = 1;
+    String extension = null;
+    String encoding = "UTF-8";
+    if (options != null) {
+      for (String opt : PApplet.trim(PApplet.split(options, ','))) {
+        if (opt.equals("tsv") || opt.equals("csv") ||
+            opt.equals("ods") || opt.equals("bin")) {
+          extension = opt;
+        } else if (opt.equals("columnar")) {
+          extension = "bin";
+        } else if (opt.startsWith("encoding=")) {
+          encoding = opt.substring(9);
+        } else if (opt.startsWith("threads=")) {
+          threads = PApplet.parseInt(opt.substring(8), 1);
+        }
+      }
+    }
+    // Splitting the file means finding quotes and newlines without decoding
+    // it first, which only works with ASCII-compatible encodings. Compressed
+    // files can't be split at all.
+    if (threads > 1 &&
+        ("csv".equals(extension) || "tsv".equals(extension)) &&
+        !file.getName().toLowerCase().endsWith(".gz") &&
+        isAsciiCompatible(encoding)) {
+      parseParallel(file, options, "tsv".equals(extension), threads);
+
+    } else if ("bin".equals(extension) && isColumnar(file)) {
+      RandomAccessFile raf = new RandomAccessFile(file, "r");
+      try {
+        raf.readInt();  // skip the magic number
+        loadColumnar(raf.getChannel(), true);
+      } finally {
+        raf.close();  // mapped buffers remain valid after closing
+      }
+
+    } else {
+      // uses createInput() to handle .gz (and eventually .bz2) files
+      parse(PApplet.createInput(file), options);
+    }
+  }
+
+
+  static boolean isColumnar(File file) throws IOException {
+    if (file.length() < 4) {
+      return false;
+    }
+    DataInputStream input = new DataInputStream(new FileInputStream(file));
+    try {
+      return input.readInt() == COLUMNAR_MAGIC;
+    } finally {
+      input.close();
+    }
+  }
+
+
+  /** Largest chunk to read into a single byte array when splitting a file. */
+  static final long MAX_CHUNK = 1 << 30;
+
+
+  static boolean isAsciiCompatible(String encoding) {
+    String name = Charset.forName(encoding).name();
+    return (name.equals("UTF-8") || name.equals("US-ASCII") ||
+            name.equals("ISO-8859-1") || name.equals("windows-1252"));
+  }
+
+
+  /**
+   * Split a CSV or TSV file into chunks on record boundaries, parse each
+   * chunk into its own table on a ForkJoinPool, then copy the column arrays
+   * of those tables (in file order) into this one. The rows and categories
+   * end up in the same order as when the file is read on a single thread.
+   */
+  protected void parseParallel(File file, String options, boolean tsv,
+                               int threads) throws IOException {
+    // Only the first chunk has a header row
+    StringList list = new StringList(PApplet.trim(PApplet.split(options, ',')));
+    list.removeValue("header");
+    final String chunkOptions = list.join(",");
+    final String firstOptions = options;
+
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      final FileChannel channel = raf.getChannel();
+      long length = channel.size();
+      // several chunks per thread so that uneven chunks balance out,
+      // and enough of them that each fits in a byte array
+      int count = (int) Math.min(threads * 4, Math.max(1, length >> 20));
+      count = (int) Math.max(count, (length + MAX_CHUNK - 1) / MAX_CHUNK);
+      final long[] bounds = findRecordBounds(pool, channel, length, count, tsv);
+
+      List<Future<Table>> results = new ArrayList<>();
+      for (int i = 0; i < count; i++) {
+        final int chunk = i;
+        results.add(pool.submit(new Callable<Table>() {
+          public Table call() throws IOException {
+            long size = bounds[chunk + 1] - bounds[chunk];
+            if (size > Integer.MAX_VALUE - 8) {
+              // only when a single record is larger than MAX_CHUNK
+              throw new IOException("The record starting at byte " +
+                                    bounds[chunk] + " is too large");
+            }
+            byte[] data = new byte[(int) size];
+            readFully(channel, ByteBuffer.wrap(data), bounds[chunk]);
+            Table table = createEmpty();
+            // Rows that are short a CATEGORY field are left with code 0,
+            // which means the table's first category. That's only known
+            // once the chunks are merged, so hold the place with a null.
+            for (int col = 0; col < table.getColumnCount(); col++) {
+              if (table.columnTypes[col] == CATEGORY) {
+                table.columnCategories[col].setCategory(0, null);
+              }
+            }
+            try {
+              table.parse(new ByteArrayInputStream(data),
+                          chunk == 0 ? firstOptions : chunkOptions);
+            } catch (RuntimeException e) {
+              throw new RuntimeException("Error reading table in the chunk " +
+                                         "starting at byte " + bounds[chunk], e);
+            }
+            return table;
+          }
+        }));
+      }
+      Table[] tables = new Table[count];
+      for (int i = 0; i < count; i++) {
+        tables[i] = results.get(i).get();
+      }
+      merge(tables);
+
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new RuntimeException(cause);
+
+    } finally {
+      pool.shutdown();
+      raf.close();
     }
   }
 
 
+  /**
+   * Find the offsets of 'count' chunks of a file, each starting at the
+   * beginning of a record. For CSV, the quotes in each chunk are counted
+   * first (in parallel), so that the scan for the next newline knows
+   * whether it's starting from inside a quoted field.
+   * @return count + 1 offsets, where chunk i covers [bounds[i], bounds[i+1])
+   */
+  static long[] findRecordBounds(ForkJoinPool pool, final FileChannel channel,
+                                 final long length, final int count,
+                                 final boolean tsv) throws InterruptedException,
+                                                           ExecutionException {
+    final long[] targets = new long[count + 1];
+    for (int i = 0; i <= count; i++) {
+      targets[i] = length * i / count;
+    }
+
+    final boolean[] quoted = new boolean[count];
+    if (!tsv) {
+      List<Future<Boolean>> parity = new ArrayList<>();
+      for (int i = 0; i < count - 1; i++) {
+        final int chunk = i;
+        parity.add(pool.submit(new Callable<Boolean>() {
+          public Boolean call() throws IOException {
+            return countQuotes(channel, targets[chunk], targets[chunk + 1]) % 2 == 1;
+          }
+        }));
+      }
+      for (int i = 1; i < count; i++) {
+        quoted[i] = quoted[i-1] ^ parity.get(i-1).get();
+      }
+    }
+
+    List<Future<Long>> starts = new ArrayList<>();
+    for (int i = 1; i < count; i++) {
+      final int chunk = i;
+      starts.add(pool.submit(new Callable<Long>() {
+        public Long call() throws IOException {
+          return nextRecord(channel, targets[chunk], length, quoted[chunk], tsv);
+        }
+      }));
+    }
+    long[] bounds = new long[count + 1];
+    for (int i = 1; i < count; i++) {
+      bounds[i] = starts.get(i-1).get();
+    }
+    bounds[count] = length;
+    return bounds;
+  }
+
+
+  static long countQuotes(FileChannel channel,
+                          long start, long stop) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(65536);
+    long quotes = 0;
+    for (long pos = start; pos < stop; pos += buffer.limit()) {
+      buffer.clear();
+      buffer.limit((int) Math.min(buffer.capacity(), stop - pos));
+      readFully(channel, buffer, pos);
+      byte[] data = buffer.array();
+      for (int i = 0; i < buffer.limit(); i++) {
+        if (data[i] == '\"') {
+          quotes++;
+        }
+      }
+    }
+    return quotes;
+  }
+
+
+  /** Offset just past the first newline (not inside quotes) after start. */
+  static long nextRecord(FileChannel channel, long start, long length,
+                         boolean quoted, boolean tsv) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(65536);
+    for (long pos = start; pos < length; pos += buffer.limit()) {
+      buffer.clear();
+      buffer.limit((int) Math.min(buffer.capacity(), length - pos));
+      readFully(channel, buffer, pos);
+      byte[] data = buffer.array();
+      for (int i = 0; i < buffer.limit(); i++) {
+        if (data[i] == '\n' && !quoted) {
+          return pos + i + 1;
+        } else if (data[i] == '\"' && !tsv) {
+          quoted = !quoted;
+        }
+      }
+    }
+    return length;
+  }
+
+
+  static void readFully(FileChannel channel,
+                        ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      int count = channel.read(buffer, position);
+      if (count == -1) {
+        throw new EOFException();
+      }
+      position += count;
+    }
+    buffer.flip();
+  }
+
+
+  /**
+   * Append the rows of several tables (created with createEmpty(), so they
+   * share column types) by copying their column arrays. Category indices
+   * are re-mapped onto this table's categories, in order, so that they're
+   * numbered the same as if the rows had been added one by one. A category
+   * with a null name stands for code 0 of this table.
+   */
+  protected void merge(Table[] tables) {
+    // titles are either the originals or from the header of the first chunk
+    if (tables[0].columnTitles != null) {
+      setColumnTitles(tables[0].columnTitles);
+    }
+    int total = 0;
+    int columnCount = getColumnCount();
+    for (Table table : tables) {
+      total += table.rowCount;
+      columnCount = Math.max(columnCount, table.getColumnCount());
+    }
+    ensureColumn(columnCount - 1);
+
+    for (int col = 0; col < columnCount; col++) {
+      Object outgoing = null;
+      switch (columnTypes[col]) {
+        case CATEGORY:
+        case INT: outgoing = new int[total]; break;
+        case LONG: outgoing = new long[total]; break;
+        case FLOAT: outgoing = new float[total]; break;
+        case DOUBLE: outgoing = new double[total]; break;
+        case STRING: outgoing = new String[total]; break;
+      }
+      int offset = 0;
+      for (Table table : tables) {
+        if (col < table.getColumnCount()) {
+          if (columnTypes[col] == CATEGORY) {
+            HashMapBlows incoming = table.columnCategories[col];
+            int[] remap = new int[incoming.size()];
+            for (int i = 0; i < remap.length; i++) {
+              String key = incoming.key(i);
+              remap[i] = (key == null) ? 0 : columnCategories[col].index(key);
+            }
+            int[] indexData = (int[]) table.columns[col];
+            int[] target = (int[]) outgoing;
+            for (int row = 0; row < table.rowCount; row++) {
+              int index = indexData[row];
+              target[offset + row] =
+                (index == missingCategory) ? missingCategory : remap[index];
+            }
+          } else {
+            System.arraycopy(table.columns[col], 0, outgoing, offset, table.rowCount);
+          }
+        }
+        offset += table.rowCount;
+      }
+      columns[col] = outgoing;
+    }
+    rowCount = total;
+  }
+
+
   protected void parseBasic(BufferedReader reader,
                             boolean header, boolean tsv) throws IOException {
-    String line = null;
-    int row = 0;
-    if (rowCount == 0) {
+    parseRecords(reader, header, tsv, null);
+  }
+
+
+  /**
+   * Parse CSV or TSV data straight from the reader into the column arrays.
+   * Each field is handed to setRowCol() as a slice of a re-used char array,
+   * so no String[] (or String, for numeric columns) is created per line.
+   * With a handler, only row 0 is used, and it's overwritten for each record.
+   */
+  protected int parseRecords(Reader reader, boolean header, boolean tsv,
+                             RowHandler handler) throws IOException {
+    RecordScanner scanner = new RecordScanner(reader, tsv);
+    TableRow pointer = null;
+    if (handler != null) {
+      setRowCount(1);
+      pointer = new RowPointer(this, 0);
+    } else if (rowCount == 0) {
       setRowCount(10);
     }
-    //int prev = 0;  //-1;
+    int row = 0;
     try {
-      while ((line = reader.readLine()) != null) {
-        if (row == getRowCount()) {
-          setRowCount(row << 1);
-        }
-        if (row == 0 && header) {
-          setColumnTitles(tsv ? PApplet.split(line, '\t') : splitLineCSV(line, reader));
-          header = false;
-        } else {
-          setRow(row, tsv ? PApplet.split(line, '\t') : splitLineCSV(line, reader));
-          row++;
+      if (header) {
+        String[] titles = scanner.readRecord();
+        if (titles != null) {
+          setColumnTitles(titles);
         }
-
-        if (row % 10000 == 0) {
-        /*
-        // this is problematic unless we're going to calculate rowCount first
-        if (row < rowCount) {
-          int pct = (100 * row) / rowCount;
-          if (pct != prev) {  // also prevents "0%" from showing up
-            System.out.println(pct + "%");
-            prev = pct;
+      }
+      int col = 0;
+      int state;
+      while ((state = scanner.next()) != RecordScanner.END) {
+        int target = 0;
+        if (handler == null) {
+          if (row == rowCount) {
+            setRowCount(row << 1);
           }
+          target = row;
         }
-         */
-          try {
-            // Sleep this thread so that the GC can catch up
-            Thread.sleep(10);
-          } catch (InterruptedException e) {
-            e.printStackTrace();
+        ensureColumn(col);
+        setRowCol(target, col++, scanner.field, scanner.fieldLength);
+
+        if (state == RecordScanner.RECORD) {
+          if (handler != null) {
+            // clear out anything left over from a longer, previous record
+            for (int c = col; c < columns.length; c++) {
+              clearCell(0, c);
+            }
+            handler.handle(pointer);
           }
+          row++;
+          col = 0;
         }
       }
     } catch (Exception e) {
       throw new RuntimeException("Error reading table on line " + row, e);
     }
     // shorten or lengthen based on what's left
-    if (row != getRowCount()) {
+    if (handler == null && row != getRowCount()) {
       setRowCount(row);
     }
+    return row;
   }
 
 
@@ -756,6 +1176,403 @@ public class Table {
   }
 
 
+  /**
+   * Reads CSV or TSV data one field at a time from a char buffer. Fields are
+   * copied into a re-used array (unquoting as necessary), so there's no
+   * String or String[] created for each line. The quoting rules are the same
+   * as those used by CommaSeparatedLine, and TSV is split on tabs only.
+   */
+  static class RecordScanner {
+    /** A field was read, and more follow on this record. */
+    static final int FIELD = 0;
+    /** A field was read, and it was the last on its record. */
+    static final int RECORD = 1;
+    /** No more data, and no field was read. */
+    static final int END = 2;
+
+    Reader reader;
+    boolean tsv;
+
+    char[] buffer = new char[65536];
+    int index;
+    int limit;
+
+    char[] field = new char[128];
+    int fieldLength;
+
+    boolean recordStart = true;
+
+
+    RecordScanner(Reader reader, boolean tsv) throws IOException {
+      this.reader = reader;
+      this.tsv = tsv;
+
+      // strip out the Unicode BOM, if present
+      if (peek() == '\uFEFF') {
+        index++;
+      }
+    }
+
+
+    /**
+     * Read the next field into field[0..fieldLength).
+     * @return FIELD, RECORD, or END
+     */
+    int next() throws IOException {
+      fieldLength = 0;
+      int ch = read();
+      if (ch == -1) {
+        if (recordStart) {
+          return END;
+        }
+        // data ended with a separator, so there's one more empty field
+        recordStart = true;
+        return RECORD;
+      }
+      recordStart = false;
+      if (ch == '\"' && !tsv) {
+        return nextQuoted();
+      }
+      char delim = tsv ? '\t' : ',';
+      while (true) {
+        if (ch == delim) {
+          return FIELD;
+
+        } else if (ch == '\n' || ch == -1) {
+          recordStart = true;
+          return RECORD;
+
+        } else if (ch == '\r') {
+          skipLineFeed();
+          recordStart = true;
+          return RECORD;
+
+        } else if (ch == '\"' && !tsv) {
+          int after = peek();
+          if (after == '\"') {
+            // step over this crummy quote escape
+            index++;
+          } else if (after == -1 || after == '\r' || after == '\n') {
+            throw new RuntimeException("Unterminated quote at end of line");
+          } else {
+            throw new RuntimeException("Unterminated quoted field mid-line");
+          }
+        }
+        append((char) ch);
+        ch = read();
+      }
+    }
+
+
+    /** Read the remainder of a field that started with a quote. */
+    protected int nextQuoted() throws IOException {
+      while (true) {
+        int ch = read();
+        if (ch == -1) {
+          throw new IOException("Found a quoted line that wasn't terminated properly.");
+
+        } else if (ch == '\"') {
+          int after = peek();
+          if (after == '\"') {
+            // an escaped quote inside a quoted field
+            index++;
+            append('\"');
+
+          } else if (after == ',') {
+            // that was our closing quote, get outta here
+            index++;
+            return FIELD;
+
+          } else if (after == -1 || after == '\n' || after == '\r') {
+            // closing quote for field; last field on the line
+            if (after != -1) {
+              index++;
+              if (after == '\r') {
+                skipLineFeed();
+              }
+            }
+            recordStart = true;
+            return RECORD;
+
+          } else {
+            // This is a lone-wolf quote, occasionally seen in exports.
+            // Keep it and pray for the best.
+            append('\"');
+          }
+        } else if (ch == '\r') {
+          // newline inside the quote; convert to \n as readLine() would
+          skipLineFeed();
+          append('\n');
+
+        } else {
+          append((char) ch);
+        }
+      }
+    }
+
+
+    /** Read an entire record as Strings, used for the header row. */
+    String[] readRecord() throws IOException {
+      StringList list = new StringList();
+      int state;
+      while ((state = next()) != END) {
+        list.append(new String(field, 0, fieldLength));
+        if (state == RECORD) {
+          break;
+        }
+      }
+      return (list.size() == 0) ? null : list.array();
+    }
+
+
+    protected int read() throws IOException {
+      if (index == limit && !fill()) {
+        return -1;
+      }
+      return buffer[index++];
+    }
+
+
+    protected int peek() throws IOException {
+      if (index == limit && !fill()) {
+        return -1;
+      }
+      return buffer[index];
+    }
+
+
+    protected boolean fill() throws IOException {
+      int count;
+      do {
+        count = reader.read(buffer, 0, buffer.length);
+      } while (count == 0);
+
+      index = 0;
+      limit = Math.max(count, 0);
+      return count > 0;
+    }
+
+
+    /** Step over the \n of a \r\n pair. */
+    protected void skipLineFeed() throws IOException {
+      if (peek() == '\n') {
+        index++;
+      }
+    }
+
+
+    protected void append(char ch) {
+      if (fieldLength == field.length) {
+        field = PApplet.expand(field);
+      }
+      field[fieldLength++] = ch;
+    }
+  }
+
+
+  /**
+   * Set an entry from a slice of characters, as read by RecordScanner.
+   * Numbers are parsed directly from the chars where possible; anything
+   * unusual goes through the String parsers so the results are identical.
+   */
+  protected void setRowCol(int row, int col, char[] c, int length) {
+    switch (columnTypes[col]) {
+      case STRING:
+        String[] stringData = (String[]) columns[col];
+        stringData[row] = (length == 0) ? "" : new String(c, 0, length);
+        break;
+      case INT:
+        int[] intData = (int[]) columns[col];
+        intData[row] = parseInt(c, length, missingInt);
+        break;
+      case LONG:
+        long[] longData = (long[]) columns[col];
+        longData[row] = parseLong(c, length, missingLong);
+        break;
+      case FLOAT:
+        float[] floatData = (float[]) columns[col];
+        floatData[row] = parseFloat(c, length, missingFloat);
+        break;
+      case DOUBLE:
+        double[] doubleData = (double[]) columns[col];
+        doubleData[row] = parseDouble(c, length, missingDouble);
+        break;
+      case CATEGORY:
+        int[] indexData = (int[]) columns[col];
+        String peace = new String(c, 0, length);
+        if (peace.equals(missingString)) {  // missingString might be null
+          indexData[row] = missingCategory;
+        } else {
+          indexData[row] = columnCategories[col].index(peace);
+        }
+        break;
+      default:
+        throw new IllegalArgumentException("That's not a valid column type.");
+    }
+  }
+
+
+  /** Reset an entry to the value used for newly allocated rows. */
+  protected void clearCell(int row, int col) {
+    switch (columnTypes[col]) {
+      case STRING: ((String[]) columns[col])[row] = null; break;
+      case CATEGORY:
+      case INT: ((int[]) columns[col])[row] = 0; break;
+      case LONG: ((long[]) columns[col])[row] = 0; break;
+      case FLOAT: ((float[]) columns[col])[row] = 0; break;
+      case DOUBLE: ((double[]) columns[col])[row] = 0; break;
+    }
+  }
+
+
+  /** Same as PApplet.parseInt(String, int), without the String. */
+  static int parseInt(char[] c, int length, int otherwise) {
+    boolean negative = false;
+    int i = 0;
+    if (length > 0 && (c[0] == '-' || c[0] == '+')) {
+      negative = c[0] == '-';
+      i++;
+    }
+    int start = i;
+    long value = 0;
+    for (; i < length; i++) {
+      char ch = c[i];
+      if (ch >= '0' && ch <= '9' && value <= Integer.MAX_VALUE) {
+        value = value * 10 + (ch - '0');
+      } else if (ch == '.') {
+        break;  // parseInt(String) truncates at the decimal point
+      } else {
+        return PApplet.parseInt(new String(c, 0, length), otherwise);
+      }
+    }
+    if (i == start) {
+      return otherwise;  // no digits
+    }
+    if (negative) {
+      value = -value;
+    }
+    if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+      return otherwise;
+    }
+    return (int) value;
+  }
+
+
+  /** Same as Long.parseLong() with a fallback, without the String. */
+  static long parseLong(char[] c, int length, long otherwise) {
+    boolean negative = false;
+    int i = 0;
+    if (length > 0 && (c[0] == '-' || c[0] == '+')) {
+      negative = c[0] == '-';
+      i++;
+    }
+    // up to 18 digits can't overflow, leave anything longer to parseLong()
+    if (i == length || length - i > 18) {
+      return parseLong(new String(c, 0, length), otherwise);
+    }
+    long value = 0;
+    for (; i < length; i++) {
+      char ch = c[i];
+      if (ch < '0' || ch > '9') {
+        return parseLong(new String(c, 0, length), otherwise);
+      }
+      value = value * 10 + (ch - '0');
+    }
+    return negative ? -value : value;
+  }
+
+
+  static private long parseLong(String what, long otherwise) {
+    try {
+      return Long.parseLong(what);
+    } catch (NumberFormatException nfe) {
+      return otherwise;
+    }
+  }
+
+
+  static final float[] FLOAT_POWERS = {
+    1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f
+  };
+
+  static final double[] DOUBLE_POWERS = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+    1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+
+
+  /**
+   * Reads [sign]digits[.digits] into a mantissa and a count of decimal
+   * places, packed as mantissa * 32 + places. Returns -1 if the text has
+   * any other form, or too many digits to be held exactly.
+   */
+  static private long scanDecimal(char[] c, int start, int length) {
+    long mantissa = 0;
+    int digits = 0;
+    int places = -1;
+    for (int i = start; i < length; i++) {
+      char ch = c[i];
+      if (ch >= '0' && ch <= '9') {
+        if (++digits > 17) {
+          return -1;
+        }
+        mantissa = mantissa * 10 + (ch - '0');
+        if (places != -1) {
+          places++;
+        }
+      } else if (ch == '.' && places == -1) {
+        places = 0;
+      } else {
+        return -1;
+      }
+    }
+    if (digits == 0) {
+      return -1;
+    }
+    return (mantissa << 5) | Math.max(places, 0);
+  }
+
+
+  /** Same as PApplet.parseFloat(String, float), without the String. */
+  static float parseFloat(char[] c, int length, float otherwise) {
+    boolean negative = length > 0 && c[0] == '-';
+    int start = (length > 0 && (negative || c[0] == '+')) ? 1 : 0;
+    long packed = scanDecimal(c, start, length);
+    if (packed != -1) {
+      long mantissa = packed >>> 5;
+      int places = (int) (packed & 31);
+      // both values are exact as floats, so the one division is correctly
+      // rounded, which makes this identical to Float.parseFloat()
+      if (mantissa <= (1 << 24) && places < FLOAT_POWERS.length) {
+        float value = mantissa / FLOAT_POWERS[places];
+        return negative ? -value : value;
+      }
+    }
+    return PApplet.parseFloat(new String(c, 0, length), otherwise);
+  }
+
+
+  /** Same as Double.parseDouble() with a fallback, without the String. */
+  static double parseDouble(char[] c, int length, double otherwise) {
+    boolean negative = length > 0 && c[0] == '-';
+    int start = (length > 0 && (negative || c[0] == '+')) ? 1 : 0;
+    long packed = scanDecimal(c, start, length);
+    if (packed != -1) {
+      long mantissa = packed >>> 5;
+      int places = (int) (packed & 31);
+      if (mantissa <= (1L << 53) && places < DOUBLE_POWERS.length) {
+        double value = mantissa / DOUBLE_POWERS[places];
+        return negative ? -value : value;
+      }
+    }
+    try {
+      return Double.parseDouble(new String(c, 0, length));
+    } catch (NumberFormatException nfe) {
+      return otherwise;
+    }
+  }
+
+
   /**
    * Returns the next comma (not inside a quote) in the specified array.
    * @param c array to search
@@ -1219,6 +2036,13 @@ public class Table {
         e.printStackTrace();
         return false;
       }
+    } else if (extension.equals("columnar")) {
+      try {
+        saveColumnar(output);
+      } catch (IOException e) {
+        e.printStackTrace();
+        return false;
+      }
     }
     writer.flush();
     writer.close();
@@ -1688,6 +2512,11 @@ public class Table {
     DataInputStream input = new DataInputStream(new BufferedInputStream(is));
 
     int magic = input.readInt();
+    if (magic == COLUMNAR_MAGIC) {
+      loadColumnar(Channels.newChannel(input), false);
+      input.close();
+      return;
+    }
     if (magic != 0x9007AB1E) {
       throw new IOException("Not a compatible binary table (magic was " + PApplet.hex(magic) + ")");
     }
@@ -1756,30 +2585,536 @@ public class Table {
           if (input.readBoolean()) {
             str = input.readUTF();
           }
-          setString(row, col, str);
-          break;
-        case INT:
-          setInt(row, col, input.readInt());
-          break;
-        case LONG:
-          setLong(row, col, input.readLong());
-          break;
-        case FLOAT:
-          setFloat(row, col, input.readFloat());
-          break;
-        case DOUBLE:
-          setDouble(row, col, input.readDouble());
-          break;
-        case CATEGORY:
-          int index = input.readInt();
-          //String name = columnCategories[col].key(index);
-          setInt(row, col, index);
-          break;
+          setString(row, col, str);
+          break;
+        case INT:
+          setInt(row, col, input.readInt());
+          break;
+        case LONG:
+          setLong(row, col, input.readLong());
+          break;
+        case FLOAT:
+          setFloat(row, col, input.readFloat());
+          break;
+        case DOUBLE:
+          setDouble(row, col, input.readDouble());
+          break;
+        case CATEGORY:
+          int index = input.readInt();
+          //String name = columnCategories[col].key(index);
+          setInt(row, col, index);
+          break;
+        }
+      }
+    }
+
+    input.close();
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  static final int COLUMNAR_MAGIC = 0x9007C011;
+  static final int COLUMNAR_VERSION = 1;
+
+
+  /**
+   * Save using the columnar binary format, which stores each column as one
+   * contiguous block so that it can be memory-mapped by loadColumnar().
+   * The first four bytes are COLUMNAR_MAGIC (big-endian, like the magic for
+   * saveBinary), and everything after that is little-endian:
+   * <pre>
+   * int version
+   * int rowCount, int columnCount
+   * str missingString, int missingInt, long missingLong,
+   * float missingFloat, double missingDouble, int missingCategory
+   * byte 1 if column titles follow, otherwise 0
+   * str[columnCount] titles
+   * int[columnCount] types
+   * for each CATEGORY column: int count, str[count] categories
+   * for each column, starting at a multiple of 8 bytes:
+   *   INT or CATEGORY: int[rowCount]
+   *   LONG: long[rowCount]
+   *   FLOAT: float[rowCount]
+   *   DOUBLE: double[rowCount]
+   *   STRING: long byte count, then str[rowCount]
+   * </pre>
+   * A 'str' is an int byte count (-1 for null) followed by UTF-8 data.
+   */
+  protected void saveColumnar(OutputStream os) throws IOException {
+    ColumnarOutput output = new ColumnarOutput(os);
+    output.writeMagic();
+    output.writeInt(COLUMNAR_VERSION);
+    output.writeInt(rowCount);
+    output.writeInt(columns.length);
+
+    output.writeString(missingString);
+    output.writeInt(missingInt);
+    output.writeLong(missingLong);
+    output.writeFloat(missingFloat);
+    output.writeDouble(missingDouble);
+    output.writeInt(missingCategory);
+
+    output.writeByte(columnTitles != null ? 1 : 0);
+    if (columnTitles != null) {
+      for (String title : columnTitles) {
+        output.writeString(title);
+      }
+    }
+    for (int col = 0; col < columns.length; col++) {
+      output.writeInt(columnTypes[col]);
+    }
+    for (int col = 0; col < columns.length; col++) {
+      if (columnTypes[col] == CATEGORY) {
+        HashMapBlows categories = columnCategories[col];
+        output.writeInt(categories.size());
+        for (int i = 0; i < categories.size(); i++) {
+          output.writeString(categories.key(i));
+        }
+      }
+    }
+
+    for (int col = 0; col < columns.length; col++) {
+      output.align();
+      switch (columnTypes[col]) {
+        case INT:
+        case CATEGORY: output.writeInts(getIntColumn(col)); break;
+        case LONG: output.writeLongs(getLongColumn(col)); break;
+        case FLOAT: output.writeFloats(getFloatColumn(col)); break;
+        case DOUBLE: output.writeDoubles(getDoubleColumn(col)); break;
+        case STRING:
+          // need the byte count first, so that mapped loads can skip ahead
+          ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+          ColumnarOutput block = new ColumnarOutput(bytes);
+          String[] stringData = (String[]) columns[col];
+          for (int row = 0; row < rowCount; row++) {
+            block.writeString(stringData[row]);
+          }
+          block.flush();
+          output.writeLong(bytes.size());
+          output.writeBytes(bytes.toByteArray());
+          break;
+      }
+    }
+    output.flush();
+    os.flush();
+    os.close();
+  }
+
+
+  /**
+   * Load a table saved with saveColumnar(). The magic number should already
+   * have been read from the channel. When 'map' is set (and the channel is a
+   * FileChannel), the numeric columns are memory-mapped rather than copied
+   * onto the heap, so the table opens almost instantly regardless of size,
+   * and several processes reading the same file share the OS page cache.
+   * The mapped columns are copied to the heap the first time the table is
+   * modified, see unmap().
+   */
+  protected void loadColumnar(ReadableByteChannel channel,
+                              boolean map) throws IOException {
+    ColumnarInput input = new ColumnarInput(channel, 4);
+    int version = input.readInt();
+    if (version != COLUMNAR_VERSION) {
+      throw new IOException("Unsupported columnar table version " + version);
+    }
+    int rows = input.readInt();
+    int columnCount = input.readInt();
+
+    missingString = input.readString();
+    missingInt = input.readInt();
+    missingLong = input.readLong();
+    missingFloat = input.readFloat();
+    missingDouble = input.readDouble();
+    missingCategory = input.readInt();
+
+    columns = new Object[columnCount];
+    columnCategories = new HashMapBlows[columnCount];
+    columnTitles = null;
+    columnIndices = null;
+    if (input.readByte() == 1) {
+      columnTitles = new String[columnCount];
+      for (int col = 0; col < columnCount; col++) {
+        columnTitles[col] = input.readString();
+      }
+    }
+    columnTypes = new int[columnCount];
+    for (int col = 0; col < columnCount; col++) {
+      columnTypes[col] = input.readInt();
+    }
+    for (int col = 0; col < columnCount; col++) {
+      columnCategories[col] = new HashMapBlows();
+      if (columnTypes[col] == CATEGORY) {
+        int count = input.readInt();
+        for (int i = 0; i < count; i++) {
+          columnCategories[col].index(input.readString());
+        }
+      }
+    }
+
+    FileChannel fileChannel =
+      (map && channel instanceof FileChannel) ? (FileChannel) channel : null;
+    for (int col = 0; col < columnCount; col++) {
+      input.align();
+      int type = columnTypes[col];
+      if (type == STRING) {
+        input.readLong();  // byte count, only needed for skipping
+        String[] stringData = new String[rows];
+        for (int row = 0; row < rows; row++) {
+          stringData[row] = input.readString();
+        }
+        columns[col] = stringData;
+
+      } else if (fileChannel != null) {
+        long length = (long) rows * (type == LONG || type == DOUBLE ? 8 : 4);
+        ByteBuffer block =
+          fileChannel.map(FileChannel.MapMode.READ_ONLY, input.position, length);
+        block.order(ByteOrder.LITTLE_ENDIAN);
+        switch (type) {
+          case INT:
+          case CATEGORY: columns[col] = block.asIntBuffer(); break;
+          case LONG: columns[col] = block.asLongBuffer(); break;
+          case FLOAT: columns[col] = block.asFloatBuffer(); break;
+          case DOUBLE: columns[col] = block.asDoubleBuffer(); break;
+        }
+        input.skip(length);
+        mapped = true;
+
+      } else {
+        switch (type) {
+          case INT:
+          case CATEGORY: columns[col] = input.readInts(new int[rows]); break;
+          case LONG: columns[col] = input.readLongs(new long[rows]); break;
+          case FLOAT: columns[col] = input.readFloats(new float[rows]); break;
+          case DOUBLE: columns[col] = input.readDoubles(new double[rows]); break;
+          default:
+            throw new IOException(type + " is not a valid column type.");
+        }
+      }
+    }
+    rowCount = rows;
+  }
+
+
+  /**
+   * If any columns are memory-mapped (see loadColumnar), copy them onto the
+   * heap so that the table can be modified.
+   */
+  protected void unmap() {
+    if (mapped) {
+      for (int col = 0; col < columns.length; col++) {
+        columns[col] = getColumnData(col);
+      }
+      mapped = false;
+    }
+  }
+
+
+  /**
+   * Returns the array that holds the data for a column (int[], String[],
+   * and so on), copied out of the file if the table is memory-mapped.
+   */
+  protected Object getColumnData(int column) {
+    Object data = columns[column];
+    // duplicate() so that other threads reading the buffer aren't affected
+    if (data instanceof IntBuffer) {
+      int[] intData = new int[rowCount];
+      ((IntBuffer) data).duplicate().get(intData);
+      return intData;
+    } else if (data instanceof LongBuffer) {
+      long[] longData = new long[rowCount];
+      ((LongBuffer) data).duplicate().get(longData);
+      return longData;
+    } else if (data instanceof FloatBuffer) {
+      float[] floatData = new float[rowCount];
+      ((FloatBuffer) data).duplicate().get(floatData);
+      return floatData;
+    } else if (data instanceof DoubleBuffer) {
+      double[] doubleData = new double[rowCount];
+      ((DoubleBuffer) data).duplicate().get(doubleData);
+      return doubleData;
+    }
+    return data;
+  }
+
+
+  /** Writes little-endian data for saveColumnar(). */
+  static class ColumnarOutput {
+    OutputStream output;
+    ByteBuffer buffer;
+    long written;
+
+    ColumnarOutput(OutputStream output) {
+      this.output = output;
+      buffer = ByteBuffer.allocate(65536).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    void flush() throws IOException {
+      output.write(buffer.array(), 0, buffer.position());
+      written += buffer.position();
+      buffer.clear();
+    }
+
+    void ensure(int count) throws IOException {
+      if (buffer.remaining() < count) {
+        flush();
+      }
+    }
+
+    void writeMagic() throws IOException {
+      buffer.order(ByteOrder.BIG_ENDIAN).putInt(COLUMNAR_MAGIC);
+      buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    void writeByte(int value) throws IOException {
+      ensure(1);
+      buffer.put((byte) value);
+    }
+
+    void writeInt(int value) throws IOException {
+      ensure(4);
+      buffer.putInt(value);
+    }
+
+    void writeLong(long value) throws IOException {
+      ensure(8);
+      buffer.putLong(value);
+    }
+
+    void writeFloat(float value) throws IOException {
+      ensure(4);
+      buffer.putFloat(value);
+    }
+
+    void writeDouble(double value) throws IOException {
+      ensure(8);
+      buffer.putDouble(value);
+    }
+
+    void writeBytes(byte[] data) throws IOException {
+      if (data.length > buffer.remaining()) {
+        flush();
+        if (data.length > buffer.capacity()) {
+          output.write(data);
+          written += data.length;
+          return;
+        }
+      }
+      buffer.put(data);
+    }
+
+    void writeString(String str) throws IOException {
+      if (str == null) {
+        writeInt(-1);
+      } else {
+        byte[] data = str.getBytes("UTF-8");
+        writeInt(data.length);
+        writeBytes(data);
+      }
+    }
+
+    /** Pad with zeroes to the next multiple of 8 bytes. */
+    void align() throws IOException {
+      while ((written + buffer.position()) % 8 != 0) {
+        writeByte(0);
+      }
+    }
+
+    void writeInts(int[] data) throws IOException {
+      for (int i = 0; i < data.length; ) {
+        ensure(4);
+        IntBuffer view = buffer.asIntBuffer();
+        int count = Math.min(view.remaining(), data.length - i);
+        view.put(data, i, count);
+        buffer.position(buffer.position() + count * 4);
+        i += count;
+      }
+    }
+
+    void writeLongs(long[] data) throws IOException {
+      for (int i = 0; i < data.length; ) {
+        ensure(8);
+        LongBuffer view = buffer.asLongBuffer();
+        int count = Math.min(view.remaining(), data.length - i);
+        view.put(data, i, count);
+        buffer.position(buffer.position() + count * 8);
+        i += count;
+      }
+    }
+
+    void writeFloats(float[] data) throws IOException {
+      for (int i = 0; i < data.length; ) {
+        ensure(4);
+        FloatBuffer view = buffer.asFloatBuffer();
+        int count = Math.min(view.remaining(), data.length - i);
+        view.put(data, i, count);
+        buffer.position(buffer.position() + count * 4);
+        i += count;
+      }
+    }
+
+    void writeDoubles(double[] data) throws IOException {
+      for (int i = 0; i < data.length; ) {
+        ensure(8);
+        DoubleBuffer view = buffer.asDoubleBuffer();
+        int count = Math.min(view.remaining(), data.length - i);
+        view.put(data, i, count);
+        buffer.position(buffer.position() + count * 8);
+        i += count;
+      }
+    }
+  }
+
+
+  /** Reads little-endian data for loadColumnar(). */
+  static class ColumnarInput {
+    ReadableByteChannel channel;
+    ByteBuffer buffer;
+    /** Offset in the file of the next byte to be read from the buffer. */
+    long position;
+
+    ColumnarInput(ReadableByteChannel channel, long position) {
+      this.channel = channel;
+      this.position = position;
+      buffer = ByteBuffer.allocate(65536).order(ByteOrder.LITTLE_ENDIAN);
+      buffer.flip();  // start out empty
+    }
+
+    /** Make sure at least 'count' bytes are available in the buffer. */
+    void ensure(int count) throws IOException {
+      if (buffer.remaining() < count) {
+        buffer.compact();
+        while (buffer.position() < count) {
+          if (channel.read(buffer) == -1) {
+            throw new EOFException();
+          }
+        }
+        buffer.flip();
+      }
+    }
+
+    int readByte() throws IOException {
+      ensure(1);
+      position++;
+      return buffer.get();
+    }
+
+    int readInt() throws IOException {
+      ensure(4);
+      position += 4;
+      return buffer.getInt();
+    }
+
+    long readLong() throws IOException {
+      ensure(8);
+      position += 8;
+      return buffer.getLong();
+    }
+
+    float readFloat() throws IOException {
+      ensure(4);
+      position += 4;
+      return buffer.getFloat();
+    }
+
+    double readDouble() throws IOException {
+      ensure(8);
+      position += 8;
+      return buffer.getDouble();
+    }
+
+    String readString() throws IOException {
+      int length = readInt();
+      if (length == -1) {
+        return null;
+      }
+      byte[] data = new byte[length];
+      for (int offset = 0; offset < length; ) {
+        ensure(1);
+        int count = Math.min(buffer.remaining(), length - offset);
+        buffer.get(data, offset, count);
+        offset += count;
+      }
+      position += length;
+      return new String(data, "UTF-8");
+    }
+
+    void align() throws IOException {
+      skip((8 - position % 8) % 8);
+    }
+
+    void skip(long count) throws IOException {
+      position += count;
+      int inBuffer = (int) Math.min(count, buffer.remaining());
+      buffer.position(buffer.position() + inBuffer);
+      count -= inBuffer;
+      if (count > 0) {
+        if (channel instanceof FileChannel) {
+          FileChannel fileChannel = (FileChannel) channel;
+          fileChannel.position(fileChannel.position() + count);
+        } else {
+          while (count > 0) {
+            ensure(1);
+            inBuffer = (int) Math.min(count, buffer.remaining());
+            buffer.position(buffer.position() + inBuffer);
+            count -= inBuffer;
+          }
         }
       }
     }
 
-    input.close();
+    int[] readInts(int[] data) throws IOException {
+      for (int i = 0; i < data.length; ) {
+        ensure(4);
+        IntBuffer view = buffer.asIntBuffer();
+        int count = Math.min(view.remaining(), data.length - i);
+        view.get(data, i, count);
+        buffer.position(buffer.position() + count * 4);
+        i += count;
+      }
+      position += data.length * 4L;
+      return data;
+    }
+
+    long[] readLongs(long[] data) throws IOException {
+      for (int i = 0; i < data.length; ) {
+        ensure(8);
+        LongBuffer view = buffer.asLongBuffer();
+        int count = Math.min(view.remaining(), data.length - i);
+        view.get(data, i, count);
+        buffer.position(buffer.position() + count * 8);
+        i += count;
+      }
+      position += data.length * 8L;
+      return data;
+    }
+
+    float[] readFloats(float[] data) throws IOException {
+      for (int i = 0; i < data.length; ) {
+        ensure(4);
+        FloatBuffer view = buffer.asFloatBuffer();
+        int count = Math.min(view.remaining(), data.length - i);
+        view.get(data, i, count);
+        buffer.position(buffer.position() + count * 4);
+        i += count;
+      }
+      position += data.length * 4L;
+      return data;
+    }
+
+    double[] readDoubles(double[] data) throws IOException {
+      for (int i = 0; i < data.length; ) {
+        ensure(8);
+        DoubleBuffer view = buffer.asDoubleBuffer();
+        int count = Math.min(view.remaining(), data.length - i);
+        view.get(data, i, count);
+        buffer.position(buffer.position() + count * 8);
+        i += count;
+      }
+      position += data.length * 8L;
+      return data;
+    }
   }
 
 
@@ -1845,6 +3180,13 @@ public class Table {
     }
     columnCategories = catTemp;
 
+    if (indexes != null) {
+      ColumnIndex[] indexTemp = new ColumnIndex[columns.length + 1];
+      System.arraycopy(indexes, 0, indexTemp, 0, index);
+      System.arraycopy(indexes, index, indexTemp, index+1, columns.length - index);
+      indexes = indexTemp;
+    }
+
     Object[] temp = new Object[columns.length + 1];
     System.arraycopy(columns, 0, temp, 0, index);
     System.arraycopy(columns, index, temp, index+1, columns.length - index);
@@ -1878,18 +3220,29 @@ public class Table {
 
     Object[] columnsTemp = new Object[newCount];
     HashMapBlows[] catTemp = new HashMapBlows[newCount];
+    int[] typesTemp = new int[newCount];
 
     for (int i = 0; i < column; i++) {
       columnsTemp[i] = columns[i];
       catTemp[i] = columnCategories[i];
+      typesTemp[i] = columnTypes[i];
     }
     for (int i = column; i < newCount; i++) {
       columnsTemp[i] = columns[i+1];
       catTemp[i] = columnCategories[i+1];
+      typesTemp[i] = columnTypes[i+1];
     }
 
     columns = columnsTemp;
     columnCategories = catTemp;
+    columnTypes = typesTemp;
+
+    if (indexes != null) {
+      ColumnIndex[] indexTemp = new ColumnIndex[newCount];
+      System.arraycopy(indexes, 0, indexTemp, 0, column);
+      System.arraycopy(indexes, column + 1, indexTemp, column, newCount - column);
+      indexes = indexTemp;
+    }
 
     if (columnTitles != null) {
       String[] titlesTemp = new String[newCount];
@@ -1936,6 +3289,9 @@ public class Table {
       columnTypes = PApplet.expand(columnTypes, newCount);
       columnCategories = (HashMapBlows[])
         PApplet.expand(columnCategories, newCount);
+      if (indexes != null) {
+        indexes = (ColumnIndex[]) PApplet.expand(indexes, newCount);
+      }
     }
   }
 
@@ -2061,6 +3417,7 @@ public class Table {
     }
 //    System.out.println("new type is " + newType);
     columnTypes[column] = newType;
+    rebuildIndex(column);
   }
 
 
@@ -2281,6 +3638,13 @@ public class Table {
 
   public void setRowCount(int newCount) {
     if (newCount != rowCount) {
+      unmap();
+      // take the rows that are going away out of the indexes
+      for (int row = newCount; row < rowCount; row++) {
+        for (int col = 0; col < columns.length; col++) {
+          unindex(row, col);
+        }
+      }
       if (newCount > 1000000) {
         System.out.print("Note: setting maximum row count to " + PApplet.nfc(newCount));
       }
@@ -2294,20 +3658,20 @@ public class Table {
           case STRING: columns[col] = PApplet.expand((String[]) columns[col], newCount); break;
           case CATEGORY: columns[col] = PApplet.expand((int[]) columns[col], newCount); break;
         }
-        if (newCount > 1000000) {
-          try {
-            Thread.sleep(10);  // gc time!
-          } catch (InterruptedException e) {
-            e.printStackTrace();
-          }
-        }
       }
       if (newCount > 1000000) {
         int ms = (int) (System.currentTimeMillis() - t);
         System.out.println(" (resize took " + PApplet.nfc(ms) + " ms)");
       }
     }
+    int oldCount = rowCount;
     rowCount = newCount;
+    // and add the new (empty) rows
+    for (int row = oldCount; row < newCount; row++) {
+      for (int col = 0; col < columns.length; col++) {
+        reindex(row, col);
+      }
+    }
   }
 
 
@@ -2355,10 +3719,11 @@ public class Table {
         break;
       case CATEGORY:
         int index = source.getInt(col);
-        setInt(row, col, index);
+        // set the name first, so that it's available to indexes in setInt()
         if (!columnCategories[col].hasCategory(index)) {
           columnCategories[col].setCategory(index, source.getString(col));
         }
+        setInt(row, col, index);
         break;
 
       default:
@@ -2388,6 +3753,7 @@ public class Table {
 
 
   public void insertRow(int insert, Object[] columnData) {
+    unmap();
     for (int col = 0; col < columns.length; col++) {
       switch (columnTypes[col]) {
         case CATEGORY:
@@ -2431,6 +3797,10 @@ public class Table {
     // Need to increment before setRow(), because it calls ensureBounds()
     // https://github.com/processing/processing/issues/5406
     ++rowCount;
+    shiftIndexes(insert, 1);
+    for (int col = 0; col < columns.length; col++) {
+      reindex(insert, col);
+    }
     setRow(insert, columnData);
   }
 
@@ -2443,6 +3813,11 @@ public class Table {
    * @see Table#clearRows()
    */
   public void removeRow(int row) {
+    unmap();
+    for (int col = 0; col < columns.length; col++) {
+      unindex(row, col);
+    }
+    shiftIndexes(row + 1, -1);
     for (int col = 0; col < columns.length; col++) {
       switch (columnTypes[col]) {
         case CATEGORY:
@@ -2553,7 +3928,9 @@ public class Table {
     ensureBounds(row, pieces.length - 1);
     // pieces.length may be less than columns.length, so loop over pieces
     for (int col = 0; col < pieces.length; col++) {
+      unindex(row, col);
       setRowCol(row, col, pieces[col]);
+      reindex(row, col);
     }
   }
 
@@ -3064,6 +4441,9 @@ public class Table {
     checkBounds(row, column);
     if (columnTypes[column] == INT ||
         columnTypes[column] == CATEGORY) {
+      if (columns[column] instanceof IntBuffer) {
+        return ((IntBuffer) columns[column]).get(row);
+      }
       int[] intData = (int[]) columns[column];
       return intData[row];
     }
@@ -3108,8 +4488,10 @@ public class Table {
           columnTypes[column] != CATEGORY) {
         throw new IllegalArgumentException("Column " + column + " is not an int column.");
       }
+      unindex(row, column);
       int[] intData = (int[]) columns[column];
       intData[row] = value;
+      reindex(row, column);
     }
   }
 
@@ -3152,6 +4534,9 @@ public class Table {
   public long getLong(int row, int column) {
     checkBounds(row, column);
     if (columnTypes[column] == LONG) {
+      if (columns[column] instanceof LongBuffer) {
+        return ((LongBuffer) columns[column]).get(row);
+      }
       long[] longData = (long[]) columns[column];
       return longData[row];
     }
@@ -3186,8 +4571,10 @@ public class Table {
       if (columnTypes[column] != LONG) {
         throw new IllegalArgumentException("Column " + column + " is not a 'long' column.");
       }
+      unindex(row, column);
       long[] longData = (long[]) columns[column];
       longData[row] = value;
+      reindex(row, column);
     }
   }
 
@@ -3243,6 +4630,9 @@ public class Table {
   public float getFloat(int row, int column) {
     checkBounds(row, column);
     if (columnTypes[column] == FLOAT) {
+      if (columns[column] instanceof FloatBuffer) {
+        return ((FloatBuffer) columns[column]).get(row);
+      }
       float[] floatData = (float[]) columns[column];
       return floatData[row];
     }
@@ -3288,8 +4678,10 @@ public class Table {
       if (columnTypes[column] != FLOAT) {
         throw new IllegalArgumentException("Column " + column + " is not a float column.");
       }
+      unindex(row, column);
       float[] longData = (float[]) columns[column];
       longData[row] = value;
+      reindex(row, column);
     }
   }
 
@@ -3331,6 +4723,9 @@ public class Table {
   public double getDouble(int row, int column) {
     checkBounds(row, column);
     if (columnTypes[column] == DOUBLE) {
+      if (columns[column] instanceof DoubleBuffer) {
+        return ((DoubleBuffer) columns[column]).get(row);
+      }
       double[] doubleData = (double[]) columns[column];
       return doubleData[row];
     }
@@ -3365,8 +4760,10 @@ public class Table {
       if (columnTypes[column] != DOUBLE) {
         throw new IllegalArgumentException("Column " + column + " is not a 'double' column.");
       }
+      unindex(row, column);
       double[] doubleData = (double[]) columns[column];
       doubleData[row] = value;
+      reindex(row, column);
     }
   }
 
@@ -3489,10 +4886,18 @@ public class Table {
         return null;
       }
     } else if (columnTypes[column] == DOUBLE) {
-      if (Double.isNaN(getFloat(row, column))) {
+      if (Double.isNaN(getDouble(row, column))) {
         return null;
       }
     }
+    if (columns[column] instanceof Buffer) {  // memory-mapped
+      switch (columnTypes[column]) {
+        case INT: return String.valueOf(getInt(row, column));
+        case LONG: return String.valueOf(getLong(row, column));
+        case FLOAT: return String.valueOf(getFloat(row, column));
+        case DOUBLE: return String.valueOf(getDouble(row, column));
+      }
+    }
     return String.valueOf(Array.get(columns[column], row));
   }
 
@@ -3531,8 +4936,10 @@ public class Table {
     if (columnTypes[column] != STRING) {
       throw new IllegalArgumentException("Column " + column + " is not a String column.");
     }
+    unindex(row, column);
     String[] stringData = (String[]) columns[column];
     stringData[row] = value;
+    reindex(row, column);
   }
 
   /**
@@ -3591,6 +4998,11 @@ public class Table {
    */
   public int findRowIndex(String value, int column) {
     checkColumn(column);
+    ColumnIndex index = getIndex(column, HASH);
+    if (index != null) {
+      IntList rows = index.hash.get(value);
+      return (rows == null) ? -1 : rows.get(0);
+    }
     if (columnTypes[column] == STRING) {
       String[] stringData = (String[]) columns[column];
       if (value == null) {
@@ -3637,10 +5049,15 @@ public class Table {
    * @param column ID number of the column to search
    */
   public int[] findRowIndices(String value, int column) {
+    checkColumn(column);
+    ColumnIndex index = getIndex(column, HASH);
+    if (index != null) {
+      IntList rows = index.hash.get(value);
+      return (rows == null) ? new int[0] : rows.array();
+    }
+
     int[] outgoing = new int[rowCount];
     int count = 0;
-
-    checkColumn(column);
     if (columnTypes[column] == STRING) {
       String[] stringData = (String[]) columns[column];
       if (value == null) {
@@ -3739,20 +5156,499 @@ public class Table {
 
 
   /**
-   * @brief Finds multiple rows that contain the given value
-   * @param value the value to match
+   * @brief Finds multiple rows that contain the given value
+   * @param value the value to match
+   * @param column ID number of the column to search
+   */
+  public Iterator<TableRow> findRowIterator(String value, int column) {
+    return new RowIndexIterator(this, findRowIndices(value, column));
+  }
+
+
+  /**
+   * @param columnName title of the column to search
+   */
+  public Iterator<TableRow> findRowIterator(String value, String columnName) {
+    return findRowIterator(value, getColumnIndex(columnName));
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Create an index on a column so that findRow() and friends don't have
+   * to search the entire table. The index is kept up to date as the table
+   * is modified, which makes changes to that column a little slower.
+   * @param kind HASH for equality lookups with findRow(), findRowIndex(),
+   *             and so on, SORTED for findRowsInRange() and friends on
+   *             numeric columns, or HASH | SORTED for both
+   */
+  public void createIndex(String columnName, int kind) {
+    createIndex(getColumnIndex(columnName), kind);
+  }
+
+
+  public void createIndex(int column, int kind) {
+    checkColumn(column);
+    if ((kind & SORTED) != 0 && !isNumeric(columnTypes[column])) {
+      throw new IllegalArgumentException("A SORTED index can only be used " +
+                                         "with int, long, float, or double columns");
+    }
+    if (indexes == null) {
+      indexes = new ColumnIndex[columns.length];
+    }
+    indexes[column] = new ColumnIndex(kind);
+    indexes[column].build(this, column);
+  }
+
+
+  public void removeIndex(String columnName) {
+    removeIndex(getColumnIndex(columnName));
+  }
+
+
+  public void removeIndex(int column) {
+    if (indexes != null) {
+      indexes[column] = null;
+    }
+  }
+
+
+  static boolean isNumeric(int type) {
+    return type == INT || type == LONG || type == FLOAT || type == DOUBLE;
+  }
+
+
+  /** Returns the index for a column, or null if it doesn't have one. */
+  protected ColumnIndex getIndex(int column, int kind) {
+    if (indexes != null) {
+      ColumnIndex index = indexes[column];
+      if (index != null && (index.kind & kind) != 0) {
+        return index;
+      }
+    }
+    return null;
+  }
+
+
+  /** Call before an entry is changed, to remove it from its index. */
+  protected void unindex(int row, int column) {
+    if (indexes != null && indexes[column] != null) {
+      indexes[column].remove(this, row, column);
+    }
+  }
+
+
+  /** Call after an entry is changed, to add it back to its index. */
+  protected void reindex(int row, int column) {
+    if (indexes != null && indexes[column] != null) {
+      indexes[column].add(this, row, column);
+    }
+  }
+
+
+  /** Rebuild the indexes after changes to many entries at once. */
+  protected void rebuildIndexes() {
+    if (indexes != null) {
+      for (int col = 0; col < indexes.length; col++) {
+        rebuildIndex(col);
+      }
+    }
+  }
+
+
+  protected void rebuildIndex(int column) {
+    if (indexes != null && indexes[column] != null) {
+      ColumnIndex index = indexes[column];
+      if (!isNumeric(columnTypes[column])) {
+        index.kind &= ~SORTED;  // no longer possible
+      }
+      index.build(this, column);
+    }
+  }
+
+
+  /** Adjust the indexes for rows having been added or removed at 'start'. */
+  protected void shiftIndexes(int start, int amount) {
+    if (indexes != null) {
+      for (ColumnIndex index : indexes) {
+        if (index != null) {
+          index.shift(start, amount);
+        }
+      }
+    }
+  }
+
+
+  /**
+   * Value used to order entries in a SORTED index and in range searches.
+   * The column must be one of the numeric types.
+   */
+  protected double getIndexValue(int row, int column) {
+    switch (columnTypes[column]) {
+      case INT: return getInt(row, column);
+      case LONG: return getLong(row, column);
+      case FLOAT: return getFloat(row, column);
+      default: return getDouble(row, column);
+    }
+  }
+
+
+  /**
+   * Compare the values of two rows in a numeric column. LONG columns are
+   * compared as longs, because a double can't hold every long exactly.
+   */
+  protected int compareIndexValues(int row1, int row2, int column) {
+    if (columnTypes[column] == LONG) {
+      return Long.compare(getLong(row1, column), getLong(row2, column));
+    }
+    return Double.compare(getIndexValue(row1, column),
+                          getIndexValue(row2, column));
+  }
+
+
+  /**
+   * Compare the value of a row in a numeric column with a bound from a
+   * range search, which is either a Long or a Double.
+   */
+  protected int compareIndexValue(int row, int column, Number bound) {
+    if (columnTypes[column] == LONG || columnTypes[column] == INT) {
+      long value = (columnTypes[column] == LONG) ?
+        getLong(row, column) : getInt(row, column);
+      if (bound instanceof Long) {
+        return Long.compare(value, bound.longValue());
+      }
+      return compareExact(value, bound.doubleValue());
+    }
+    double value = getIndexValue(row, column);
+    if (bound instanceof Long) {
+      return -compareExact(bound.longValue(), value);
+    }
+    return Double.compare(value, bound.doubleValue());
+  }
+
+
+  /**
+   * Compare a long with a double without rounding the long. NaN is larger
+   * than everything, as with Double.compare().
+   */
+  static int compareExact(long value, double other) {
+    if (Double.isNaN(other)) {
+      return -1;
+    }
+    double floor = Math.floor(other);
+    if (floor >= 0x1p63) {
+      return -1;
+    }
+    if (floor < -0x1p63) {
+      return 1;
+    }
+    long whole = (long) floor;
+    if (value != whole) {
+      return (value < whole) ? -1 : 1;
+    }
+    return (other > floor) ? -1 : 0;
+  }
+
+
+  /**
+   * True if a row has a value that can go in an index. Rows added with
+   * setRowCount() hold category code 0 until they're set, and that code
+   * may not have a name yet.
+   */
+  protected boolean isIndexable(int row, int column) {
+    if (columnTypes[column] == CATEGORY) {
+      int code = getInt(row, column);
+      return code == missingCategory ||
+        (code >= 0 && columnCategories[column].hasCategory(code));
+    }
+    return true;
+  }
+
+
+  /**
+   * A HASH index maps each value (as returned by getString) to the list of
+   * rows where it's found, in ascending order. A SORTED index is an array of
+   * row numbers, ordered by value, then by row number.
+   */
+  static class ColumnIndex {
+    int kind;
+    HashMap<String, IntList> hash;
+    int[] sorted;
+    int sortedCount;
+
+    ColumnIndex(int kind) {
+      this.kind = kind;
+    }
+
+    void build(Table table, int column) {
+      int rowCount = table.getRowCount();
+      hash = null;
+      sorted = null;
+      if ((kind & HASH) != 0) {
+        hash = new HashMap<>();
+        for (int row = 0; row < rowCount; row++) {
+          if (table.isIndexable(row, column)) {
+            String key = table.getString(row, column);
+            IntList rows = hash.get(key);
+            if (rows == null) {
+              rows = new IntList(1);
+              hash.put(key, rows);
+            }
+            rows.append(row);
+          }
+        }
+      }
+      if ((kind & SORTED) != 0) {
+        // pull out the values so they're only converted once,
+        // and keep LONG values as longs so they compare exactly
+        final boolean whole = table.getColumnType(column) == LONG;
+        final double[] values = whole ? null : new double[rowCount];
+        final long[] longValues = whole ? new long[rowCount] : null;
+        final int[] order = new int[Math.max(rowCount, 10)];
+        for (int row = 0; row < rowCount; row++) {
+          if (whole) {
+            longValues[row] = table.getLong(row, column);
+          } else {
+            values[row] = table.getIndexValue(row, column);
+          }
+          order[row] = row;
+        }
+        new Sort() {
+          @Override
+          public int size() {
+            return rowCount;
+          }
+
+          @Override
+          public int compare(int a, int b) {
+            int diff = whole ?
+              Long.compare(longValues[order[a]], longValues[order[b]]) :
+              Double.compare(values[order[a]], values[order[b]]);
+            return (diff != 0) ? diff : order[a] - order[b];
+          }
+
+          @Override
+          public void swap(int a, int b) {
+            int temp = order[a];
+            order[a] = order[b];
+            order[b] = temp;
+          }
+        }.run();
+        sorted = order;
+        sortedCount = rowCount;
+      }
+    }
+
+    void add(Table table, int row, int column) {
+      if (!table.isIndexable(row, column)) {
+        return;
+      }
+      if (hash != null) {
+        String key = table.getString(row, column);
+        IntList rows = hash.get(key);
+        if (rows == null) {
+          rows = new IntList(1);
+          hash.put(key, rows);
+        }
+        int pos = search(rows.data, rows.count, row);
+        if (rows.count == rows.data.length) {
+          rows.data = PApplet.expand(rows.data);
+        }
+        System.arraycopy(rows.data, pos, rows.data, pos + 1, rows.count - pos);
+        rows.data[pos] = row;
+        rows.count++;
+      }
+      if (sorted != null) {
+        int pos = findSorted(table, row, column);
+        if (sortedCount == sorted.length) {
+          sorted = PApplet.expand(sorted);
+        }
+        System.arraycopy(sorted, pos, sorted, pos + 1, sortedCount - pos);
+        sorted[pos] = row;
+        sortedCount++;
+      }
+    }
+
+    void remove(Table table, int row, int column) {
+      if (!table.isIndexable(row, column)) {
+        return;
+      }
+      if (hash != null) {
+        String key = table.getString(row, column);
+        IntList rows = hash.get(key);
+        if (rows != null) {
+          int pos = search(rows.data, rows.count, row);
+          if (pos < rows.count && rows.data[pos] == row) {
+            if (rows.count == 1) {
+              hash.remove(key);
+            } else {
+              rows.remove(pos);
+            }
+          }
+        }
+      }
+      if (sorted != null) {
+        int pos = findSorted(table, row, column);
+        if (pos < sortedCount && sorted[pos] == row) {
+          System.arraycopy(sorted, pos + 1, sorted, pos, sortedCount - pos - 1);
+          sortedCount--;
+        }
+      }
+    }
+
+    /** Add 'amount' to every row number at or after 'start'. */
+    void shift(int start, int amount) {
+      if (hash != null) {
+        for (IntList rows : hash.values()) {
+          for (int i = 0; i < rows.count; i++) {
+            if (rows.data[i] >= start) {
+              rows.data[i] += amount;
+            }
+          }
+        }
+      }
+      if (sorted != null) {
+        for (int i = 0; i < sortedCount; i++) {
+          if (sorted[i] >= start) {
+            sorted[i] += amount;
+          }
+        }
+      }
+    }
+
+    /** Position of 'row' in the ascending list, or where it would go. */
+    static int search(int[] data, int count, int row) {
+      int pos = Arrays.binarySearch(data, 0, count, row);
+      return (pos < 0) ? -(pos + 1) : pos;
+    }
+
+    /** Position of 'row' in the sorted index, or where it would go. */
+    int findSorted(Table table, int row, int column) {
+      int lo = 0;
+      int hi = sortedCount;
+      while (lo < hi) {
+        int mid = (lo + hi) >>> 1;
+        int other = sorted[mid];
+        int diff = table.compareIndexValues(other, row, column);
+        if (diff < 0 || (diff == 0 && other < row)) {
+          lo = mid + 1;
+        } else {
+          hi = mid;
+        }
+      }
+      return lo;
+    }
+
+    /** First position in the sorted index with a value above (or at) 'bound'. */
+    int findBound(Table table, int column, Number bound, boolean inclusive) {
+      int lo = 0;
+      int hi = sortedCount;
+      while (lo < hi) {
+        int mid = (lo + hi) >>> 1;
+        int diff = table.compareIndexValue(sorted[mid], column, bound);
+        if (diff < 0 || (diff == 0 && !inclusive)) {
+          lo = mid + 1;
+        } else {
+          hi = mid;
+        }
+      }
+      return lo;
+    }
+  }
+
+
+  /**
+   * Return the rows where a numeric column has a value between min and max
+   * (inclusive), in ascending order. Uses the SORTED index for the column
+   * if there is one, otherwise searches the entire column.
+   * @param min lowest value to include
+   * @param max highest value to include
+   * @param column ID number of the column to search
+   */
+  public int[] findRowIndicesInRange(double min, double max, int column) {
+    return findRowIndicesInRange(Double.valueOf(min), Double.valueOf(max), column);
+  }
+
+
+  /**
+   * @param columnName title of the column to search
+   */
+  public int[] findRowIndicesInRange(double min, double max, String columnName) {
+    return findRowIndicesInRange(min, max, getColumnIndex(columnName));
+  }
+
+
+  /**
+   * Same as above, but with whole number bounds, which are compared exactly
+   * against LONG columns even where a double would round them.
+   */
+  public int[] findRowIndicesInRange(long min, long max, int column) {
+    return findRowIndicesInRange(Long.valueOf(min), Long.valueOf(max), column);
+  }
+
+
+  /**
+   * @param columnName title of the column to search
+   */
+  public int[] findRowIndicesInRange(long min, long max, String columnName) {
+    return findRowIndicesInRange(min, max, getColumnIndex(columnName));
+  }
+
+
+  protected int[] findRowIndicesInRange(Number min, Number max, int column) {
+    checkColumn(column);
+    if (!isNumeric(columnTypes[column])) {
+      throw new IllegalArgumentException("Column " + column + " is not numeric");
+    }
+    ColumnIndex index = getIndex(column, SORTED);
+    if (index != null) {
+      int start = index.findBound(this, column, min, true);
+      int stop = index.findBound(this, column, max, false);
+      if (stop <= start) {
+        return new int[0];
+      }
+      int[] outgoing = PApplet.subset(index.sorted, start, stop - start);
+      Arrays.sort(outgoing);
+      return outgoing;
+    }
+    int[] outgoing = new int[rowCount];
+    int count = 0;
+    for (int row = 0; row < rowCount; row++) {
+      if (compareIndexValue(row, column, min) >= 0 &&
+          compareIndexValue(row, column, max) <= 0) {
+        outgoing[count++] = row;
+      }
+    }
+    return PApplet.subset(outgoing, 0, count);
+  }
+
+
+  /**
+   * Return the rows where a numeric column has a value between min and max
+   * (inclusive).
+   * @param min lowest value to include
+   * @param max highest value to include
    * @param column ID number of the column to search
    */
-  public Iterator<TableRow> findRowIterator(String value, int column) {
-    return new RowIndexIterator(this, findRowIndices(value, column));
+  public Iterable<TableRow> findRowsInRange(final double min, final double max,
+                                            final int column) {
+    return new Iterable<TableRow>() {
+      public Iterator<TableRow> iterator() {
+        return new RowIndexIterator(Table.this,
+                                    findRowIndicesInRange(min, max, column));
+      }
+    };
   }
 
 
   /**
    * @param columnName title of the column to search
    */
-  public Iterator<TableRow> findRowIterator(String value, String columnName) {
-    return findRowIterator(value, getColumnIndex(columnName));
+  public Iterable<TableRow> findRowsInRange(double min, double max,
+                                            String columnName) {
+    return findRowsInRange(min, max, getColumnIndex(columnName));
   }
 
 
@@ -3948,6 +5844,7 @@ public class Table {
           }
         }
       }
+      rebuildIndex(col);
     }
   }
 
@@ -3976,6 +5873,7 @@ public class Table {
           stringData[row] = stringData[row].replaceAll(regex, replacement);
         }
       }
+      rebuildIndex(column);
     } else {
       throw new IllegalArgumentException("replaceAll() can only be used on String columns");
     }
@@ -4134,6 +6032,7 @@ public class Table {
           stringData[row] = PApplet.trim(stringData[row]);
         }
       }
+      rebuildIndex(column);
     }
   }
 
@@ -4164,8 +6063,12 @@ public class Table {
   }
 
 
-  /** Make sure this is a legit row and column. If not, expand the table. */
+  /**
+   * Make sure this is a legit row and column. If not, expand the table.
+   * Called before modifying the table, so mapped columns are copied here.
+   */
   protected void ensureBounds(int row, int col) {
+    unmap();
     ensureRow(row);
     ensureColumn(col);
   }
@@ -4203,6 +6106,11 @@ public class Table {
 
     HashMapBlows() { }
 
+    HashMapBlows(HashMapBlows source) {
+      dataToIndex.putAll(source.dataToIndex);
+      indexToData.addAll(source.indexToData);
+    }
+
     HashMapBlows(DataInputStream input) throws IOException {
       read(input);
     }
@@ -4324,6 +6232,7 @@ public class Table {
 
 
   protected void sort(final int column, final boolean reverse) {
+    unmap();
     final int[] order = IntList.fromRange(getRowCount()).array();
     Sort s = new Sort() {
 
@@ -4422,6 +6331,7 @@ public class Table {
         break;
       }
     }
+    rebuildIndexes();
   }
 
 
@@ -4569,6 +6479,737 @@ public class Table {
   // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
 
+  /**
+   * Group the rows by the values in one or more columns, so that totals,
+   * averages, and so on can be calculated for each group. For instance:
+   * <pre>
+   * Table totals = sales.groupBy("region", "year")
+   *   .sum("amount").mean("price").count()
+   *   .agg();
+   * </pre>
+   * returns a new Table with a row for each region and year (in the order
+   * that each was first seen), and columns named "region", "year",
+   * "sum(amount)", "mean(price)", and "count".
+   * @param columnNames titles of the columns that make up each group
+   */
+  public Grouping groupBy(String... columnNames) {
+    int[] keyColumns = new int[columnNames.length];
+    for (int i = 0; i < columnNames.length; i++) {
+      keyColumns[i] = checkColumnIndex(columnNames[i]);
+    }
+    return new Grouping(this, keyColumns);
+  }
+
+
+  /**
+   * @param keyColumns ID numbers of the columns that make up each group
+   */
+  public Grouping groupBy(int... keyColumns) {
+    for (int col : keyColumns) {
+      checkColumn(col);
+    }
+    return new Grouping(this, keyColumns.clone());
+  }
+
+
+  /**
+   * Calculates summaries for groups of rows, see groupBy(). The work is done
+   * directly on the column data: the rows in each group are found by hashing
+   * the key columns (CATEGORY and INT columns are used as-is, String columns
+   * are reduced to an int code first), then each aggregate is a single pass
+   * over its column. With parallel(true), the rows are divided among
+   * several threads, and their partial results are combined at the end.
+   * Missing (NaN) float and double values are ignored by sum, mean, min,
+   * and max; count is the number of rows in each group.
+   */
+  static public class Grouping {
+    static final int SUM = 0;
+    static final int MEAN = 1;
+    static final int MIN = 2;
+    static final int MAX = 3;
+    static final int COUNT = 4;
+    static final String[] OP_NAMES = { "sum", "mean", "min", "max", "count" };
+
+    /** don't bother with threads for tables smaller than this */
+    static final int PARALLEL_MINIMUM = 1 << 16;
+
+    Table table;
+    int[] keyColumns;
+    boolean parallel;
+
+    int aggCount;
+    int[] aggOps = new int[4];
+    int[] aggColumns = new int[4];
+
+    // set by agg() while it's running
+    int[][] intKeys;
+    long[][] longKeys;
+    Object[] aggData;
+    // when all keys are ints within a small enough range, groups are found
+    // with a lookup table of this size instead of hashing
+    int denseSize;
+    int[] denseMin;
+    int[] denseRange;
+
+
+    Grouping(Table table, int[] keyColumns) {
+      this.table = table;
+      this.keyColumns = keyColumns;
+    }
+
+
+    public Grouping sum(String columnName) {
+      return sum(table.checkColumnIndex(columnName));
+    }
+
+
+    /**
+     * Add a column with the total for each group. The total of int or long
+     * values is a long column, and of float or double values is a double.
+     */
+    public Grouping sum(int column) {
+      return add(SUM, column);
+    }
+
+
+    public Grouping mean(String columnName) {
+      return mean(table.checkColumnIndex(columnName));
+    }
+
+
+    /** Add a double column with the average for each group. */
+    public Grouping mean(int column) {
+      return add(MEAN, column);
+    }
+
+
+    public Grouping min(String columnName) {
+      return min(table.checkColumnIndex(columnName));
+    }
+
+
+    /** Add a column (of the same type) with the lowest value in each group. */
+    public Grouping min(int column) {
+      return add(MIN, column);
+    }
+
+
+    public Grouping max(String columnName) {
+      return max(table.checkColumnIndex(columnName));
+    }
+
+
+    /** Add a column (of the same type) with the highest value in each group. */
+    public Grouping max(int column) {
+      return add(MAX, column);
+    }
+
+
+    /** Add an int column with the number of rows in each group. */
+    public Grouping count() {
+      return add(COUNT, -1);
+    }
+
+
+    /**
+     * Use a thread for each core to do the work in agg(). Only helps with
+     * larger tables, so smaller ones will still use a single thread.
+     */
+    public Grouping parallel(boolean parallel) {
+      this.parallel = parallel;
+      return this;
+    }
+
+
+    protected Grouping add(int op, int column) {
+      if (op != COUNT) {
+        table.checkColumn(column);
+        if (!isNumeric(table.getColumnType(column))) {
+          throw new IllegalArgumentException(OP_NAMES[op] + "() can only be " +
+                                             "used with int, long, float, or double columns");
+        }
+      }
+      if (aggCount == aggOps.length) {
+        aggOps = PApplet.expand(aggOps);
+        aggColumns = PApplet.expand(aggColumns);
+      }
+      aggOps[aggCount] = op;
+      aggColumns[aggCount] = column;
+      aggCount++;
+      return this;
+    }
+
+
+    /**
+     * Calculate the results, and return them as a new Table, which has the
+     * key columns followed by a column for each sum(), mean(), etc. in the
+     * order they were added. Can be called again after the table changes.
+     */
+    public Table agg() {
+      int rowCount = table.getRowCount();
+      prepare();
+
+      Partial result;
+      int threads = Runtime.getRuntime().availableProcessors();
+      if (!parallel || threads < 2 || rowCount < PARALLEL_MINIMUM) {
+        result = new Partial(this, 0, rowCount);
+        result.run();
+
+      } else {
+        final Partial[] partials = new Partial[threads];
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+          partials[i] = new Partial(this, (int) ((long) rowCount * i / threads),
+                                    (int) ((long) rowCount * (i+1) / threads));
+          tasks.add(ForkJoinPool.commonPool().submit(partials[i]));
+        }
+        try {
+          for (Future<?> task : tasks) {
+            task.get();
+          }
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+          }
+          throw new RuntimeException(cause);
+        }
+        result = combine(partials);
+      }
+
+      Table outgoing = createOutput(result);
+      intKeys = null;
+      longKeys = null;
+      aggData = null;
+      return outgoing;
+    }
+
+
+    /** Get the arrays for the key and aggregate columns. */
+    protected void prepare() {
+      int rowCount = table.getRowCount();
+      List<int[]> ints = new ArrayList<>();
+      List<long[]> longs = new ArrayList<>();
+      for (int col : keyColumns) {
+        Object data = table.getColumnData(col);
+        switch (table.getColumnType(col)) {
+          case INT:
+          case CATEGORY:
+            ints.add((int[]) data);
+            break;
+          case LONG:
+            longs.add((long[]) data);
+            break;
+          case FLOAT: {
+            float[] floatData = (float[]) data;
+            int[] bits = new int[rowCount];
+            for (int row = 0; row < rowCount; row++) {
+              bits[row] = Float.floatToIntBits(floatData[row]);
+            }
+            ints.add(bits);
+            break;
+          }
+          case DOUBLE: {
+            double[] doubleData = (double[]) data;
+            long[] bits = new long[rowCount];
+            for (int row = 0; row < rowCount; row++) {
+              bits[row] = Double.doubleToLongBits(doubleData[row]);
+            }
+            longs.add(bits);
+            break;
+          }
+          case STRING: {
+            String[] stringData = (String[]) data;
+            HashMap<String, Integer> lookup = new HashMap<>();
+            int[] codes = new int[rowCount];
+            for (int row = 0; row < rowCount; row++) {
+              Integer code = lookup.get(stringData[row]);
+              if (code == null) {
+                code = lookup.size();
+                lookup.put(stringData[row], code);
+              }
+              codes[row] = code;
+            }
+            ints.add(codes);
+            break;
+          }
+        }
+      }
+      intKeys = ints.toArray(new int[ints.size()][]);
+      longKeys = longs.toArray(new long[longs.size()][]);
+
+      denseSize = 0;
+      if (longKeys.length == 0 && intKeys.length != 0) {
+        denseMin = new int[intKeys.length];
+        denseRange = new int[intKeys.length];
+        long limit = Math.max(rowCount, 1024);
+        long size = 1;
+        int k = 0;
+        for (; k < intKeys.length && size <= limit; k++) {
+          int[] data = intKeys[k];
+          int lo = Integer.MAX_VALUE;
+          int hi = Integer.MIN_VALUE;
+          for (int row = 0; row < rowCount; row++) {
+            lo = Math.min(lo, data[row]);
+            hi = Math.max(hi, data[row]);
+          }
+          denseMin[k] = lo;
+          denseRange[k] = (int) Math.min((long) hi - lo + 1, Integer.MAX_VALUE);
+          size *= denseRange[k];
+        }
+        // only when every key has a range, and the table is no larger
+        // than the column itself
+        if (k == intKeys.length && size > 0 && size <= limit) {
+          denseSize = (int) size;
+        }
+      }
+
+      aggData = new Object[aggCount];
+      for (int a = 0; a < aggCount; a++) {
+        if (aggOps[a] != COUNT) {
+          aggData[a] = table.getColumnData(aggColumns[a]);
+        }
+      }
+    }
+
+
+    /** Merge the results from each thread, keeping the groups in order. */
+    protected Partial combine(Partial[] partials) {
+      Partial outgoing = new Partial(this, 0, 0);
+      outgoing.startGroups(partials[0].groupCount);
+      int[][] maps = new int[partials.length][];
+      for (int i = 0; i < partials.length; i++) {
+        Partial p = partials[i];
+        maps[i] = new int[p.groupCount];
+        for (int g = 0; g < p.groupCount; g++) {
+          maps[i][g] = outgoing.findGroup(p.firstRow[g], p.hashes[g]);
+        }
+      }
+      outgoing.startAggregates();
+      for (int i = 0; i < partials.length; i++) {
+        outgoing.merge(partials[i], maps[i]);
+      }
+      return outgoing;
+    }
+
+
+    protected Table createOutput(Partial result) {
+      int keyCount = keyColumns.length;
+      int columnCount = keyCount + aggCount;
+      String[] titles = new String[columnCount];
+      int[] types = new int[columnCount];
+      for (int k = 0; k < keyCount; k++) {
+        titles[k] = table.getColumnTitle(keyColumns[k]);
+        types[k] = table.getColumnType(keyColumns[k]);
+      }
+      for (int a = 0; a < aggCount; a++) {
+        int op = aggOps[a];
+        int column = aggColumns[a];
+        if (op == COUNT) {
+          titles[keyCount + a] = OP_NAMES[op];
+          types[keyCount + a] = INT;
+        } else {
+          String title = table.getColumnTitle(column);
+          if (title == null) {
+            title = String.valueOf(column);
+          }
+          titles[keyCount + a] = OP_NAMES[op] + "(" + title + ")";
+          int type = table.getColumnType(column);
+          if (op == MEAN) {
+            types[keyCount + a] = DOUBLE;
+          } else if (op == SUM) {
+            types[keyCount + a] = (type == INT || type == LONG) ? LONG : DOUBLE;
+          } else {
+            types[keyCount + a] = type;
+          }
+        }
+      }
+
+      int groupCount = result.groupCount;
+      Table outgoing = new Table();
+      outgoing.setColumnTitles(titles);
+      outgoing.setColumnTypes(types);
+      outgoing.setRowCount(groupCount);
+
+      int[] firstRow = result.firstRow;
+      for (int k = 0; k < keyCount; k++) {
+        int col = keyColumns[k];
+        Object data = table.getColumnData(col);
+        switch (types[k]) {
+          case CATEGORY:
+            outgoing.columnCategories[k] =
+              new HashMapBlows(table.columnCategories[col]);
+            // fall through
+          case INT: {
+            int[] from = (int[]) data;
+            int[] to = (int[]) outgoing.columns[k];
+            for (int g = 0; g < groupCount; g++) {
+              to[g] = from[firstRow[g]];
+            }
+            break;
+          }
+          case LONG: {
+            long[] from = (long[]) data;
+            long[] to = (long[]) outgoing.columns[k];
+            for (int g = 0; g < groupCount; g++) {
+              to[g] = from[firstRow[g]];
+            }
+            break;
+          }
+          case FLOAT: {
+            float[] from = (float[]) data;
+            float[] to = (float[]) outgoing.columns[k];
+            for (int g = 0; g < groupCount; g++) {
+              to[g] = from[firstRow[g]];
+            }
+            break;
+          }
+          case DOUBLE: {
+            double[] from = (double[]) data;
+            double[] to = (double[]) outgoing.columns[k];
+            for (int g = 0; g < groupCount; g++) {
+              to[g] = from[firstRow[g]];
+            }
+            break;
+          }
+          case STRING: {
+            String[] from = (String[]) data;
+            String[] to = (String[]) outgoing.columns[k];
+            for (int g = 0; g < groupCount; g++) {
+              to[g] = from[firstRow[g]];
+            }
+            break;
+          }
+        }
+      }
+
+      for (int a = 0; a < aggCount; a++) {
+        int col = keyCount + a;
+        long[] longAcc = result.longAcc[a];
+        double[] doubleAcc = result.doubleAcc[a];
+        long[] valid = result.valid[a];
+        for (int g = 0; g < groupCount; g++) {
+          switch (aggOps[a]) {
+            case COUNT:
+              outgoing.setInt(g, col, (int) result.rows[g]);
+              break;
+            case MEAN:
+              if (longAcc != null) {
+                outgoing.setDouble(g, col, (double) longAcc[g] / result.rows[g]);
+              } else {
+                outgoing.setDouble(g, col, valid[g] == 0 ?
+                                   Double.NaN : doubleAcc[g] / valid[g]);
+              }
+              break;
+            default:
+              switch (types[col]) {
+                case INT: outgoing.setInt(g, col, (int) longAcc[g]); break;
+                case LONG: outgoing.setLong(g, col, longAcc[g]); break;
+                case FLOAT: outgoing.setFloat(g, col, (float) doubleAcc[g]); break;
+                case DOUBLE: outgoing.setDouble(g, col, doubleAcc[g]); break;
+              }
+          }
+        }
+      }
+      return outgoing;
+    }
+
+
+    /**
+     * Groups and aggregates for a range of rows. Groups are numbered in the
+     * order they're first seen, and found through an open-addressing hash
+     * table whose slots hold the group number + 1 (0 for an empty slot).
+     */
+    static class Partial implements Runnable {
+      Grouping grouping;
+      int start, stop;
+
+      int groupCount;
+      int[] firstRow;
+      int[] hashes;
+      int[] slots;
+
+      long[] rows;  // number of rows in each group
+      long[][] longAcc;  // [aggregate][group] for int and long columns
+      double[][] doubleAcc;  // [aggregate][group] for float and double
+      long[][] valid;  // [aggregate][group] number of non-NaN values
+
+
+      Partial(Grouping grouping, int start, int stop) {
+        this.grouping = grouping;
+        this.start = start;
+        this.stop = stop;
+      }
+
+
+      public void run() {
+        int[] groupOf = new int[stop - start];
+        startGroups(16);
+        if (grouping.denseSize != 0) {
+          findDenseGroups(groupOf);
+        } else {
+          for (int row = start; row < stop; row++) {
+            groupOf[row - start] = findGroup(row, hash(row));
+          }
+        }
+        startAggregates();
+        for (int i = 0; i < groupOf.length; i++) {
+          rows[groupOf[i]]++;
+        }
+        for (int a = 0; a < grouping.aggCount; a++) {
+          aggregate(a, groupOf);
+        }
+      }
+
+
+      void startGroups(int expected) {
+        int size = 16;
+        while (size < expected * 2) {
+          size <<= 1;
+        }
+        slots = new int[size];
+        firstRow = new int[Math.max(expected, 8)];
+        hashes = new int[firstRow.length];
+        groupCount = 0;
+      }
+
+
+      int hash(int row) {
+        long h = 0;
+        for (int[] data : grouping.intKeys) {
+          h = (h + data[row]) * 0x9E3779B97F4A7C15L;
+        }
+        for (long[] data : grouping.longKeys) {
+          h = (h + data[row]) * 0x9E3779B97F4A7C15L;
+        }
+        return (int) (h ^ (h >>> 32));
+      }
+
+
+      boolean sameKey(int row1, int row2) {
+        for (int[] data : grouping.intKeys) {
+          if (data[row1] != data[row2]) return false;
+        }
+        for (long[] data : grouping.longKeys) {
+          if (data[row1] != data[row2]) return false;
+        }
+        return true;
+      }
+
+
+      /**
+       * Find the groups using the key values (relative to their minimum) as
+       * the position in a lookup table. That position stands in for the hash,
+       * so the groups can still be merged by combine().
+       */
+      void findDenseGroups(int[] groupOf) {
+        int[] table = new int[grouping.denseSize];  // group + 1, or 0
+        int[][] keys = grouping.intKeys;
+        int[] min = grouping.denseMin;
+        int[] range = grouping.denseRange;
+        for (int row = start; row < stop; row++) {
+          int code = keys[0][row] - min[0];
+          for (int k = 1; k < keys.length; k++) {
+            code = code * range[k] + (keys[k][row] - min[k]);
+          }
+          int entry = table[code];
+          if (entry == 0) {
+            entry = addGroup(row, code) + 1;
+            table[code] = entry;
+          }
+          groupOf[row - start] = entry - 1;
+        }
+      }
+
+
+      int addGroup(int row, int hash) {
+        if (groupCount == firstRow.length) {
+          firstRow = PApplet.expand(firstRow);
+          hashes = PApplet.expand(hashes);
+        }
+        firstRow[groupCount] = row;
+        hashes[groupCount] = hash;
+        return groupCount++;
+      }
+
+
+      /** Returns the group for a row, adding a new one if necessary. */
+      int findGroup(int row, int hash) {
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        while (true) {
+          int entry = slots[slot];
+          if (entry == 0) {
+            break;
+          }
+          int group = entry - 1;
+          if (hashes[group] == hash && sameKey(firstRow[group], row)) {
+            return group;
+          }
+          slot = (slot + 1) & mask;
+        }
+        int group = addGroup(row, hash);
+        slots[slot] = group + 1;
+        if (groupCount * 2 > slots.length) {
+          rehash();
+        }
+        return group;
+      }
+
+
+      void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int group = 0; group < groupCount; group++) {
+          int slot = hashes[group] & mask;
+          while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+          }
+          slots[slot] = group + 1;
+        }
+      }
+
+
+      void startAggregates() {
+        int aggCount = grouping.aggCount;
+        rows = new long[groupCount];
+        longAcc = new long[aggCount][];
+        doubleAcc = new double[aggCount][];
+        valid = new long[aggCount][];
+        for (int a = 0; a < aggCount; a++) {
+          int op = grouping.aggOps[a];
+          Object data = grouping.aggData[a];
+          if (op == COUNT) {
+            continue;
+          }
+          if (data instanceof int[] || data instanceof long[]) {
+            longAcc[a] = new long[groupCount];
+            if (op == MIN) {
+              Arrays.fill(longAcc[a], Long.MAX_VALUE);
+            } else if (op == MAX) {
+              Arrays.fill(longAcc[a], Long.MIN_VALUE);
+            }
+          } else {
+            doubleAcc[a] = new double[groupCount];
+            if (op == MIN || op == MAX) {
+              Arrays.fill(doubleAcc[a], Double.NaN);
+            } else {
+              valid[a] = new long[groupCount];
+            }
+          }
+        }
+      }
+
+
+      void aggregate(int a, int[] groupOf) {
+        int op = grouping.aggOps[a];
+        Object data = grouping.aggData[a];
+        long[] lacc = longAcc[a];
+        double[] dacc = doubleAcc[a];
+        long[] count = valid[a];
+        int n = groupOf.length;
+
+        if (data instanceof int[]) {
+          int[] values = (int[]) data;
+          if (op == SUM || op == MEAN) {
+            for (int i = 0; i < n; i++) {
+              lacc[groupOf[i]] += values[start + i];
+            }
+          } else if (op == MIN) {
+            for (int i = 0; i < n; i++) {
+              lacc[groupOf[i]] = Math.min(lacc[groupOf[i]], values[start + i]);
+            }
+          } else if (op == MAX) {
+            for (int i = 0; i < n; i++) {
+              lacc[groupOf[i]] = Math.max(lacc[groupOf[i]], values[start + i]);
+            }
+          }
+
+        } else if (data instanceof long[]) {
+          long[] values = (long[]) data;
+          if (op == SUM || op == MEAN) {
+            for (int i = 0; i < n; i++) {
+              lacc[groupOf[i]] += values[start + i];
+            }
+          } else if (op == MIN) {
+            for (int i = 0; i < n; i++) {
+              lacc[groupOf[i]] = Math.min(lacc[groupOf[i]], values[start + i]);
+            }
+          } else if (op == MAX) {
+            for (int i = 0; i < n; i++) {
+              lacc[groupOf[i]] = Math.max(lacc[groupOf[i]], values[start + i]);
+            }
+          }
+
+        } else if (data instanceof float[]) {
+          float[] values = (float[]) data;
+          for (int i = 0; i < n; i++) {
+            accumulate(op, dacc, count, groupOf[i], values[start + i]);
+          }
+
+        } else if (data instanceof double[]) {
+          double[] values = (double[]) data;
+          for (int i = 0; i < n; i++) {
+            accumulate(op, dacc, count, groupOf[i], values[start + i]);
+          }
+        }
+      }
+
+
+      static void accumulate(int op, double[] acc, long[] count,
+                             int group, double value) {
+        if (value == value) {  // skip NaN
+          if (op == MIN) {
+            if (!(value >= acc[group])) acc[group] = value;
+          } else if (op == MAX) {
+            if (!(value <= acc[group])) acc[group] = value;
+          } else {
+            acc[group] += value;
+            count[group]++;
+          }
+        }
+      }
+
+
+      /** Add the results from another Partial, using map to find its groups. */
+      void merge(Partial source, int[] map) {
+        for (int g = 0; g < source.groupCount; g++) {
+          rows[map[g]] += source.rows[g];
+        }
+        for (int a = 0; a < grouping.aggCount; a++) {
+          int op = grouping.aggOps[a];
+          if (op == COUNT) {
+            continue;
+          }
+          for (int g = 0; g < source.groupCount; g++) {
+            int group = map[g];
+            if (longAcc[a] != null) {
+              long value = source.longAcc[a][g];
+              if (op == MIN) {
+                longAcc[a][group] = Math.min(longAcc[a][group], value);
+              } else if (op == MAX) {
+                longAcc[a][group] = Math.max(longAcc[a][group], value);
+              } else {
+                longAcc[a][group] += value;
+              }
+            } else if (op == MIN || op == MAX) {
+              accumulate(op, doubleAcc[a], null, group, source.doubleAcc[a][g]);
+            } else {
+              doubleAcc[a][group] += source.doubleAcc[a][g];
+              valid[a][group] += source.valid[a][g];
+            }
+          }
+        }
+      }
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
 //  /**
 //   * Return an object that maps the String values in one column back to the
 //   * row from which they came. For instance, if the "name" of each row is
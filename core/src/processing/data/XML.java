@@ -24,8 +24,15 @@
 package processing.data;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 import javax.xml.parsers.*;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import org.w3c.dom.*;
 import org.xml.sax.*;
@@ -60,7 +67,7 @@ public class XML implements Serializable {
   /** The parent element. */
   protected XML parent;
 
-  /** Child elements, once loaded. */
+  /** Child elements, each created once it's been used. */
   protected XML[] children;
 
   /**
@@ -268,6 +275,296 @@ public class XML implements Serializable {
   }
 
 
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Receives each element found by streamElements().
+   */
+  public interface ElementHandler {
+    public void handle(XML element);
+  }
+
+
+  /**
+   * @nowebref
+   */
+  static public int streamElements(File file, String path,
+                                   ElementHandler handler) throws IOException {
+    InputStream input = PApplet.createInput(file);
+    if (input == null) {
+      throw new FileNotFoundException(file.getAbsolutePath());
+    }
+    return streamElements(input, path, handler);
+  }
+
+
+  /**
+   * Read a document one piece at a time, passing each element that matches
+   * the path to a handler. The path works like getChildren(), starting from
+   * the root element, so "node" finds each &lt;node&gt; directly inside the
+   * root, and "way/nd" finds each &lt;nd&gt; inside a &lt;way&gt;. Use * to
+   * match any name. Each element is a separate document (its parent is null)
+   * that can be kept or modified, and only one of them is held in memory at
+   * a time, so this works for files that are much larger than the heap.
+   * The stream is closed once the end of the document is reached.
+   *
+   * @nowebref
+   * @return the number of elements passed to the handler
+   */
+  static public int streamElements(InputStream input, String path,
+                                   ElementHandler handler) throws IOException {
+    int count = 0;
+    ElementReader reader = new ElementReader(input, path);
+    try {
+      XML element;
+      while ((element = reader.read()) != null) {
+        handler.handle(element);
+        count++;
+      }
+    } catch (XMLStreamException e) {
+      throw new IOException(e);
+    } finally {
+      reader.close();
+    }
+    return count;
+  }
+
+
+  /**
+   * Like streamElements(), but returns the elements through an Iterator,
+   * reading from the stream as next() is called. Errors while reading are
+   * thrown as a RuntimeException.
+   *
+   * @nowebref
+   */
+  static public Iterator<XML> elementIterator(InputStream input,
+                                              String path) throws IOException {
+    final ElementReader reader = new ElementReader(input, path);
+    return new Iterator<XML>() {
+      XML upcoming;
+
+      public boolean hasNext() {
+        if (upcoming == null && !reader.done) {
+          try {
+            upcoming = reader.read();
+          } catch (XMLStreamException e) {
+            throw new RuntimeException(e);
+          } finally {
+            if (upcoming == null) {
+              reader.close();
+            }
+          }
+        }
+        return upcoming != null;
+      }
+
+      public XML next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        XML outgoing = upcoming;
+        upcoming = null;
+        return outgoing;
+      }
+
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+
+  /**
+   * Pulls events from a StAX parser, tracking the names of the enclosing
+   * elements, and builds a separate DOM for each element that matches the
+   * path. Namespaces are handled the same way as the DocumentBuilder used
+   * by the constructors (names are left as-is, with their prefixes), and
+   * any xmlns attributes from outside the element are copied onto it.
+   */
+  static class ElementReader {
+    /** the JDK's parser reports CDATA as plain text unless this is set */
+    static final String REPORT_CDATA =
+      "http://java.sun.com/xml/stream/properties/report-cdata-event";
+
+    InputStream input;
+    XMLStreamReader reader;
+    DocumentBuilder builder;
+    String[] path;
+    boolean done;
+
+    /** names of the elements currently open, starting with the root */
+    ArrayList<String> names = new ArrayList<>();
+    /** xmlns attributes for each open element, as name/value pairs */
+    ArrayList<String[]> namespaces = new ArrayList<>();
+
+
+    ElementReader(InputStream input, String path) throws IOException {
+      if (path.length() > 0 && path.charAt(0) == '/') {
+        throw new IllegalArgumentException("The path should not begin with a slash");
+      }
+      this.input = input;
+      // an empty path matches the root element itself
+      this.path = (path.length() == 0) ? new String[0] : PApplet.split(path, '/');
+
+      XMLInputFactory factory = XMLInputFactory.newInstance();
+      factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+      // leave CDATA sections separate, as the DocumentBuilder does
+      factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+      if (factory.isPropertySupported(REPORT_CDATA)) {
+        factory.setProperty(REPORT_CDATA, true);
+      }
+      // Don't read external DTDs, for the same reason as the constructors
+      factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+      try {
+        reader = factory.createXMLStreamReader(input);
+        builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+      } catch (XMLStreamException e) {
+        throw new IOException(e);
+      } catch (ParserConfigurationException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+
+    /** Returns the next matching element, or null at the end of the file. */
+    XML read() throws XMLStreamException {
+      while (!done && reader.hasNext()) {
+        int event = reader.next();
+        if (event == XMLStreamConstants.START_ELEMENT) {
+          names.add(reader.getLocalName());
+          namespaces.add(listNamespaces());
+          if (matches()) {
+            XML outgoing = new XML();
+            outgoing.node = readElement();
+            return outgoing;
+          }
+        } else if (event == XMLStreamConstants.END_ELEMENT) {
+          names.remove(names.size() - 1);
+          namespaces.remove(namespaces.size() - 1);
+        }
+      }
+      done = true;
+      return null;
+    }
+
+
+    void close() {
+      done = true;
+      try {
+        reader.close();
+        input.close();
+      } catch (Exception e) { }
+    }
+
+
+    /** Whether the element that was just opened is at the path. */
+    boolean matches() {
+      // names[0] is the root, so names[i] is compared with path[i-1]
+      if (names.size() != path.length + 1) {
+        return false;
+      }
+      for (int i = 0; i < path.length; i++) {
+        if (!path[i].equals("*") && !path[i].equals(names.get(i + 1))) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+
+    String[] listNamespaces() {
+      String[] outgoing = null;
+      for (int i = 0; i < reader.getAttributeCount(); i++) {
+        String name = attributeName(i);
+        if (name.startsWith("xmlns")) {
+          if (outgoing == null) {
+            outgoing = new String[0];
+          }
+          outgoing = PApplet.append(outgoing, name);
+          outgoing = PApplet.append(outgoing, reader.getAttributeValue(i));
+        }
+      }
+      return outgoing;
+    }
+
+
+    String attributeName(int index) {
+      String prefix = reader.getAttributePrefix(index);
+      String name = reader.getAttributeLocalName(index);
+      return (prefix == null || prefix.length() == 0) ? name : prefix + ":" + name;
+    }
+
+
+    /**
+     * Build a DOM for the element that was just opened, reading up to
+     * (and including) its end tag.
+     */
+    Element readElement() throws XMLStreamException {
+      Document document = builder.newDocument();
+      Element root = startElement(document);
+      // add xmlns attributes that were set further up
+      for (int i = namespaces.size() - 2; i >= 0; --i) {
+        String[] list = namespaces.get(i);
+        if (list != null) {
+          for (int j = 0; j < list.length; j += 2) {
+            if (!root.hasAttribute(list[j])) {
+              root.setAttribute(list[j], list[j+1]);
+            }
+          }
+        }
+      }
+      document.appendChild(root);
+
+      Node current = root;
+      while (current != document) {
+        switch (reader.next()) {
+        case XMLStreamConstants.START_ELEMENT:
+          current = current.appendChild(startElement(document));
+          break;
+        case XMLStreamConstants.END_ELEMENT:
+          current = current.getParentNode();
+          break;
+        case XMLStreamConstants.CHARACTERS:
+        case XMLStreamConstants.SPACE:
+        case XMLStreamConstants.ENTITY_REFERENCE:
+          // text may arrive in pieces, but the DOM keeps it as one node
+          Node last = current.getLastChild();
+          if (last != null && last.getNodeType() == Node.TEXT_NODE) {
+            ((Text) last).appendData(reader.getText());
+          } else {
+            current.appendChild(document.createTextNode(reader.getText()));
+          }
+          break;
+        case XMLStreamConstants.CDATA:
+          current.appendChild(document.createCDATASection(reader.getText()));
+          break;
+        case XMLStreamConstants.COMMENT:
+          current.appendChild(document.createComment(reader.getText()));
+          break;
+        case XMLStreamConstants.PROCESSING_INSTRUCTION:
+          current.appendChild(document.createProcessingInstruction(reader.getPITarget(),
+                                                                   reader.getPIData()));
+          break;
+        }
+      }
+      // the end tag of this element has been read, so it's no longer open
+      names.remove(names.size() - 1);
+      namespaces.remove(namespaces.size() - 1);
+      return root;
+    }
+
+
+    Element startElement(Document document) {
+      Element element = document.createElement(reader.getLocalName());
+      for (int i = 0; i < reader.getAttributeCount(); i++) {
+        element.setAttribute(attributeName(i), reader.getAttributeValue(i));
+      }
+      return element;
+    }
+  }
+
+
 //  protected boolean save(OutputStream output) {
 //    return write(PApplet.createWriter(output));
 //  }
@@ -352,20 +649,27 @@ public class XML implements Serializable {
   /**
    * Honey, can you just check on the kids? Thanks.
    *
+   * Only makes room for them; the XML object for each child is created the
+   * first time getChild(int) is used for it, so that large documents don't
+   * need a wrapper for every node when only a few of them are used.
+   *
    * Internal function; not included in reference.
    */
   protected void checkChildren() {
     if (children == null) {
-      NodeList kids = node.getChildNodes();
-      int childCount = kids.getLength();
-      children = new XML[childCount];
-      for (int i = 0; i < childCount; i++) {
-        children[i] = new XML(this, kids.item(i));
-      }
+      children = new XML[node.getChildNodes().getLength()];
     }
   }
 
 
+  /**
+   * Name of a child, without creating an XML object for it.
+   */
+  protected String getChildName(int index) {
+    return node.getChildNodes().item(index).getNodeName();
+  }
+
+
   /**
    * Returns the number of children.
    *
@@ -411,7 +715,7 @@ public class XML implements Serializable {
     checkChildren();
     String[] outgoing = new String[children.length];
     for (int i = 0; i < children.length; i++) {
-      outgoing[i] = children[i].getName();
+      outgoing[i] = getChildName(i);
     }
     return outgoing;
   }
@@ -433,6 +737,9 @@ public class XML implements Serializable {
 //    }
 //    return kids;
     checkChildren();
+    for (int i = 0; i < children.length; i++) {
+      getChild(i);
+    }
     return children;
   }
 
@@ -444,7 +751,12 @@ public class XML implements Serializable {
    */
   public XML getChild(int index) {
     checkChildren();
-    return children[index];
+    XML kid = children[index];
+    if (kid == null) {
+      kid = new XML(this, node.getChildNodes().item(index));
+      children[index] = kid;
+    }
+    return kid;
   }
 
 
@@ -465,10 +777,9 @@ public class XML implements Serializable {
     }
     int childCount = getChildCount();
     for (int i = 0; i < childCount; i++) {
-      XML kid = getChild(i);
-      String kidName = kid.getName();
+      String kidName = getChildName(i);
       if (kidName != null && kidName.equals(name)) {
-        return kid;
+        return getChild(i);
       }
     }
     return null;
@@ -495,9 +806,9 @@ public class XML implements Serializable {
     }
     int childCount = getChildCount();
     for (int i = 0; i < childCount; i++) {
-      XML kid = getChild(i);
-      String kidName = kid.getName();
+      String kidName = getChildName(i);
       if (kidName != null && kidName.equals(items[offset])) {
+        XML kid = getChild(i);
         if (offset == items.length-1) {
           return kid;
         } else {
@@ -533,10 +844,9 @@ public class XML implements Serializable {
     XML[] matches = new XML[childCount];
     int matchCount = 0;
     for (int i = 0; i < childCount; i++) {
-      XML kid = getChild(i);
-      String kidName = kid.getName();
+      String kidName = getChildName(i);
       if (kidName != null && kidName.equals(name)) {
-        matches[matchCount++] = kid;
+        matches[matchCount++] = getChild(i);
       }
     }
     return (XML[]) PApplet.subset(matches, 0, matchCount);
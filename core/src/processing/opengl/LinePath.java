@@ -323,6 +323,19 @@ public class LinePath {
   }
 
 
+  /**
+   * Returns true if the colors of all the points in the path are opaque.
+   */
+  public boolean isOpaque() {
+    for (int i = 0; i < numCoords / 2; i++) {
+      if ((pointColors[i] >>> 24) != 0xFF) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+
   static public class PathIterator {
     float[] floatCoords;
 
@@ -457,6 +470,20 @@ public class LinePath {
   }
 
 
+  /**
+   * Strokes the path with a <code>LineStroker</code> that is used again
+   * from one path to the next, instead of making a new one (and the
+   * path for its output) each time. The outline goes to the output that
+   * was given to the stroker with <code>setOutput()</code>.
+   */
+  static public void strokeTo(LinePath src, float weight, int caps, int join,
+                              LineStroker stroker) {
+    stroker.setParameters(FloatToS15_16(weight), caps, join,
+                          FloatToS15_16(defaultMiterlimit), identity);
+    pathTo(src, stroker);
+  }
+
+
   private static void strokeTo(LinePath src, float width, int caps, int join,
                                float miterlimit, PMatrix2D transform,
                                LineStroker lsink) {
@@ -464,30 +491,26 @@ public class LinePath {
                             FloatToS15_16(miterlimit),
                             transform == null ? identity : transform);
 
-    PathIterator pi = src.getPathIterator();
-    pathTo(pi, lsink);
+    pathTo(src, lsink);
   }
 
 
-  private static void pathTo(PathIterator pi, LineStroker lsink) {
-    float[] coords = new float[6];
-    while (!pi.isDone()) {
-      int color;
-      switch (pi.currentSegment(coords)) {
+  private static void pathTo(LinePath src, LineStroker lsink) {
+    int coord = 0;
+    for (int i = 0; i < src.numTypes; i++) {
+      switch (src.pointTypes[i]) {
       case SEG_MOVETO:
-        color = ((int)coords[2]<<24) |
-                ((int)coords[3]<<16) |
-                ((int)coords[4]<< 8) |
-                 (int)coords[5];
-        lsink.moveTo(FloatToS15_16(coords[0]), FloatToS15_16(coords[1]), color);
+        lsink.moveTo(FloatToS15_16(src.floatCoords[coord]),
+                     FloatToS15_16(src.floatCoords[coord + 1]),
+                     src.pointColors[coord / 2]);
+        coord += 2;
         break;
       case SEG_LINETO:
-        color = ((int)coords[2]<<24) |
-                ((int)coords[3]<<16) |
-                ((int)coords[4]<< 8) |
-                 (int)coords[5];
         lsink.lineJoin();
-        lsink.lineTo(FloatToS15_16(coords[0]), FloatToS15_16(coords[1]), color);
+        lsink.lineTo(FloatToS15_16(src.floatCoords[coord]),
+                     FloatToS15_16(src.floatCoords[coord + 1]),
+                     src.pointColors[coord / 2]);
+        coord += 2;
         break;
       case SEG_CLOSE:
         lsink.lineJoin();
@@ -496,7 +519,6 @@ public class LinePath {
       default:
         throw new InternalError("unknown flattened segment type");
       }
-      pi.next();
     }
     lsink.end();
   }
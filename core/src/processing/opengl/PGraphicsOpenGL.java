@@ -27,6 +27,7 @@ package processing.opengl;
 import processing.core.*;
 
 import java.io.File;
+import java.lang.management.ManagementFactory;
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 import java.net.URL;
@@ -232,6 +233,10 @@ public class PGraphicsOpenGL extends PGraphics {
   protected DepthSorter sorter;
   protected boolean isDepthSortingEnabled;
 
+  // Geometry cache
+
+  protected GeometryCache geometryCache;
+
   // ........................................................
 
   // Async pixel reader
@@ -444,6 +449,12 @@ public class PGraphicsOpenGL extends PGraphics {
   /** True if we are inside a beginDraw()/endDraw() block. */
   protected boolean drawing = false;
 
+  /** Bytes allocated by the drawing thread in the last frame, once
+   * getFrameAllocation() has turned the measuring on */
+  protected boolean measureAllocation = false;
+  protected long beginDrawAllocation = -1;
+  protected long frameAllocation = -1;
+
   /** Used to detect continuous use of the smooth/noSmooth functions */
   protected boolean smoothDisabled = false;
   protected int smoothCallCount = 0;
@@ -1463,6 +1474,9 @@ public class PGraphicsOpenGL extends PGraphics {
     checkSettings();
 
     drawing = true;
+    if (measureAllocation) {
+      beginDrawAllocation = allocatedBytes();
+    }
 
     report("bot beginDraw()");
   }
@@ -1491,11 +1505,75 @@ public class PGraphicsOpenGL extends PGraphics {
       getPrimaryPG().setCurrentPG();
     }
     drawing = false;
+    if (geometryCache != null) {
+      geometryCache.endFrame();
+    }
+    if (measureAllocation && -1 < beginDrawAllocation) {
+      frameAllocation = allocatedBytes() - beginDrawAllocation;
+    }
 
     report("bot endDraw()");
   }
 
 
+  /**
+   * Returns the number of bytes that the drawing thread allocated between
+   * beginDraw() and endDraw() in the last frame, the code of the sketch
+   * included. It starts measuring the first time it is called, so it
+   * returns -1 until a whole frame has been measured, and always -1 when
+   * the JVM can't count the allocations of a thread.
+   *
+   * @nowebref
+   */
+  public long getFrameAllocation() {
+    measureAllocation = true;
+    return frameAllocation;
+  }
+
+
+  static protected long allocatedBytes() {
+    try {
+      java.lang.management.ThreadMXBean bean =
+        ManagementFactory.getThreadMXBean();
+      if (bean instanceof com.sun.management.ThreadMXBean) {
+        com.sun.management.ThreadMXBean sunBean =
+          (com.sun.management.ThreadMXBean) bean;
+        if (sunBean.isThreadAllocatedMemorySupported()) {
+          if (!sunBean.isThreadAllocatedMemoryEnabled()) {
+            sunBean.setThreadAllocatedMemoryEnabled(true);
+          }
+          return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+      }
+    } catch (LinkageError e) {
+      // Not a JVM that has com.sun.management
+    }
+    return -1;
+  }
+
+
+  /**
+   * Returns how many shapes were drawn from the geometry cache, without
+   * tessellating them, since hint(ENABLE_GEOMETRY_CACHE) turned it on.
+   *
+   * @nowebref
+   */
+  public int getGeometryCacheHits() {
+    return geometryCache == null ? 0 : geometryCache.hits;
+  }
+
+
+  /**
+   * Returns how many shapes had to be tessellated because they were not
+   * in the geometry cache, since hint(ENABLE_GEOMETRY_CACHE) turned it on.
+   *
+   * @nowebref
+   */
+  public int getGeometryCacheMisses() {
+    return geometryCache == null ? 0 : geometryCache.misses;
+  }
+
+
   protected PGraphicsOpenGL getPrimaryPG() {
     if (primaryGraphics) {
       return this;
@@ -1883,7 +1961,8 @@ public class PGraphicsOpenGL extends PGraphics {
         // We flush the geometry using the previous line setting.
         flush();
       }
-    } else if (which == ENABLE_DEPTH_SORT) {
+    } else if (which == ENABLE_DEPTH_SORT ||
+               which == ENABLE_FAST_DEPTH_SORT) {
       if (is3D()) {
         flush();
         if (sorter == null) sorter = new DepthSorter(this);
@@ -1891,11 +1970,19 @@ public class PGraphicsOpenGL extends PGraphics {
       } else {
         PGraphics.showWarning("Depth sorting can only be enabled in 3D");
       }
-    } else if (which == DISABLE_DEPTH_SORT) {
+    } else if (which == DISABLE_DEPTH_SORT ||
+               which == DISABLE_FAST_DEPTH_SORT) {
       if (is3D()) {
         flush();
-        isDepthSortingEnabled = false;
+        isDepthSortingEnabled = getHint(ENABLE_DEPTH_SORT) ||
+                                getHint(ENABLE_FAST_DEPTH_SORT);
       }
+    } else if (which == ENABLE_GEOMETRY_CACHE) {
+      flush();
+      geometryCache = new GeometryCache();
+    } else if (which == DISABLE_GEOMETRY_CACHE) {
+      flush();
+      geometryCache = null;
     } else if (which == ENABLE_BUFFER_READING) {
       restartPGL();
     } else if (which == DISABLE_BUFFER_READING) {
@@ -2223,6 +2310,14 @@ public class PGraphicsOpenGL extends PGraphics {
     tessellator.setTransform(modelview);
     tessellator.set3D(is3D());
 
+    long key = 0;
+    boolean cached = geometryCacheable();
+    if (cached) {
+      key = geometryKey(mode, null);
+      if (geometryCache.add(key, tessGeo, tessellator)) return;
+      geometryCache.begin(tessGeo);
+    }
+
     if (shape == POINTS) {
       tessellator.tessellatePoints();
     } else if (shape == LINES) {
@@ -2255,6 +2350,8 @@ public class PGraphicsOpenGL extends PGraphics {
       tessellator.tessellatePolygon(true, mode == CLOSE,
                                     normalMode == NORMAL_MODE_AUTO);
     }
+
+    if (cached) geometryCache.end(key, tessGeo);
   }
 
 
@@ -2271,9 +2368,85 @@ public class PGraphicsOpenGL extends PGraphics {
     tessellator.setTransform(modelview);
     tessellator.set3D(is3D());
 
+    long key = 0;
+    boolean cached = geometryCacheable();
+    if (cached) {
+      key = geometryKey(OPEN, indices);
+      if (geometryCache.add(key, tessGeo, tessellator)) return;
+      geometryCache.begin(tessGeo);
+    }
+
     if (stroke && defaultEdges) inGeo.addTrianglesEdges();
     if (normalMode == NORMAL_MODE_AUTO) inGeo.calcTrianglesNormals();
     tessellator.tessellateTriangles(indices);
+
+    if (cached) geometryCache.end(key, tessGeo);
+  }
+
+
+  protected boolean geometryCacheable() {
+    // Textures and custom attributes are left out, the cache doesn't keep
+    // their data.
+    return geometryCache != null && textureImage == null &&
+           polyAttribs.size() == 0;
+  }
+
+
+  // Hashes everything the tessellator reads to make the triangles of the
+  // shape: the input geometry, the style, and the transformation.
+  protected long geometryKey(int mode, int[] indices) {
+    InGeometry in = inGeo;
+    long h = GeometryCache.SEED;
+    h = GeometryCache.hash(h, shape);
+    h = GeometryCache.hash(h, mode);
+    h = GeometryCache.hash(h, defaultEdges ? 1 : 0);
+    h = GeometryCache.hash(h, normalMode);
+    h = GeometryCache.hash(h, fill ? 1 : 0);
+    h = GeometryCache.hash(h, stroke ? 1 : 0);
+    h = GeometryCache.hash(h, strokeColor);
+    h = GeometryCache.hash(h, strokeWeight);
+    h = GeometryCache.hash(h, strokeCap);
+    h = GeometryCache.hash(h, strokeJoin);
+    h = GeometryCache.hash(h, blendMode);  // decides how 2D strokes are made
+    h = GeometryCache.hash(h, is3D() ? 1 : 0);
+    h = GeometryCache.hash(h, flushMode);
+    h = GeometryCache.hash(h, getHint(ENABLE_JAVA_TESSELLATOR) ? 1 : 0);
+    h = GeometryCache.hash(h, bezierDetail);
+    h = GeometryCache.hash(h, curveDetail);
+    h = GeometryCache.hash(h, curveTightness);
+    PMatrix3D mm = modelview;
+    h = GeometryCache.hash(h, mm.m00); h = GeometryCache.hash(h, mm.m01);
+    h = GeometryCache.hash(h, mm.m02); h = GeometryCache.hash(h, mm.m03);
+    h = GeometryCache.hash(h, mm.m10); h = GeometryCache.hash(h, mm.m11);
+    h = GeometryCache.hash(h, mm.m12); h = GeometryCache.hash(h, mm.m13);
+    h = GeometryCache.hash(h, mm.m20); h = GeometryCache.hash(h, mm.m21);
+    h = GeometryCache.hash(h, mm.m22); h = GeometryCache.hash(h, mm.m23);
+    h = GeometryCache.hash(h, mm.m30); h = GeometryCache.hash(h, mm.m31);
+    h = GeometryCache.hash(h, mm.m32); h = GeometryCache.hash(h, mm.m33);
+
+    int n = in.vertexCount;
+    h = GeometryCache.hash(h, n);
+    h = GeometryCache.hash(h, in.vertices, 3 * n);
+    h = GeometryCache.hash(h, in.colors, n);
+    h = GeometryCache.hash(h, in.normals, 3 * n);
+    h = GeometryCache.hash(h, in.texcoords, 2 * n);
+    h = GeometryCache.hash(h, in.strokeColors, n);
+    h = GeometryCache.hash(h, in.strokeWeights, n);
+    h = GeometryCache.hash(h, in.ambient, n);
+    h = GeometryCache.hash(h, in.specular, n);
+    h = GeometryCache.hash(h, in.emissive, n);
+    h = GeometryCache.hash(h, in.shininess, n);
+    h = GeometryCache.hash(h, in.codeCount);
+    h = GeometryCache.hash(h, in.codes, in.codeCount);
+    h = GeometryCache.hash(h, in.edgeCount);
+    for (int i = 0; i < in.edgeCount; i++) {
+      h = GeometryCache.hash(h, in.edges[i], 3);
+    }
+    if (indices != null) {
+      h = GeometryCache.hash(h, indices.length);
+      h = GeometryCache.hash(h, indices, indices.length);
+    }
+    return GeometryCache.finish(h);
   }
 
 
@@ -6580,6 +6753,12 @@ public class PGraphicsOpenGL extends PGraphics {
   }
 
 
+  @Override
+  public void resize(int wide, int high, int filter) {
+    PGraphics.showMethodWarning("resize");
+  }
+
+
   //////////////////////////////////////////////////////////////
 
   // INITIALIZATION ROUTINES
@@ -7387,6 +7566,27 @@ public class PGraphicsOpenGL extends PGraphics {
   }
 
 
+  /** Part of the work given to runParallel(), from start up to stop. */
+  protected interface Range {
+    public void run(int start, int stop);
+  }
+
+
+  /**
+   * Split 0..length into ranges and run them on the threads that PImage
+   * uses for filters, returning once they've all finished. For the classes
+   * in this package that aren't a PImage (like PShapeOpenGL), which decide
+   * for themselves whether there's enough work to be worth it.
+   */
+  static protected void runParallel(int length, final Range range) {
+    runStrips(length, Integer.MAX_VALUE, new Strip() {
+      public void run(int start, int stop) {
+        range.run(start, stop);
+      }
+    });
+  }
+
+
   // Holds an array of textures and the range of vertex
   // indices each texture applies to.
   static protected class TexCache {
@@ -7564,6 +7764,31 @@ public class PGraphicsOpenGL extends PGraphics {
       this.counter = counter;
     }
 
+    // Adds count entries at the end, to be filled in by the caller.
+    void reserve(int count) {
+      if (indexCount.length < size + count) {
+        int newSize = expandArraySize(indexCount.length, size + count);
+
+        expandIndexCount(newSize);
+        expandIndexOffset(newSize);
+        expandVertexCount(newSize);
+        expandVertexOffset(newSize);
+      }
+      size += count;
+    }
+
+    // Copies count entries from another cache, moving their offsets by
+    // the difference in where their indices and vertices are stored.
+    void copy(IndexCache src, int srcPos, int destPos, int count,
+              int indexShift, int vertexShift) {
+      for (int i = 0; i < count; i++) {
+        indexCount[destPos + i] = src.indexCount[srcPos + i];
+        indexOffset[destPos + i] = src.indexOffset[srcPos + i] + indexShift;
+        vertexCount[destPos + i] = src.vertexCount[srcPos + i];
+        vertexOffset[destPos + i] = src.vertexOffset[srcPos + i] + vertexShift;
+      }
+    }
+
     void incCounts(int index, int icount, int vcount) {
       indexCount[index] += icount;
       vertexCount[index] += vcount;
@@ -10050,6 +10275,129 @@ public class PGraphicsOpenGL extends PGraphics {
       }
     }
 
+    // Positions in the arrays filled by getCounts(). The geometry for a
+    // series of shapes goes from the counts taken before the first one was
+    // tessellated, up to the counts taken after the last one.
+    static final int POLY_VERTEX  = 0;
+    static final int POLY_INDEX   = 1;
+    static final int POLY_CACHE   = 2;
+    static final int LINE_VERTEX  = 3;
+    static final int LINE_INDEX   = 4;
+    static final int LINE_CACHE   = 5;
+    static final int POINT_VERTEX = 6;
+    static final int POINT_INDEX  = 7;
+    static final int POINT_CACHE  = 8;
+    static final int COUNTS       = 9;
+
+    void getCounts(int[] counts, int offset) {
+      counts[offset + POLY_VERTEX] = polyVertexCount;
+      counts[offset + POLY_INDEX] = polyIndexCount;
+      counts[offset + POLY_CACHE] = polyIndexCache.size;
+      counts[offset + LINE_VERTEX] = lineVertexCount;
+      counts[offset + LINE_INDEX] = lineIndexCount;
+      counts[offset + LINE_CACHE] = lineIndexCache.size;
+      counts[offset + POINT_VERTEX] = pointVertexCount;
+      counts[offset + POINT_INDEX] = pointIndexCount;
+      counts[offset + POINT_CACHE] = pointIndexCache.size;
+    }
+
+    // Adds room at the end for the amounts of geometry in counts, to be
+    // filled by copyGeometry(). Different parts of that room can then be
+    // filled in at the same time by different threads.
+    void reserve(int[] counts) {
+      polyVertexCheck(counts[POLY_VERTEX]);
+      polyIndexCheck(counts[POLY_INDEX]);
+      polyIndexCache.reserve(counts[POLY_CACHE]);
+      lineVertexCheck(counts[LINE_VERTEX]);
+      lineIndexCheck(counts[LINE_INDEX]);
+      lineIndexCache.reserve(counts[LINE_CACHE]);
+      pointVertexCheck(counts[POINT_VERTEX]);
+      pointIndexCheck(counts[POINT_INDEX]);
+      pointIndexCache.reserve(counts[POINT_CACHE]);
+    }
+
+    // Copies the geometry from start up to stop in another TessGeometry
+    // (using the counts from getCounts) to dest in this one. The indices
+    // don't change, since they're relative to their index cache entries,
+    // so only the offsets in those entries are moved.
+    void copyGeometry(TessGeometry src, int[] start, int startOffset,
+                      int[] stop, int stopOffset, int[] dest, int destOffset) {
+      int first = start[startOffset + POLY_VERTEX];
+      int count = stop[stopOffset + POLY_VERTEX] - first;
+      int pos = dest[destOffset + POLY_VERTEX];
+      PApplet.arrayCopy(src.polyVertices, 4 * first, polyVertices, 4 * pos, 4 * count);
+      PApplet.arrayCopy(src.polyColors, first, polyColors, pos, count);
+      PApplet.arrayCopy(src.polyNormals, 3 * first, polyNormals, 3 * pos, 3 * count);
+      PApplet.arrayCopy(src.polyTexCoords, 2 * first, polyTexCoords, 2 * pos, 2 * count);
+      PApplet.arrayCopy(src.polyAmbient, first, polyAmbient, pos, count);
+      PApplet.arrayCopy(src.polySpecular, first, polySpecular, pos, count);
+      PApplet.arrayCopy(src.polyEmissive, first, polyEmissive, pos, count);
+      PApplet.arrayCopy(src.polyShininess, first, polyShininess, pos, count);
+      for (VertexAttribute attrib: polyAttribs.values()) {
+        int size = attrib.tessSize;
+        if (attrib.type == PGL.FLOAT) {
+          PApplet.arrayCopy(src.fpolyAttribs.get(attrib.name), size * first,
+                            fpolyAttribs.get(attrib.name), size * pos, size * count);
+        } else if (attrib.type == PGL.INT) {
+          PApplet.arrayCopy(src.ipolyAttribs.get(attrib.name), size * first,
+                            ipolyAttribs.get(attrib.name), size * pos, size * count);
+        } else if (attrib.type == PGL.BOOL) {
+          PApplet.arrayCopy(src.bpolyAttribs.get(attrib.name), size * first,
+                            bpolyAttribs.get(attrib.name), size * pos, size * count);
+        }
+      }
+      int vertexShift = pos - first;
+
+      first = start[startOffset + POLY_INDEX];
+      count = stop[stopOffset + POLY_INDEX] - first;
+      pos = dest[destOffset + POLY_INDEX];
+      PApplet.arrayCopy(src.polyIndices, first, polyIndices, pos, count);
+      int indexShift = pos - first;
+
+      first = start[startOffset + POLY_CACHE];
+      count = stop[stopOffset + POLY_CACHE] - first;
+      polyIndexCache.copy(src.polyIndexCache, first, dest[destOffset + POLY_CACHE],
+                          count, indexShift, vertexShift);
+
+      first = start[startOffset + LINE_VERTEX];
+      count = stop[stopOffset + LINE_VERTEX] - first;
+      pos = dest[destOffset + LINE_VERTEX];
+      PApplet.arrayCopy(src.lineVertices, 4 * first, lineVertices, 4 * pos, 4 * count);
+      PApplet.arrayCopy(src.lineColors, first, lineColors, pos, count);
+      PApplet.arrayCopy(src.lineDirections, 4 * first, lineDirections, 4 * pos, 4 * count);
+      vertexShift = pos - first;
+
+      first = start[startOffset + LINE_INDEX];
+      count = stop[stopOffset + LINE_INDEX] - first;
+      pos = dest[destOffset + LINE_INDEX];
+      PApplet.arrayCopy(src.lineIndices, first, lineIndices, pos, count);
+      indexShift = pos - first;
+
+      first = start[startOffset + LINE_CACHE];
+      count = stop[stopOffset + LINE_CACHE] - first;
+      lineIndexCache.copy(src.lineIndexCache, first, dest[destOffset + LINE_CACHE],
+                          count, indexShift, vertexShift);
+
+      first = start[startOffset + POINT_VERTEX];
+      count = stop[stopOffset + POINT_VERTEX] - first;
+      pos = dest[destOffset + POINT_VERTEX];
+      PApplet.arrayCopy(src.pointVertices, 4 * first, pointVertices, 4 * pos, 4 * count);
+      PApplet.arrayCopy(src.pointColors, first, pointColors, pos, count);
+      PApplet.arrayCopy(src.pointOffsets, 2 * first, pointOffsets, 2 * pos, 2 * count);
+      vertexShift = pos - first;
+
+      first = start[startOffset + POINT_INDEX];
+      count = stop[stopOffset + POINT_INDEX] - first;
+      pos = dest[destOffset + POINT_INDEX];
+      PApplet.arrayCopy(src.pointIndices, first, pointIndices, pos, count);
+      indexShift = pos - first;
+
+      first = start[startOffset + POINT_CACHE];
+      count = stop[stopOffset + POINT_CACHE] - first;
+      pointIndexCache.copy(src.pointIndexCache, first, dest[destOffset + POINT_CACHE],
+                           count, indexShift, vertexShift);
+    }
+
     // -----------------------------------------------------------------
     //
     // Normal calculation
@@ -10929,8 +11277,16 @@ public class PGraphicsOpenGL extends PGraphics {
     int firstTexCache;
 
     PGL.Tessellator gluTess;
+    PGL.Tessellator glu;
+    Triangulator triangulator;
     TessellatorCallback callback;
 
+    // Used again for every stroke, so the strokes don't make new
+    // garbage each frame.
+    LinePath linePath;
+    PathStroker pathStroker;
+    OutlineStroker outlineStroker;
+
     boolean fill;
     boolean stroke;
     int strokeColor;
@@ -10980,9 +11336,17 @@ public class PGraphicsOpenGL extends PGraphics {
     }
 
     void initGluTess() {
-      if (gluTess == null) {
+      if (glu == null) {
         callback = new TessellatorCallback(tess.polyAttribs);
-        gluTess = pg.pgl.createTessellator(callback);
+        glu = pg.pgl.createTessellator(callback);
+      }
+      if (pg.getHint(ENABLE_JAVA_TESSELLATOR)) {
+        if (triangulator == null) {
+          triangulator = new Triangulator(callback, glu);
+        }
+        gluTess = triangulator;
+      } else {
+        gluTess = glu;
       }
     }
 
@@ -11411,7 +11775,7 @@ public class PGraphicsOpenGL extends PGraphics {
         }
         lastLineIndexCache = lastPolyIndexCache = index;
       } else { // full stroking algorithm
-        LinePath path = new LinePath(LinePath.WIND_NON_ZERO);
+        LinePath path = linePath();
         for (int ln = 0; ln < lineCount; ln++) {
           int i0 = 2 * ln + 0;
           int i1 = 2 * ln + 1;
@@ -11507,7 +11871,7 @@ public class PGraphicsOpenGL extends PGraphics {
         }
         lastLineIndexCache = lastPolyIndexCache = index;
       } else {  // full stroking algorithm
-        LinePath path = new LinePath(LinePath.WIND_NON_ZERO);
+        LinePath path = linePath();
         path.moveTo(in.vertices[0], in.vertices[1], in.strokeColors[0]);
         for (int ln = 0; ln < lineCount; ln++) {
           int i1 = ln + 1;
@@ -11605,7 +11969,7 @@ public class PGraphicsOpenGL extends PGraphics {
         index = addLineSegment2D(0, in.vertexCount - 1, index, false, clamp);
         lastLineIndexCache = lastPolyIndexCache = index;
       } else { // full stroking algorithm
-        LinePath path = new LinePath(LinePath.WIND_NON_ZERO);
+        LinePath path = linePath();
         path.moveTo(in.vertices[0], in.vertices[1], in.strokeColors[0]);
         for (int ln = 0; ln < lineCount - 1; ln++) {
           int i1 = ln + 1;
@@ -11720,7 +12084,7 @@ public class PGraphicsOpenGL extends PGraphics {
         }
         lastLineIndexCache = lastPolyIndexCache = index;
       } else { // full stroking algorithm
-        LinePath path = new LinePath(LinePath.WIND_NON_ZERO);
+        LinePath path = linePath();
         for (int i = 0; i <= in.edgeCount - 1; i++) {
           int[] edge = in.edges[i];
           int i0 = edge[0];
@@ -12031,15 +12395,39 @@ public class PGraphicsOpenGL extends PGraphics {
     boolean noCapsJoins(int nInVert) {
       if (!accurate2DStrokes) {
         return true;
-      } else if (PGL.MAX_CAPS_JOINS_LENGTH <= nInVert) {
+      } else if (PGL.MAX_CAPS_JOINS_LENGTH <= nInVert && !directStroke()) {
         // The line path is too long, so it could make the GLU tess
         // to run out of memory, so full caps and joins are disabled.
+        // Direct strokes don't go through GLU, so they are not limited.
         return true;
       } else {
         return noCapsJoins();
       }
     }
 
+    boolean opaqueStroke() {
+      for (int i = 0; i < in.vertexCount; i++) {
+        if ((in.strokeColors[i] >>> 24) != 0xFF) return false;
+      }
+      return true;
+    }
+
+    // The segments, joins and caps of a direct stroke overlap, so it only
+    // looks like its outline when drawing a pixel twice is the same as
+    // drawing it once: opaque, and with a blend mode that doesn't add up.
+    // A retained shape can be drawn with any blend mode, so it always uses
+    // the outline.
+    boolean directStroke() {
+      return tess.renderMode == IMMEDIATE && idempotentBlend() &&
+             opaqueStroke();
+    }
+
+    boolean idempotentBlend() {
+      int mode = pg.blendMode;
+      return mode == BLEND || mode == REPLACE ||
+             mode == LIGHTEST || mode == DARKEST;
+    }
+
     boolean subPixelStroke(float weight) {
       float sw = transformScale() * weight;
       return PApplet.abs(sw - (int)sw) > 0;
@@ -12980,13 +13368,21 @@ public class PGraphicsOpenGL extends PGraphics {
       return false;
     }
 
+    // Returns the line path of the tessellator, empty.
+    LinePath linePath() {
+      if (linePath == null) {
+        linePath = new LinePath(LinePath.WIND_NON_ZERO);
+      } else {
+        linePath.reset();
+      }
+      return linePath;
+    }
+
     // Tessellates the path given as parameter. This will work only in 2D.
     // Based on the opengl stroke hack described here:
     // http://wiki.processing.org/w/Stroke_attributes_in_OpenGL
     public void tessellateLinePath(LinePath path) {
-      initGluTess();
       boolean clamp = clampLinePath();
-      callback.init(in.renderMode == RETAINED, true, false, clamp);
 
       int cap = strokeCap == ROUND ? LinePath.CAP_ROUND :
                 strokeCap == PROJECT ? LinePath.CAP_SQUARE :
@@ -12995,52 +13391,303 @@ public class PGraphicsOpenGL extends PGraphics {
                  strokeJoin == BEVEL ? LinePath.JOIN_BEVEL :
                  LinePath.JOIN_MITER;
 
-      // Make the outline of the stroke from the path
-      LinePath strokedPath = LinePath.createStrokedPath(path, strokeWeight,
-                                                        cap, join);
+      if (tess.renderMode == IMMEDIATE && idempotentBlend() &&
+          path.isOpaque()) {
+        // See directStroke(): the triangles can go straight into the
+        // tess geometry, overlaps and all.
+        if (pathStroker == null) pathStroker = new PathStroker();
+        pathStroker.stroke(path, cap, join, clamp);
+        return;
+      }
 
-      gluTess.beginPolygon();
+      initGluTess();
+      callback.init(in.renderMode == RETAINED, true, false, clamp);
+      if (outlineStroker == null) outlineStroker = new OutlineStroker();
 
-      double[] vertex;
-      float[] coords = new float[6];
+      // The outline of the stroke overlaps itself at every join, so
+      // GLU has to merge it before the translucent stroke can be drawn.
+      glu.beginPolygon();
+      glu.setWindingRule(PGL.TESS_WINDING_NONZERO);
+      outlineStroker.vertexCount = 0;
+      LinePath.strokeTo(path, strokeWeight, cap, join, outlineStroker.stroker);
+      glu.endPolygon();
+    }
 
-      LinePath.PathIterator iter = strokedPath.getPathIterator();
-      int rule = iter.getWindingRule();
-      switch(rule) {
-      case LinePath.WIND_EVEN_ODD:
-        gluTess.setWindingRule(PGL.TESS_WINDING_ODD);
-        break;
-      case LinePath.WIND_NON_ZERO:
-        gluTess.setWindingRule(PGL.TESS_WINDING_NONZERO);
-        break;
+    // Passes the outline of the stroke to GLU as the line stroker makes
+    // it, without storing it in a path first.
+    protected class OutlineStroker extends LineStroker {
+      LineStroker stroker;
+      double[][] vertices;
+      int vertexCount;
+      boolean contour;
+
+      OutlineStroker() {
+        stroker = new LineStroker();
+        stroker.setOutput(this);
+        vertices = new double[PGL.DEFAULT_TESS_VERTICES][];
+      }
+
+      @Override
+      public void moveTo(int x0, int y0, int c0) {
+        if (contour) glu.endContour();
+        glu.beginContour();
+        contour = true;
+        addVertex(x0, y0, c0);
       }
 
-      while (!iter.isDone()) {
-        switch (iter.currentSegment(coords)) {
+      @Override
+      public void lineJoin() {
+      }
 
-        case LinePath.SEG_MOVETO:
-          gluTess.beginContour();
+      @Override
+      public void lineTo(int x1, int y1, int c1) {
+        addVertex(x1, y1, c1);
+      }
+
+      @Override
+      public void close() {
+        if (contour) glu.endContour();
+        contour = false;
+      }
 
-          // $FALL-THROUGH$
-        case LinePath.SEG_LINETO:
+      @Override
+      public void end() {
+        close();
+      }
+
+      void addVertex(int x, int y, int c) {
+        // GLU keeps the vertices until the end of the polygon, so they
+        // are only used again for the next one.
+        if (vertexCount == vertices.length) {
+          vertices = (double[][]) PApplet.expand(vertices);
+        }
+        double[] vertex = vertices[vertexCount];
+        if (vertex == null) {
           // Vertex data includes coordinates, colors, normals, texture
           // coordinates, and material properties.
-          vertex = new double[] { coords[0], coords[1], 0,
-                                  coords[2], coords[3], coords[4], coords[5],
-                                  0, 0, 1,
-                                  0, 0,
-                                  0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0};
+          vertex = vertices[vertexCount] = new double[25];
+          vertex[9] = 1;
+        }
+        vertexCount++;
+        vertex[0] = LinePath.S15_16ToFloat(x);
+        vertex[1] = LinePath.S15_16ToFloat(y);
+        vertex[3] = (c >> 24) & 0xFF;
+        vertex[4] = (c >> 16) & 0xFF;
+        vertex[5] = (c >>  8) & 0xFF;
+        vertex[6] = c & 0xFF;
+        glu.addVertex(vertex);
+      }
+    }
+
+    // Writes the stroke of the path as triangles in the tess geometry:
+    // a quad along each segment, a wedge on the outer side of each join,
+    // and the caps at the ends of the open subpaths. The shapes of the
+    // joins and caps follow LineStroker.
+    protected class PathStroker {
+      // Smallest 1 + cos(angle) of a miter join, where the miter point is
+      // at the limit of LineStroker, 10 times the half weight
+      static final float LIMIT_MITER = 2 / (10f * 10f);
+
+      boolean clamp;
+      int cap, join;
+      float radius;
+      float penStep;
+      int index;
 
-          gluTess.addVertex(vertex);
+      // First point and direction of the subpath, and last point and
+      // direction so far
+      float sx, sy, sdx, sdy;
+      int scolor;
+      float px, py, pdx, pdy;
+      int pcolor;
+      int segCount;
+
+      void stroke(LinePath path, int cap, int join, boolean clamp) {
+        this.cap = cap;
+        this.join = join;
+        this.clamp = clamp;
+        radius = strokeWeight / 2;
+        // Same number of sides as the pen of LineStroker
+        int penSegments = (int) (PI * strokeWeight);
+        penStep = penSegments < 3 ? 0 : TWO_PI / penSegments;
+
+        IndexCache cache = tess.polyIndexCache;
+        index = in.renderMode == RETAINED ? cache.addNew() : cache.getLast();
+        if (firstPolyIndexCache == -1) firstPolyIndexCache = index;
+        if (firstLineIndexCache == -1) firstLineIndexCache = index;
+
+        float[] coords = path.floatCoords;
+        int[] colors = path.pointColors;
+        int coord = 0;
+        segCount = 0;
+        for (int i = 0; i < path.numTypes; i++) {
+          switch (path.pointTypes[i]) {
+          case LinePath.SEG_MOVETO:
+            endSubpath();
+            sx = px = coords[coord];
+            sy = py = coords[coord + 1];
+            scolor = pcolor = colors[coord / 2];
+            coord += 2;
+            break;
+          case LinePath.SEG_LINETO:
+            lineTo(coords[coord], coords[coord + 1], colors[coord / 2]);
+            coord += 2;
+            break;
+          case LinePath.SEG_CLOSE:
+            lineTo(sx, sy, scolor);
+            if (0 < segCount) joinAt(sx, sy, scolor, pdx, pdy, sdx, sdy);
+            segCount = 0;
+            break;
+          }
+        }
+        endSubpath();
 
-          break;
-        case LinePath.SEG_CLOSE:
-          gluTess.endContour();
-          break;
+        lastLineIndexCache = lastPolyIndexCache = index;
+      }
+
+      void lineTo(float x, float y, int color) {
+        float dx = x - px;
+        float dy = y - py;
+        float len = (float) Math.sqrt(dx * dx + dy * dy);
+        if (len == 0) return;
+        dx /= len;
+        dy /= len;
+        if (segCount == 0) {
+          sdx = dx;
+          sdy = dy;
+        } else {
+          joinAt(px, py, pcolor, pdx, pdy, dx, dy);
+        }
+
+        float nx = -dy * radius;
+        float ny = dx * radius;
+        reserve(4);
+        int v0 = vertex(px + nx, py + ny, pcolor);
+        int v1 = vertex(px - nx, py - ny, pcolor);
+        int v2 = vertex(x - nx, y - ny, color);
+        int v3 = vertex(x + nx, y + ny, color);
+        triangle(v0, v1, v2);
+        triangle(v0, v2, v3);
+
+        px = x;
+        py = y;
+        pcolor = color;
+        pdx = dx;
+        pdy = dy;
+        segCount++;
+      }
+
+      void endSubpath() {
+        if (0 < segCount) {
+          capAt(px, py, pcolor, pdx, pdy);
+          capAt(sx, sy, scolor, -sdx, -sdy);
+        }
+        segCount = 0;
+      }
+
+      // Fills the gap on the outer side where the segment with direction
+      // (dx0, dy0) meets the one with direction (dx1, dy1).
+      void joinAt(float x, float y, int color,
+                  float dx0, float dy0, float dx1, float dy1) {
+        float cross = dx0 * dy1 - dy0 * dx1;
+        float dot = dx0 * dx1 + dy0 * dy1;
+        if (cross == 0 && 0 < dot) return;
+
+        // The outer side is on the right when the path turns left
+        float side = 0 < cross ? -radius : radius;
+        float ax = -dy0 * side, ay = dx0 * side;
+        float bx = -dy1 * side, by = dx1 * side;
+
+        if (join == LinePath.JOIN_ROUND && 0 < penStep) {
+          float angle = (float) Math.atan2(Math.abs(cross), dot);
+          fan(x, y, color, ax, ay, 0 < cross ? angle : -angle);
+        } else if (join == LinePath.JOIN_MITER &&
+                   LIMIT_MITER < 1 + dot) {
+          // The miter point is at radius / cos(angle / 2) from the join
+          float mx = x + (ax + bx) / (1 + dot);
+          float my = y + (ay + by) / (1 + dot);
+          reserve(4);
+          int v0 = vertex(x, y, color);
+          int v1 = vertex(x + ax, y + ay, color);
+          int v2 = vertex(mx, my, color);
+          int v3 = vertex(x + bx, y + by, color);
+          triangle(v0, v1, v2);
+          triangle(v0, v2, v3);
+        } else if (cross != 0) {
+          reserve(3);
+          int v0 = vertex(x, y, color);
+          int v1 = vertex(x + ax, y + ay, color);
+          int v2 = vertex(x + bx, y + by, color);
+          triangle(v0, v1, v2);
+        }
+      }
+
+      // Adds the cap at the end of a subpath, (dx, dy) pointing away from
+      // the stroke.
+      void capAt(float x, float y, int color, float dx, float dy) {
+        float nx = -dy * radius;
+        float ny = dx * radius;
+        if (cap == LinePath.CAP_ROUND && 0 < penStep) {
+          fan(x, y, color, nx, ny, -PI);
+        } else if (cap == LinePath.CAP_SQUARE) {
+          float ex = dx * radius;
+          float ey = dy * radius;
+          reserve(4);
+          int v0 = vertex(x + nx, y + ny, color);
+          int v1 = vertex(x - nx, y - ny, color);
+          int v2 = vertex(x - nx + ex, y - ny + ey, color);
+          int v3 = vertex(x + nx + ex, y + ny + ey, color);
+          triangle(v0, v1, v2);
+          triangle(v0, v2, v3);
+        }
+      }
+
+      // Adds the triangle fan around (x, y) that goes from the offset
+      // (ax, ay) through the given angle, in steps of the pen.
+      void fan(float x, float y, int color, float ax, float ay,
+               float angle) {
+        int steps = PApplet.max(1, (int) Math.ceil(Math.abs(angle) / penStep));
+        float cos = (float) Math.cos(angle / steps);
+        float sin = (float) Math.sin(angle / steps);
+        reserve(steps + 2);
+        int center = vertex(x, y, color);
+        int prev = vertex(x + ax, y + ay, color);
+        for (int i = 0; i < steps; i++) {
+          float t = ax * cos - ay * sin;
+          ay = ax * sin + ay * cos;
+          ax = t;
+          int next = vertex(x + ax, y + ay, color);
+          triangle(center, prev, next);
+          prev = next;
+        }
+      }
+
+      // Starts a new cache entry when the next count vertices don't fit
+      // in the current one, so the triangles that share them stay in the
+      // same entry.
+      void reserve(int count) {
+        IndexCache cache = tess.polyIndexCache;
+        if (PGL.MAX_VERTEX_INDEX1 <= cache.vertexCount[index] + count) {
+          index = cache.addNew();
         }
-        iter.next();
       }
-      gluTess.endPolygon();
+
+      int vertex(float x, float y, int color) {
+        tess.addPolyVertex(x, y, 0, color, 0, 0, 1, 0, 0, 0, 0, 0, 0, clamp);
+        IndexCache cache = tess.polyIndexCache;
+        int count = cache.vertexCount[index];
+        cache.incCounts(index, 0, 1);
+        return count;
+      }
+
+      void triangle(int i0, int i1, int i2) {
+        tess.polyIndexCheck(3);
+        int i = tess.polyIndexCount - 3;
+        tess.polyIndices[i++] = (short) i0;
+        tess.polyIndices[i++] = (short) i1;
+        tess.polyIndices[i  ] = (short) i2;
+        tess.polyIndexCache.incCounts(index, 3, 0);
+      }
     }
 
     boolean clampLinePath() {
@@ -13076,6 +13723,11 @@ public class PGraphicsOpenGL extends PGraphics {
       int vertOffset;
       int primitive;
 
+      // The vertices made in combine() are kept until the polygon is
+      // done, and then used again for the next one.
+      double[][] combined = new double[PGL.DEFAULT_TESS_VERTICES][];
+      int combinedCount;
+
       public TessellatorCallback(AttributeMap attribs) {
         this.attribs = attribs;
       }
@@ -13085,6 +13737,7 @@ public class PGraphicsOpenGL extends PGraphics {
         this.strokeTess = strokeTess;
         this.calcNormals = calcNorm;
         this.clampXY = clampXY;
+        combinedCount = 0;
 
         cache = tess.polyIndexCache;
         if (addCache) {
@@ -13173,6 +13826,55 @@ public class PGraphicsOpenGL extends PGraphics {
         }
       }
 
+      /**
+       * Adds the triangles made by the Triangulator, with each of the
+       * vertices they share added only once.
+       */
+      public void triangles(double[][] vertices, int vertexCount,
+                            int[] indices, int indexCount) {
+        if (PGL.MAX_VERTEX_INDEX1 <= vertexCount) {
+          // Doesn't fit in one index block, so it goes in as separate
+          // triangles, in batches that do.
+          int batch = (PGL.MAX_VERTEX_INDEX1 - 1) / 3 * 3;
+          for (int i = 0; i < indexCount; ) {
+            int stop = PApplet.min(indexCount, i + batch);
+            begin(PGL.TRIANGLES);
+            for (; i < stop; i++) {
+              vertex(vertices[indices[i]]);
+            }
+            end();
+          }
+          return;
+        }
+
+        begin(PGL.TRIANGLES);
+        for (int i = 0; i < vertexCount; i++) {
+          tess.addPolyVertex(vertices[i], clampXY);
+        }
+        vertCount = vertexCount;
+        if (PGL.MAX_VERTEX_INDEX1 <= vertFirst + vertCount) {
+          // Same as in end()
+          cacheIndex = cache.addNew();
+          vertFirst = cache.vertexCount[cacheIndex];
+          vertOffset = cache.vertexOffset[cacheIndex];
+        }
+
+        for (int i = 0; i < indexCount; i++) {
+          addIndex(indices[i]);
+        }
+        if (calcNormals) {
+          for (int i = 0; i < indexCount; i += 3) {
+            calcTriNormal(indices[i], indices[i + 1], indices[i + 2]);
+          }
+        }
+
+        cache.incCounts(cacheIndex, indexCount, vertCount);
+        lastPolyIndexCache = cacheIndex;
+        if (strokeTess) {
+          lastLineIndexCache = cacheIndex;
+        }
+      }
+
       protected void addIndex(int tessIdx) {
         tess.polyIndexCheck();
         tess.polyIndices[tess.polyIndexCount - 1] =
@@ -13230,7 +13932,14 @@ public class PGraphicsOpenGL extends PGraphics {
       public void combine(double[] coords, Object[] data,
                           float[] weight, Object[] outData) {
         int n = ((double[])data[0]).length;
-        double[] vertex = new double[n];
+        if (combinedCount == combined.length) {
+          combined = (double[][]) PApplet.expand(combined);
+        }
+        double[] vertex = combined[combinedCount];
+        if (vertex == null || vertex.length != n) {
+          vertex = combined[combinedCount] = new double[n];
+        }
+        combinedCount++;
         vertex[0] = coords[0];
         vertex[1] = coords[1];
         vertex[2] = coords[2];
@@ -13284,6 +13993,368 @@ public class PGraphicsOpenGL extends PGraphics {
   }
 
 
+  // Keeps the tessellated geometry of the shapes drawn in immediate mode,
+  // keyed by the hash of their input, so the shapes drawn again in the next
+  // frame are copied from here instead of being tessellated. Each shape is
+  // stored as the chunks of vertices and indices it added to each index
+  // cache entry, with the indices relative to the start of its chunk, so
+  // it can go anywhere in the tess geometry later.
+  static protected class GeometryCache {
+    static final long SEED = 0xCBF29CE484222325L;
+    static final long PRIME = 0x9E3779B97F4A7C15L;
+
+    // Most vertices kept in the cache, the shapes after that are not cached
+    static final int MAX_VERTICES = 1 << 20;
+
+    int hits;
+    int misses;
+
+    int frame;
+    int vertexTotal;
+
+    long[] keys = new long[256];
+    Entry[] entries = new Entry[256];
+    int size;
+
+    // Counts of the tess geometry when the current shape started
+    int polyVertexStart, polyIndexStart, polyCacheStart;
+    int polyVertexBase, polyIndexBase;
+    int lineVertexStart, lineIndexStart, lineCacheStart;
+    int lineVertexBase, lineIndexBase;
+    int pointVertexStart, pointIndexStart, pointCacheStart;
+    int pointVertexBase, pointIndexBase;
+
+    static class Entry {
+      int frame;
+      int vertexTotal;
+
+      // Vertex and index count of each chunk, in pairs
+      int[] polyChunks;
+      float[] polyVertices;
+      int[] polyColors;
+      float[] polyNormals;
+      float[] polyTexCoords;
+      int[] polyAmbient;
+      int[] polySpecular;
+      int[] polyEmissive;
+      float[] polyShininess;
+      short[] polyIndices;
+
+      int[] lineChunks;
+      float[] lineVertices;
+      int[] lineColors;
+      float[] lineDirections;
+      short[] lineIndices;
+
+      int[] pointChunks;
+      float[] pointVertices;
+      int[] pointColors;
+      float[] pointOffsets;
+      short[] pointIndices;
+    }
+
+    // Hashing -------------------------------------------
+
+    static long hash(long h, int v) {
+      return (h ^ v) * PRIME;
+    }
+
+    static long hash(long h, float v) {
+      return (h ^ Float.floatToRawIntBits(v)) * PRIME;
+    }
+
+    static long hash(long h, int[] v, int count) {
+      for (int i = 0; i < count; i++) h = (h ^ v[i]) * PRIME;
+      return h;
+    }
+
+    static long hash(long h, float[] v, int count) {
+      for (int i = 0; i < count; i++) {
+        h = (h ^ Float.floatToRawIntBits(v[i])) * PRIME;
+      }
+      return h;
+    }
+
+    static long finish(long h) {
+      h ^= h >>> 33;
+      h *= 0xFF51AFD7ED558CCDL;
+      h ^= h >>> 33;
+      h *= 0xC4CEB9FE1A85EC53L;
+      h ^= h >>> 33;
+      return h;
+    }
+
+    // Table ---------------------------------------------
+
+    Entry get(long key) {
+      int mask = keys.length - 1;
+      for (int i = (int) key & mask; entries[i] != null; i = (i + 1) & mask) {
+        if (keys[i] == key) return entries[i];
+      }
+      return null;
+    }
+
+    void put(long key, Entry entry) {
+      if (keys.length <= 2 * (size + 1)) {
+        rehash(keys.length << 1);
+      }
+      int mask = keys.length - 1;
+      int i = (int) key & mask;
+      while (entries[i] != null) i = (i + 1) & mask;
+      keys[i] = key;
+      entries[i] = entry;
+      size++;
+    }
+
+    void rehash(int length) {
+      long[] oldKeys = keys;
+      Entry[] oldEntries = entries;
+      keys = new long[length];
+      entries = new Entry[length];
+      size = 0;
+      vertexTotal = 0;
+      for (int i = 0; i < oldKeys.length; i++) {
+        Entry entry = oldEntries[i];
+        // Only the shapes drawn in the current frame are kept
+        if (entry != null && frame - 1 <= entry.frame) {
+          put(oldKeys[i], entry);
+          vertexTotal += entry.vertexTotal;
+        }
+      }
+    }
+
+    // Drops the shapes that were not drawn in the frame that just ended.
+    void endFrame() {
+      frame++;
+      int stale = 0;
+      for (int i = 0; i < keys.length; i++) {
+        if (entries[i] != null && entries[i].frame < frame - 1) stale++;
+      }
+      if (0 < stale) rehash(keys.length);
+    }
+
+    // Adding and storing shapes -------------------------
+
+    // Adds the shape with the given key to the tess geometry, if it is in
+    // the cache.
+    boolean add(long key, TessGeometry tess, Tessellator tessellator) {
+      Entry entry = get(key);
+      if (entry == null) {
+        misses++;
+        return false;
+      }
+      hits++;
+      entry.frame = frame;
+
+      if (0 < entry.polyIndices.length) {
+        IndexCache cache = tess.polyIndexCache;
+        int index = cache.getLast();
+        if (PGL.MAX_VERTEX_INDEX1 <= cache.vertexCount[index] + entry.polyChunks[0]) {
+          index = cache.addNew();
+        }
+        tessellator.setFirstTexIndex(tess.polyIndexCount, index);
+      }
+      int v = 0, i = 0;
+      for (int c = 0; c < entry.polyChunks.length; c += 2) {
+        int vcount = entry.polyChunks[c];
+        int icount = entry.polyChunks[c + 1];
+        int index = chunkIndex(tess.polyIndexCache, c, vcount);
+        int base = tess.polyIndexCache.vertexCount[index];
+        int vidx = tess.polyVertexCount;
+        tess.polyVertexCheck(vcount);
+        System.arraycopy(entry.polyVertices, 4 * v, tess.polyVertices, 4 * vidx, 4 * vcount);
+        System.arraycopy(entry.polyColors, v, tess.polyColors, vidx, vcount);
+        System.arraycopy(entry.polyNormals, 3 * v, tess.polyNormals, 3 * vidx, 3 * vcount);
+        System.arraycopy(entry.polyTexCoords, 2 * v, tess.polyTexCoords, 2 * vidx, 2 * vcount);
+        System.arraycopy(entry.polyAmbient, v, tess.polyAmbient, vidx, vcount);
+        System.arraycopy(entry.polySpecular, v, tess.polySpecular, vidx, vcount);
+        System.arraycopy(entry.polyEmissive, v, tess.polyEmissive, vidx, vcount);
+        System.arraycopy(entry.polyShininess, v, tess.polyShininess, vidx, vcount);
+        int iidx = tess.polyIndexCount;
+        tess.polyIndexCheck(icount);
+        addIndices(entry.polyIndices, i, tess.polyIndices, iidx, icount, base);
+        tess.polyIndexCache.incCounts(index, icount, vcount);
+        v += vcount;
+        i += icount;
+      }
+      if (0 < entry.polyIndices.length) {
+        tessellator.setLastTexIndex(tess.lastPolyIndex,
+                                    tess.polyIndexCache.size - 1);
+      }
+
+      v = 0;
+      i = 0;
+      for (int c = 0; c < entry.lineChunks.length; c += 2) {
+        int vcount = entry.lineChunks[c];
+        int icount = entry.lineChunks[c + 1];
+        int index = chunkIndex(tess.lineIndexCache, c, vcount);
+        int base = tess.lineIndexCache.vertexCount[index];
+        int vidx = tess.lineVertexCount;
+        tess.lineVertexCheck(vcount);
+        System.arraycopy(entry.lineVertices, 4 * v, tess.lineVertices, 4 * vidx, 4 * vcount);
+        System.arraycopy(entry.lineColors, v, tess.lineColors, vidx, vcount);
+        System.arraycopy(entry.lineDirections, 4 * v, tess.lineDirections, 4 * vidx, 4 * vcount);
+        int iidx = tess.lineIndexCount;
+        tess.lineIndexCheck(icount);
+        addIndices(entry.lineIndices, i, tess.lineIndices, iidx, icount, base);
+        tess.lineIndexCache.incCounts(index, icount, vcount);
+        v += vcount;
+        i += icount;
+      }
+
+      v = 0;
+      i = 0;
+      for (int c = 0; c < entry.pointChunks.length; c += 2) {
+        int vcount = entry.pointChunks[c];
+        int icount = entry.pointChunks[c + 1];
+        int index = chunkIndex(tess.pointIndexCache, c, vcount);
+        int base = tess.pointIndexCache.vertexCount[index];
+        int vidx = tess.pointVertexCount;
+        tess.pointVertexCheck(vcount);
+        System.arraycopy(entry.pointVertices, 4 * v, tess.pointVertices, 4 * vidx, 4 * vcount);
+        System.arraycopy(entry.pointColors, v, tess.pointColors, vidx, vcount);
+        System.arraycopy(entry.pointOffsets, 2 * v, tess.pointOffsets, 2 * vidx, 2 * vcount);
+        int iidx = tess.pointIndexCount;
+        tess.pointIndexCheck(icount);
+        addIndices(entry.pointIndices, i, tess.pointIndices, iidx, icount, base);
+        tess.pointIndexCache.incCounts(index, icount, vcount);
+        v += vcount;
+        i += icount;
+      }
+      return true;
+    }
+
+    // The first chunk goes in the last cache entry when it fits, the
+    // others had entries of their own when the shape was tessellated.
+    static int chunkIndex(IndexCache cache, int chunk, int vcount) {
+      int index = cache.getLast();
+      if (0 < chunk ||
+          PGL.MAX_VERTEX_INDEX1 <= cache.vertexCount[index] + vcount) {
+        index = cache.addNew();
+      }
+      return index;
+    }
+
+    static void addIndices(short[] src, int srcPos, short[] dest, int destPos,
+                           int count, int base) {
+      for (int i = 0; i < count; i++) {
+        dest[destPos + i] = (short) (src[srcPos + i] + base);
+      }
+    }
+
+    // Remembers where the tess geometry was before the shape is tessellated.
+    void begin(TessGeometry tess) {
+      polyVertexStart = tess.polyVertexCount;
+      polyIndexStart = tess.polyIndexCount;
+      polyCacheStart = tess.polyIndexCache.size;
+      polyVertexBase = 0 < polyCacheStart ?
+        tess.polyIndexCache.vertexCount[polyCacheStart - 1] : 0;
+      polyIndexBase = 0 < polyCacheStart ?
+        tess.polyIndexCache.indexCount[polyCacheStart - 1] : 0;
+
+      lineVertexStart = tess.lineVertexCount;
+      lineIndexStart = tess.lineIndexCount;
+      lineCacheStart = tess.lineIndexCache.size;
+      lineVertexBase = 0 < lineCacheStart ?
+        tess.lineIndexCache.vertexCount[lineCacheStart - 1] : 0;
+      lineIndexBase = 0 < lineCacheStart ?
+        tess.lineIndexCache.indexCount[lineCacheStart - 1] : 0;
+
+      pointVertexStart = tess.pointVertexCount;
+      pointIndexStart = tess.pointIndexCount;
+      pointCacheStart = tess.pointIndexCache.size;
+      pointVertexBase = 0 < pointCacheStart ?
+        tess.pointIndexCache.vertexCount[pointCacheStart - 1] : 0;
+      pointIndexBase = 0 < pointCacheStart ?
+        tess.pointIndexCache.indexCount[pointCacheStart - 1] : 0;
+    }
+
+    // Stores what the shape added to the tess geometry since begin().
+    void end(long key, TessGeometry tess) {
+      int polyVertices = tess.polyVertexCount - polyVertexStart;
+      int lineVertices = tess.lineVertexCount - lineVertexStart;
+      int pointVertices = tess.pointVertexCount - pointVertexStart;
+      int total = polyVertices + lineVertices + pointVertices;
+      if (MAX_VERTICES < vertexTotal + total) return;
+
+      Entry entry = new Entry();
+      entry.frame = frame;
+      entry.vertexTotal = total;
+
+      int v0 = polyVertexStart, i0 = polyIndexStart;
+      entry.polyChunks = chunks(tess.polyIndexCache, polyCacheStart,
+                                polyVertexBase, polyIndexBase);
+      entry.polyVertices = Arrays.copyOfRange(tess.polyVertices, 4 * v0, 4 * tess.polyVertexCount);
+      entry.polyColors = Arrays.copyOfRange(tess.polyColors, v0, tess.polyVertexCount);
+      entry.polyNormals = Arrays.copyOfRange(tess.polyNormals, 3 * v0, 3 * tess.polyVertexCount);
+      entry.polyTexCoords = Arrays.copyOfRange(tess.polyTexCoords, 2 * v0, 2 * tess.polyVertexCount);
+      entry.polyAmbient = Arrays.copyOfRange(tess.polyAmbient, v0, tess.polyVertexCount);
+      entry.polySpecular = Arrays.copyOfRange(tess.polySpecular, v0, tess.polyVertexCount);
+      entry.polyEmissive = Arrays.copyOfRange(tess.polyEmissive, v0, tess.polyVertexCount);
+      entry.polyShininess = Arrays.copyOfRange(tess.polyShininess, v0, tess.polyVertexCount);
+      entry.polyIndices = Arrays.copyOfRange(tess.polyIndices, i0, tess.polyIndexCount);
+      subtractBase(entry.polyIndices, entry.polyChunks, polyCacheStart,
+                   polyVertexBase);
+
+      v0 = lineVertexStart;
+      i0 = lineIndexStart;
+      entry.lineChunks = chunks(tess.lineIndexCache, lineCacheStart,
+                                lineVertexBase, lineIndexBase);
+      entry.lineVertices = Arrays.copyOfRange(tess.lineVertices, 4 * v0, 4 * tess.lineVertexCount);
+      entry.lineColors = Arrays.copyOfRange(tess.lineColors, v0, tess.lineVertexCount);
+      entry.lineDirections = Arrays.copyOfRange(tess.lineDirections, 4 * v0, 4 * tess.lineVertexCount);
+      entry.lineIndices = Arrays.copyOfRange(tess.lineIndices, i0, tess.lineIndexCount);
+      subtractBase(entry.lineIndices, entry.lineChunks, lineCacheStart,
+                   lineVertexBase);
+
+      v0 = pointVertexStart;
+      i0 = pointIndexStart;
+      entry.pointChunks = chunks(tess.pointIndexCache, pointCacheStart,
+                                 pointVertexBase, pointIndexBase);
+      entry.pointVertices = Arrays.copyOfRange(tess.pointVertices, 4 * v0, 4 * tess.pointVertexCount);
+      entry.pointColors = Arrays.copyOfRange(tess.pointColors, v0, tess.pointVertexCount);
+      entry.pointOffsets = Arrays.copyOfRange(tess.pointOffsets, 2 * v0, 2 * tess.pointVertexCount);
+      entry.pointIndices = Arrays.copyOfRange(tess.pointIndices, i0, tess.pointIndexCount);
+      subtractBase(entry.pointIndices, entry.pointChunks, pointCacheStart,
+                   pointVertexBase);
+
+      if (get(key) == null) {
+        put(key, entry);
+        vertexTotal += total;
+      }
+    }
+
+    // Vertex and index counts that the shape added to each cache entry,
+    // starting with the entry that was the last one before it, which had
+    // vertexBase vertices and indexBase indices then.
+    static int[] chunks(IndexCache cache, int start,
+                        int vertexBase, int indexBase) {
+      int first = PApplet.max(0, start - 1);
+      int[] chunks = new int[2 * PApplet.max(0, cache.size - first)];
+      for (int n = first, c = 0; n < cache.size; n++, c += 2) {
+        chunks[c] = cache.vertexCount[n];
+        chunks[c + 1] = cache.indexCount[n];
+      }
+      if (0 < start && 0 < chunks.length) {
+        chunks[0] -= vertexBase;
+        chunks[1] -= indexBase;
+      }
+      return chunks;
+    }
+
+    // Makes the indices of the first chunk relative to its first vertex,
+    // when it went into an entry that had vertices already.
+    static void subtractBase(short[] indices, int[] chunks, int start,
+                             int vertexBase) {
+      if (0 < start && 0 < chunks.length) {
+        for (int i = 0; i < chunks[1]; i++) {
+          indices[i] -= vertexBase;
+        }
+      }
+    }
+  }
+
+
   static protected class DepthSorter {
 
     static final int X = 0;
@@ -13320,6 +14391,32 @@ public class PGraphicsOpenGL extends PGraphics {
     BitSet marked = new BitSet();
     BitSet swapped = new BitSet();
 
+    // The center z order is quantized to 2 * RADIX_BITS bits
+    static final int RADIX_BITS = 11;
+    static final int RADIX_SIZE = 1 << RADIX_BITS;
+    static final int RADIX_MASK = RADIX_SIZE - 1;
+    static final int DEPTH_KEY_MAX = (1 << (2 * RADIX_BITS)) - 1;
+
+    // Most bins on each side of the screen, and most bin entries for each
+    // triangle before the bins get bigger
+    static final int MAX_BIN_SIDE = 64;
+    static final int MAX_BIN_ENTRIES = 16;
+    // Furthest a triangle is moved when the order is refined
+    static final int MAX_MOVE = 256;
+
+    float[] centerZBuffer = new float[0];
+    int[] depthKeys = new int[0];
+    int[] sortBuffer = new int[0];
+    int[] radixCounts = new int[RADIX_SIZE];
+
+    int[] binStart = new int[0];
+    int[] binFill = new int[0];
+    int[] binEntries = new int[0];
+    int[] positions = new int[0];
+
+    // Whether the center z order is refined in screen bins
+    boolean refine = true;
+
     PGraphicsOpenGL pg;
 
     DepthSorter (PGraphicsOpenGL pg) {
@@ -13338,6 +14435,9 @@ public class PGraphicsOpenGL extends PGraphics {
         maxXBuffer      = new float[newSize];
         maxYBuffer      = new float[newSize];
         maxZBuffer      = new float[newSize];
+        centerZBuffer   = new float[newSize];
+        depthKeys       = new int[newSize];
+        sortBuffer      = new int[newSize];
       }
     }
 
@@ -13420,14 +14520,62 @@ public class PGraphicsOpenGL extends PGraphics {
           screenVertices[3*i+Z] = -oz;
         }
       }
-      float[] screenVertices = this.screenVertices;
-
       int[] vertexOffset = tessGeo.polyIndexCache.vertexOffset;
       short[] polyIndices = tessGeo.polyIndices;
 
-      float[] triA = this.triA;
-      float[] triB = this.triB;
+      findBounds(triangleCount, vertexOffset, polyIndices);
 
+      if (pg.getHint(ENABLE_FAST_DEPTH_SORT)) {
+        sortByCenterZ(triangleCount, vertexOffset, polyIndices);
+      } else {
+        sortByMinZ(0, triangleCount - 1, triangleIndices, minZBuffer);
+        sortPairwise(triangleCount, vertexOffset, polyIndices);
+      }
+
+      { // Reorder the buffers
+        for (int id = 0; id < triangleCount; id++) {
+          int mappedId = triangleIndices[id];
+          if (id != mappedId) {
+
+            // put the first index aside
+            short i0 = polyIndices[3*id+0];
+            short i1 = polyIndices[3*id+1];
+            short i2 = polyIndices[3*id+2];
+            int texId = texMap[id];
+            int voffsetId = voffsetMap[id];
+
+            // process the whole permutation cycle
+            int currId = id;
+            int nextId = mappedId;
+            do {
+              triangleIndices[currId] = currId;
+              polyIndices[3*currId+0] = polyIndices[3*nextId+0];
+              polyIndices[3*currId+1] = polyIndices[3*nextId+1];
+              polyIndices[3*currId+2] = polyIndices[3*nextId+2];
+              texMap[currId] = texMap[nextId];
+              voffsetMap[currId] = voffsetMap[nextId];
+
+              currId = nextId;
+              nextId = triangleIndices[nextId];
+            } while (nextId != id);
+
+            // place the first index at the end
+            triangleIndices[currId] = currId;
+            polyIndices[3*currId+0] = i0;
+            polyIndices[3*currId+1] = i1;
+            polyIndices[3*currId+2] = i2;
+            texMap[currId] = texId;
+            voffsetMap[currId] = voffsetId;
+          }
+        }
+      }
+
+    }
+
+    // Fills the min and max buffers from the screen vertices.
+    void findBounds(int triangleCount, int[] vertexOffset,
+                    short[] polyIndices) {
+      float[] triA = this.triA;
       for (int i = 0; i < triangleCount; i++) {
         fetchTriCoords(triA, i, vertexOffset, voffsetMap, screenVertices, polyIndices);
         minXBuffer[i] = PApplet.min(triA[X0], triA[X1], triA[X2]);
@@ -13437,8 +14585,19 @@ public class PGraphicsOpenGL extends PGraphics {
         minZBuffer[i] = PApplet.min(triA[Z0], triA[Z1], triA[Z2]);
         maxZBuffer[i] = PApplet.max(triA[Z0], triA[Z1], triA[Z2]);
       }
+    }
+
+    // Moves each triangle in front of the ones that it has to be drawn
+    // before, testing it against all the triangles after it in the min z
+    // order until one of them is wholly in front.
+    void sortPairwise(int triangleCount, int[] vertexOffset,
+                      short[] polyIndices) {
+      int[] triangleIndices = this.triangleIndices;
+      int[] voffsetMap = this.voffsetMap;
+      float[] screenVertices = this.screenVertices;
 
-      sortByMinZ(0, triangleCount - 1, triangleIndices, minZBuffer);
+      float[] triA = this.triA;
+      float[] triB = this.triB;
 
       int activeTid = 0;
 
@@ -13511,45 +14670,227 @@ public class PGraphicsOpenGL extends PGraphics {
         }
         activeTid++;
       }
+    }
 
-      { // Reorder the buffers
-        for (int id = 0; id < triangleCount; id++) {
-          int mappedId = triangleIndices[id];
-          if (id != mappedId) {
+    // Sorts the triangles by the z of their centers, quantized and radix
+    // sorted in two passes, so ties keep the order the triangles came in.
+    void sortByCenterZ(int triangleCount, int[] vertexOffset,
+                       short[] polyIndices) {
+      int[] triangleIndices = this.triangleIndices;
+      int[] voffsetMap = this.voffsetMap;
+      float[] screenVertices = this.screenVertices;
+      float[] centerZBuffer = this.centerZBuffer;
+      int[] depthKeys = this.depthKeys;
 
-            // put the first index aside
-            short i0 = polyIndices[3*id+0];
-            short i1 = polyIndices[3*id+1];
-            short i2 = polyIndices[3*id+2];
-            int texId = texMap[id];
-            int voffsetId = voffsetMap[id];
+      float minZ = Float.MAX_VALUE;
+      float maxZ = -Float.MAX_VALUE;
+      for (int i = 0; i < triangleCount; i++) {
+        int voffset = vertexOffset[voffsetMap[i]];
+        float z = (screenVertices[3 * (voffset + polyIndices[3*i+0]) + Z] +
+                   screenVertices[3 * (voffset + polyIndices[3*i+1]) + Z] +
+                   screenVertices[3 * (voffset + polyIndices[3*i+2]) + Z]) / 3;
+        centerZBuffer[i] = z;
+        if (z < minZ) minZ = z;
+        if (z > maxZ) maxZ = z;
+      }
 
-            // process the whole permutation cycle
-            int currId = id;
-            int nextId = mappedId;
-            do {
-              triangleIndices[currId] = currId;
-              polyIndices[3*currId+0] = polyIndices[3*nextId+0];
-              polyIndices[3*currId+1] = polyIndices[3*nextId+1];
-              polyIndices[3*currId+2] = polyIndices[3*nextId+2];
-              texMap[currId] = texMap[nextId];
-              voffsetMap[currId] = voffsetMap[nextId];
+      float scale = minZ < maxZ ? DEPTH_KEY_MAX / (maxZ - minZ) : 0;
+      for (int i = 0; i < triangleCount; i++) {
+        int key = (int) ((centerZBuffer[i] - minZ) * scale);
+        depthKeys[i] = PApplet.constrain(key, 0, DEPTH_KEY_MAX);
+        triangleIndices[i] = i;
+      }
 
-              currId = nextId;
-              nextId = triangleIndices[nextId];
-            } while (nextId != id);
+      int[] src = triangleIndices;
+      int[] dst = sortBuffer;
+      int[] counts = radixCounts;
+      for (int shift = 0; shift < 2 * RADIX_BITS; shift += RADIX_BITS) {
+        Arrays.fill(counts, 0);
+        for (int i = 0; i < triangleCount; i++) {
+          counts[(depthKeys[src[i]] >>> shift) & RADIX_MASK]++;
+        }
+        int sum = 0;
+        for (int d = 0; d < RADIX_SIZE; d++) {
+          int count = counts[d];
+          counts[d] = sum;
+          sum += count;
+        }
+        for (int i = 0; i < triangleCount; i++) {
+          int tid = src[i];
+          dst[counts[(depthKeys[tid] >>> shift) & RADIX_MASK]++] = tid;
+        }
+        int[] temp = src;
+        src = dst;
+        dst = temp;
+      }
+      // After an even number of passes the result is in triangleIndices
 
-            // place the first index at the end
-            triangleIndices[currId] = currId;
-            polyIndices[3*currId+0] = i0;
-            polyIndices[3*currId+1] = i1;
-            polyIndices[3*currId+2] = i2;
-            texMap[currId] = texId;
-            voffsetMap[currId] = voffsetId;
+      if (refine) {
+        refineInBins(triangleCount, vertexOffset, polyIndices);
+      }
+    }
+
+    // Fixes the order of the triangles that come one after the other in
+    // the same screen bin when the center z order drew them the wrong way
+    // around. They can be far apart in the whole order, so one of them is
+    // moved past the triangles in between (which keep their own order),
+    // and only when it doesn't overlap any of them. Triangles that cut
+    // through each other keep their order, and each triangle is moved at
+    // most once.
+    void refineInBins(int triangleCount, int[] vertexOffset,
+                      short[] polyIndices) {
+      int[] triangleIndices = this.triangleIndices;
+
+      // The bins split the normalized device coordinates into a square
+      // grid, with fewer bins when the triangles are big enough to go in
+      // too many of them.
+      int side = PApplet.constrain((int) Math.sqrt(triangleCount / 8),
+                                   1, MAX_BIN_SIDE);
+      int entryCount;
+      while (true) {
+        entryCount = 0;
+        for (int i = 0; i < triangleCount; i++) {
+          int bx = bin(maxXBuffer[i], side) - bin(minXBuffer[i], side) + 1;
+          int by = bin(maxYBuffer[i], side) - bin(minYBuffer[i], side) + 1;
+          entryCount += bx * by;
+        }
+        if (side == 1 || entryCount <= MAX_BIN_ENTRIES * triangleCount) break;
+        side /= 2;
+      }
+
+      int binCount = side * side;
+      if (binStart.length < binCount + 1) {
+        binStart = new int[MAX_BIN_SIDE * MAX_BIN_SIDE + 1];
+        binFill = new int[MAX_BIN_SIDE * MAX_BIN_SIDE];
+      }
+      if (binEntries.length < entryCount) {
+        binEntries = new int[(entryCount / 4 + 1) * 5];
+      }
+      int[] binStart = this.binStart;
+      int[] binFill = this.binFill;
+      int[] binEntries = this.binEntries;
+
+      Arrays.fill(binStart, 0, binCount + 1, 0);
+      for (int i = 0; i < triangleCount; i++) {
+        int x0 = bin(minXBuffer[i], side), x1 = bin(maxXBuffer[i], side);
+        int y0 = bin(minYBuffer[i], side), y1 = bin(maxYBuffer[i], side);
+        for (int y = y0; y <= y1; y++) {
+          for (int x = x0; x <= x1; x++) {
+            binStart[y * side + x + 1]++;
           }
         }
       }
+      for (int b = 0; b < binCount; b++) {
+        binStart[b + 1] += binStart[b];
+        binFill[b] = binStart[b];
+      }
+
+      // The entries of each bin are the triangles in it, from back to
+      // front in the sorted order.
+      if (positions.length < triangleCount) {
+        positions = new int[triangleIndices.length];
+      }
+      int[] positions = this.positions;
+      for (int pos = 0; pos < triangleCount; pos++) {
+        int tid = triangleIndices[pos];
+        positions[tid] = pos;
+        int x0 = bin(minXBuffer[tid], side), x1 = bin(maxXBuffer[tid], side);
+        int y0 = bin(minYBuffer[tid], side), y1 = bin(maxYBuffer[tid], side);
+        for (int y = y0; y <= y1; y++) {
+          for (int x = x0; x <= x1; x++) {
+            binEntries[binFill[y * side + x]++] = tid;
+          }
+        }
+      }
+
+      // Moving a triangle doesn't change the order of the others, so the
+      // entries stay in order, apart from the triangles that were moved.
+      BitSet swapped = this.swapped;
+      swapped.clear();
+
+      for (int b = 0; b < binCount; b++) {
+        for (int e = binStart[b] + 1; e < binStart[b + 1]; e++) {
+          int tidA = binEntries[e - 1];
+          int tidB = binEntries[e];
+          if (swapped.get(tidA) || swapped.get(tidB)) continue;
+          int posA = positions[tidA];
+          int posB = positions[tidB];
+          if (posB - posA > MAX_MOVE) continue;
+          if (drawnBefore(tidB, tidA, vertexOffset, polyIndices)) {
+            if (!overlapsBetween(tidB, posA, posB)) {
+              // B goes back to where A was
+              move(posB, posA);
+            } else if (!overlapsBetween(tidA, posA, posB)) {
+              // A goes forward to where B was
+              move(posA, posB);
+            } else {
+              continue;
+            }
+            swapped.set(tidA);
+            swapped.set(tidB);
+          }
+        }
+      }
+    }
+
+    // True if the screen bounds of a triangle overlap those of any of the
+    // triangles between the positions 'from' and 'to' (both excluded).
+    boolean overlapsBetween(int tid, int from, int to) {
+      for (int pos = from + 1; pos < to; pos++) {
+        int other = triangleIndices[pos];
+        if (maxXBuffer[tid] > minXBuffer[other] &&
+            maxYBuffer[tid] > minYBuffer[other] &&
+            minXBuffer[tid] < maxXBuffer[other] &&
+            minYBuffer[tid] < maxYBuffer[other]) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    // Moves the triangle at position 'from' to position 'to', shifting
+    // the ones in between by one.
+    void move(int from, int to) {
+      int[] triangleIndices = this.triangleIndices;
+      int[] positions = this.positions;
+      int tid = triangleIndices[from];
+      if (from < to) {
+        System.arraycopy(triangleIndices, from + 1, triangleIndices, from, to - from);
+      } else {
+        System.arraycopy(triangleIndices, to, triangleIndices, to + 1, from - to);
+      }
+      triangleIndices[to] = tid;
+      for (int pos = Math.min(from, to); pos <= Math.max(from, to); pos++) {
+        positions[triangleIndices[pos]] = pos;
+      }
+    }
+
+    // True if triangle B has to be drawn before A, which comes before it
+    // in the current order: they overlap, A isn't wholly behind B, and B
+    // is wholly behind A.
+    boolean drawnBefore(int tidB, int tidA, int[] vertexOffset,
+                        short[] polyIndices) {
+      if (maxZBuffer[tidA] <= minZBuffer[tidB] ||
+          maxXBuffer[tidA] <= minXBuffer[tidB] ||
+          maxYBuffer[tidA] <= minYBuffer[tidB] ||
+          minXBuffer[tidA] >= maxXBuffer[tidB] ||
+          minYBuffer[tidA] >= maxYBuffer[tidB]) {
+        return false;
+      }
+      float[] triA = this.triA;
+      float[] triB = this.triB;
+      fetchTriCoords(triA, tidA, vertexOffset, voffsetMap, screenVertices,
+                     polyIndices);
+      fetchTriCoords(triB, tidB, vertexOffset, voffsetMap, screenVertices,
+                     polyIndices);
+      if (side(triB, triA, -1) > 0 || side(triA, triB, 1) > 0) {
+        return false; // the order is right
+      }
+      return side(triA, triB, -1) > 0 || side(triB, triA, 1) > 0;
+    }
 
+    static int bin(float v, int side) {
+      return PApplet.constrain((int) ((v + 1) * 0.5f * side), 0, side - 1);
     }
 
     static void fetchTriCoords(float[] tri, int ti, int[] vertexOffset,
@@ -41,6 +41,7 @@ import processing.opengl.PGraphicsOpenGL.Tessellator;
 import processing.opengl.PGraphicsOpenGL.VertexAttribute;
 
 import java.nio.Buffer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 
@@ -74,6 +75,10 @@ public class PShapeOpenGL extends PShape {
   static protected final int SCALE     = 2;
   static protected final int MATRIX    = 3;
 
+  // Groups with at least this many shapes holding geometry are tessellated
+  // on several threads, if PImage.setParallelism() allows it.
+  static protected final int PARALLEL_TESS_MINIMUM = 256;
+
   protected PGraphicsOpenGL pg;
   protected PGL pgl;
   protected int context;      // The context that created this shape.
@@ -2851,7 +2856,9 @@ public class PShapeOpenGL extends PShape {
         tessGeo.initAttrib(attrib);
       }
 
-      tessellateImpl();
+      if (!tessellateParallel()) {
+        tessellateImpl();
+      }
 
       // Tessellated arrays are trimmed since they are expanded
       // by doubling their old size, which might lead to arrays
@@ -2908,108 +2915,11 @@ public class PShapeOpenGL extends PShape {
       }
     } else {
       if (shapeCreated) {
-        // If the geometry was tessellated previously, then
-        // the edges information will still be stored in the
-        // input object, so it needs to be removed to avoid
-        // duplication.
-        inGeo.clearEdges();
-
-        tessellator.setInGeometry(inGeo);
-        tessellator.setTessGeometry(tessGeo);
-        tessellator.setFill(fill || image != null);
-        tessellator.setTexCache(null, null);
-        tessellator.setStroke(stroke);
-        tessellator.setStrokeColor(strokeColor);
-        tessellator.setStrokeWeight(strokeWeight);
-        tessellator.setStrokeCap(strokeCap);
-        tessellator.setStrokeJoin(strokeJoin);
-        tessellator.setRenderer(pg);
-        tessellator.setTransform(matrix);
-        tessellator.set3D(is3D());
-
-        if (family == GEOMETRY) {
-          if (kind == POINTS) {
-            tessellator.tessellatePoints();
-          } else if (kind == LINES) {
-            tessellator.tessellateLines();
-          } else if (kind == LINE_STRIP) {
-            tessellator.tessellateLineStrip();
-          } else if (kind == LINE_LOOP) {
-            tessellator.tessellateLineLoop();
-          } else if (kind == TRIANGLE || kind == TRIANGLES) {
-            if (stroke) inGeo.addTrianglesEdges();
-            if (normalMode == NORMAL_MODE_AUTO) inGeo.calcTrianglesNormals();
-            tessellator.tessellateTriangles();
-          } else if (kind == TRIANGLE_FAN) {
-            if (stroke) inGeo.addTriangleFanEdges();
-            if (normalMode == NORMAL_MODE_AUTO) inGeo.calcTriangleFanNormals();
-            tessellator.tessellateTriangleFan();
-          } else if (kind == TRIANGLE_STRIP) {
-            if (stroke) inGeo.addTriangleStripEdges();
-            if (normalMode == NORMAL_MODE_AUTO) inGeo.calcTriangleStripNormals();
-            tessellator.tessellateTriangleStrip();
-          } else if (kind == QUAD || kind == QUADS) {
-            if (stroke) inGeo.addQuadsEdges();
-            if (normalMode == NORMAL_MODE_AUTO) inGeo.calcQuadsNormals();
-            tessellator.tessellateQuads();
-          } else if (kind == QUAD_STRIP) {
-            if (stroke) inGeo.addQuadStripEdges();
-            if (normalMode == NORMAL_MODE_AUTO) inGeo.calcQuadStripNormals();
-            tessellator.tessellateQuadStrip();
-          } else if (kind == POLYGON) {
-            boolean bez = inGeo.hasBezierVertex();
-            boolean quad = inGeo.hasQuadraticVertex();
-            boolean curv = inGeo.hasCurveVertex();
-            if (bez || quad) saveBezierVertexSettings();
-            if (curv) {
-              saveCurveVertexSettings();
-              tessellator.resetCurveVertexCount();
-            }
-            tessellator.tessellatePolygon(solid, close,
-                                          normalMode == NORMAL_MODE_AUTO);
-            if (bez ||quad) restoreBezierVertexSettings();
-            if (curv) restoreCurveVertexSettings();
-          }
-        } else if (family == PRIMITIVE) {
-          // The input geometry needs to be cleared because the geometry
-          // generation methods in InGeometry add the vertices of the
-          // new primitive to what is already stored.
-          inGeo.clear();
-
-          if (kind == POINT) {
-            tessellatePoint();
-          } else if (kind == LINE) {
-            tessellateLine();
-          } else if (kind == TRIANGLE) {
-            tessellateTriangle();
-          } else if (kind == QUAD) {
-            tessellateQuad();
-          } else if (kind == RECT) {
-            tessellateRect();
-          } else if (kind == ELLIPSE) {
-            tessellateEllipse();
-          } else if (kind == ARC) {
-            tessellateArc();
-          } else if (kind == BOX) {
-            tessellateBox();
-          } else if (kind == SPHERE) {
-            tessellateSphere();
-          }
-        } else if (family == PATH) {
-          inGeo.clear();
-          tessellatePath();
-        }
+        tessellateLeaf();
 
         if (image != null && parent != null) {
           ((PShapeOpenGL)parent).addTexture(image);
         }
-
-        firstPolyIndexCache = tessellator.firstPolyIndexCache;
-        lastPolyIndexCache = tessellator.lastPolyIndexCache;
-        firstLineIndexCache = tessellator.firstLineIndexCache;
-        lastLineIndexCache = tessellator.lastLineIndexCache;
-        firstPointIndexCache = tessellator.firstPointIndexCache;
-        lastPointIndexCache = tessellator.lastPointIndexCache;
       }
     }
 
@@ -3021,6 +2931,315 @@ public class PShapeOpenGL extends PShape {
   }
 
 
+  // Tessellates the children of a large group on several threads, each with
+  // its own Tessellator and TessGeometry, and then copies all the geometry
+  // into the root's TessGeometry in the same order as tessellateImpl()
+  // would have put it there. Returns false (without doing anything) if the
+  // group is too small for this to be worth it, or if threads are disabled.
+  protected boolean tessellateParallel() {
+    if (family != GROUP || PImage.getParallelism() < 2) {
+      return false;
+    }
+    final ArrayList<PShapeOpenGL> leaves = new ArrayList<>();
+    collectLeaves(leaves);
+    final int count = leaves.size();
+    if (count < PARALLEL_TESS_MINIMUM) {
+      return false;
+    }
+
+    // The geometry of leaf i is in sources[i], from the counts at
+    // starts[i * COUNTS] up to those at stops[i * COUNTS].
+    final int counts = TessGeometry.COUNTS;
+    final TessGeometry[] sources = new TessGeometry[count];
+    final int[] starts = new int[count * counts];
+    final int[] stops = new int[count * counts];
+
+    PGraphicsOpenGL.runParallel(count, new PGraphicsOpenGL.Range() {
+      public void run(int start, int stop) {
+        Tessellator tess = new Tessellator();
+        TessGeometry geo = PGraphicsOpenGL.newTessGeometry(pg, root.polyAttribs,
+                                                           PGraphicsOpenGL.RETAINED);
+        for (int i = 0; i < root.polyAttribs.size(); i++) {
+          geo.initAttrib(root.polyAttribs.get(i));
+        }
+        for (int i = start; i < stop; i++) {
+          PShapeOpenGL leaf = leaves.get(i);
+          if (leaf.shapeCreated && leaf.canTessellateInParallel()) {
+            leaf.tessellator = tess;
+            leaf.tessGeo = geo;
+            geo.getCounts(starts, i * counts);
+            leaf.tessellateLeaf();
+            geo.getCounts(stops, i * counts);
+            sources[i] = geo;
+          }
+        }
+      }
+    });
+
+    // The rest change the renderer's settings, so they're done here
+    TessGeometry serial = null;
+    for (int i = 0; i < count; i++) {
+      PShapeOpenGL leaf = leaves.get(i);
+      if (leaf.shapeCreated && sources[i] == null) {
+        if (serial == null) {
+          serial = PGraphicsOpenGL.newTessGeometry(pg, root.polyAttribs,
+                                                   PGraphicsOpenGL.RETAINED);
+          for (int j = 0; j < root.polyAttribs.size(); j++) {
+            serial.initAttrib(root.polyAttribs.get(j));
+          }
+        }
+        leaf.tessGeo = serial;
+        serial.getCounts(starts, i * counts);
+        leaf.tessellateLeaf();
+        serial.getCounts(stops, i * counts);
+        sources[i] = serial;
+      }
+    }
+
+    // Leaves with the same source that follow each other (ignoring leaves
+    // without geometry) are also next to each other in the source, so each
+    // run of them is copied in one piece. Where each run goes in the
+    // root is the running total of the sizes of the runs before it.
+    final int[] runFirst = new int[count];
+    final int[] runLast = new int[count];
+    int runCount = 0;
+    int prev = -1;
+    for (int i = 0; i < count; i++) {
+      if (sources[i] != null) {
+        if (prev == -1 || sources[i] != sources[prev]) {
+          runFirst[runCount++] = i;
+        }
+        runLast[runCount - 1] = i;
+        prev = i;
+      }
+    }
+    final int[] runDest = new int[(runCount + 1) * counts];
+    for (int r = 0; r < runCount; r++) {
+      for (int k = 0; k < counts; k++) {
+        runDest[(r + 1) * counts + k] = runDest[r * counts + k] +
+          stops[runLast[r] * counts + k] - starts[runFirst[r] * counts + k];
+      }
+    }
+    tessGeo.reserve(Arrays.copyOfRange(runDest, runCount * counts,
+                                       (runCount + 1) * counts));
+
+    final TessGeometry rootGeo = tessGeo;
+    PGraphicsOpenGL.runParallel(runCount, new PGraphicsOpenGL.Range() {
+      public void run(int start, int stop) {
+        for (int r = start; r < stop; r++) {
+          int first = runFirst[r];
+          rootGeo.copyGeometry(sources[first], starts, first * counts,
+                               stops, runLast[r] * counts, runDest, r * counts);
+        }
+      }
+    });
+
+    // Point each leaf at its index cache entries in the root
+    int run = -1;
+    for (int i = 0; i < count; i++) {
+      PShapeOpenGL leaf = leaves.get(i);
+      if (sources[i] != null) {
+        if (run + 1 < runCount && runFirst[run + 1] == i) run++;
+        int first = runFirst[run] * counts;
+        int polyShift = runDest[run * counts + TessGeometry.POLY_CACHE] -
+                        starts[first + TessGeometry.POLY_CACHE];
+        int lineShift = runDest[run * counts + TessGeometry.LINE_CACHE] -
+                        starts[first + TessGeometry.LINE_CACHE];
+        int pointShift = runDest[run * counts + TessGeometry.POINT_CACHE] -
+                         starts[first + TessGeometry.POINT_CACHE];
+        if (leaf.is2D()) {
+          // in 2D, lines and points are stored with the polys
+          lineShift = pointShift = polyShift;
+        }
+        leaf.firstPolyIndexCache = shiftCache(leaf.firstPolyIndexCache, polyShift);
+        leaf.lastPolyIndexCache = shiftCache(leaf.lastPolyIndexCache, polyShift);
+        leaf.firstLineIndexCache = shiftCache(leaf.firstLineIndexCache, lineShift);
+        leaf.lastLineIndexCache = shiftCache(leaf.lastLineIndexCache, lineShift);
+        leaf.firstPointIndexCache = shiftCache(leaf.firstPointIndexCache, pointShift);
+        leaf.lastPointIndexCache = shiftCache(leaf.lastPointIndexCache, pointShift);
+
+        if (leaf.image != null && leaf.parent != null) {
+          ((PShapeOpenGL)leaf.parent).addTexture(leaf.image);
+        }
+      }
+      leaf.tessGeo = tessGeo;
+      leaf.tessellator = pg.tessellator;
+
+      leaf.firstPolyVertex = leaf.lastPolyVertex = -1;
+      leaf.firstLineVertex = leaf.lastLineVertex = -1;
+      leaf.firstPointVertex = leaf.lastPointVertex = -1;
+      leaf.tessellated = true;
+    }
+    return true;
+  }
+
+
+  static private int shiftCache(int index, int shift) {
+    return (index == -1) ? -1 : index + shift;
+  }
+
+
+  // The part of tessellateImpl() that's done for group shapes, while
+  // listing the shapes that hold geometry in the order they're tessellated.
+  protected void collectLeaves(ArrayList<PShapeOpenGL> leaves) {
+    tessGeo = root.tessGeo;
+
+    firstPolyIndexCache = -1;
+    lastPolyIndexCache = -1;
+    firstLineIndexCache = -1;
+    lastLineIndexCache = -1;
+    firstPointIndexCache = -1;
+    lastPointIndexCache = -1;
+
+    if (family == GROUP) {
+      if (polyAttribs == null) {
+        polyAttribs = PGraphicsOpenGL.newAttributeMap();
+        collectPolyAttribs();
+      }
+
+      for (int i = 0; i < childCount; i++) {
+        PShapeOpenGL child = (PShapeOpenGL) children[i];
+        child.collectLeaves(leaves);
+      }
+
+      firstPolyVertex = lastPolyVertex = -1;
+      firstLineVertex = lastLineVertex = -1;
+      firstPointVertex = lastPointVertex = -1;
+
+      tessellated = true;
+    } else {
+      leaves.add(this);
+    }
+  }
+
+
+  // Shapes that use the renderer's bezier, curve, or sphere settings can
+  // only be tessellated on the thread that's using the renderer.
+  protected boolean canTessellateInParallel() {
+    if (family == GEOMETRY) {
+      return kind != POLYGON || !(inGeo.hasBezierVertex() ||
+                                  inGeo.hasQuadraticVertex() ||
+                                  inGeo.hasCurveVertex());
+    } else if (family == PRIMITIVE) {
+      boolean rounded = kind == RECT && (params.length == 5 || params.length == 8);
+      return kind != SPHERE && !rounded;
+    } else if (family == PATH) {
+      for (int i = 0; i < vertexCodeCount; i++) {
+        int code = vertexCodes[i];
+        if (code != VERTEX && code != BREAK) {
+          return false;
+        }
+      }
+      return true;
+    }
+    return false;
+  }
+
+
+  // Tessellates the geometry of a shape that's not a group into tessGeo,
+  // using this shape's tessellator.
+  protected void tessellateLeaf() {
+    // If the geometry was tessellated previously, then
+    // the edges information will still be stored in the
+    // input object, so it needs to be removed to avoid
+    // duplication.
+    inGeo.clearEdges();
+
+    tessellator.setInGeometry(inGeo);
+    tessellator.setTessGeometry(tessGeo);
+    tessellator.setFill(fill || image != null);
+    tessellator.setTexCache(null, null);
+    tessellator.setStroke(stroke);
+    tessellator.setStrokeColor(strokeColor);
+    tessellator.setStrokeWeight(strokeWeight);
+    tessellator.setStrokeCap(strokeCap);
+    tessellator.setStrokeJoin(strokeJoin);
+    tessellator.setRenderer(pg);
+    tessellator.setTransform(matrix);
+    tessellator.set3D(is3D());
+
+    if (family == GEOMETRY) {
+      if (kind == POINTS) {
+        tessellator.tessellatePoints();
+      } else if (kind == LINES) {
+        tessellator.tessellateLines();
+      } else if (kind == LINE_STRIP) {
+        tessellator.tessellateLineStrip();
+      } else if (kind == LINE_LOOP) {
+        tessellator.tessellateLineLoop();
+      } else if (kind == TRIANGLE || kind == TRIANGLES) {
+        if (stroke) inGeo.addTrianglesEdges();
+        if (normalMode == NORMAL_MODE_AUTO) inGeo.calcTrianglesNormals();
+        tessellator.tessellateTriangles();
+      } else if (kind == TRIANGLE_FAN) {
+        if (stroke) inGeo.addTriangleFanEdges();
+        if (normalMode == NORMAL_MODE_AUTO) inGeo.calcTriangleFanNormals();
+        tessellator.tessellateTriangleFan();
+      } else if (kind == TRIANGLE_STRIP) {
+        if (stroke) inGeo.addTriangleStripEdges();
+        if (normalMode == NORMAL_MODE_AUTO) inGeo.calcTriangleStripNormals();
+        tessellator.tessellateTriangleStrip();
+      } else if (kind == QUAD || kind == QUADS) {
+        if (stroke) inGeo.addQuadsEdges();
+        if (normalMode == NORMAL_MODE_AUTO) inGeo.calcQuadsNormals();
+        tessellator.tessellateQuads();
+      } else if (kind == QUAD_STRIP) {
+        if (stroke) inGeo.addQuadStripEdges();
+        if (normalMode == NORMAL_MODE_AUTO) inGeo.calcQuadStripNormals();
+        tessellator.tessellateQuadStrip();
+      } else if (kind == POLYGON) {
+        boolean bez = inGeo.hasBezierVertex();
+        boolean quad = inGeo.hasQuadraticVertex();
+        boolean curv = inGeo.hasCurveVertex();
+        if (bez || quad) saveBezierVertexSettings();
+        if (curv) {
+          saveCurveVertexSettings();
+          tessellator.resetCurveVertexCount();
+        }
+        tessellator.tessellatePolygon(solid, close,
+                                      normalMode == NORMAL_MODE_AUTO);
+        if (bez ||quad) restoreBezierVertexSettings();
+        if (curv) restoreCurveVertexSettings();
+      }
+    } else if (family == PRIMITIVE) {
+      // The input geometry needs to be cleared because the geometry
+      // generation methods in InGeometry add the vertices of the
+      // new primitive to what is already stored.
+      inGeo.clear();
+
+      if (kind == POINT) {
+        tessellatePoint();
+      } else if (kind == LINE) {
+        tessellateLine();
+      } else if (kind == TRIANGLE) {
+        tessellateTriangle();
+      } else if (kind == QUAD) {
+        tessellateQuad();
+      } else if (kind == RECT) {
+        tessellateRect();
+      } else if (kind == ELLIPSE) {
+        tessellateEllipse();
+      } else if (kind == ARC) {
+        tessellateArc();
+      } else if (kind == BOX) {
+        tessellateBox();
+      } else if (kind == SPHERE) {
+        tessellateSphere();
+      }
+    } else if (family == PATH) {
+      inGeo.clear();
+      tessellatePath();
+    }
+
+    firstPolyIndexCache = tessellator.firstPolyIndexCache;
+    lastPolyIndexCache = tessellator.lastPolyIndexCache;
+    firstLineIndexCache = tessellator.firstLineIndexCache;
+    lastLineIndexCache = tessellator.lastLineIndexCache;
+    firstPointIndexCache = tessellator.firstPointIndexCache;
+    lastPointIndexCache = tessellator.lastPointIndexCache;
+  }
+
+
   protected void tessellatePoint() {
     float x = 0, y = 0, z = 0;
     if (params.length == 2) {
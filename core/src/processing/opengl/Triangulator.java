@@ -0,0 +1,1225 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012-15 The Processing Foundation
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation, version 2.1.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+/*
+  The ear clipping, hole bridging, z-order hashing and the helpers they
+  use are ported from earcut (https://github.com/mapbox/earcut), which
+  is distributed under the ISC license:
+
+  Copyright (c) 2016, Mapbox
+
+  Permission to use, copy, modify, and/or distribute this software for any purpose
+  with or without fee is hereby granted, provided that the above copyright notice
+  and this permission notice appear in all copies.
+
+  THE SOFTWARE IS PROVIDED "AS IS" AND ISC DISCLAIMS ALL WARRANTIES WITH REGARD TO
+  THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS.
+  IN NO EVENT SHALL ISC BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR
+  CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA
+  OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+  ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+*/
+
+package processing.opengl;
+
+import java.util.Arrays;
+
+import processing.opengl.PGraphicsOpenGL.Tessellator.TessellatorCallback;
+
+
+/**
+ * Fills polygons without going through the GLU tessellator, used when
+ * hint(ENABLE_JAVA_TESSELLATOR) is set. It takes the same calls as GLU
+ * (contours, vertices, and a winding rule), but instead of handing back
+ * separate fans and strips with a copy of each vertex for every one of
+ * them, each vertex is added once and the triangles are written as
+ * indices straight into the TessGeometry.
+ * <p>
+ * Convex polygons are filled as a fan. Anything else is split into
+ * triangles by ear clipping (a port of the earcut algorithm), after the
+ * holes are joined to the contour around them with a bridge. Contours
+ * that cross each other or themselves, or that don't fit the winding rule
+ * as simple outlines and holes, are handed to GLU instead, since it can
+ * add the vertices where the edges cross.
+ */
+class Triangulator implements PGL.Tessellator {
+  static final int NONE = -1;
+  static final int MAX_CELLS = 1 << 14;  // rows or columns
+
+  TessellatorCallback callback;
+  PGL.Tessellator glu;  // for the polygons that can't be done here
+  int windingRule;
+
+  // Vertices as they were added, and where each contour starts
+  double[][] vertices = new double[64][];
+  int vertexCount;
+  int[] contours = new int[8];
+  int contourCount;
+
+  // 2D position of each vertex, once the polygon is projected onto the
+  // plane it (mostly) lies in
+  double[] coords = new double[128];
+
+  // Nodes of the circular lists used by ear clipping. The same vertex can
+  // be in more than one node, where a bridge to a hole starts and ends.
+  int nodeCount;
+  int[] nodeVertex = new int[64];
+  double[] nodeX = new double[64];
+  double[] nodeY = new double[64];
+  int[] nodePrev = new int[64];
+  int[] nodeNext = new int[64];
+  int[] nodeZ = new int[64];
+  int[] nodePrevZ = new int[64];
+  int[] nodeNextZ = new int[64];
+
+  int[] triangles = new int[192];
+  int triangleCount;  // number of indices, three per triangle
+
+  // first node of each contour, and everything else known about them
+  int[] rings = new int[8];
+  double[] ringArea = new double[8];
+  double[] ringBounds = new double[32];
+  int[] ringParent = new int[8];
+  int[] ringWinding = new int[8];
+
+  // vertices actually used by the triangles, in the order they're added
+  int[] vertexMap = new int[64];
+  double[][] usedVertices = new double[64][];
+
+  // cells that each edge goes through (cell in the high bits, the node
+  // where the edge starts in the low), for finding where edges cross
+  long[] cells = new long[128];
+  int cellCount;
+
+
+  Triangulator(TessellatorCallback callback, PGL.Tessellator glu) {
+    this.callback = callback;
+    this.glu = glu;
+    windingRule = PGL.TESS_WINDING_ODD;
+  }
+
+
+  public void setCallback(int flag) { }
+
+
+  public void setWindingRule(int rule) {
+    windingRule = rule;
+  }
+
+
+  public void setProperty(int property, int value) { }
+
+
+  public void beginPolygon() {
+    beginPolygon(null);
+  }
+
+
+  public void beginPolygon(Object data) {
+    Arrays.fill(vertices, 0, vertexCount, null);
+    vertexCount = 0;
+    contourCount = 0;
+    nodeCount = 0;
+    contours[0] = 0;
+  }
+
+
+  public void beginContour() {
+    contours[contourCount] = vertexCount;
+  }
+
+
+  public void endContour() {
+    if (contours[contourCount] < vertexCount) {
+      contourCount++;
+      if (contourCount + 1 >= contours.length) {
+        contours = Arrays.copyOf(contours, contours.length << 1);
+      }
+      contours[contourCount] = vertexCount;
+    }
+  }
+
+
+  public void addVertex(double[] v) {
+    if (vertexCount == vertices.length) {
+      vertices = Arrays.copyOf(vertices, vertexCount << 1);
+    }
+    vertices[vertexCount++] = v;
+  }
+
+
+  public void addVertex(double[] v, int n, Object data) {
+    addVertex((double[]) data);
+  }
+
+
+  public void endPolygon() {
+    triangleCount = 0;
+    if (!triangulate()) {
+      fallback();
+    } else if (0 < triangleCount) {
+      emit();
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  // Returns false if the polygon has to be done by GLU.
+  protected boolean triangulate() {
+    if (!project()) {
+      // The signed areas cancel out (a symmetric bowtie, or two outlines
+      // wound in opposite directions), so there's no plane to work in,
+      // but that doesn't mean nothing is filled.
+      return false;
+    }
+
+    int ringCount = 0;
+    for (int c = 0; c < contourCount; c++) {
+      int ring = linkContour(contours[c], contours[c + 1]);
+      if (ring != NONE) {
+        if (ringCount == rings.length) {
+          growRings();
+        }
+        rings[ringCount] = ring;
+        measureRing(ringCount);
+        ringCount++;
+      }
+    }
+    if (ringCount == 0) {
+      return true;
+    }
+
+    if (ringCount == 1 && isConvex(rings[0])) {
+      fan(rings[0], ringArea[0] < 0);
+      return true;
+    }
+    if (edgesCross(ringCount)) {
+      return false;
+    }
+    if (!nestRings(ringCount)) {
+      return false;
+    }
+
+    // Each filled ring is cut into triangles along with its holes
+    for (int r = 0; r < ringCount; r++) {
+      if (isFilled(ringWinding[r])) {
+        if (!earcut(r, ringCount)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+
+  // Picks the plane to flatten the polygon onto from its normal (using
+  // Newell's method), with the axes ordered so that an outline that goes
+  // counter-clockwise around the normal has a positive area. Returns false
+  // if the normal comes out as zero.
+  protected boolean project() {
+    double nx = 0, ny = 0, nz = 0;
+    for (int c = 0; c < contourCount; c++) {
+      int start = contours[c];
+      int stop = contours[c + 1];
+      double[] p = vertices[stop - 1];
+      for (int i = start; i < stop; i++) {
+        double[] q = vertices[i];
+        nx += (p[1] - q[1]) * (p[2] + q[2]);
+        ny += (p[2] - q[2]) * (p[0] + q[0]);
+        nz += (p[0] - q[0]) * (p[1] + q[1]);
+        p = q;
+      }
+    }
+    double ax = Math.abs(nx), ay = Math.abs(ny), az = Math.abs(nz);
+    if (ax == 0 && ay == 0 && az == 0) {
+      return false;
+    }
+    int u, v;
+    boolean flip;
+    if (az >= ax && az >= ay) {
+      u = 0; v = 1; flip = nz < 0;
+    } else if (ax >= ay) {
+      u = 1; v = 2; flip = nx < 0;
+    } else {
+      u = 2; v = 0; flip = ny < 0;
+    }
+    if (coords.length < 2 * vertexCount) {
+      coords = new double[2 * vertices.length];
+    }
+    for (int i = 0; i < vertexCount; i++) {
+      coords[2*i + 0] = vertices[i][u];
+      coords[2*i + 1] = flip ? -vertices[i][v] : vertices[i][v];
+    }
+    return true;
+  }
+
+
+  // Makes a circular list for a contour, leaving out repeated points.
+  // Returns NONE if there's less than a triangle left.
+  protected int linkContour(int start, int stop) {
+    int last = NONE;
+    for (int i = start; i < stop; i++) {
+      if (last != NONE && nodeX[last] == coords[2*i] && nodeY[last] == coords[2*i + 1]) {
+        continue;
+      }
+      last = insertNode(i, last);
+    }
+    if (last != NONE && equals(last, nodeNext[last])) {
+      removeNode(last);
+      last = nodeNext[last];
+    }
+    if (last == NONE || nodeNext[last] == last ||
+        nodeNext[nodeNext[last]] == last) {
+      return NONE;
+    }
+    return last;
+  }
+
+
+  protected void measureRing(int r) {
+    int start = rings[r];
+    double area = 0;
+    double minX = nodeX[start], maxX = minX;
+    double minY = nodeY[start], maxY = minY;
+    int p = start;
+    do {
+      int q = nodeNext[p];
+      area += (nodeX[p] - nodeX[q]) * (nodeY[p] + nodeY[q]);
+      minX = Math.min(minX, nodeX[q]);
+      maxX = Math.max(maxX, nodeX[q]);
+      minY = Math.min(minY, nodeY[q]);
+      maxY = Math.max(maxY, nodeY[q]);
+      p = q;
+    } while (p != start);
+    ringArea[r] = area / 2;
+    ringBounds[4*r + 0] = minX;
+    ringBounds[4*r + 1] = minY;
+    ringBounds[4*r + 2] = maxX;
+    ringBounds[4*r + 3] = maxY;
+  }
+
+
+  // Convex (and not crossing itself): every turn goes the same way, and
+  // the edges only change direction twice along each axis.
+  protected boolean isConvex(int start) {
+    int turns = 0;
+    int xChanges = 0, yChanges = 0;
+    double lastDx = 0, lastDy = 0;
+    int p = start;
+    do {
+      int q = nodeNext[p];
+      int r = nodeNext[q];
+      double cross = cross(p, q, r);
+      if (cross != 0) {
+        int turn = cross > 0 ? 1 : -1;
+        if (turns == 0) {
+          turns = turn;
+        } else if (turn != turns) {
+          return false;
+        }
+      }
+      double dx = nodeX[q] - nodeX[p];
+      double dy = nodeY[q] - nodeY[p];
+      if (dx != 0) {
+        if (lastDx != 0 && (dx > 0) != (lastDx > 0)) xChanges++;
+        lastDx = dx;
+      }
+      if (dy != 0) {
+        if (lastDy != 0 && (dy > 0) != (lastDy > 0)) yChanges++;
+        lastDy = dy;
+      }
+      p = q;
+    } while (p != start);
+    return turns != 0 && xChanges <= 2 && yChanges <= 2;
+  }
+
+
+  protected void fan(int start, boolean reverse) {
+    int a = start;
+    int b = nodeNext[a];
+    int c = nodeNext[b];
+    while (c != start) {
+      if (cross(a, b, c) != 0) {
+        if (reverse) {
+          addTriangle(nodeVertex[a], nodeVertex[c], nodeVertex[b]);
+        } else {
+          addTriangle(nodeVertex[a], nodeVertex[b], nodeVertex[c]);
+        }
+      }
+      b = c;
+      c = nodeNext[c];
+    }
+  }
+
+
+  // Whether any two edges cross or touch (other than neighbors sharing
+  // their vertex). The polygon is divided into square cells about twice
+  // the length of the average edge, and only edges going through the same
+  // cell are compared. Each edge is listed with every cell it goes through
+  // (sorted by cell), so it doesn't matter how the edges are spread out.
+  protected boolean edgesCross(int ringCount) {
+    double minX = ringBounds[0], minY = ringBounds[1];
+    double maxX = ringBounds[2], maxY = ringBounds[3];
+    double length = 0;
+    int edgeCount = 0;
+    for (int r = 0; r < ringCount; r++) {
+      minX = Math.min(minX, ringBounds[4*r + 0]);
+      minY = Math.min(minY, ringBounds[4*r + 1]);
+      maxX = Math.max(maxX, ringBounds[4*r + 2]);
+      maxY = Math.max(maxY, ringBounds[4*r + 3]);
+      int p = rings[r];
+      do {
+        int pn = nodeNext[p];
+        length += Math.max(Math.abs(nodeX[pn] - nodeX[p]),
+                           Math.abs(nodeY[pn] - nodeY[p]));
+        edgeCount++;
+        p = pn;
+      } while (p != rings[r]);
+    }
+    double side = Math.max(2 * length / edgeCount,
+                           Math.max(maxX - minX, maxY - minY) / MAX_CELLS);
+    if (side == 0) {
+      return false;
+    }
+    double scale = 1 / side;
+    double pad = side / 1024;  // so that rounding never misses a cell
+
+    cellCount = 0;
+    for (int r = 0; r < ringCount; r++) {
+      int p = rings[r];
+      do {
+        int pn = nodeNext[p];
+        addCells(p, pn, minX, minY, scale, pad);
+        p = pn;
+      } while (p != rings[r]);
+    }
+    Arrays.sort(cells, 0, cellCount);
+
+    for (int start = 0; start < cellCount; ) {
+      long cell = cells[start] >>> 32;
+      int stop = start + 1;
+      while (stop < cellCount && (cells[stop] >>> 32) == cell) {
+        stop++;
+      }
+      for (int i = start; i < stop; i++) {
+        int p = (int) cells[i];
+        int pn = nodeNext[p];
+        for (int j = i + 1; j < stop; j++) {
+          int q = (int) cells[j];
+          int qn = nodeNext[q];
+          if (pn == q || qn == p) {
+            continue;  // neighbors
+          }
+          if (intersects(p, pn, q, qn)) {
+            return true;
+          }
+        }
+      }
+      start = stop;
+    }
+    return false;
+  }
+
+
+  // Lists the edge from p to q with each cell it goes through, one column
+  // of cells at a time.
+  protected void addCells(int p, int q, double minX, double minY,
+                          double scale, double pad) {
+    double x0 = nodeX[p], y0 = nodeY[p];
+    double x1 = nodeX[q], y1 = nodeY[q];
+    if (x1 < x0) {
+      double t = x0; x0 = x1; x1 = t;
+      t = y0; y0 = y1; y1 = t;
+    }
+    int first = (int) ((x0 - pad - minX) * scale);
+    int last = (int) ((x1 + pad - minX) * scale);
+    double slope = (x1 > x0) ? (y1 - y0) / (x1 - x0) : 0;
+    for (int col = first; col <= last; col++) {
+      // the part of the edge in this column
+      double left = Math.max(x0, minX + col / scale);
+      double right = Math.min(x1, minX + (col + 1) / scale);
+      double ya = (left <= x0) ? y0 : y0 + (left - x0) * slope;
+      double yb = (right >= x1) ? y1 : y0 + (right - x0) * slope;
+      if (first == last) {
+        ya = y0;
+        yb = y1;
+      }
+      int row0 = (int) ((Math.min(ya, yb) - pad - minY) * scale);
+      int row1 = (int) ((Math.max(ya, yb) + pad - minY) * scale);
+      for (int row = row0; row <= row1; row++) {
+        if (cellCount == cells.length) {
+          cells = Arrays.copyOf(cells, cellCount << 1);
+        }
+        long cell = ((long) (row + 1) << 16) | (col + 1);
+        cells[cellCount++] = (cell << 32) | p;
+      }
+    }
+  }
+
+
+  // Finds the smallest ring around each one, and the winding number
+  // inside each (the sum of the directions of it and the rings around it).
+  // Returns false if the filled parts can't be described as rings with
+  // holes in them (rings inside rings that are filled the same way).
+  protected boolean nestRings(int ringCount) {
+    for (int r = 0; r < ringCount; r++) {
+      ringParent[r] = NONE;
+      int p = rings[r];
+      double px = nodeX[p], py = nodeY[p];
+      for (int s = 0; s < ringCount; s++) {
+        if (s == r || Math.abs(ringArea[s]) <= Math.abs(ringArea[r]) ||
+            px < ringBounds[4*s + 0] || py < ringBounds[4*s + 1] ||
+            px > ringBounds[4*s + 2] || py > ringBounds[4*s + 3]) {
+          continue;
+        }
+        if ((ringParent[r] == NONE ||
+             Math.abs(ringArea[s]) < Math.abs(ringArea[ringParent[r]])) &&
+            contains(rings[s], px, py)) {
+          ringParent[r] = s;
+        }
+      }
+    }
+    for (int r = 0; r < ringCount; r++) {
+      ringWinding[r] = winding(r);
+    }
+    for (int r = 0; r < ringCount; r++) {
+      int parent = ringParent[r];
+      boolean outside = (parent == NONE) ? false : isFilled(ringWinding[parent]);
+      if (isFilled(ringWinding[r]) == outside) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+
+  protected int winding(int r) {
+    int w = 0;
+    while (r != NONE) {
+      w += (ringArea[r] > 0) ? 1 : -1;
+      r = ringParent[r];
+    }
+    return w;
+  }
+
+
+  protected boolean isFilled(int winding) {
+    if (windingRule == PGL.TESS_WINDING_ODD) {
+      return (winding & 1) != 0;
+    }
+    return winding != 0;
+  }
+
+
+  protected boolean contains(int start, double x, double y) {
+    boolean inside = false;
+    int p = start;
+    do {
+      int q = nodeNext[p];
+      if ((nodeY[p] > y) != (nodeY[q] > y) &&
+          x < (nodeX[q] - nodeX[p]) * (y - nodeY[p]) / (nodeY[q] - nodeY[p]) + nodeX[p]) {
+        inside = !inside;
+      }
+      p = q;
+    } while (p != start);
+    return inside;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+  // Ear clipping, following earcut (https://github.com/mapbox/earcut),
+  // with rings that go counter-clockwise, and holes clockwise.
+
+
+  protected boolean earcut(int outer, int ringCount) {
+    int outerNode = orient(rings[outer], ringArea[outer], true);
+    int queueStart = triangleCount;
+
+    // holes, by their leftmost point (temporarily kept with the triangles)
+    int holeCount = 0;
+    for (int r = 0; r < ringCount; r++) {
+      if (ringParent[r] == outer) {
+        int hole = orient(rings[r], ringArea[r], false);
+        triangleCheck(1);
+        triangles[triangleCount++] = leftmost(hole);
+        holeCount++;
+      }
+    }
+    if (0 < holeCount) {
+      sortByX(queueStart, queueStart + holeCount);
+      for (int h = 0; h < holeCount; h++) {
+        outerNode = eliminateHole(triangles[queueStart + h], outerNode);
+      }
+      triangleCount = queueStart;
+    }
+    if (outerNode == NONE || nodePrev[outerNode] == nodeNext[outerNode]) {
+      return true;
+    }
+
+    double minX = 0, minY = 0, invSize = 0;
+    double[] b = ringBounds;
+    if (80 < count(outerNode)) {
+      minX = b[4*outer + 0];
+      minY = b[4*outer + 1];
+      invSize = Math.max(b[4*outer + 2] - minX, b[4*outer + 3] - minY);
+      invSize = (invSize != 0) ? 32767 / invSize : 0;
+    }
+    return earcutLinked(outerNode, minX, minY, invSize, 0);
+  }
+
+
+  // Reverses a ring if it's not going the right way
+  protected int orient(int start, double area, boolean counterClockwise) {
+    if ((area > 0) == counterClockwise) {
+      return start;
+    }
+    int p = start;
+    do {
+      int next = nodeNext[p];
+      nodeNext[p] = nodePrev[p];
+      nodePrev[p] = next;
+      p = next;
+    } while (p != start);
+    return start;
+  }
+
+
+  protected int count(int start) {
+    int n = 0;
+    int p = start;
+    do {
+      n++;
+      p = nodeNext[p];
+    } while (p != start);
+    return n;
+  }
+
+
+  protected int filterPoints(int start, int end) {
+    if (start == NONE) return start;
+    if (end == NONE) end = start;
+
+    int p = start;
+    boolean again;
+    do {
+      again = false;
+      if (equals(p, nodeNext[p]) || area(nodePrev[p], p, nodeNext[p]) == 0) {
+        removeNode(p);
+        p = end = nodePrev[p];
+        if (p == nodeNext[p]) break;
+        again = true;
+      } else {
+        p = nodeNext[p];
+      }
+    } while (again || p != end);
+    return end;
+  }
+
+
+  protected boolean earcutLinked(int ear, double minX, double minY,
+                                 double invSize, int pass) {
+    if (ear == NONE) return true;
+    if (pass == 0 && invSize != 0) indexCurve(ear, minX, minY, invSize);
+
+    int stop = ear;
+    while (nodePrev[ear] != nodeNext[ear]) {
+      int prev = nodePrev[ear];
+      int next = nodeNext[ear];
+
+      if (invSize != 0 ? isEarHashed(ear, minX, minY, invSize) : isEar(ear)) {
+        addTriangle(nodeVertex[prev], nodeVertex[ear], nodeVertex[next]);
+        removeNode(ear);
+        ear = nodeNext[next];
+        stop = nodeNext[next];
+        continue;
+      }
+      ear = next;
+
+      if (ear == stop) {
+        if (pass == 0) {
+          return earcutLinked(filterPoints(ear, NONE), minX, minY, invSize, 1);
+        } else if (pass == 1) {
+          ear = cureLocalIntersections(filterPoints(ear, NONE));
+          return earcutLinked(ear, minX, minY, invSize, 2);
+        } else {
+          return splitEarcut(ear, minX, minY, invSize);
+        }
+      }
+    }
+    return true;
+  }
+
+
+  protected boolean isEar(int ear) {
+    int a = nodePrev[ear], b = ear, c = nodeNext[ear];
+    if (area(a, b, c) >= 0) return false;  // reflex, can't be an ear
+
+    double ax = nodeX[a], bx = nodeX[b], cx = nodeX[c];
+    double ay = nodeY[a], by = nodeY[b], cy = nodeY[c];
+    double x0 = Math.min(ax, Math.min(bx, cx));
+    double y0 = Math.min(ay, Math.min(by, cy));
+    double x1 = Math.max(ax, Math.max(bx, cx));
+    double y1 = Math.max(ay, Math.max(by, cy));
+
+    int p = nodeNext[c];
+    while (p != a) {
+      if (nodeX[p] >= x0 && nodeX[p] <= x1 && nodeY[p] >= y0 && nodeY[p] <= y1 &&
+          pointInTriangle(ax, ay, bx, by, cx, cy, nodeX[p], nodeY[p]) &&
+          area(nodePrev[p], p, nodeNext[p]) >= 0) return false;
+      p = nodeNext[p];
+    }
+    return true;
+  }
+
+
+  protected boolean isEarHashed(int ear, double minX, double minY, double invSize) {
+    int a = nodePrev[ear], b = ear, c = nodeNext[ear];
+    if (area(a, b, c) >= 0) return false;
+
+    double ax = nodeX[a], bx = nodeX[b], cx = nodeX[c];
+    double ay = nodeY[a], by = nodeY[b], cy = nodeY[c];
+    double x0 = Math.min(ax, Math.min(bx, cx));
+    double y0 = Math.min(ay, Math.min(by, cy));
+    double x1 = Math.max(ax, Math.max(bx, cx));
+    double y1 = Math.max(ay, Math.max(by, cy));
+
+    // z-order range for the current triangle bbox
+    int minZ = zOrder(x0, y0, minX, minY, invSize);
+    int maxZ = zOrder(x1, y1, minX, minY, invSize);
+
+    int p = nodePrevZ[ear];
+    int n = nodeNextZ[ear];
+
+    // look for points inside the triangle in both directions
+    while (p != NONE && nodeZ[p] >= minZ && n != NONE && nodeZ[n] <= maxZ) {
+      if (blocksEar(p, a, c, x0, y0, x1, y1, ax, ay, bx, by, cx, cy)) return false;
+      p = nodePrevZ[p];
+      if (blocksEar(n, a, c, x0, y0, x1, y1, ax, ay, bx, by, cx, cy)) return false;
+      n = nodeNextZ[n];
+    }
+    // look for remaining points in decreasing z-order
+    while (p != NONE && nodeZ[p] >= minZ) {
+      if (blocksEar(p, a, c, x0, y0, x1, y1, ax, ay, bx, by, cx, cy)) return false;
+      p = nodePrevZ[p];
+    }
+    // look for remaining points in increasing z-order
+    while (n != NONE && nodeZ[n] <= maxZ) {
+      if (blocksEar(n, a, c, x0, y0, x1, y1, ax, ay, bx, by, cx, cy)) return false;
+      n = nodeNextZ[n];
+    }
+    return true;
+  }
+
+
+  private boolean blocksEar(int p, int a, int c,
+                            double x0, double y0, double x1, double y1,
+                            double ax, double ay, double bx, double by,
+                            double cx, double cy) {
+    return nodeX[p] >= x0 && nodeX[p] <= x1 && nodeY[p] >= y0 && nodeY[p] <= y1 &&
+      p != a && p != c &&
+      pointInTriangle(ax, ay, bx, by, cx, cy, nodeX[p], nodeY[p]) &&
+      area(nodePrev[p], p, nodeNext[p]) >= 0;
+  }
+
+
+  // go through all polygon nodes and cure small local self-intersections
+  protected int cureLocalIntersections(int start) {
+    int p = start;
+    do {
+      int a = nodePrev[p], b = nodeNext[nodeNext[p]];
+      if (!equals(a, b) && intersects(a, p, nodeNext[p], b) &&
+          locallyInside(a, b) && locallyInside(b, a)) {
+        addTriangle(nodeVertex[a], nodeVertex[p], nodeVertex[b]);
+        // remove two nodes involved
+        removeNode(p);
+        removeNode(nodeNext[p]);
+        p = start = b;
+      }
+      p = nodeNext[p];
+    } while (p != start);
+    return filterPoints(p, NONE);
+  }
+
+
+  // try splitting polygon into two and triangulate them independently
+  protected boolean splitEarcut(int start, double minX, double minY, double invSize) {
+    // look for a valid diagonal that divides the polygon into two
+    int a = start;
+    do {
+      int b = nodeNext[nodeNext[a]];
+      while (b != nodePrev[a]) {
+        if (nodeVertex[a] != nodeVertex[b] && isValidDiagonal(a, b)) {
+          int c = splitPolygon(a, b);
+          a = filterPoints(a, nodeNext[a]);
+          c = filterPoints(c, nodeNext[c]);
+          return earcutLinked(a, minX, minY, invSize, 0) &&
+                 earcutLinked(c, minX, minY, invSize, 0);
+        }
+        b = nodeNext[b];
+      }
+      a = nodeNext[a];
+    } while (a != start);
+    return false;  // couldn't find one, GLU has to do it
+  }
+
+
+  // find a bridge between vertices that connects hole with an outer ring
+  // and link it
+  protected int eliminateHole(int hole, int outerNode) {
+    int bridge = findHoleBridge(hole, outerNode);
+    if (bridge == NONE) {
+      return outerNode;
+    }
+    int bridgeReverse = splitPolygon(bridge, hole);
+    filterPoints(bridgeReverse, nodeNext[bridgeReverse]);
+    return filterPoints(bridge, nodeNext[bridge]);
+  }
+
+
+  // David Eberly's algorithm for finding a bridge between hole and outer polygon
+  protected int findHoleBridge(int hole, int outerNode) {
+    int p = outerNode;
+    double hx = nodeX[hole];
+    double hy = nodeY[hole];
+    double qx = Double.NEGATIVE_INFINITY;
+    int m = NONE;
+
+    // find a segment intersected by a ray from the hole's leftmost point to
+    // the left; segment's endpoint with lesser x will be potential
+    // connection point
+    do {
+      int pn = nodeNext[p];
+      if (hy <= nodeY[p] && hy >= nodeY[pn] && nodeY[pn] != nodeY[p]) {
+        double x = nodeX[p] + (hy - nodeY[p]) * (nodeX[pn] - nodeX[p]) / (nodeY[pn] - nodeY[p]);
+        if (x <= hx && x > qx) {
+          qx = x;
+          m = nodeX[p] < nodeX[pn] ? p : pn;
+          if (x == hx) return m;  // hole touches outer segment
+        }
+      }
+      p = pn;
+    } while (p != outerNode);
+
+    if (m == NONE) return NONE;
+
+    // look for points inside the triangle of hole point, segment
+    // intersection and endpoint; if there are no points found, we have a
+    // valid connection; otherwise choose the point of the minimum angle
+    // with the ray as connection point
+    int stop = m;
+    double mx = nodeX[m];
+    double my = nodeY[m];
+    double tanMin = Double.POSITIVE_INFINITY;
+
+    p = m;
+    do {
+      if (hx >= nodeX[p] && nodeX[p] >= mx && hx != nodeX[p] &&
+          pointInTriangle(hy < my ? hx : qx, hy, mx, my, hy < my ? qx : hx, hy,
+                          nodeX[p], nodeY[p])) {
+        double tan = Math.abs(hy - nodeY[p]) / (hx - nodeX[p]);  // tangential
+        if (locallyInside(p, hole) &&
+            (tan < tanMin || (tan == tanMin &&
+                              (nodeX[p] > nodeX[m] ||
+                               (nodeX[p] == nodeX[m] && sectorContainsSector(m, p)))))) {
+          m = p;
+          tanMin = tan;
+        }
+      }
+      p = nodeNext[p];
+    } while (p != stop);
+
+    return m;
+  }
+
+
+  // whether sector in vertex m contains sector in vertex p in the same coordinates
+  protected boolean sectorContainsSector(int m, int p) {
+    return area(nodePrev[m], m, nodePrev[p]) < 0 && area(nodeNext[p], m, nodeNext[m]) < 0;
+  }
+
+
+  // interlink polygon nodes in z-order
+  protected void indexCurve(int start, double minX, double minY, double invSize) {
+    int p = start;
+    do {
+      if (nodeZ[p] == 0) nodeZ[p] = zOrder(nodeX[p], nodeY[p], minX, minY, invSize);
+      nodePrevZ[p] = nodePrev[p];
+      nodeNextZ[p] = nodeNext[p];
+      p = nodeNext[p];
+    } while (p != start);
+
+    nodeNextZ[nodePrevZ[p]] = NONE;
+    nodePrevZ[p] = NONE;
+
+    sortLinked(p);
+  }
+
+
+  // Simon Tatham's linked list merge sort algorithm
+  // http://www.chiark.greenend.org.uk/~sgtatham/algorithms/listsort.html
+  protected int sortLinked(int list) {
+    int inSize = 1;
+    int numMerges;
+    do {
+      int p = list;
+      list = NONE;
+      int tail = NONE;
+      numMerges = 0;
+
+      while (p != NONE) {
+        numMerges++;
+        int q = p;
+        int pSize = 0;
+        for (int i = 0; i < inSize; i++) {
+          pSize++;
+          q = nodeNextZ[q];
+          if (q == NONE) break;
+        }
+        int qSize = inSize;
+
+        while (pSize > 0 || (qSize > 0 && q != NONE)) {
+          int e;
+          if (pSize != 0 && (qSize == 0 || q == NONE || nodeZ[p] <= nodeZ[q])) {
+            e = p;
+            p = nodeNextZ[p];
+            pSize--;
+          } else {
+            e = q;
+            q = nodeNextZ[q];
+            qSize--;
+          }
+
+          if (tail != NONE) nodeNextZ[tail] = e;
+          else list = e;
+
+          nodePrevZ[e] = tail;
+          tail = e;
+        }
+        p = q;
+      }
+      nodeNextZ[tail] = NONE;
+      inSize *= 2;
+    } while (numMerges > 1);
+
+    return list;
+  }
+
+
+  // z-order of a point given coords and inverse of the longer side of
+  // data bbox
+  static protected int zOrder(double px, double py, double minX, double minY, double invSize) {
+    // coords are transformed into non-negative 15-bit integer range
+    int x = (int) ((px - minX) * invSize);
+    int y = (int) ((py - minY) * invSize);
+
+    x = (x | (x << 8)) & 0x00FF00FF;
+    x = (x | (x << 4)) & 0x0F0F0F0F;
+    x = (x | (x << 2)) & 0x33333333;
+    x = (x | (x << 1)) & 0x55555555;
+
+    y = (y | (y << 8)) & 0x00FF00FF;
+    y = (y | (y << 4)) & 0x0F0F0F0F;
+    y = (y | (y << 2)) & 0x33333333;
+    y = (y | (y << 1)) & 0x55555555;
+
+    return x | (y << 1);
+  }
+
+
+  // find the leftmost node of a polygon ring
+  protected int leftmost(int start) {
+    int p = start, leftmost = start;
+    do {
+      if (nodeX[p] < nodeX[leftmost] ||
+          (nodeX[p] == nodeX[leftmost] && nodeY[p] < nodeY[leftmost])) leftmost = p;
+      p = nodeNext[p];
+    } while (p != start);
+    return leftmost;
+  }
+
+
+  // check if a point lies within a convex triangle
+  static protected boolean pointInTriangle(double ax, double ay, double bx, double by,
+                                           double cx, double cy, double px, double py) {
+    return (cx - px) * (ay - py) >= (ax - px) * (cy - py) &&
+           (ax - px) * (by - py) >= (bx - px) * (ay - py) &&
+           (bx - px) * (cy - py) >= (cx - px) * (by - py);
+  }
+
+
+  // check if a diagonal between two polygon nodes is valid (lies in
+  // polygon interior)
+  protected boolean isValidDiagonal(int a, int b) {
+    return nodeVertex[nodeNext[a]] != nodeVertex[b] &&
+      nodeVertex[nodePrev[a]] != nodeVertex[b] &&
+      !intersectsPolygon(a, b) &&  // doesn't intersect other edges
+      (locallyInside(a, b) && locallyInside(b, a) && middleInside(a, b) &&  // locally visible
+       (area(nodePrev[a], a, nodePrev[b]) != 0 || area(a, nodePrev[b], b) != 0) ||  // does not create opposite-facing sectors
+       equals(a, b) && area(nodePrev[a], a, nodeNext[a]) > 0 &&
+       area(nodePrev[b], b, nodeNext[b]) > 0);  // special zero-length case
+  }
+
+
+  // signed area of a triangle (negative when counter-clockwise)
+  protected double area(int p, int q, int r) {
+    return (nodeY[q] - nodeY[p]) * (nodeX[r] - nodeX[q]) -
+           (nodeX[q] - nodeX[p]) * (nodeY[r] - nodeY[q]);
+  }
+
+
+  protected double cross(int p, int q, int r) {
+    return -area(p, q, r);
+  }
+
+
+  protected boolean equals(int p1, int p2) {
+    return nodeX[p1] == nodeX[p2] && nodeY[p1] == nodeY[p2];
+  }
+
+
+  // check if two segments intersect
+  protected boolean intersects(int p1, int q1, int p2, int q2) {
+    int o1 = sign(area(p1, q1, p2));
+    int o2 = sign(area(p1, q1, q2));
+    int o3 = sign(area(p2, q2, p1));
+    int o4 = sign(area(p2, q2, q1));
+
+    if (o1 != o2 && o3 != o4) return true;  // general case
+
+    if (o1 == 0 && onSegment(p1, p2, q1)) return true;  // p1, q1 and p2 are collinear and p2 lies on p1q1
+    if (o2 == 0 && onSegment(p1, q2, q1)) return true;  // p1, q1 and q2 are collinear and q2 lies on p1q1
+    if (o3 == 0 && onSegment(p2, p1, q2)) return true;  // p2, q2 and p1 are collinear and p1 lies on p2q2
+    if (o4 == 0 && onSegment(p2, q1, q2)) return true;  // p2, q2 and q1 are collinear and q1 lies on p2q2
+
+    return false;
+  }
+
+
+  // for collinear points p, q, r, check if point q lies on segment pr
+  protected boolean onSegment(int p, int q, int r) {
+    return nodeX[q] <= Math.max(nodeX[p], nodeX[r]) && nodeX[q] >= Math.min(nodeX[p], nodeX[r]) &&
+           nodeY[q] <= Math.max(nodeY[p], nodeY[r]) && nodeY[q] >= Math.min(nodeY[p], nodeY[r]);
+  }
+
+
+  static private int sign(double num) {
+    return num > 0 ? 1 : num < 0 ? -1 : 0;
+  }
+
+
+  // check if a polygon diagonal intersects any polygon segments
+  protected boolean intersectsPolygon(int a, int b) {
+    int p = a;
+    do {
+      int pn = nodeNext[p];
+      if (nodeVertex[p] != nodeVertex[a] && nodeVertex[pn] != nodeVertex[a] &&
+          nodeVertex[p] != nodeVertex[b] && nodeVertex[pn] != nodeVertex[b] &&
+          intersects(p, pn, a, b)) return true;
+      p = pn;
+    } while (p != a);
+    return false;
+  }
+
+
+  // check if a polygon diagonal is locally inside the polygon
+  protected boolean locallyInside(int a, int b) {
+    return area(nodePrev[a], a, nodeNext[a]) < 0 ?
+      area(a, b, nodeNext[a]) >= 0 && area(a, nodePrev[a], b) >= 0 :
+      area(a, b, nodePrev[a]) < 0 || area(a, nodeNext[a], b) < 0;
+  }
+
+
+  // check if the middle point of a polygon diagonal is inside the polygon
+  protected boolean middleInside(int a, int b) {
+    int p = a;
+    boolean inside = false;
+    double px = (nodeX[a] + nodeX[b]) / 2;
+    double py = (nodeY[a] + nodeY[b]) / 2;
+    do {
+      int pn = nodeNext[p];
+      if (((nodeY[p] > py) != (nodeY[pn] > py)) && nodeY[pn] != nodeY[p] &&
+          (px < (nodeX[pn] - nodeX[p]) * (py - nodeY[p]) / (nodeY[pn] - nodeY[p]) + nodeX[p])) {
+        inside = !inside;
+      }
+      p = pn;
+    } while (p != a);
+    return inside;
+  }
+
+
+  // link two polygon vertices with a bridge; if the vertices belong to the
+  // same ring, it splits polygon into two; if one belongs to the outer ring
+  // and another to a hole, it merges it into a single ring
+  protected int splitPolygon(int a, int b) {
+    int a2 = newNode(nodeVertex[a], nodeX[a], nodeY[a]);
+    int b2 = newNode(nodeVertex[b], nodeX[b], nodeY[b]);
+    int an = nodeNext[a];
+    int bp = nodePrev[b];
+
+    nodeNext[a] = b;
+    nodePrev[b] = a;
+
+    nodeNext[a2] = an;
+    nodePrev[an] = a2;
+
+    nodeNext[b2] = a2;
+    nodePrev[a2] = b2;
+
+    nodeNext[bp] = b2;
+    nodePrev[b2] = bp;
+
+    return b2;
+  }
+
+
+  // create a node and optionally link it with previous one (in a circular
+  // doubly linked list)
+  protected int insertNode(int vertex, int last) {
+    int p = newNode(vertex, coords[2*vertex], coords[2*vertex + 1]);
+    if (last == NONE) {
+      nodePrev[p] = p;
+      nodeNext[p] = p;
+    } else {
+      nodeNext[p] = nodeNext[last];
+      nodePrev[p] = last;
+      nodePrev[nodeNext[last]] = p;
+      nodeNext[last] = p;
+    }
+    return p;
+  }
+
+
+  protected void removeNode(int p) {
+    nodePrev[nodeNext[p]] = nodePrev[p];
+    nodeNext[nodePrev[p]] = nodeNext[p];
+
+    if (nodePrevZ[p] != NONE) nodeNextZ[nodePrevZ[p]] = nodeNextZ[p];
+    if (nodeNextZ[p] != NONE) nodePrevZ[nodeNextZ[p]] = nodePrevZ[p];
+  }
+
+
+  protected int newNode(int vertex, double x, double y) {
+    if (nodeCount == nodeVertex.length) {
+      int n = nodeCount << 1;
+      nodeVertex = Arrays.copyOf(nodeVertex, n);
+      nodeX = Arrays.copyOf(nodeX, n);
+      nodeY = Arrays.copyOf(nodeY, n);
+      nodePrev = Arrays.copyOf(nodePrev, n);
+      nodeNext = Arrays.copyOf(nodeNext, n);
+      nodeZ = Arrays.copyOf(nodeZ, n);
+      nodePrevZ = Arrays.copyOf(nodePrevZ, n);
+      nodeNextZ = Arrays.copyOf(nodeNextZ, n);
+    }
+    int p = nodeCount++;
+    nodeVertex[p] = vertex;
+    nodeX[p] = x;
+    nodeY[p] = y;
+    nodeZ[p] = 0;
+    nodePrevZ[p] = NONE;
+    nodeNextZ[p] = NONE;
+    return p;
+  }
+
+
+  // Insertion sort of hole nodes (kept in triangles[]) by their x
+  protected void sortByX(int start, int stop) {
+    for (int i = start + 1; i < stop; i++) {
+      int node = triangles[i];
+      int j = i - 1;
+      while (j >= start && nodeX[triangles[j]] > nodeX[node]) {
+        triangles[j + 1] = triangles[j];
+        j--;
+      }
+      triangles[j + 1] = node;
+    }
+  }
+
+
+  protected void growRings() {
+    int n = rings.length << 1;
+    rings = Arrays.copyOf(rings, n);
+    ringArea = Arrays.copyOf(ringArea, n);
+    ringBounds = Arrays.copyOf(ringBounds, 4 * n);
+    ringParent = Arrays.copyOf(ringParent, n);
+    ringWinding = Arrays.copyOf(ringWinding, n);
+  }
+
+
+  protected void triangleCheck(int count) {
+    if (triangles.length < triangleCount + count) {
+      triangles = Arrays.copyOf(triangles,
+                                Math.max(triangles.length << 1, triangleCount + count));
+    }
+  }
+
+
+  protected void addTriangle(int a, int b, int c) {
+    triangleCheck(3);
+    triangles[triangleCount++] = a;
+    triangles[triangleCount++] = b;
+    triangles[triangleCount++] = c;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  // Hands the triangles to the callback, with each vertex they use once.
+  protected void emit() {
+    if (vertexMap.length < vertexCount) {
+      vertexMap = new int[vertices.length];
+    }
+    Arrays.fill(vertexMap, 0, vertexCount, NONE);
+    int usedCount = 0;
+    for (int i = 0; i < triangleCount; i++) {
+      int v = triangles[i];
+      if (vertexMap[v] == NONE) {
+        if (usedCount == usedVertices.length) {
+          usedVertices = Arrays.copyOf(usedVertices, usedCount << 1);
+        }
+        usedVertices[usedCount] = vertices[v];
+        vertexMap[v] = usedCount++;
+      }
+      triangles[i] = vertexMap[v];
+    }
+    callback.triangles(usedVertices, usedCount, triangles, triangleCount);
+    Arrays.fill(usedVertices, 0, usedCount, null);
+  }
+
+
+  // Gives the polygon, exactly as it was received, to GLU.
+  protected void fallback() {
+    glu.beginPolygon();
+    glu.setWindingRule(windingRule);
+    for (int c = 0; c < contourCount; c++) {
+      glu.beginContour();
+      for (int i = contours[c]; i < contours[c + 1]; i++) {
+        glu.addVertex(vertices[i]);
+      }
+      glu.endContour();
+    }
+    glu.endPolygon();
+  }
+}
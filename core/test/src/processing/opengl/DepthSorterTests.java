@@ -0,0 +1,123 @@
+package processing.opengl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+// In the same package as the sorter, which isn't public.
+public class DepthSorterTests {
+
+  // Triangles with the same depth keep the order they were drawn in.
+  @Test
+  public void tiesKeepOrder() {
+    for (boolean refine : new boolean[] { false, true }) {
+      Triangles tris = new Triangles();
+      for (int i = 0; i < 40; i++) {
+        // Four depths, all over the same spot
+        tris.flat(-0.5f, -0.5f, 0.5f, 0.5f, i % 4);
+      }
+      int[] order = tris.sort(refine);
+      int pos = 0;
+      for (int z = 0; z < 4; z++) {
+        for (int i = z; i < 40; i += 4) {
+          assertEquals("refine " + refine, i, order[pos++]);
+        }
+      }
+    }
+  }
+
+  // A big tilted triangle has its center behind a small one that is
+  // wholly behind it.
+  @Test
+  public void misorderedPair() {
+    Triangles tris = new Triangles();
+    int a = tris.tilted();
+    int b = tris.flat(-0.5f, -0.8f, 0.5f, -0.2f, 0);
+
+    assertOrder(tris.sort(false), a, b);
+    assertOrder(tris.sort(true), b, a);
+  }
+
+  // The pair is far apart in the whole order, with a triangle in between
+  // that is behind the small one, and which must stay before it.
+  @Test
+  public void misorderedPairApart() {
+    Triangles tris = new Triangles();
+    int a = tris.tilted();
+    int b = tris.flat(-0.5f, -0.8f, 0.5f, -0.2f, 0);
+    int c = tris.flat(0.1f, -0.9f, 0.9f, -0.1f, -0.5f);
+    // Small ones that don't overlap anything, to get more than one bin
+    List<Integer> others = new ArrayList<Integer>();
+    for (int i = 0; i < 40; i++) {
+      float x = -0.95f + (i % 10) * 0.19f;
+      float y = 0.05f + (i / 10) * 0.23f;
+      others.add(tris.flat(x, y, x + 0.1f, y + 0.1f, -4 + i * 0.2f));
+    }
+
+    int[] order = tris.sort(false);
+    assertOrder(order, a, c, b);
+
+    order = tris.sort(true);
+    assertOrder(order, c, b, a);
+    int[] rest = new int[others.size()];
+    for (int i = 0; i < rest.length; i++) rest[i] = others.get(i);
+    assertOrder(order, rest);
+  }
+
+  static void assertOrder(int[] order, int... tids) {
+    int[] positions = new int[order.length];
+    for (int pos = 0; pos < order.length; pos++) positions[order[pos]] = pos;
+    for (int i = 1; i < tids.length; i++) {
+      assertTrue(tids[i - 1] + " should come before " + tids[i],
+                 positions[tids[i - 1]] < positions[tids[i]]);
+    }
+  }
+
+  // Triangles in normalized device coordinates, where the bigger z is
+  // in front.
+  static class Triangles {
+    List<float[]> vertices = new ArrayList<float[]>();
+
+    int add(float... xyz) {
+      vertices.add(xyz);
+      return vertices.size() - 1;
+    }
+
+    int flat(float x0, float y0, float x1, float y1, float z) {
+      return add(x0, y0, z, x1, y0, z, (x0 + x1) / 2, y1, z);
+    }
+
+    // On the plane z = 10 * (x + 0.55): its center is at z -0.83, but
+    // it is in front of z 0 for x > -0.55.
+    int tilted() {
+      return add(-0.9f, -0.9f, -3.5f, -0.1f, -0.9f, 4.5f, -0.9f, -0.1f, -3.5f);
+    }
+
+    int[] sort(boolean refine) {
+      int count = vertices.size();
+      PGraphicsOpenGL.DepthSorter sorter =
+        new PGraphicsOpenGL.DepthSorter(null);
+      sorter.refine = refine;
+      sorter.checkIndexBuffers(count);
+      sorter.checkVertexBuffer(3 * count);
+      short[] polyIndices = new short[3 * count];
+      for (int i = 0; i < count; i++) {
+        System.arraycopy(vertices.get(i), 0, sorter.screenVertices, 9 * i, 9);
+        for (int j = 0; j < 3; j++) {
+          polyIndices[3 * i + j] = (short) (3 * i + j);
+        }
+        sorter.voffsetMap[i] = 0;
+      }
+      int[] vertexOffset = { 0 };
+      sorter.findBounds(count, vertexOffset, polyIndices);
+      sorter.sortByCenterZ(count, vertexOffset, polyIndices);
+      int[] order = new int[count];
+      System.arraycopy(sorter.triangleIndices, 0, order, 0, count);
+      return order;
+    }
+  }
+}
@@ -0,0 +1,171 @@
+package processing.opengl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Test;
+
+import processing.core.PConstants;
+import processing.core.PImage;
+import processing.core.PShape;
+import processing.opengl.PGraphicsOpenGL.IndexCache;
+import processing.opengl.PGraphicsOpenGL.TessGeometry;
+import processing.opengl.PGraphicsOpenGL.Tessellator;
+
+// In the same package as the shape, to get to its tessellated geometry.
+public class PShapeOpenGLTests implements PConstants {
+  int parallelism = PImage.getParallelism();
+
+  @After
+  public void restoreParallelism() {
+    PImage.setParallelism(parallelism);
+  }
+
+  // The leaves of a big group are tessellated on several threads and
+  // copied into the root, which has to end up as if done on one thread.
+  @Test
+  public void parallelTessellation() {
+    for (PGraphicsOpenGL pg : new PGraphicsOpenGL[] {
+        new PGraphics3D(), new PGraphics2D() }) {
+      pg.width = 200;
+      pg.height = 200;
+      pg.tessellator = new Tessellator();
+      // Under the minimum, and big enough to fill several index caches
+      for (int count : new int[] { 10, 2000 }) {
+        PImage.setParallelism(1);
+        PShapeOpenGL sequential = group(pg, count);
+        sequential.updateTessellation();
+
+        PImage.setParallelism(4);
+        PShapeOpenGL parallel = group(pg, count);
+        parallel.updateTessellation();
+        assertSame(sequential, parallel);
+
+        // And again once the shapes are already tessellated
+        parallel.markForTessellation();
+        parallel.updateTessellation();
+        assertSame(sequential, parallel);
+      }
+    }
+  }
+
+  // A group of groups with all kinds of shapes, made the same every time.
+  static PShapeOpenGL group(PGraphicsOpenGL pg, int count) {
+    Random random = new Random(count);
+    PShapeOpenGL root = new PShapeOpenGL(pg, GROUP);
+    PShapeOpenGL group = null;
+    for (int i = 0; i < count; i++) {
+      if (i % 50 == 0) {
+        group = new PShapeOpenGL(pg, GROUP);
+        root.addChild(group);
+      }
+      float x = random.nextFloat() * 100;
+      float y = random.nextFloat() * 100;
+      int kind = random.nextInt(10);
+      PShapeOpenGL shape;
+      if (kind == 0) {
+        shape = new PShapeOpenGL(pg, ELLIPSE, x, y, 10, 8);
+      } else if (kind == 1) {
+        shape = new PShapeOpenGL(pg, RECT, x, y, 10, 8);
+      } else if (kind == 2) {
+        shape = new PShapeOpenGL(pg, RECT, x, y, 10, 8, 2);
+      } else if (kind == 3) {
+        shape = pg.is3D() ? new PShapeOpenGL(pg, SPHERE, 5) :
+                            new PShapeOpenGL(pg, ARC, x, y, 10, 10, 0, 2);
+      } else if (kind == 4) {
+        shape = pg.is3D() ? new PShapeOpenGL(pg, BOX, 5, 6, 7) :
+                            new PShapeOpenGL(pg, TRIANGLE, x, y, x + 5, y, x, y + 5);
+      } else {
+        int[] kinds = { TRIANGLES, POLYGON, LINES, POINTS, QUADS };
+        shape = new PShapeOpenGL(pg, PShape.GEOMETRY);
+        shape.beginShape(kinds[kind - 5]);
+        int vertexCount = kind == 5 ? 6 : kind == 9 ? 8 : 4 + random.nextInt(8);
+        for (int j = 0; j < vertexCount; j++) {
+          shape.vertex(x + random.nextFloat() * 10, y + random.nextFloat() * 10);
+        }
+        if (kind == 6 && random.nextInt(4) == 0) {
+          shape.bezierVertex(x, y, x + 3, y + 2, x + 5, y + 1);
+        }
+        shape.endShape(random.nextBoolean() ? CLOSE : OPEN);
+      }
+      shape.setStroke(random.nextBoolean());
+      if (random.nextInt(5) == 0) shape.translate(3, 4);
+      group.addChild(shape);
+    }
+    return root;
+  }
+
+  static void assertSame(PShapeOpenGL expected, PShapeOpenGL actual) {
+    TessGeometry a = expected.tessGeo;
+    TessGeometry b = actual.tessGeo;
+
+    assertEquals(a.polyVertexCount, b.polyVertexCount);
+    assertEquals(a.polyIndexCount, b.polyIndexCount);
+    assertEquals(a.lineVertexCount, b.lineVertexCount);
+    assertEquals(a.lineIndexCount, b.lineIndexCount);
+    assertEquals(a.pointVertexCount, b.pointVertexCount);
+    assertEquals(a.pointIndexCount, b.pointIndexCount);
+
+    assertArrayEquals(a.polyVertices, b.polyVertices, 0);
+    assertArrayEquals(a.polyColors, b.polyColors);
+    assertArrayEquals(a.polyNormals, b.polyNormals, 0);
+    assertArrayEquals(a.polyTexCoords, b.polyTexCoords, 0);
+    assertArrayEquals(a.polyAmbient, b.polyAmbient);
+    assertArrayEquals(a.polySpecular, b.polySpecular);
+    assertArrayEquals(a.polyEmissive, b.polyEmissive);
+    assertArrayEquals(a.polyShininess, b.polyShininess, 0);
+    assertArrayEquals(a.polyIndices, b.polyIndices);
+    assertArrayEquals(a.lineVertices, b.lineVertices, 0);
+    assertArrayEquals(a.lineColors, b.lineColors);
+    assertArrayEquals(a.lineDirections, b.lineDirections, 0);
+    assertArrayEquals(a.lineIndices, b.lineIndices);
+    assertArrayEquals(a.pointVertices, b.pointVertices, 0);
+    assertArrayEquals(a.pointColors, b.pointColors);
+    assertArrayEquals(a.pointOffsets, b.pointOffsets, 0);
+    assertArrayEquals(a.pointIndices, b.pointIndices);
+
+    assertSame(a.polyIndexCache, b.polyIndexCache);
+    assertSame(a.lineIndexCache, b.lineIndexCache);
+    assertSame(a.pointIndexCache, b.pointIndexCache);
+
+    assertSameRanges(expected, actual);
+  }
+
+  static void assertSame(IndexCache expected, IndexCache actual) {
+    assertEquals(expected.size, actual.size);
+    for (int i = 0; i < expected.size; i++) {
+      assertEquals(expected.indexCount[i], actual.indexCount[i]);
+      assertEquals(expected.indexOffset[i], actual.indexOffset[i]);
+      assertEquals(expected.vertexCount[i], actual.vertexCount[i]);
+      assertEquals(expected.vertexOffset[i], actual.vertexOffset[i]);
+    }
+  }
+
+  // Every shape in the tree has to point at the same part of the
+  // root's geometry.
+  static void assertSameRanges(PShapeOpenGL expected, PShapeOpenGL actual) {
+    assertTrue(actual.tessellated);
+    assertTrue(actual.tessGeo == actual.root.tessGeo);
+    assertArrayEquals(ranges(expected), ranges(actual));
+    assertEquals(expected.getChildCount(), actual.getChildCount());
+    for (int i = 0; i < expected.getChildCount(); i++) {
+      assertSameRanges((PShapeOpenGL) expected.getChild(i),
+                       (PShapeOpenGL) actual.getChild(i));
+    }
+  }
+
+  static int[] ranges(PShapeOpenGL shape) {
+    return new int[] {
+      shape.firstPolyIndexCache, shape.lastPolyIndexCache,
+      shape.firstLineIndexCache, shape.lastLineIndexCache,
+      shape.firstPointIndexCache, shape.lastPointIndexCache,
+      shape.firstPolyVertex, shape.lastPolyVertex,
+      shape.firstLineVertex, shape.lastLineVertex,
+      shape.firstPointVertex, shape.lastPointVertex
+    };
+  }
+}
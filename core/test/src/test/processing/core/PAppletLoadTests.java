@@ -0,0 +1,113 @@
+package test.processing.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.util.Iterator;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+import processing.core.PApplet;
+import processing.data.Table;
+
+public class PAppletLoadTests {
+
+  static PApplet sketch() {
+    PApplet sketch = new PApplet();
+    sketch.sketchPath();  // so that files can be loaded outside setup()
+    return sketch;
+  }
+
+  static File write(String suffix, byte[] data, boolean gzip) throws IOException {
+    File file = File.createTempFile("load", suffix);
+    file.deleteOnExit();
+    OutputStream output = new FileOutputStream(file);
+    if (gzip) {
+      output = new GZIPOutputStream(output);
+    }
+    output.write(data);
+    output.close();
+    return file;
+  }
+
+  @Test
+  public void byteOrderMark() throws IOException {
+    byte[] data = "\uFEFFfirst\nsecond\n".getBytes("UTF-8");
+    File plain = write(".txt", data, false);
+    File gzip = write(".txt.gz", data, true);
+    PApplet sketch = sketch();
+
+    assertEquals("first", PApplet.loadStrings(plain)[0]);
+    assertEquals("first", PApplet.loadStrings(gzip)[0]);
+    assertEquals("first", sketch.loadStrings(plain.getAbsolutePath())[0]);
+    assertEquals("first", sketch.loadLines(plain.getAbsolutePath()).iterator().next());
+  }
+
+  @Test
+  public void compressedSvg() throws IOException {
+    byte[] data = "<svg>\n</svg>".getBytes("UTF-8");
+    File file = write(".svgz", data, true);
+    PApplet sketch = sketch();
+
+    String[] expected = { "<svg>", "</svg>" };
+    assertArrayEquals(expected, PApplet.loadStrings(file));
+    assertArrayEquals(expected, sketch.loadStrings(file.getAbsolutePath()));
+    assertArrayEquals(data, PApplet.loadBytes(file));
+    assertArrayEquals(data, sketch.loadBytes(file.getAbsolutePath()));
+
+    Iterator<String> lines = sketch.loadLines(file.getAbsolutePath()).iterator();
+    assertEquals("<svg>", lines.next());
+    assertEquals("</svg>", lines.next());
+  }
+
+  static boolean isMapped(Table table) throws Exception {
+    Field field = Table.class.getDeclaredField("mapped");
+    field.setAccessible(true);
+    return field.getBoolean(table);
+  }
+
+  static void assertSameTable(Table expected, Table actual) {
+    assertEquals(expected.getRowCount(), actual.getRowCount());
+    for (int row = 0; row < expected.getRowCount(); row++) {
+      assertEquals(expected.getInt(row, 0), actual.getInt(row, 0));
+      assertEquals(expected.getDouble(row, 1), actual.getDouble(row, 1), 0);
+      assertEquals(expected.getString(row, 2), actual.getString(row, 2));
+    }
+  }
+
+  @Test
+  public void columnarTable() throws Exception {
+    Table table = new Table();
+    table.addColumn("id", Table.INT);
+    table.addColumn("value", Table.DOUBLE);
+    table.addColumn("name", Table.STRING);
+    for (int row = 0; row < 1000; row++) {
+      table.addRow(new Object[] { row, row * 0.5, "row " + row });
+    }
+    File file = File.createTempFile("table", ".bin");
+    file.deleteOnExit();
+    table.save(file, "columnar");
+
+    // loadTable() on a local file maps the columns
+    Table loaded = sketch().loadTable(file.getAbsolutePath());
+    assertTrue(isMapped(loaded));
+    assertSameTable(table, loaded);
+
+    // a stream has to be read into memory
+    InputStream input = new FileInputStream(file);
+    Table streamed = new Table(input, "bin");
+    input.close();
+    assertFalse(isMapped(streamed));
+    assertSameTable(table, streamed);
+  }
+}
@@ -0,0 +1,77 @@
+package test.processing.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+
+import org.junit.Test;
+
+import processing.data.JSONReader;
+
+public class JSONReaderTests {
+
+  @Test
+  public void nextIntInRange() {
+    JSONReader reader =
+      new JSONReader(new StringReader("[2147483647, -2147483648, 1e3]"));
+    reader.beginArray();
+    assertEquals(Integer.MAX_VALUE, reader.nextInt());
+    assertEquals(Integer.MIN_VALUE, reader.nextInt());
+    assertEquals(1000, reader.nextInt());
+  }
+
+  @Test
+  public void nextIntOutOfRange() {
+    for (String number : new String[] { "2147483648", "-2147483649", "1e12" }) {
+      JSONReader reader = new JSONReader(new StringReader("[" + number + "]"));
+      reader.beginArray();
+      try {
+        reader.nextInt();
+        fail(number + " was read as an int");
+      } catch (RuntimeException e) {
+        // expected
+      }
+    }
+  }
+
+  static JSONReader array(String numbers) {
+    JSONReader reader = new JSONReader(new StringReader("[" + numbers + "]"));
+    reader.beginArray();
+    return reader;
+  }
+
+  @Test
+  public void nextLongInRange() {
+    JSONReader reader = array("9223372036854775807, -9223372036854775808, 1.5e3, -0");
+    assertEquals(Long.MAX_VALUE, reader.nextLong());
+    assertEquals(Long.MIN_VALUE, reader.nextLong());
+    assertEquals(1500, reader.nextLong());
+    assertEquals(0, reader.nextLong());
+  }
+
+  @Test
+  public void nextLongOutOfRange() {
+    for (String number : new String[] { "9223372036854775808", "-9223372036854775809",
+                                        "99999999999999999999", "1e30", "-1e19" }) {
+      try {
+        array(number).nextLong();
+        fail(number + " was read as a long");
+      } catch (RuntimeException e) {
+        // expected
+      }
+    }
+  }
+
+  @Test
+  public void signWithoutDigits() {
+    for (String number : new String[] { "-", "+" }) {
+      try {
+        double value = array(number).nextDouble();
+        fail(number + " was read as " + value);
+      } catch (RuntimeException e) {
+        // expected
+      }
+    }
+  }
+}
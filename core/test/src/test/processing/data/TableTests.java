@@ -0,0 +1,103 @@
+package test.processing.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import org.junit.Test;
+
+import processing.data.Table;
+
+public class TableTests {
+
+  static Table twoIntKeys(int offset) {
+    Table table = new Table();
+    table.addColumn("k0", Table.INT);
+    table.addColumn("k1", Table.INT);
+    table.setRowCount(100);
+    for (int row = 0; row < 100; row++) {
+      table.setInt(row, 0, row < 50 ? 0 : 499);
+      table.setInt(row, 1, row % 3 + offset);
+    }
+    return table;
+  }
+
+  @Test
+  public void groupByTwoIntKeys() {
+    Table result = twoIntKeys(0).groupBy("k0", "k1").count().agg();
+    assertEquals(6, result.getRowCount());
+  }
+
+  @Test
+  public void groupByTwoIntKeysOffset() {
+    Table result = twoIntKeys(1000).groupBy("k0", "k1").count().agg();
+    assertEquals(6, result.getRowCount());
+    int total = 0;
+    for (int row = 0; row < result.getRowCount(); row++) {
+      total += result.getInt(row, 2);
+    }
+    assertEquals(100, total);
+  }
+
+  @Test
+  public void hashIndexOnCategory() {
+    Table table = new Table();
+    table.addColumn("name", Table.CATEGORY);
+    table.createIndex("name", Table.HASH);
+    table.addRow(new Object[] { "a" });
+    table.addRow(new Object[] { "b" });
+    table.addRow(new Object[] { "a" });
+    assertArrayEquals(new int[] { 0, 2 }, table.findRowIndices("a", "name"));
+    assertArrayEquals(new int[] { 1 }, table.findRowIndices("b", "name"));
+  }
+
+  @Test
+  public void sortedIndexOnLargeLongs() {
+    long big = 1L << 53;
+    Table table = new Table();
+    table.addColumn("id", Table.LONG);
+    table.createIndex("id", Table.SORTED);
+    for (int i = 3; i >= 0; i--) {
+      table.addRow(new Object[] { big + i });
+    }
+    assertArrayEquals(new int[] { 1, 2 }, table.findRowIndicesInRange(big + 1, big + 2, "id"));
+    assertArrayEquals(new int[] { 0 }, table.findRowIndicesInRange(big + 3, Long.MAX_VALUE, "id"));
+    table.removeIndex("id");
+    assertArrayEquals(new int[] { 1, 2 }, table.findRowIndicesInRange(big + 1, big + 2, "id"));
+  }
+
+  @Test
+  public void parallelLoadWithShortRows() throws IOException {
+    File file = File.createTempFile("table", ".csv");
+    file.deleteOnExit();
+    PrintWriter writer = new PrintWriter(file, "UTF-8");
+    writer.println("value,name");
+    for (int row = 0; row < 400000; row++) {
+      // short rows throughout, and none with a name in the last half
+      if (row % 7 == 3 || row > 200000) {
+        writer.println(row);
+      } else {
+        writer.println(row + ",name" + (row % 5 + 1));
+      }
+    }
+    writer.close();
+
+    Table dictionary = new Table();
+    dictionary.addColumn("title");
+    dictionary.addColumn("type");
+    dictionary.addRow(new Object[] { "value", "int" });
+    dictionary.addRow(new Object[] { "name", "category" });
+
+    Table single = dictionary.typedParse(file, "header");
+    Table parallel = dictionary.typedParse(file, "header,threads=4");
+    assertEquals(single.getRowCount(), parallel.getRowCount());
+    for (int row = 0; row < single.getRowCount(); row++) {
+      assertEquals(single.getInt(row, 0), parallel.getInt(row, 0));
+      assertEquals(single.getInt(row, 1), parallel.getInt(row, 1));
+      assertEquals(single.getString(row, 1), parallel.getString(row, 1));
+    }
+  }
+}
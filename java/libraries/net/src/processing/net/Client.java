@@ -27,7 +27,6 @@ package processing.net;
 import processing.core.*;
 
 import java.io.*;
-import java.lang.reflect.*;
 import java.net.*;
 
 /**
@@ -49,8 +48,8 @@ public class Client implements Runnable {
   protected static final int MAX_BUFFER_SIZE = 1 << 27; // 128 MB
 
   PApplet parent;
-  Method clientEventMethod;
-  Method disconnectEventMethod;
+  PCallback clientEventMethod;
+  PCallback disconnectEventMethod;
 
   volatile Thread thread;
   Socket socket;
@@ -90,22 +89,12 @@ public class Client implements Runnable {
       parent.registerMethod("dispose", this);
       disposeRegistered = true;
 
-      // reflection to check whether host sketch has a call for
+      // check whether host sketch has a call for
       // public void clientEvent(processing.net.Client)
       // which would be called each time an event comes in
-      try {
-        clientEventMethod =
-          parent.getClass().getMethod("clientEvent", Client.class);
-      } catch (Exception e) {
-        // no such method, or an error.. which is fine, just ignore
-      }
+      clientEventMethod = PCallback.find(parent, "clientEvent", Client.class);
       // do the same for disconnectEvent(Client c);
-      try {
-        disconnectEventMethod =
-          parent.getClass().getMethod("disconnectEvent", Client.class);
-      } catch (Exception e) {
-        // no such method, or an error.. which is fine, just ignore
-      }
+      disconnectEventMethod = PCallback.find(parent, "disconnectEvent", Client.class);
 
     } catch (IOException e) {
       e.printStackTrace();
@@ -128,22 +117,12 @@ public class Client implements Runnable {
     thread = new Thread(this);
     thread.start();
 
-    // reflection to check whether host sketch has a call for
+    // check whether host sketch has a call for
     // public void clientEvent(processing.net.Client)
     // which would be called each time an event comes in
-    try {
-      clientEventMethod =
-          parent.getClass().getMethod("clientEvent", Client.class);
-    } catch (Exception e) {
-      // no such method, or an error.. which is fine, just ignore
-    }
+    clientEventMethod = PCallback.find(parent, "clientEvent", Client.class);
     // do the same for disconnectEvent(Client c);
-    try {
-      disconnectEventMethod =
-        parent.getClass().getMethod("disconnectEvent", Client.class);
-    } catch (Exception e) {
-      // no such method, or an error.. which is fine, just ignore
-    }
+    disconnectEventMethod = PCallback.find(parent, "disconnectEvent", Client.class);
   }
 
 
@@ -161,14 +140,9 @@ public class Client implements Runnable {
   public void stop() {    
     if (disconnectEventMethod != null && thread != null){
       try {
-        disconnectEventMethod.invoke(parent, this);
-      } catch (Exception e) {
-        Throwable cause = e;
-        // unwrap the exception if it came from the user code
-        if (e instanceof InvocationTargetException && e.getCause() != null) {
-          cause = e.getCause();
-        }
-        cause.printStackTrace();
+        disconnectEventMethod.call(this);
+      } catch (Throwable e) {
+        e.printStackTrace();
         disconnectEventMethod = null;
       }
     }
@@ -284,15 +258,10 @@ public class Client implements Runnable {
           // now post an event
           if (clientEventMethod != null) {
             try {
-              clientEventMethod.invoke(parent, this);
-            } catch (Exception e) {
+              clientEventMethod.call(this);
+            } catch (Throwable e) {
               System.err.println("error, disabling clientEvent() for " + host);
-              Throwable cause = e;
-              // unwrap the exception if it came from the user code
-              if (e instanceof InvocationTargetException && e.getCause() != null) {
-                cause = e.getCause();
-              }
-              cause.printStackTrace();
+              e.printStackTrace();
               clientEventMethod = null;
             }
           }
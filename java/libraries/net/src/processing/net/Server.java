@@ -28,7 +28,6 @@ package processing.net;
 import processing.core.*;
 
 import java.io.*;
-import java.lang.reflect.*;
 import java.net.*;
 
 
@@ -50,7 +49,7 @@ import java.net.*;
  */
 public class Server implements Runnable {
   PApplet parent;
-  Method serverEventMethod;
+  PCallback serverEventMethod;
 
   volatile Thread thread;
   ServerSocket server;
@@ -93,15 +92,11 @@ public class Server implements Runnable {
 
       parent.registerMethod("dispose", this);
 
-      // reflection to check whether host applet has a call for
+      // check whether host applet has a call for
       // public void serverEvent(Server s, Client c);
       // which is called when a new guy connects
-      try {
-        serverEventMethod =
-          parent.getClass().getMethod("serverEvent", Server.class, Client.class);
-      } catch (Exception e) {
-        // no such method, or an error.. which is fine, just ignore
-      }
+      serverEventMethod =
+        PCallback.find(parent, "serverEvent", Server.class, Client.class);
 
     } catch (IOException e) {
       //e.printStackTrace();
@@ -303,15 +298,10 @@ public class Server implements Runnable {
           addClient(client);
           if (serverEventMethod != null) {
             try {
-              serverEventMethod.invoke(parent, this, client);
-            } catch (Exception e) {
+              serverEventMethod.call(this, client);
+            } catch (Throwable e) {
               System.err.println("Disabling serverEvent() for port " + port);
-              Throwable cause = e;
-              // unwrap the exception if it came from the user code
-              if (e instanceof InvocationTargetException && e.getCause() != null) {
-                cause = e.getCause();
-              }
-              cause.printStackTrace();
+              e.printStackTrace();
               serverEventMethod = null;
             }
           }
@@ -27,7 +27,6 @@ package processing.serial;
 
 import processing.core.*;
 
-import java.lang.reflect.*;
 import java.util.Map;
 
 import jssc.*;
@@ -48,8 +47,8 @@ import jssc.*;
 public class Serial implements SerialPortEventListener {
   PApplet parent;
   public SerialPort port;
-  Method serialAvailableMethod;
-  Method serialEventMethod;
+  PCallback serialAvailableMethod;
+  PCallback serialEventMethod;
 
   byte[] buffer = new byte[32768];
   int inBuffer = 0;
@@ -141,17 +140,13 @@ public class Serial implements SerialPortEventListener {
     serialAvailableMethod = findCallback("serialAvailable");
   }
 
-  private Method findCallback(final String name) {
-    try {
-      return parent.getClass().getMethod(name, this.getClass());
-    } catch (Exception e) {
-    }
-    // Permit callback(Object) as alternative to callback(Serial).
-    try {
-      return parent.getClass().getMethod(name, Object.class);
-    } catch (Exception e) {
+  private PCallback findCallback(final String name) {
+    PCallback callback = PCallback.find(parent, name, this.getClass());
+    if (callback == null) {
+      // Permit callback(Object) as alternative to callback(Serial).
+      callback = PCallback.find(parent, name, Object.class);
     }
-    return null;
+    return callback;
   }
 
 
@@ -176,8 +171,8 @@ public class Serial implements SerialPortEventListener {
     if (serialAvailableMethod != null && invokeSerialAvailable) {
       invokeSerialAvailable = false;
       try {
-        serialAvailableMethod.invoke(parent, this);
-      } catch (Exception e) {
+        serialAvailableMethod.call(this);
+      } catch (Throwable e) {
         System.err.println("Error, disabling serialAvailable() for "+port.getPortName());
         System.err.println(e.getLocalizedMessage());
         serialAvailableMethod = null;
@@ -568,8 +563,8 @@ public class Serial implements SerialPortEventListener {
                 // available() and read() inside draw - but this function has no
                 // thread-safety issues since it's being invoked during pre in the context
                 // of the Processing applet
-                serialEventMethod.invoke(parent, this);
-              } catch (Exception e) {
+                serialEventMethod.call(this);
+              } catch (Throwable e) {
                 System.err.println("Error, disabling serialEvent() for "+port.getPortName());
                 System.err.println(e.getLocalizedMessage());
                 serialEventMethod = null;